@@ -35,12 +35,15 @@ import com.github.rolecraftdev.command.other.DebugCommand;
 import com.github.rolecraftdev.command.other.GCCommand;
 import com.github.rolecraftdev.command.other.ManaCommand;
 import com.github.rolecraftdev.command.other.RCConfirmCommand;
+import com.github.rolecraftdev.command.other.TopCommand;
 import com.github.rolecraftdev.command.profession.ProfessionCommand;
+import com.github.rolecraftdev.command.rolecraft.RolecraftCommand;
 import com.github.rolecraftdev.command.secondprofession.SecondprofessionCommand;
 import com.github.rolecraftdev.data.DataListener;
 import com.github.rolecraftdev.data.DataManager;
 import com.github.rolecraftdev.data.PlayerData;
 import com.github.rolecraftdev.data.storage.DataStore;
+import com.github.rolecraftdev.data.storage.LogDataStore;
 import com.github.rolecraftdev.data.storage.MySQLDataStore;
 import com.github.rolecraftdev.data.storage.SQLiteDataStore;
 import com.github.rolecraftdev.display.DisplayUpdater;
@@ -48,6 +51,7 @@ import com.github.rolecraftdev.event.RolecraftEventFactory;
 import com.github.rolecraftdev.experience.ExperienceListener;
 import com.github.rolecraftdev.guild.Guild;
 import com.github.rolecraftdev.guild.GuildManager;
+import com.github.rolecraftdev.leaderboard.LeaderboardManager;
 import com.github.rolecraftdev.magic.Spell;
 import com.github.rolecraftdev.magic.SpellManager;
 import com.github.rolecraftdev.profession.Profession;
@@ -70,6 +74,10 @@ import org.bukkit.plugin.java.JavaPlugin;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -99,6 +107,11 @@ public final class RolecraftCore extends JavaPlugin {
      */
     @Nonnull
     private DataManager dataManager;
+    /**
+     * Ranks players and guilds.
+     */
+    @Nonnull
+    private LeaderboardManager leaderboardManager;
     /**
      * Manages {@link RolecraftSign}s.
      */
@@ -185,9 +198,11 @@ public final class RolecraftCore extends JavaPlugin {
             dataStore = new SQLiteDataStore(this);
         } else if (dbType.equals("mysql")) {
             dataStore = new MySQLDataStore(this);
+        } else if (dbType.equals("file")) {
+            dataStore = new LogDataStore(this);
         } else {
             logger.warning(
-                    "SQLServer in config was not one of: \"sqlite\" or \"mysql\", defaulting to sqlite");
+                    "SQLServer in config was not one of: \"sqlite\", \"mysql\" or \"file\", defaulting to sqlite");
             dataStore = new SQLiteDataStore(this);
         }
 
@@ -202,6 +217,8 @@ public final class RolecraftCore extends JavaPlugin {
 
         // Create all the manager objects / load data
         dataManager = new DataManager(this, dataStore);
+        // must be instantiated prior to the GuildManager as it ranks the guilds
+        leaderboardManager = new LeaderboardManager(this);
         signManager = new RolecraftSignManager(
                 this); // must be instantiated prior to other managers as they register sign interaction handlers
         guildManager = new GuildManager(this);
@@ -228,6 +245,8 @@ public final class RolecraftCore extends JavaPlugin {
         register(new DebugCommand(this));
         register(new ChannelCommand(this));
         register(new ManaCommand(this));
+        register(new TopCommand(this));
+        register(new RolecraftCommand(this));
 
         if (this.config.allowSecondProfessions()) { // only register second profession command if second professions are enabled
             register(new SecondprofessionCommand(this));
@@ -239,11 +258,66 @@ public final class RolecraftCore extends JavaPlugin {
      */
     @Override
     public void onDisable() {
-        guildManager.getTerritoryManager().saveTerritory();
-
-        dataManager.cleanup();
-        signManager.saveSigns();
-        chatManager.saveChannels();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                getConfig().getLong("storage.shutdown-deadline", 20));
+
+        // the flat files are written while the player data is being flushed,
+        // not on daemon threads since a cut off save would truncate them
+        final ExecutorService saver = Executors.newFixedThreadPool(4,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(r, "Rolecraft Shutdown");
+                    }
+                });
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                guildManager.getTerritoryManager().saveTerritory();
+            }
+        });
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                signManager.saveSigns();
+            }
+        });
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                chatManager.saveChannels();
+            }
+        });
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                leaderboardManager.saveSnapshot();
+            }
+        });
+        saver.shutdown();
+
+        dataManager.cleanup(deadline);
+
+        // the deadline only bounds the database, the files are always saved
+        boolean interrupted = false;
+        boolean warned = false;
+        while (!saver.isTerminated()) {
+            try {
+                final long remaining = deadline - System.nanoTime();
+                if (!saver.awaitTermination(remaining > 0 ? remaining
+                        : TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS)
+                        && !warned) {
+                    getLogger().warning("Saving the files takes longer than"
+                            + " the shutdown deadline, waiting for them");
+                    warned = true;
+                }
+            } catch (final InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -310,8 +384,10 @@ public final class RolecraftCore extends JavaPlugin {
      * given {@link UUID}.
      *
      * @param playerId the unique id of the player to get data for
-     * @return the player data for the player with the given id
+     * @return the player data for the player with the given id, or
+     *         {@code null} if they are offline and it isn't in memory
      * @since 0.1.0
+     * @see DataManager#getPlayerData(UUID)
      */
     public PlayerData getPlayerData(final UUID playerId) {
         return getDataManager().getPlayerData(playerId);
@@ -328,6 +404,17 @@ public final class RolecraftCore extends JavaPlugin {
         return getPlayerData(player.getUniqueId());
     }
 
+    /**
+     * Gets the used {@link LeaderboardManager}.
+     *
+     * @return the used {@link LeaderboardManager}
+     * @since 0.1.0
+     */
+    @Nonnull
+    public LeaderboardManager getLeaderboardManager() {
+        return leaderboardManager;
+    }
+
     /**
      * Gets the used {@link RolecraftSignManager}.
      *
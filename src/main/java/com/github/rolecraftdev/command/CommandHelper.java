@@ -249,6 +249,10 @@ public final class CommandHelper {
                 "Rank " + rank.getName() + " in guild " + guild.getName());
         sender.sendMessage(ChatColor.GRAY +
                 "Members: " + rank.getMembers().size());
+        if (rank.getParent() != null) {
+            sender.sendMessage(ChatColor.GRAY +
+                    "Inherits: " + rank.getParent());
+        }
 
         // Create a human readable version of the permitted actions Set
         final String separator = ", ";
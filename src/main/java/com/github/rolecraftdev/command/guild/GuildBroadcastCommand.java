@@ -75,6 +75,10 @@ public class GuildBroadcastCommand extends PlayerCommandHandler {
             player.sendMessage(plugin.getMessage(Messages.NO_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
         if (guild.can(player.getUniqueId(), GuildAction.BROADCAST_MESSAGE)) {
             if (args.hasValueFlag("r")) {
                 final String name = args.getValueFlag("r").getRawValue();
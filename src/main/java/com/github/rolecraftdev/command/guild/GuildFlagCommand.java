@@ -110,6 +110,11 @@ public class GuildFlagCommand extends PlayerCommandHandler {
                     return;
                 }
 
+                if (!guild.requestHydration()) {
+                    player.sendMessage(
+                            plugin.getMessage(Messages.GUILD_LOADING));
+                    return;
+                }
                 if (!guild.can(id, GuildAction.SET_OPEN)) {
                     player.sendMessage(
                             plugin.getMessage(Messages.GUILD_NO_PERMISSION));
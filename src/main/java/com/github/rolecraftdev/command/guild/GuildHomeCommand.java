@@ -80,6 +80,10 @@ public class GuildHomeCommand extends PlayerCommandHandler {
         }
 
         if (args.length() > 0 && args.getRaw(0).equalsIgnoreCase("set")) {
+            if (!guild.requestHydration()) {
+                player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+                return;
+            }
             if (!player.hasPermission("rolecraft.guild.sethome") || !guild.can(
                     id, GuildAction.SET_HOME)) {
                 player.sendMessage(
@@ -125,6 +125,10 @@ public class GuildJoinCommand extends PlayerCommandHandler {
             player.sendMessage(plugin.getMessage(Messages.ALREADY_IN_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
 
         data.setGuild(guild.getId());
         final GuildPlayerJoinEvent event = guild
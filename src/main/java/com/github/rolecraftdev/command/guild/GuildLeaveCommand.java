@@ -73,6 +73,10 @@ public class GuildLeaveCommand extends PlayerCommandHandler {
             player.sendMessage(plugin.getMessage(Messages.NO_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
         player.sendMessage(
                 plugin.getMessage(Messages.GUILD_LEAVE, MessageVariable.GUILD
                         .value(guild.getName())));
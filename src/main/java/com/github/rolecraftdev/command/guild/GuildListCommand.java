@@ -28,18 +28,18 @@ package com.github.rolecraftdev.command.guild;
 
 import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.command.BaseCommandHandler;
-import com.github.rolecraftdev.command.CommandHelper;
 import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.command.parser.ChatSection;
 import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.guild.GuildDirectory;
 import com.github.rolecraftdev.guild.GuildManager;
+import com.github.rolecraftdev.guild.GuildOrder;
 import com.github.rolecraftdev.util.messages.Messages;
 
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * @since 0.0.5
@@ -64,7 +64,7 @@ public class GuildListCommand extends BaseCommandHandler {
 
         setDescription("List all of the guilds available");
         setPermission("rolecraft.guild.show");
-        setUsage("/guild list [page]");
+        setUsage("/guild list [-s name/members/influence/created] [page]");
         setSubcommand(true);
     }
 
@@ -73,33 +73,66 @@ public class GuildListCommand extends BaseCommandHandler {
      */
     @Override
     public void onCommand(final CommandSender sender, final Arguments args) {
-        final Set<Guild> guilds = guildMgr.getGuilds();
-        if (guilds == null) {
+        if (guildMgr.getSnapshot() == null) {
             // in theory shouldn't happen, this is more of a sanity check
             sender.sendMessage(ChatColor.DARK_RED +
                     "The plugin hasn't loaded yet!");
             return;
         }
 
-        if (guilds.size() == 0) {
+        final GuildDirectory directory = guildMgr.getDirectory();
+        if (directory.size() == 0) {
             sender.sendMessage(plugin.getMessage(Messages.NO_GUILDS));
             return;
         }
 
-        final List<Guild> onPage = CommandHelper
-                .getPageFromArgs(plugin, sender, new ArrayList<Guild>(guilds),
-                        args.length() > 0 ? args.get(0) : null,
-                        GUILDS_PER_PAGE);
-        if (onPage == null) {
-            // No need to send an error message - getPageFromArgs does that for
-            // us already, so we can just return here.
+        GuildOrder order = GuildOrder.NAME;
+        if (args.hasValueFlag("s")) {
+            final String name = args.getValueFlag("s").getRawValue();
+            order = GuildOrder.fromName(name);
+            if (order == null) {
+                sender.sendMessage(ChatColor.DARK_RED + "Invalid order "
+                        + name + ", " + getUsage());
+                return;
+            }
+        }
+
+        int page = 1;
+        if (args.length(false) > 0) {
+            final ChatSection pageArg = args.get(0, false);
+            if (!pageArg.isInt()) {
+                sender.sendMessage(plugin.getMessage(
+                        Messages.INVALID_PAGE_NUMBER));
+                return;
+            }
+            page = pageArg.asInt();
+        }
+
+        final int pages = (directory.size() + GUILDS_PER_PAGE - 1)
+                / GUILDS_PER_PAGE;
+        if (page < 1 || page > pages) {
+            sender.sendMessage(plugin.getMessage(Messages.PAGE_NOT_EXISTS));
             return;
         }
 
-        sender.sendMessage(ChatColor.GOLD + "Guilds" + (args.length() > 0 ?
-                (" - Page" + args.get(0).rawString()) : ""));
+        final List<Guild> onPage = directory.getPage(order,
+                (page - 1) * GUILDS_PER_PAGE, GUILDS_PER_PAGE);
+        sender.sendMessage(ChatColor.GOLD + "Guilds by " + order.getName()
+                + " - Page " + page + "/" + pages);
         for (final Guild guild : onPage) {
-            sender.sendMessage(ChatColor.GRAY + guild.getName());
+            switch (order) {
+                case MEMBERS:
+                    sender.sendMessage(ChatColor.GRAY + guild.getName() + " ("
+                            + guild.getMemberCount() + " members)");
+                    break;
+                case INFLUENCE:
+                    sender.sendMessage(ChatColor.GRAY + guild.getName() + " ("
+                            + guild.getInfluence() + " influence)");
+                    break;
+                default:
+                    sender.sendMessage(ChatColor.GRAY + guild.getName());
+                    break;
+            }
         }
     }
 }
@@ -30,7 +30,6 @@ import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.command.PlayerCommandHandler;
 import com.github.rolecraftdev.command.parser.Arguments;
 import com.github.rolecraftdev.command.parser.ChatSection;
-import com.github.rolecraftdev.data.PlayerData;
 import com.github.rolecraftdev.guild.Guild;
 import com.github.rolecraftdev.guild.GuildAction;
 import com.github.rolecraftdev.guild.GuildManager;
@@ -38,12 +37,10 @@ import com.github.rolecraftdev.guild.GuildRank;
 import com.github.rolecraftdev.util.messages.MessageVariable;
 import com.github.rolecraftdev.util.messages.Messages;
 
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.metadata.FixedMetadataValue;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.UUID;
 
@@ -79,6 +76,10 @@ public class GuildMemberCommand extends PlayerCommandHandler {
             player.sendMessage(plugin.getMessage(Messages.NO_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
         if (args.length() < 2) {
             sendUsageMessage(player);
             return;
@@ -94,8 +95,6 @@ public class GuildMemberCommand extends PlayerCommandHandler {
         }
 
         final Player target = targetArg.asPlayer();
-        final PlayerData targetData = plugin.getDataManager()
-                .getPlayerData(offline.getUniqueId());
         final Guild targetGuild = guildMgr
                 .getPlayerGuild(offline.getUniqueId());
 
@@ -145,14 +144,16 @@ public class GuildMemberCommand extends PlayerCommandHandler {
                     return;
                 }
 
-                // We do this async because if the player is offline we can't
-                // access the PlayerData object until the data is loaded from
-                // SQL
-                new KickPlayerTask(plugin, targetData)
-                        .runTaskAsynchronously(plugin);
+                // also clears the guild of the stored data of offline players
+                guild.removeMember(id, true);
                 player.sendMessage(plugin.getMessage(Messages.PLAYER_KICKED,
-                        MessageVariable.PLAYER
-                                .value(targetData.getPlayerName())));
+                        MessageVariable.PLAYER.value(offline.getName())));
+                if (target != null) {
+                    plugin.getDataManager().getPlayerData(id).setGuild(null);
+                    target.sendMessage(plugin.getMessage(
+                            Messages.KICKED_FROM_GUILD,
+                            MessageVariable.PLAYER.value(offline.getName())));
+                }
             } else if (command.equalsIgnoreCase("rank")) {
                 if (!guild.can(
                         player.getUniqueId(), GuildAction.ASSIGN_RANKS)) {
@@ -189,6 +190,7 @@ public class GuildMemberCommand extends PlayerCommandHandler {
 
                 if (add) {
                     rank.addMember(offline.getUniqueId());
+                    plugin.getDataStore().updateGuildRanks(guild);
                     player.sendMessage(plugin.getMessage(
                             Messages.ADDED_PLAYER_TO_RANK, MessageVariable.RANK
                                     .value(rank.getName()),
@@ -203,6 +205,7 @@ public class GuildMemberCommand extends PlayerCommandHandler {
                     }
                 } else {
                     rank.removeMember(offline.getUniqueId());
+                    plugin.getDataStore().updateGuildRanks(guild);
                     player.sendMessage(plugin.getMessage(
                             Messages.REMOVED_PLAYER_FROM_RANK,
                             MessageVariable.RANK
@@ -220,69 +223,4 @@ public class GuildMemberCommand extends PlayerCommandHandler {
             }
         }
     }
-
-    /**
-     * Kick a player from his {@link Guild}. This will also send the player a
-     * message if he's online.
-     *
-     * @since 0.0.5
-     */
-    private final class KickPlayerTask extends BukkitRunnable {
-        /**
-         * The associated {@link RolecraftCore} instance.
-         */
-        private final RolecraftCore plugin;
-        /**
-         * The kicked player's {@link PlayerData}.
-         */
-        private final PlayerData data;
-
-        /**
-         * Constructor.
-         *
-         * @param plugin the associated {@link RolecraftCore} instance
-         * @param data the {@link PlayerData} of the player that will be kicked
-         * @since 0.0.5
-         */
-        KickPlayerTask(final RolecraftCore plugin, final PlayerData data) {
-            this.plugin = plugin;
-            this.data = data;
-        }
-
-        /**
-         * @since 0.0.5
-         */
-        @Override
-        public void run() {
-            // This is used because it is possible that the data will be loading
-            // if it was only loaded so that the player can be kicked
-            while (true) {
-                if (data.isLoaded()) {
-                    break;
-                }
-            }
-
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    //noinspection ConstantConditions
-                    plugin.getGuildManager().getGuild(data.getGuild())
-                            .removeMember(data.getPlayerId(), true);
-
-                    final Player player = Bukkit.getPlayer(data.getPlayerId());
-                    if (player != null) {
-                        player.sendMessage(plugin.getMessage(
-                                Messages.KICKED_FROM_GUILD,
-                                MessageVariable.PLAYER
-                                        .value(data.getPlayerName())));
-                    } else {
-                        // If the player is offline we unload the data because
-                        // the data was only loaded so they could be kicked
-                        plugin.getDataManager()
-                                .unloadAndSaveData(data.getPlayerId());
-                    }
-                }
-            }.runTask(plugin);
-        }
-    }
 }
@@ -60,7 +60,7 @@ public class GuildRankCommand extends PlayerCommandHandler {
         super(plugin, "rank");
         guildManager = plugin.getGuildManager();
 
-        setUsage("/guild rank <rank> <new/delete/set> [args]");
+        setUsage("/guild rank <rank> <new/delete/set/inherit> [args]");
         setDescription("Allows modification of guild ranks");
         setPermission("rolecraft.guild.create");
         setSubcommand(true);
@@ -79,6 +79,10 @@ public class GuildRankCommand extends PlayerCommandHandler {
             player.sendMessage(plugin.getMessage(Messages.NO_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
         if (!guild.getLeader().equals(id)) {
             // The player isn't the leader of the guild and therefore cannot
             // modify ranks
@@ -206,6 +210,39 @@ public class GuildRankCommand extends PlayerCommandHandler {
             return;
         }
 
+        if (command.equals("inherit") || command.equals("extend")) {
+            if (args.length() < 3) {
+                // Invalid syntax
+                player.sendMessage(ChatColor.DARK_RED +
+                        "Usage: /guild rank <rank> inherit <rank/none>");
+                return;
+            }
+
+            final String parentArg = args.getRaw(2);
+            if (parentArg.equalsIgnoreCase("none")) {
+                rank.setParent(null);
+            } else {
+                final GuildRank parent = guild.getRank(parentArg);
+                if (parent == null) {
+                    // The sender has entered a non-existent rank
+                    player.sendMessage(plugin.getMessage(
+                            Messages.RANK_NOT_EXISTS));
+                    return;
+                }
+                if (parent.equals(rank)) {
+                    player.sendMessage(plugin.getMessage(
+                            Messages.CANNOT_MODIFY_RANK,
+                            MessageVariable.RANK.value(rank.getName())));
+                    return;
+                }
+                rank.setParent(parent.getName());
+            }
+
+            plugin.getDataStore().updateGuildRanks(guild);
+            CommandHelper.sendRankInfo(player, guild, rank);
+            return;
+        }
+
         // Arguments didn't match any valid usage
         player.sendMessage(ChatColor.DARK_RED + "Invalid usage, " + getUsage());
     }
@@ -30,6 +30,7 @@ import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.command.BaseCommandHandler;
 import com.github.rolecraftdev.command.CommandHelper;
 import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.data.PlayerData;
 import com.github.rolecraftdev.guild.Guild;
 import com.github.rolecraftdev.guild.GuildManager;
 import com.github.rolecraftdev.guild.GuildRank;
@@ -38,9 +39,15 @@ import com.github.rolecraftdev.util.messages.Messages;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 /**
  * @since 0.0.5
  */
@@ -72,37 +79,73 @@ public class GuildShowCommand extends BaseCommandHandler {
                 args.length() > 0 ? args.get(0) : null);
 
         if (guild != null) {
-            sender.sendMessage(plugin.getMessage(Messages.GUILD_INFO,
-                    MessageVariable.GUILD.value(guild.getName())));
-            final StringBuilder members = new StringBuilder();
-            int onlineMembers = 0;
-            for (final UUID id : guild.getMembers()) {
-                if (Bukkit.getPlayer(id) != null) {
-                    members.append(Bukkit.getPlayer(id));
-                    members.append(',');
-                    onlineMembers++;
+            if (!guild.requestHydration()) {
+                sender.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+                return;
+            }
+            final UUID leaderId = guild.getLeader();
+            final PlayerData cached = leaderId == null ? null : plugin
+                    .getDataManager().getOfflinePlayerData(leaderId);
+            if (leaderId == null || cached != null) {
+                showGuild(sender, guild, cached);
+                return;
+            }
+            // only the leader's name is shown, load it off the main thread
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    final PlayerData leader = plugin.getDataManager()
+                            .loadOfflinePlayerData(
+                                    Collections.singleton(leaderId))
+                            .get(leaderId);
+                    new BukkitRunnable() {
+                        @Override
+                        public void run() {
+                            showGuild(sender, guild, leader);
+                        }
+                    }.runTask(plugin);
                 }
+            }.runTaskAsynchronously(plugin);
+        }
+    }
+
+    private void showGuild(final CommandSender sender, final Guild guild,
+            @Nullable final PlayerData leader) {
+        sender.sendMessage(plugin.getMessage(Messages.GUILD_INFO,
+                MessageVariable.GUILD.value(guild.getName())));
+        final Set<UUID> ids = guild.getMembers();
+        final StringBuilder members = new StringBuilder();
+        int onlineMembers = 0;
+        for (final UUID id : ids) {
+            final Player member = Bukkit.getPlayer(id);
+            if (member != null) {
+                members.append(member.getName());
+                members.append(',');
+                onlineMembers++;
             }
+        }
+        if (members.length() > 0) {
             // remove trailing comma
             members.deleteCharAt(members.length() - 1);
-            sender.sendMessage(plugin.getMessage(Messages.GUILD_MEMBERS,
-                    new MessageVariable("$totalnumber",
-                            guild.getMembers().size()),
-                    new MessageVariable("$onlinenumber", onlineMembers),
-                    new MessageVariable(
-                            "$members", members)));
-            sender.sendMessage(plugin.getMessage(Messages.GUILD_INFLUENCE,
-                    new MessageVariable("$influence", guild.getInfluence())));
-            sender.sendMessage(plugin.getMessage(Messages.GUIlD_LEADER,
-                    new MessageVariable("$leader", guild.getLeader())));
-            final StringBuilder ranks = new StringBuilder();
-            for (final GuildRank rank : guild.getRanks()) {
-                ranks.append(rank.getName());
-                ranks.append(',');
-            }
-            ranks.setLength(ranks.length() - 1);
-            sender.sendMessage(plugin.getMessage(Messages.GUILD_RANK,
-                    new MessageVariable("$ranks", ranks)));
         }
+        sender.sendMessage(plugin.getMessage(Messages.GUILD_MEMBERS,
+                new MessageVariable("$totalnumber",
+                        ids.size()),
+                new MessageVariable("$onlinenumber", onlineMembers),
+                new MessageVariable(
+                        "$members", members)));
+        sender.sendMessage(plugin.getMessage(Messages.GUILD_INFLUENCE,
+                new MessageVariable("$influence", guild.getInfluence())));
+        sender.sendMessage(plugin.getMessage(Messages.GUIlD_LEADER,
+                new MessageVariable("$leader", leader == null ? guild
+                        .getLeader() : leader.getPlayerName())));
+        final StringBuilder ranks = new StringBuilder();
+        for (final GuildRank rank : guild.getRanks()) {
+            ranks.append(rank.getName());
+            ranks.append(',');
+        }
+        ranks.setLength(ranks.length() - 1);
+        sender.sendMessage(plugin.getMessage(Messages.GUILD_RANK,
+                new MessageVariable("$ranks", ranks)));
     }
 }
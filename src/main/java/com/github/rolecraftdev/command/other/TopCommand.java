@@ -0,0 +1,139 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.command.other;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.command.BaseCommandHandler;
+import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.leaderboard.LeaderboardType;
+import com.github.rolecraftdev.leaderboard.Ranking;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @since 0.1.0
+ */
+public class TopCommand extends BaseCommandHandler {
+    /**
+     * The amount of entries to display on each page.
+     */
+    private static final int ENTRIES_PER_PAGE = 10;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public TopCommand(final RolecraftCore plugin) {
+        super(plugin, "top");
+
+        setUsage("/top <experience|karma|influence|guilds> [page]");
+        setDescription("View the leaderboards");
+        setPermission("rolecraft.top");
+        setMinArgs(1);
+        setMaxArgs(2);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void onCommand(final CommandSender sender, final Arguments args) {
+        final LeaderboardType type = LeaderboardType.fromName(args.getRaw(0));
+        if (type == null) {
+            sendUsageMessage(sender);
+            return;
+        }
+
+        int page = 1;
+        if (args.length() > 1) {
+            if (!args.get(1).isInt() || args.get(1).asInt() < 1) {
+                sender.sendMessage(ChatColor.DARK_RED
+                        + "Invalid page number!");
+                return;
+            }
+            page = args.get(1).asInt();
+        }
+
+        final Ranking ranking = plugin.getLeaderboardManager().getRanking(
+                type);
+        final List<Ranking.Entry> entries = ranking.getRange(
+                (page - 1) * ENTRIES_PER_PAGE, ENTRIES_PER_PAGE);
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatColor.DARK_RED + "There's nothing on page "
+                    + page + "!");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Top " + type.getName()
+                + " - Page " + page);
+        int rank = (page - 1) * ENTRIES_PER_PAGE;
+        for (final Ranking.Entry entry : entries) {
+            rank++;
+            sender.sendMessage(ChatColor.GRAY + "" + rank + ". "
+                    + getName(type, entry.getId()) + " - "
+                    + (long) entry.getScore());
+        }
+
+        if (!type.isGuild() && sender instanceof Player) {
+            final int own = ranking.getRank(((Player) sender).getUniqueId());
+            if (own > 0) {
+                sender.sendMessage(ChatColor.GOLD + "Your rank: " + own
+                        + " of " + ranking.size());
+            }
+        }
+        if (!type.isGuild() && !plugin.getLeaderboardManager().isSeeded()) {
+            sender.sendMessage(ChatColor.GRAY
+                    + "Leaderboards are still loading, offline players may"
+                    + " be missing.");
+        }
+    }
+
+    private String getName(final LeaderboardType type, final UUID id) {
+        if (type.isGuild()) {
+            final Guild guild = plugin.getGuild(id);
+            return guild == null ? id.toString() : guild.getName();
+        }
+
+        final PlayerData data = plugin.getDataManager().getOfflinePlayerData(
+                id);
+        if (data != null) {
+            return data.getPlayerName();
+        }
+        final String name = Bukkit.getOfflinePlayer(id).getName();
+        return name == null ? id.toString() : name;
+    }
+}
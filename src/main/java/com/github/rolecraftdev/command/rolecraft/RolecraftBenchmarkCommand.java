@@ -0,0 +1,133 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.command.rolecraft;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.command.BaseCommandHandler;
+import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.data.storage.StorageBenchmark;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Times loading and flushing player data with the SQLite and file storage,
+ * using scratch stores, and the statement throughput of the SQL storage with
+ * and without the statement cache, so server owners can compare them on their
+ * own hardware.
+ *
+ * @since 0.1.0
+ */
+public class RolecraftBenchmarkCommand extends BaseCommandHandler {
+    /**
+     * The amount of players used when none is given.
+     */
+    private static final int DEFAULT_PLAYERS = 1000;
+    /**
+     * The highest amount of players which may be given.
+     */
+    private static final int MAX_PLAYERS = 100000;
+
+    /**
+     * Whether a benchmark is currently running.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public RolecraftBenchmarkCommand(final RolecraftCore plugin) {
+        super(plugin, "benchmark");
+        running = new AtomicBoolean();
+
+        setUsage("/rolecraft benchmark [players]");
+        setDescription("Compares the SQLite and file storage");
+        setPermission("rolecraft.benchmark");
+        setMaxArgs(1);
+        setSubcommand(true);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void onCommand(final CommandSender sender, final Arguments args) {
+        int players = DEFAULT_PLAYERS;
+        if (args.length() > 0) {
+            if (!args.get(0).isInt()) {
+                sendUsageMessage(sender);
+                return;
+            }
+            players = args.get(0).asInt();
+            if (players < 1 || players > MAX_PLAYERS) {
+                sender.sendMessage(ChatColor.DARK_RED + "The amount of"
+                        + " players must be between 1 and " + MAX_PLAYERS
+                        + "!");
+                return;
+            }
+        }
+        if (!running.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.DARK_RED + "A benchmark is already"
+                    + " running!");
+            return;
+        }
+
+        final StorageBenchmark benchmark = new StorageBenchmark(plugin,
+                players);
+        sender.sendMessage(ChatColor.GOLD + "Benchmarking the storage with "
+                + players + " players, this may take a while");
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                final List<String> results;
+                try {
+                    results = benchmark.run();
+                } finally {
+                    running.set(false);
+                }
+
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        sender.sendMessage(ChatColor.GOLD
+                                + "Storage benchmark");
+                        for (final String line : results) {
+                            sender.sendMessage(ChatColor.GRAY + line);
+                        }
+                    }
+                }.runTask(plugin);
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+}
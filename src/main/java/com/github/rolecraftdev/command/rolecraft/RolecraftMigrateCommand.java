@@ -0,0 +1,151 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.command.rolecraft;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.command.BaseCommandHandler;
+import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.data.storage.DataStore;
+import com.github.rolecraftdev.data.storage.DatabaseTransfer;
+import com.github.rolecraftdev.data.storage.LogDataStore;
+import com.github.rolecraftdev.data.storage.MySQLDataStore;
+import com.github.rolecraftdev.data.storage.SQLiteDataStore;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Copies all data of the used database into the other SQL database, so the
+ * server can switch between SQLite and MySQL.
+ *
+ * @since 0.1.0
+ */
+public class RolecraftMigrateCommand extends BaseCommandHandler {
+    /**
+     * Whether a transfer is currently running.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public RolecraftMigrateCommand(final RolecraftCore plugin) {
+        super(plugin, "migrate");
+        running = new AtomicBoolean();
+
+        setUsage("/rolecraft migrate <sqlite|mysql>");
+        setDescription("Copies all data into another database");
+        setPermission("rolecraft.migrate");
+        setMinArgs(1);
+        setMaxArgs(1);
+        setSubcommand(true);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void onCommand(final CommandSender sender, final Arguments args) {
+        final DataStore source = plugin.getDataStore();
+        final String type = args.getRaw(0);
+        if (source instanceof LogDataStore) {
+            sender.sendMessage(ChatColor.DARK_RED
+                    + "File storage can't be migrated!");
+            return;
+        }
+        if (type.equalsIgnoreCase(source.getStoreTypeName())) {
+            sender.sendMessage(ChatColor.DARK_RED + "That database is"
+                    + " already in use!");
+            return;
+        }
+        if (!type.equalsIgnoreCase("sqlite")
+                && !type.equalsIgnoreCase("mysql")) {
+            sendUsageMessage(sender);
+            return;
+        }
+        if (!plugin.getDataManager().getPlayerDatum().isEmpty()) {
+            // their changes would queue up behind the transfer
+            sender.sendMessage(ChatColor.DARK_RED + "Data can only be"
+                    + " migrated while no players are online!");
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.DARK_RED + "A migration is already"
+                    + " running!");
+            return;
+        }
+
+        final DataStore target = type.equalsIgnoreCase("mysql")
+                ? new MySQLDataStore(plugin) : new SQLiteDataStore(plugin);
+        final DatabaseTransfer transfer = new DatabaseTransfer(source, target,
+                plugin.getConfig().getInt("storage.transfer-batch-size",
+                        1000));
+        sender.sendMessage(ChatColor.GOLD + "Copying all data into "
+                + target.getStoreTypeName() + ", progress is logged to the"
+                + " console");
+        // on the storage thread nothing is written while the data is copied
+        source.getExecutor().execute("transfer", new Runnable() {
+            @Override
+            public void run() {
+                String result;
+                try {
+                    result = transfer.run() ? ChatColor.GOLD + "All data was"
+                            + " copied and verified. Set sqlserver to "
+                            + type.toLowerCase() + " and restart to use it,"
+                            + " later changes aren't copied."
+                            : ChatColor.DARK_RED + "The copied data doesn't"
+                            + " match, see the console for details!";
+                } catch (final SQLException ex) {
+                    plugin.getLogger().log(Level.SEVERE, "Couldn't migrate"
+                            + " the data, running the migration again"
+                            + " continues where it stopped", ex);
+                    result = ChatColor.DARK_RED + "The migration failed, see"
+                            + " the console for details!";
+                } finally {
+                    target.shutdown();
+                    running.set(false);
+                }
+
+                final String message = result;
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        sender.sendMessage(message);
+                    }
+                }.runTask(plugin);
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.command.rolecraft;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.command.BaseCommandHandler;
+import com.github.rolecraftdev.command.parser.Arguments;
+import com.github.rolecraftdev.data.DataManager;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Shows the latencies, queue and pool gauges and slow statements of the used
+ * {@link com.github.rolecraftdev.data.storage.DataStore}.
+ *
+ * @since 0.1.0
+ */
+public class RolecraftStorageCommand extends BaseCommandHandler {
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public RolecraftStorageCommand(final RolecraftCore plugin) {
+        super(plugin, "storage");
+
+        setUsage("/rolecraft storage [dump]");
+        setDescription("Shows storage metrics");
+        setPermission("rolecraft.storage");
+        setMaxArgs(1);
+        setSubcommand(true);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void onCommand(final CommandSender sender, final Arguments args) {
+        final DataManager dataManager = plugin.getDataManager();
+        if (args.length() == 0) {
+            sender.sendMessage(ChatColor.GOLD + "Storage metrics");
+            for (final String line : dataManager.getStorageReport()) {
+                sender.sendMessage(ChatColor.GRAY + line);
+            }
+            return;
+        }
+        if (!args.getRaw(0).equalsIgnoreCase("dump")) {
+            sendUsageMessage(sender);
+            return;
+        }
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                final boolean written = dataManager.dumpStorageReport();
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        sender.sendMessage(written ? ChatColor.GOLD
+                                + "Storage metrics written to"
+                                + " storage-metrics.txt" : ChatColor.DARK_RED
+                                + "Couldn't write the storage metrics!");
+                    }
+                }.runTask(plugin);
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+}
@@ -31,14 +31,17 @@ import com.github.rolecraftdev.RolecraftCore;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.UUID;
 
 /**
  * The data listener for Rolecraft which saves and loads {@link PlayerData}
- * objects from storage when a player quits or joins, respectively.
+ * objects from storage when a player quits or joins, respectively. Data is
+ * loaded ahead of time while the player logs in, so it is ready on join.
  *
  * @since 0.0.5
  */
@@ -58,6 +61,31 @@ public final class DataListener implements Listener {
         this.plugin = plugin;
     }
 
+    /**
+     * Runs off the main thread, after other plugins had the chance to deny
+     * the login.
+     *
+     * @since 0.1.0
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(final AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getDataManager().prefetchData(event.getUniqueId(),
+                    event.getName());
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(final PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getDataManager().discardPrefetch(
+                    event.getPlayer().getUniqueId());
+        }
+    }
+
     /**
      * @since 0.0.5
      */
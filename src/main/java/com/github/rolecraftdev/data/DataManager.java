@@ -29,15 +29,36 @@ package com.github.rolecraftdev.data;
 import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.data.storage.DataStore;
 import com.github.rolecraftdev.data.storage.DataUpdateTask;
+import com.github.rolecraftdev.data.storage.FlushReport;
+import com.github.rolecraftdev.data.storage.WriteBatch;
+import com.github.rolecraftdev.util.LatencyHistogram;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 /**
  * A helper class for managing persistent data associated to Rolecraft.
@@ -70,6 +91,63 @@ public final class DataManager {
      * The {@link BukkitTask} used to periodically update the database.
      */
     private final BukkitTask automaticUpdaterTask;
+    /**
+     * The {@link FlushReport} of the last periodic flush, or {@code null} if
+     * there has not been one yet.
+     */
+    private volatile FlushReport lastFlush;
+    /**
+     * {@link PlayerData} loaded before login, by the {@link UUID} of the
+     * player, waiting to be adopted when the player joins.
+     */
+    private final ConcurrentMap<UUID, Prefetch> prefetched;
+    /**
+     * The time after which unadopted prefetched data is discarded, in
+     * nanoseconds.
+     */
+    private final long prefetchTtl;
+    /**
+     * The amount of joins which adopted prefetched data.
+     */
+    private final AtomicLong prefetchHits;
+    /**
+     * The amount of joins which had to load their data.
+     */
+    private final AtomicLong prefetchMisses;
+    /**
+     * The amount of prefetches discarded without being adopted.
+     */
+    private final AtomicLong prefetchEvictions;
+    /**
+     * The time between a join and its {@link PlayerData} being loaded.
+     */
+    private final LatencyHistogram timeToLoaded;
+    /**
+     * Read-only {@link PlayerData} of offline players.
+     */
+    private final OfflineDataCache offlineCache;
+    /**
+     * Journals changes between flushes, {@code null} when disabled.
+     */
+    private final PlayerJournal journal;
+    /**
+     * Periodically forces the journal to disk, {@code null} unless the
+     * journal uses {@link PlayerJournal.FsyncPolicy#INTERVAL}.
+     */
+    private final BukkitTask journalSyncTask;
+    /**
+     * Holds the player data which wasn't written before the last shutdown
+     * deadline.
+     */
+    private final RecoveryFile recovery;
+    /**
+     * The file the storage metrics are periodically written to.
+     */
+    private final File metricsFile;
+    /**
+     * Periodically writes the storage metrics, {@code null} when disabled.
+     */
+    private final BukkitTask metricsDumpTask;
 
     /**
      * Constructor.
@@ -83,20 +161,107 @@ public final class DataManager {
         this.store = store;
         // Thread safe operations!
         loadedPlayerData = new ConcurrentHashMap<UUID, PlayerData>();
+        prefetched = new ConcurrentHashMap<UUID, Prefetch>();
+        prefetchTtl = TimeUnit.SECONDS.toNanos(plugin.getConfig().getLong(
+                "storage.prefetch-ttl", 30));
+        prefetchHits = new AtomicLong();
+        prefetchMisses = new AtomicLong();
+        prefetchEvictions = new AtomicLong();
+        timeToLoaded = new LatencyHistogram();
+        offlineCache = new OfflineDataCache(plugin.getConfig().getInt(
+                "storage.offline-cache.size", 1000),
+                TimeUnit.SECONDS.toNanos(plugin.getConfig().getLong(
+                        "storage.offline-cache.ttl", 300)));
+
+        journal = createJournal();
+        if (journal != null) {
+            // players can't join yet, so nothing is appended while replaying
+            replayJournal();
+        }
+        recovery = new RecoveryFile(new File(plugin.getDataFolder(),
+                "recovery.dat"), plugin.getLogger());
+        // the recovered values are the latest, so they go after the journal
+        replayRecovery();
+        if (journal != null && journal.getFsyncPolicy()
+                == PlayerJournal.FsyncPolicy.INTERVAL) {
+            final long period = Math.max(1, plugin.getConfig().getLong(
+                    "storage.journal.fsync-interval", 1000) / 50);
+            journalSyncTask = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    journal.sync();
+                }
+            }.runTaskTimerAsynchronously(plugin, period, period);
+        } else {
+            journalSyncTask = null;
+        }
 
         final DataUpdateTask updateTask = new DataUpdateTask(plugin);
+        // on the main thread, so the data is captured where it is changed
         this.automaticUpdaterTask = updateTask
-                .runTaskTimerAsynchronously(plugin, 6000L, 6000L); // 5min timer
+                .runTaskTimer(plugin, 6000L, 6000L); // 5min timer
+
+        metricsFile = new File(plugin.getDataFolder(), "storage-metrics.txt");
+        final long dumpInterval = plugin.getConfig().getLong(
+                "storage.metrics.dump-interval", 300) * 20;
+        if (dumpInterval > 0) {
+            metricsDumpTask = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    dumpStorageReport();
+                }
+            }.runTaskTimerAsynchronously(plugin, dumpInterval, dumpInterval);
+        } else {
+            metricsDumpTask = null;
+        }
     }
 
     /**
-     * Only call from {@link RolecraftCore#onDisable()}.
+     * Only call from {@link RolecraftCore#onDisable()}. Unloads all player
+     * data as a single batch and waits for it and all other pending storage
+     * operations until the given deadline. Player data which wasn't written
+     * by then is stored in a recovery file and written on the next start.
      *
+     * @param deadline the {@link System#nanoTime()} by which to stop waiting
      * @since 0.0.5
      */
-    public void cleanup() {
+    public void cleanup(final long deadline) {
         this.automaticUpdaterTask.cancel();
-        this.unloadAllPlayerData();
+        if (journalSyncTask != null) {
+            journalSyncTask.cancel();
+        }
+        if (metricsDumpTask != null) {
+            metricsDumpTask.cancel();
+        }
+        for (final UUID player : prefetched.keySet()) {
+            discardPrefetch(player);
+        }
+        offlineCache.clear();
+
+        final long sealed = rotateJournal();
+        final WriteBatch batch = new WriteBatch();
+        final Future<FlushReport> future = store.submitFlush(batch,
+                unloadAll());
+        store.setShutdownDeadline(deadline);
+        store.shutdown();
+
+        FlushReport report = null;
+        if (future.isDone()) {
+            try {
+                report = store.getExecutor().await(future);
+            } catch (final RuntimeException ex) {
+                plugin.getLogger().log(Level.SEVERE,
+                        "Couldn't save player data", ex);
+            }
+        }
+        if (report != null) {
+            logFlush(report);
+        }
+        discardJournal(sealed, report);
+        spill(batch, report);
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     /**
@@ -108,10 +273,127 @@ public final class DataManager {
      * @since 0.0.5
      */
     public void loadOrCreateData(final UUID player) {
-        final PlayerData data = new PlayerData(plugin, player, Bukkit
-                .getPlayer(player).getName());
+        final long start = System.nanoTime();
+        offlineCache.invalidate(player);
+        final Prefetch prefetch = prefetched.remove(player);
+        if (prefetch != null) {
+            if (!prefetch.isExpired(start)) {
+                loadedPlayerData.put(player, prefetch.data);
+                prefetchHits.incrementAndGet();
+                timeToLoaded.record(0);
+                return;
+            }
+            evict(prefetch);
+        }
+
+        prefetchMisses.incrementAndGet();
+        final PlayerData data = new PlayerData(plugin, player,
+                getName(player));
         loadedPlayerData.put(player, data);
         store.requestPlayerData(data, false);
+        // runs on the storage thread directly after the load
+        store.getExecutor().execute("player-loaded", new Runnable() {
+            @Override
+            public void run() {
+                timeToLoaded.recordSince(start);
+            }
+        }, player);
+    }
+
+    /**
+     * Load the {@link PlayerData} of a player who is logging in, so it is
+     * ready when they join. Blocks until the data is loaded, so must only be
+     * called from an asynchronous login event. The data is discarded if the
+     * player doesn't join within the configured time.
+     *
+     * @param player the {@link UUID} of the player
+     * @param name the name of the player
+     * @since 0.1.0
+     */
+    public void prefetchData(final UUID player, final String name) {
+        evictExpiredPrefetches();
+        if (loadedPlayerData.containsKey(player)) {
+            return;
+        }
+
+        final PlayerData data = new PlayerData(plugin, player, name);
+        store.requestPlayerData(data, true);
+        final Prefetch previous = prefetched.put(player, new Prefetch(data,
+                prefetchTtl));
+        if (previous != null) {
+            evict(previous);
+        }
+    }
+
+    /**
+     * Discard the prefetched {@link PlayerData} of the given player, if any,
+     * e.g. because their login was denied. Changes made while loading it,
+     * such as the defaults of a new player, are still saved.
+     *
+     * @param player the {@link UUID} of the player
+     * @since 0.1.0
+     */
+    public void discardPrefetch(final UUID player) {
+        final Prefetch prefetch = prefetched.remove(player);
+        if (prefetch != null) {
+            evict(prefetch);
+        }
+    }
+
+    /**
+     * Discard all prefetched {@link PlayerData} that has not been adopted
+     * within the configured time.
+     *
+     * @since 0.1.0
+     */
+    public void evictExpiredPrefetches() {
+        final long now = System.nanoTime();
+        for (final Map.Entry<UUID, Prefetch> entry : prefetched.entrySet()) {
+            final Prefetch prefetch = entry.getValue();
+            if (prefetch.isExpired(now)
+                    && prefetched.remove(entry.getKey(), prefetch)) {
+                evict(prefetch);
+            }
+        }
+    }
+
+    private void evict(final Prefetch prefetch) {
+        prefetchEvictions.incrementAndGet();
+        store.commitPlayerData(prefetch.data, true);
+    }
+
+    /**
+     * Get the share of joins which adopted prefetched {@link PlayerData}.
+     *
+     * @return the prefetch hit rate, between {@code 0} and {@code 1}
+     * @since 0.1.0
+     */
+    public double getPrefetchHitRate() {
+        final long hits = prefetchHits.get();
+        final long total = hits + prefetchMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Get the amount of prefetches discarded without being adopted.
+     *
+     * @return the amount of evicted prefetches
+     * @since 0.1.0
+     */
+    public long getPrefetchEvictions() {
+        return prefetchEvictions.get();
+    }
+
+    /**
+     * Get the {@link LatencyHistogram} of the time between a join and the
+     * {@link PlayerData} of the player being loaded. Joins which adopted
+     * prefetched data are recorded as zero.
+     *
+     * @return the time-to-loaded histogram
+     * @since 0.1.0
+     */
+    public LatencyHistogram getTimeToLoaded() {
+        return timeToLoaded;
     }
 
     /**
@@ -122,44 +404,235 @@ public final class DataManager {
      * @since 0.0.5
      */
     public void unloadAndSaveData(final UUID player) {
-        this.unloadAndSaveData(player, false);
-    }
-
-    private void unloadAndSaveData(final UUID player, final boolean sync) {
+        // anything prefetched before this save would be stale
+        discardPrefetch(player);
+        offlineCache.invalidate(player);
         final PlayerData data = loadedPlayerData.remove(player);
         if (data == null) {
             return;
         }
 
-        if (sync) {
-            store.commitPlayerDataSync(data);
-        } else {
-            store.commitPlayerData(data, true);
-        }
+        store.commitPlayerData(data, true);
     }
 
     /**
      * Unload all currently loaded {@link PlayerData}. Should only be used when
-     * the plugin is disabling as it saves data synchronously.
+     * the plugin is disabling as it saves data synchronously, as a single
+     * {@link WriteBatch}.
      *
      * @since 0.0.5
      */
     public void unloadAllPlayerData() {
-        for (final UUID id : loadedPlayerData.keySet()) {
-            unloadAndSaveData(id, true);
+        final long sealed = rotateJournal();
+        final FlushReport report = store.flushPlayerData(unloadAll());
+        logFlush(report);
+        discardJournal(sealed, report);
+    }
+
+    private List<PlayerData> unloadAll() {
+        final List<PlayerData> unloaded = new ArrayList<PlayerData>();
+        final Iterator<PlayerData> it = loadedPlayerData.values().iterator();
+        while (it.hasNext()) {
+            final PlayerData data = it.next();
+            it.remove();
+            data.setUnloading(true);
+            unloaded.add(data);
+        }
+        return unloaded;
+    }
+
+    /**
+     * Store the player data which wasn't written during shutdown in the
+     * recovery file: commits which are still queued, and the final batch
+     * unless it completed.
+     */
+    private void spill(final WriteBatch batch, final FlushReport report) {
+        final Map<UUID, PlayerDataSnapshot> unwritten =
+                new LinkedHashMap<UUID, PlayerDataSnapshot>();
+        for (final PlayerDataSnapshot snapshot : store.getPendingCommits()) {
+            unwritten.put(snapshot.getPlayerId(), snapshot);
+        }
+        if (report == null || report.getFailed() > 0) {
+            for (final PlayerDataSnapshot snapshot : batch
+                    .getPlayerSnapshots()) {
+                final PlayerDataSnapshot older = unwritten.get(snapshot
+                        .getPlayerId());
+                unwritten.put(snapshot.getPlayerId(), older == null ? snapshot
+                        : snapshot.mergeWith(older));
+            }
+        }
+        if (unwritten.isEmpty()) {
+            return;
+        }
+
+        if (recovery.exists()) {
+            // not yet recovered, keep it rather than overwriting it
+            recovery.quarantine();
+        }
+        if (recovery.write(unwritten.values())) {
+            plugin.getLogger().warning("The data of " + unwritten.size()
+                    + " players wasn't saved in time and will be saved on"
+                    + " the next start");
+        }
+    }
+
+    /**
+     * Write the player data stored in the recovery file during the last
+     * shutdown to the database.
+     */
+    private void replayRecovery() {
+        if (!recovery.exists()) {
+            return;
+        }
+
+        final Map<UUID, Map<PlayerData.Field, Object>> values = recovery
+                .read();
+        if (values.isEmpty()) {
+            recovery.delete();
+            return;
+        }
+
+        final Map<UUID, PlayerData> datum = store.requestPlayerDatum(
+                values.keySet());
+        final WriteBatch batch = new WriteBatch();
+        for (final PlayerData data : datum.values()) {
+            for (final Map.Entry<PlayerData.Field, Object> entry : values.get(
+                    data.getPlayerId()).entrySet()) {
+                data.restore(entry.getKey(), entry.getValue());
+            }
+            batch.addPlayer(data);
         }
+
+        final FlushReport report = store.executeBatch(batch);
+        if (report == null || report.getFailed() > 0) {
+            recovery.quarantine();
+            return;
+        }
+        recovery.delete();
+        plugin.getLogger().info("Recovered the data of " + datum.size()
+                + " players which wasn't saved during the last shutdown");
     }
 
     /**
-     * Updates the database with all currently loaded {@link PlayerData}. Called
-     * periodically in async by {@link DataUpdateTask}.
+     * Updates the database with all currently loaded {@link PlayerData} that
+     * has changed since it was last saved. Called periodically by
+     * {@link DataUpdateTask}.
      *
      * @param sync whether to save data on the current thread
      * @since 0.0.5
      */
     public void saveAllPlayerData(boolean sync) {
+        if (sync) {
+            flushPlayerData();
+            return;
+        }
         for (final UUID id : loadedPlayerData.keySet()) {
-            savePlayerData(id, sync);
+            savePlayerData(id, false);
+        }
+    }
+
+    /**
+     * Write all dirty {@link PlayerData} to the database on the current thread
+     * and log a summary of the flush. Clean data is skipped entirely.
+     *
+     * @return the {@link FlushReport} describing the flush
+     * @since 0.1.0
+     */
+    public FlushReport flushPlayerData() {
+        // changes made after this point are journaled in the next segment
+        final long sealed = rotateJournal();
+        final FlushReport report = store.flushPlayerData(
+                loadedPlayerData.values());
+        discardJournal(sealed, report);
+        lastFlush = report;
+        logFlush(report);
+        return report;
+    }
+
+    /**
+     * Capture all dirty {@link PlayerData} on the current thread, which should
+     * be the main thread, and write it on the storage thread without waiting
+     * for it. The flush is logged once it completes.
+     *
+     * @since 0.1.0
+     */
+    public void submitFlush() {
+        final long sealed = rotateJournal();
+        final Future<FlushReport> future = store.submitFlush(new WriteBatch(),
+                loadedPlayerData.values());
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                final FlushReport report = store.getExecutor().await(future);
+                if (report == null) {
+                    return;
+                }
+                discardJournal(sealed, report);
+                lastFlush = report;
+                logFlush(report);
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * Get the {@link FlushReport} of the last flush done through
+     * {@link #flushPlayerData()} or {@link #submitFlush()}.
+     *
+     * @return the last {@link FlushReport}, or {@code null} if nothing has
+     *         been flushed yet
+     * @since 0.1.0
+     */
+    public FlushReport getLastFlush() {
+        return lastFlush;
+    }
+
+    /**
+     * Summarise the storage metrics in human-readable lines: those of the
+     * {@link DataStore}, followed by those of the loaded player data.
+     *
+     * @return the lines of the summary
+     * @since 0.1.0
+     */
+    public List<String> getStorageReport() {
+        final List<String> lines = store.getMetrics().report(store);
+        lines.add("Players: loaded=" + loadedPlayerData.size()
+                + " prefetched=" + Math.round(getPrefetchHitRate() * 100)
+                + "% evicted=" + prefetchEvictions.get() + " journaled="
+                + getJournaledCount() + " offline-cached="
+                + Math.round(getOfflineCacheHitRate() * 100) + "%");
+        lines.add("Time to loaded: " + timeToLoaded);
+        final FlushReport flush = lastFlush;
+        if (flush != null) {
+            lines.add("Last flush: " + flush);
+        }
+        return lines;
+    }
+
+    /**
+     * Write the {@link #getStorageReport()} to {@code storage-metrics.txt}
+     * in the data folder, replacing its previous contents.
+     *
+     * @return {@code true} if the report was written
+     * @since 0.1.0
+     */
+    public boolean dumpStorageReport() {
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+                    metricsFile), "UTF-8"));
+            out.println("# " + new Date());
+            for (final String line : getStorageReport()) {
+                out.println(line);
+            }
+            return !out.checkError();
+        } catch (final IOException ex) {
+            plugin.getLogger().log(Level.WARNING,
+                    "Couldn't write the storage metrics", ex);
+            return false;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
         }
     }
 
@@ -184,21 +657,206 @@ public final class DataManager {
         }
     }
 
+    /**
+     * Append the new value of the given field of the given {@link PlayerData}
+     * to the journal. Called by the setters of {@link PlayerData}.
+     *
+     * @param data the changed {@link PlayerData}
+     * @param field the changed field
+     * @since 0.1.0
+     */
+    void journal(final PlayerData data, final PlayerData.Field field) {
+        if (journal != null) {
+            journal.append(data, field);
+        }
+    }
+
+    /**
+     * Get the amount of changes appended to the journal since the plugin was
+     * enabled.
+     *
+     * @return the amount of journaled changes, {@code 0} when the journal is
+     *         disabled
+     * @since 0.1.0
+     */
+    public long getJournaledCount() {
+        return journal == null ? 0 : journal.getAppendedCount();
+    }
+
+    private PlayerJournal createJournal() {
+        if (!plugin.getConfig().getBoolean("storage.journal.enabled", true)) {
+            return null;
+        }
+
+        final String policyName = plugin.getConfig().getString(
+                "storage.journal.fsync", "interval");
+        PlayerJournal.FsyncPolicy policy;
+        try {
+            policy = PlayerJournal.FsyncPolicy.valueOf(policyName
+                    .toUpperCase());
+        } catch (final IllegalArgumentException ex) {
+            plugin.getLogger().warning("Unknown journal fsync policy '"
+                    + policyName + "', using 'interval'");
+            policy = PlayerJournal.FsyncPolicy.INTERVAL;
+        }
+        return new PlayerJournal(new File(plugin.getDataFolder(), "journal"),
+                plugin.getConfig().getInt("storage.journal.segment-size", 4096)
+                        * 1024, policy, plugin.getLogger());
+    }
+
+    /**
+     * Write the changes which were journaled but not flushed before the
+     * server stopped to the database.
+     */
+    private void replayJournal() {
+        final Map<UUID, PlayerJournal.Mutations> mutations = journal
+                .recover();
+        journal.open();
+        final long sealed = journal.rotate();
+        if (mutations.isEmpty()) {
+            journal.discard(sealed);
+            return;
+        }
+
+        final Map<UUID, PlayerData> datum = store.requestPlayerDatum(
+                mutations.keySet());
+        final WriteBatch batch = new WriteBatch();
+        int fields = 0;
+        for (final PlayerData data : datum.values()) {
+            final PlayerJournal.Mutations changes = mutations.get(
+                    data.getPlayerId());
+            changes.applyTo(data);
+            fields += changes.size();
+            batch.addPlayer(data);
+        }
+
+        final FlushReport report = store.executeBatch(batch);
+        if (report == null || report.getFailed() > 0) {
+            journal.quarantine(sealed);
+            return;
+        }
+        journal.discard(sealed);
+        plugin.getLogger().info("Recovered " + fields + " unsaved changes of "
+                + datum.size() + " players from the journal");
+    }
+
+    private long rotateJournal() {
+        return journal == null ? -1 : journal.rotate();
+    }
+
+    private void discardJournal(final long sealed, final FlushReport report) {
+        if (journal != null && report != null && report.getFailed() == 0) {
+            journal.discard(sealed);
+        }
+    }
+
+    private void logFlush(final FlushReport report) {
+        if (report.getRows() > 0 || report.getFailed() > 0) {
+            plugin.getLogger().info("[" + store.getStoreTypeName() + "] "
+                    + report);
+        }
+    }
+
     /**
      * Get the {@link PlayerData} that is in correlation with the specified
-     * player.
+     * player. The data of online players is loaded if it isn't yet. Offline
+     * players are never added to the loaded data: their data is looked up
+     * like {@link #getOfflinePlayerData(UUID)}, and is read-only; use
+     * {@link #loadOfflinePlayerData(Collection)} to load it from the
+     * database.
      *
      * @param player the {@link UUID} of the player
-     * @return the {@link PlayerData} of the specified player
+     * @return the {@link PlayerData} of the specified player, or {@code null}
+     *         if they are offline and their data isn't in memory
      * @since 0.0.5
      */
+    @Nullable
     public PlayerData getPlayerData(final UUID player) {
         final PlayerData result = loadedPlayerData.get(player);
         if (result != null) {
             return result;
         }
+        if (Bukkit.getPlayer(player) == null) {
+            return offlineCache.get(player);
+        }
         loadOrCreateData(player);
-        return getPlayerData(player);
+        return loadedPlayerData.get(player);
+    }
+
+    /**
+     * Get the {@link PlayerData} of a player who may be offline, without
+     * accessing the database. Data of offline players is read-only and may be
+     * slightly out of date.
+     *
+     * @param player the {@link UUID} of the player
+     * @return the loaded or cached {@link PlayerData} of the player, or
+     *         {@code null} if it isn't in memory
+     * @since 0.1.0
+     */
+    public PlayerData getOfflinePlayerData(final UUID player) {
+        final PlayerData loaded = loadedPlayerData.get(player);
+        if (loaded != null) {
+            return loaded;
+        }
+        return offlineCache.get(player);
+    }
+
+    /**
+     * Get the {@link PlayerData} of many players who may be offline. Data
+     * which isn't in memory is loaded from the database with a single
+     * multi-get and cached, so this blocks and should not be called from the
+     * main thread. Data of offline players is read-only and may be slightly
+     * out of date.
+     *
+     * @param players the {@link UUID}s of the players
+     * @return the {@link PlayerData} by {@link UUID}, players who never
+     *         joined are left out
+     * @since 0.1.0
+     */
+    public Map<UUID, PlayerData> loadOfflinePlayerData(
+            final Collection<UUID> players) {
+        final Map<UUID, PlayerData> result = new HashMap<UUID, PlayerData>();
+        final List<UUID> missing = new ArrayList<UUID>();
+        for (final UUID player : players) {
+            final PlayerData data = getOfflinePlayerData(player);
+            if (data != null) {
+                result.put(player, data);
+            } else {
+                missing.add(player);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        final Map<UUID, PlayerData> loaded = store.requestPlayerDatum(missing);
+        for (final PlayerData data : loaded.values()) {
+            // changes to offline data would never be saved
+            data.setUnloading(true);
+        }
+        offlineCache.putAll(loaded.values());
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * Remove expired entries from the offline {@link PlayerData} cache.
+     *
+     * @since 0.1.0
+     */
+    public void evictExpiredOfflineData() {
+        offlineCache.evictExpired();
+    }
+
+    /**
+     * Get the fraction of offline {@link PlayerData} lookups which were
+     * answered from the cache.
+     *
+     * @return the offline cache hit rate, between {@code 0} and {@code 1}
+     * @since 0.1.0
+     */
+    public double getOfflineCacheHitRate() {
+        return offlineCache.getHitRate();
     }
 
     /**
@@ -243,4 +901,30 @@ public final class DataManager {
     public Collection<PlayerData> getPlayerDatum() {
         return loadedPlayerData.values();
     }
+
+    private static String getName(final UUID player) {
+        final Player online = Bukkit.getPlayer(player);
+        if (online != null) {
+            return online.getName();
+        }
+        final String name = Bukkit.getOfflinePlayer(player).getName();
+        return name == null ? "" : name;
+    }
+
+    /**
+     * {@link PlayerData} loaded before its player joined.
+     */
+    private static final class Prefetch {
+        private final PlayerData data;
+        private final long expires;
+
+        private Prefetch(final PlayerData data, final long ttl) {
+            this.data = data;
+            expires = System.nanoTime() + ttl;
+        }
+
+        private boolean isExpired(final long now) {
+            return now - expires > 0;
+        }
+    }
 }
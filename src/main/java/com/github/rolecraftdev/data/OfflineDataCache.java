@@ -0,0 +1,196 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of read-only {@link PlayerData} for players who aren't
+ * online. Entries are evicted when they haven't been used for the longest
+ * time once the cache is full, or when they are older than the configured
+ * time to live.
+ *
+ * @since 0.1.0
+ */
+final class OfflineDataCache {
+    /**
+     * The cached entries, in access order.
+     */
+    private final LinkedHashMap<UUID, Cached> entries;
+    /**
+     * The maximum amount of cached entries.
+     */
+    private final int maxSize;
+    /**
+     * The time in nanoseconds an entry stays valid after it was loaded.
+     */
+    private final long ttl;
+    /**
+     * The amount of lookups which were answered from this cache.
+     */
+    private final AtomicLong hits;
+    /**
+     * The amount of lookups which weren't answered from this cache.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum amount of cached entries
+     * @param ttl the time in nanoseconds an entry stays valid
+     * @since 0.1.0
+     */
+    OfflineDataCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        entries = new LinkedHashMap<UUID, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<UUID, Cached> eldest) {
+                return size() > OfflineDataCache.this.maxSize;
+            }
+        };
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Get the cached {@link PlayerData} of the given player.
+     *
+     * @param player the {@link UUID} of the player
+     * @return the cached {@link PlayerData}, or {@code null} if it isn't
+     *         cached or has expired
+     * @since 0.1.0
+     */
+    synchronized PlayerData get(final UUID player) {
+        final Cached entry = entries.get(player);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expires - System.nanoTime() < 0) {
+            entries.remove(player);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.data;
+    }
+
+    /**
+     * Add the given {@link PlayerData} to this cache.
+     *
+     * @param datum the {@link PlayerData} to cache
+     * @since 0.1.0
+     */
+    synchronized void putAll(final Collection<PlayerData> datum) {
+        if (maxSize <= 0) {
+            return;
+        }
+        final long expires = System.nanoTime() + ttl;
+        for (final PlayerData data : datum) {
+            entries.put(data.getPlayerId(), new Cached(data, expires));
+        }
+    }
+
+    /**
+     * Remove the given player from this cache, for example because their
+     * data was loaded for them joining and the cached copy will be stale.
+     *
+     * @param player the {@link UUID} of the player
+     * @since 0.1.0
+     */
+    synchronized void invalidate(final UUID player) {
+        entries.remove(player);
+    }
+
+    /**
+     * Remove all expired entries.
+     *
+     * @since 0.1.0
+     */
+    synchronized void evictExpired() {
+        final long now = System.nanoTime();
+        final Iterator<Cached> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expires - now < 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     *
+     * @since 0.1.0
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get the amount of cached entries, including expired ones which haven't
+     * been removed yet.
+     *
+     * @return the amount of cached entries
+     * @since 0.1.0
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the fraction of lookups which were answered from this cache.
+     *
+     * @return the hit rate, between {@code 0} and {@code 1}
+     * @since 0.1.0
+     */
+    double getHitRate() {
+        final long hit = hits.get();
+        final long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * A cached {@link PlayerData} with the time it expires.
+     */
+    private static final class Cached {
+        private final PlayerData data;
+        private final long expires;
+
+        private Cached(final PlayerData data, final long expires) {
+            this.data = data;
+            this.expires = expires;
+        }
+    }
+}
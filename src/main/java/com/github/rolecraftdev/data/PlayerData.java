@@ -32,14 +32,17 @@ import com.github.rolecraftdev.event.experience.RCExperienceChangeEvent;
 import com.github.rolecraftdev.event.experience.RCExperienceEvent.ChangeReason;
 import com.github.rolecraftdev.experience.ExperienceHelper;
 import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.leaderboard.LeaderboardManager;
 import com.github.rolecraftdev.profession.Profession;
 import com.github.rolecraftdev.profession.ProfessionRule;
+import com.github.rolecraftdev.util.AtomicFloat;
 
 import org.bukkit.Bukkit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Holds persistent Rolecraft data for a player.
@@ -72,35 +75,40 @@ public final class PlayerData {
      * Whether the data is currently in the phase of being unloaded.
      */
     private volatile boolean unloading;
+    /**
+     * A bitmask of the {@link Field}s which have been changed since the last
+     * time this data was committed to the database.
+     */
+    private final AtomicInteger dirtyFields = new AtomicInteger();
 
     /**
      * The {@link UUID} of the player's {@link Guild}.
      */
-    private UUID guild;
+    private volatile UUID guild;
     /**
      * The {@link UUID} of the player's primary {@link Profession}.
      */
-    private UUID profession;
+    private volatile UUID profession;
     /**
      * The {@link UUID} of the player's secondary {@link Profession}.
      */
-    private UUID secondProfession;
+    private volatile UUID secondProfession;
     /**
      * The player's influence value, which is calculated by his actions.
      */
-    private int influence;
+    private final AtomicInteger influence = new AtomicInteger();
     /**
      * The player's experience.
      */
-    private float experience;
+    private final AtomicFloat experience = new AtomicFloat(0);
     /**
      * The player's karma, used in the Afterlife addon for Rolecraft.
      */
-    private float karma;
+    private final AtomicFloat karma = new AtomicFloat(0);
     /**
      * The player's mana.
      */
-    private float mana;
+    private final AtomicFloat mana = new AtomicFloat(0);
 
     /**
      * Constructor.
@@ -213,7 +221,7 @@ public final class PlayerData {
      */
     public int getInfluence() {
         if (loaded) {
-            return influence;
+            return influence.get();
         } else {
             return -1;
         }
@@ -229,7 +237,7 @@ public final class PlayerData {
      */
     public int getLevel() {
         if (loaded) {
-            return ExperienceHelper.getLevel(experience);
+            return ExperienceHelper.getLevel(experience.get());
         } else {
             return -1;
         }
@@ -245,7 +253,7 @@ public final class PlayerData {
      */
     public float getExpToNextLevel() {
         if (loaded) {
-            return ExperienceHelper.expToNextLevel(experience);
+            return ExperienceHelper.expToNextLevel(experience.get());
         } else {
             return -1;
         }
@@ -261,7 +269,7 @@ public final class PlayerData {
      */
     public float getExperience() {
         if (loaded) {
-            return experience;
+            return experience.get();
         } else {
             return -1;
         }
@@ -276,7 +284,7 @@ public final class PlayerData {
      */
     public float getKarma() {
         if (loaded) {
-            return karma;
+            return karma.get();
         } else {
             return -1;
         }
@@ -318,6 +326,8 @@ public final class PlayerData {
     public void setGuild(final UUID guild) {
         if (loaded && !unloading) {
             this.guild = guild;
+            markDirty(Field.GUILD);
+            journal(Field.GUILD);
         }
     }
 
@@ -332,6 +342,8 @@ public final class PlayerData {
     public void setProfession(final UUID profession) {
         if (loaded && !unloading) {
             this.profession = profession;
+            markDirty(Field.PROFESSION);
+            journal(Field.PROFESSION);
         }
     }
 
@@ -343,14 +355,16 @@ public final class PlayerData {
      * @since 0.0.5
      */
     public void setInfluence(final int influence) {
-        if (loaded && !unloading) {
-            this.influence = influence;
+        if (loaded && !unloading
+                && this.influence.getAndSet(influence) != influence) {
+            changed(Field.INFLUENCE);
         }
     }
 
     /**
-     * Adds the given influence to the current influence level. This action may
-     * not be completed when this is not loaded or in the unloading phase.
+     * Adds the given influence to the current influence level atomically. This
+     * action may not be completed when this is not loaded or in the unloading
+     * phase.
      *
      * @param influence the amount of influence that should be added to the
      *        current amount
@@ -359,13 +373,16 @@ public final class PlayerData {
      * @see #getInfluence()
      */
     public void addInfluence(final int influence) {
-        setInfluence(getInfluence() + influence);
+        if (loaded && !unloading && influence != 0) {
+            this.influence.addAndGet(influence);
+            changed(Field.INFLUENCE);
+        }
     }
 
     /**
-     * Subtract the given influence from the current influence level. This
-     * action may not be completed when this is not loaded or in the unloading
-     * phase.
+     * Subtract the given influence from the current influence level
+     * atomically. This action may not be completed when this is not loaded or
+     * in the unloading phase.
      *
      * @param influence the amount of influence that should be subtracted from
      *        the current amount
@@ -374,7 +391,7 @@ public final class PlayerData {
      * @see #getInfluence()
      */
     public void subtractInfluence(final int influence) {
-        setInfluence(getInfluence() - influence);
+        addInfluence(-influence);
     }
 
     /**
@@ -391,16 +408,19 @@ public final class PlayerData {
         if (loaded && !unloading) {
             final RCExperienceChangeEvent event = RolecraftEventFactory
                     .callRCExpEvent(plugin, Bukkit.getPlayer(playerId),
-                            amount - experience, reason);
+                            amount - experience.get(), reason);
             if (!event.isCancelled()) {
-                this.experience = event.getNewExperience();
+                experience.set(event.getNewExperience());
+                changed(Field.EXPERIENCE);
             }
         }
     }
 
     /**
-     * Add the given experience to the current experience amount. This action
-     * may not be completed when this is not loaded or in the unloading phase.
+     * Add the given experience to the current experience amount. The amount
+     * left after the {@link RCExperienceChangeEvent} is added atomically, so
+     * concurrent additions are never lost. This action may not be completed
+     * when this is not loaded or in the unloading phase.
      *
      * @param amount the amount of experience that should be added to the
      *        current amount
@@ -411,7 +431,24 @@ public final class PlayerData {
      */
     public void addExperience(final float amount,
             @Nonnull final ChangeReason reason) {
-        setExperience(getExperience() + amount, reason);
+        if (!loaded || unloading) {
+            return;
+        }
+        final float added;
+        if (plugin == null) {
+            // data without a plugin, e.g. of the benchmark, has no listeners
+            added = amount;
+        } else {
+            final RCExperienceChangeEvent event = RolecraftEventFactory
+                    .callRCExpEvent(plugin, Bukkit.getPlayer(playerId), amount,
+                            reason);
+            added = event.isCancelled() ? 0 : event.getAmount();
+        }
+        if (added != 0) {
+            experience.getAndAdd(added, Float.NEGATIVE_INFINITY,
+                    Float.POSITIVE_INFINITY);
+            changed(Field.EXPERIENCE);
+        }
     }
 
     /**
@@ -428,7 +465,7 @@ public final class PlayerData {
      */
     public void subtractExperience(final float amount,
             final ChangeReason reason) {
-        setExperience(getExperience() - amount, reason);
+        addExperience(-amount, reason);
     }
 
     /**
@@ -439,14 +476,14 @@ public final class PlayerData {
      * @since 0.0.5
      */
     public void setKarma(final float karma) {
-        if (loaded && !unloading) {
-            this.karma = karma;
+        if (loaded && !unloading && this.karma.getAndSet(karma) != karma) {
+            changed(Field.KARMA);
         }
     }
 
     /**
-     * Add the given karma to the current karma level. This action may not be
-     * completed when this is not loaded or in the unloading phase.
+     * Add the given karma to the current karma level atomically. This action
+     * may not be completed when this is not loaded or in the unloading phase.
      *
      * @param amount the amount of karma that should be added to the current
      *        amount
@@ -455,12 +492,17 @@ public final class PlayerData {
      * @see #getKarma()
      */
     public void addKarma(final float amount) {
-        setKarma(getKarma() + amount);
+        if (loaded && !unloading && amount != 0) {
+            karma.getAndAdd(amount, Float.NEGATIVE_INFINITY,
+                    Float.POSITIVE_INFINITY);
+            changed(Field.KARMA);
+        }
     }
 
     /**
-     * Subtract the given karma from the current karma level. This action may
-     * not be completed when this is not loaded or in the unloading phase.
+     * Subtract the given karma from the current karma level atomically. This
+     * action may not be completed when this is not loaded or in the unloading
+     * phase.
      *
      * @param amount the amount of karma that should be subtracted from the
      *        current amount
@@ -469,7 +511,7 @@ public final class PlayerData {
      * @see #getKarma()
      */
     public void subtractKarma(final float amount) {
-        setKarma(getKarma() - amount);
+        addKarma(-amount);
     }
 
     /**
@@ -481,28 +523,32 @@ public final class PlayerData {
      */
     public float getMana() {
         if (loaded) {
-            return mana;
+            return mana.get();
         } else {
             return -1;
         }
     }
 
     /**
-     * Set the mana of the owner. This action will only be completed when this
-     * is loaded and not in the unloading phase.
+     * Set the mana of the owner, kept between {@code 0} and the configured
+     * maximum. This action will only be completed when this is loaded and not
+     * in the unloading phase.
      *
      * @param newMana the owner's new mana level
      * @since 0.0.5
      */
     public void setMana(final float newMana) {
-        if (loaded && !unloading) {
-            mana = newMana;
+        final float clamped = Math.max(0, Math.min(getMaximumMana(), newMana));
+        if (loaded && !unloading && mana.getAndSet(clamped) != clamped) {
+            markDirty(Field.MANA);
+            journal(Field.MANA);
         }
     }
 
     /**
-     * Add the given mana to the current mana level. This action may not be
-     * completed when this is not loaded or in the unloading phase.
+     * Add the given mana to the current mana level atomically, without
+     * exceeding the configured maximum. This action may not be completed when
+     * this is not loaded or in the unloading phase.
      *
      * @param amount the amount of mana that should be added to the current
      *        amount
@@ -511,12 +557,20 @@ public final class PlayerData {
      * @see #getMana()
      */
     public void addMana(final float amount) {
-        setMana(getMana() + amount);
+        if (loaded && !unloading && amount != 0) {
+            final float max = getMaximumMana();
+            final float previous = mana.getAndAdd(amount, 0, max);
+            if (previous != Math.max(0, Math.min(max, previous + amount))) {
+                markDirty(Field.MANA);
+                journal(Field.MANA);
+            }
+        }
     }
 
     /**
-     * Subtract the given mana from the current mana level. This action may not
-     * be completed when this is not loaded or in the unloading phase.
+     * Subtract the given mana from the current mana level atomically, without
+     * going below {@code 0}. This action may not be completed when this is not
+     * loaded or in the unloading phase.
      *
      * @param amount the amount of mana that should be subtracted from the
      *        current amount
@@ -525,7 +579,7 @@ public final class PlayerData {
      * @see #getMana()
      */
     public void subtractMana(final float amount) {
-        setMana(getMana() - amount);
+        addMana(-amount);
     }
 
     /**
@@ -562,12 +616,14 @@ public final class PlayerData {
     public void clear() {
         guild = null;
         profession = null;
-        influence = 0;
-        experience = 0;
-        karma = 0;
-        mana = 0;
+        influence.set(0);
+        experience.set(0);
+        karma.set(0);
+        mana.set(0);
 
         unloading = false;
+        dirtyFields.set(0);
+        settings.takeDirty();
     }
 
     /**
@@ -594,14 +650,94 @@ public final class PlayerData {
             final PlayerSettings settings) {
         this.guild = guild;
         this.profession = profession;
-        this.influence = influence;
+        this.influence.set(influence);
         this.secondProfession = secondProfession;
-        experience = exp;
-        this.karma = karma;
-        this.mana = mana;
+        experience.set(exp);
+        this.karma.set(karma);
+        this.mana.set(mana);
         this.settings = settings;
+        dirtyFields.set(0);
 
         loaded = true;
+        updateLeaderboards();
+    }
+
+    /**
+     * Set a field to a value recovered from the journal or the recovery file,
+     * without calling events. The field is marked as changed so it is written
+     * by the next commit.
+     *
+     * @param field the recovered field
+     * @param value the recovered value
+     * @since 0.1.0
+     */
+    void restore(final Field field, final Object value) {
+        switch (field) {
+            case GUILD:
+                guild = (UUID) value;
+                break;
+            case PROFESSION:
+                profession = (UUID) value;
+                break;
+            case SECOND_PROFESSION:
+                secondProfession = (UUID) value;
+                break;
+            case INFLUENCE:
+                influence.set((Integer) value);
+                break;
+            case EXPERIENCE:
+                experience.set((Float) value);
+                break;
+            case KARMA:
+                karma.set((Float) value);
+                break;
+            case MANA:
+                mana.set((Float) value);
+                break;
+            case SETTINGS:
+                settings = PlayerSettings.fromString((String) value);
+                break;
+            default:
+                return;
+        }
+        markDirty(field);
+    }
+
+    /**
+     * Record a change of a ranked value.
+     */
+    private void changed(final Field field) {
+        markDirty(field);
+        journal(field);
+        updateLeaderboards();
+    }
+
+    private float getMaximumMana() {
+        return plugin == null ? Float.MAX_VALUE : plugin.getConfigValues()
+                .getMaximumMana();
+    }
+
+    /**
+     * Append the new value of the given field to the journal, if there is one.
+     */
+    private void journal(final Field field) {
+        final DataManager manager = plugin == null ? null : plugin
+                .getDataManager();
+        if (manager != null) {
+            manager.journal(this, field);
+        }
+    }
+
+    /**
+     * Pass the current ranked values to the {@link LeaderboardManager}, if it
+     * has been created yet.
+     */
+    private void updateLeaderboards() {
+        final LeaderboardManager leaderboards = plugin == null ? null : plugin
+                .getLeaderboardManager();
+        if (leaderboards != null) {
+            leaderboards.update(this);
+        }
     }
 
     /**
@@ -631,6 +767,174 @@ public final class PlayerData {
     public void setSecondProfession(final UUID secondProfession) {
         if (loaded && !unloading) {
             this.secondProfession = secondProfession;
+            markDirty(Field.SECOND_PROFESSION);
+            journal(Field.SECOND_PROFESSION);
+        }
+    }
+
+    /**
+     * Check whether any persistent value has been changed since this data was
+     * last committed to the database.
+     *
+     * @return {@code true} if there are uncommitted changes
+     * @since 0.1.0
+     */
+    public boolean isDirty() {
+        return dirtyFields.get() != 0 || settings.isDirty();
+    }
+
+    /**
+     * Get the bitmask of {@link Field}s that have been changed since this data
+     * was last committed, without resetting it.
+     *
+     * @return the bitmask of changed {@link Field}s
+     * @since 0.1.0
+     * @see Field#getMask()
+     */
+    public int getDirtyFields() {
+        int fields = dirtyFields.get();
+        if (settings.isDirty()) {
+            fields |= Field.SETTINGS.getMask();
+        }
+        return fields;
+    }
+
+    /**
+     * Atomically obtain and reset the bitmask of changed {@link Field}s. The
+     * caller is responsible for writing the returned fields, or handing them
+     * back through {@link #markDirty(int)} if that fails. Calling this from
+     * anywhere save DAO classes is ill-advised.
+     *
+     * @return the bitmask of {@link Field}s changed since the last call
+     * @since 0.1.0
+     */
+    public int takeDirtyFields() {
+        int fields = dirtyFields.getAndSet(0);
+        if (settings.takeDirty()) {
+            fields |= Field.SETTINGS.getMask();
+        }
+        return fields;
+    }
+
+    /**
+     * Atomically take the changed {@link Field}s, like
+     * {@link #takeDirtyFields()}, and capture them in an immutable
+     * {@link PlayerDataSnapshot} which can be written on another thread. Should
+     * be called on the thread changing this data. The caller is responsible
+     * for writing the snapshot, or handing its fields back through
+     * {@link #markDirty(int)} if that fails.
+     *
+     * @return the snapshot, or {@code null} if nothing changed
+     * @since 0.1.0
+     */
+    @Nullable
+    public PlayerDataSnapshot takeSnapshot() {
+        final int fields = takeDirtyFields();
+        if (fields == 0) {
+            return null;
+        }
+        final String serialised = (fields & Field.SETTINGS.getMask()) != 0
+                ? settings.toString() : null;
+        return new PlayerDataSnapshot(playerId, name, fields, guild,
+                profession, secondProfession, influence.get(),
+                experience.get(), karma.get(), mana.get(), serialised);
+    }
+
+    /**
+     * Mark the given {@link Field} as changed, so it is written on the next
+     * commit.
+     *
+     * @param field the changed {@link Field}
+     * @since 0.1.0
+     */
+    public void markDirty(@Nonnull final Field field) {
+        markDirty(field.getMask());
+    }
+
+    /**
+     * Mark all {@link Field}s in the given bitmask as changed, so they are
+     * written on the next commit. Typically used by DAO classes to restore the
+     * fields of a commit that failed.
+     *
+     * @param fields the bitmask of changed {@link Field}s
+     * @since 0.1.0
+     */
+    public void markDirty(final int fields) {
+        int current;
+        do {
+            current = dirtyFields.get();
+        } while (!dirtyFields.compareAndSet(current, current | fields));
+    }
+
+    /**
+     * The persistent values of a {@link PlayerData}, used to track which of
+     * them need to be written to the database.
+     *
+     * @since 0.1.0
+     */
+    public enum Field {
+        /**
+         * The username of the player.
+         *
+         * @since 0.1.0
+         */
+        NAME,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getGuild()
+         */
+        GUILD,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getProfession()
+         */
+        PROFESSION,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getSecondProfession()
+         */
+        SECOND_PROFESSION,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getInfluence()
+         */
+        INFLUENCE,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getExperience()
+         */
+        EXPERIENCE,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getKarma()
+         */
+        KARMA,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getMana()
+         */
+        MANA,
+        /**
+         * @since 0.1.0
+         * @see PlayerData#getSettings()
+         */
+        SETTINGS;
+
+        /**
+         * A bitmask containing every {@link Field}.
+         *
+         * @since 0.1.0
+         */
+        public static final int ALL = (1 << values().length) - 1;
+
+        /**
+         * Get the bit that represents this {@link Field} in a bitmask.
+         *
+         * @return the bit of this {@link Field}
+         * @since 0.1.0
+         */
+        public int getMask() {
+            return 1 << ordinal();
         }
     }
 }
@@ -0,0 +1,325 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data;
+
+import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.profession.Profession;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * An immutable copy of the persistent values of a {@link PlayerData}, along
+ * with the {@link PlayerData.Field}s that changed since the previous
+ * snapshot. Snapshots are taken on the thread mutating the data, so a commit
+ * written from another thread never mixes values of different moments.
+ *
+ * All values are copied since that's only a handful of primitives; the
+ * serialised {@link PlayerSettings} are only included when they changed.
+ *
+ * @since 0.1.0
+ * @see PlayerData#takeSnapshot()
+ */
+public final class PlayerDataSnapshot {
+    /**
+     * The owner's {@link UUID}.
+     */
+    private final UUID playerId;
+    /**
+     * The owner's username.
+     */
+    private final String name;
+    /**
+     * The bitmask of changed {@link PlayerData.Field}s.
+     */
+    private final int fields;
+    /**
+     * The {@link UUID} of the owner's {@link Guild}.
+     */
+    private final UUID guild;
+    /**
+     * The {@link UUID} of the owner's primary {@link Profession}.
+     */
+    private final UUID profession;
+    /**
+     * The {@link UUID} of the owner's secondary {@link Profession}.
+     */
+    private final UUID secondProfession;
+    /**
+     * The owner's influence.
+     */
+    private final int influence;
+    /**
+     * The owner's experience.
+     */
+    private final float experience;
+    /**
+     * The owner's karma.
+     */
+    private final float karma;
+    /**
+     * The owner's mana.
+     */
+    private final float mana;
+    /**
+     * The owner's serialised {@link PlayerSettings}, {@code null} unless
+     * {@link PlayerData.Field#SETTINGS} changed.
+     */
+    private final String settings;
+
+    PlayerDataSnapshot(final UUID playerId, final String name,
+            final int fields, final UUID guild, final UUID profession,
+            final UUID secondProfession, final int influence,
+            final float experience, final float karma, final float mana,
+            final String settings) {
+        this.playerId = playerId;
+        this.name = name;
+        this.fields = fields;
+        this.guild = guild;
+        this.profession = profession;
+        this.secondProfession = secondProfession;
+        this.influence = influence;
+        this.experience = experience;
+        this.karma = karma;
+        this.mana = mana;
+        this.settings = settings;
+    }
+
+    /**
+     * Get the {@link UUID} of the player this snapshot was taken of.
+     *
+     * @return the owner's {@link UUID}
+     * @since 0.1.0
+     */
+    @Nonnull
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Get the username of the owner.
+     *
+     * @return the owner's username
+     * @since 0.1.0
+     */
+    @Nonnull
+    public String getPlayerName() {
+        return name;
+    }
+
+    /**
+     * Get the bitmask of {@link PlayerData.Field}s which changed since the
+     * previous snapshot, and thus have to be written.
+     *
+     * @return the bitmask of changed {@link PlayerData.Field}s
+     * @since 0.1.0
+     */
+    public int getFields() {
+        return fields;
+    }
+
+    /**
+     * Check whether the given {@link PlayerData.Field} changed since the
+     * previous snapshot.
+     *
+     * @param field the {@link PlayerData.Field} to check
+     * @return {@code true} if the given field has to be written
+     * @since 0.1.0
+     */
+    public boolean hasField(@Nonnull final PlayerData.Field field) {
+        return (fields & field.getMask()) != 0;
+    }
+
+    /**
+     * @return the {@link UUID} of the owner's {@link Guild}
+     * @since 0.1.0
+     * @see PlayerData#getGuild()
+     */
+    @Nullable
+    public UUID getGuild() {
+        return guild;
+    }
+
+    /**
+     * @return the {@link UUID} of the owner's primary {@link Profession}
+     * @since 0.1.0
+     * @see PlayerData#getProfession()
+     */
+    @Nullable
+    public UUID getProfession() {
+        return profession;
+    }
+
+    /**
+     * @return the {@link UUID} of the owner's secondary {@link Profession}
+     * @since 0.1.0
+     * @see PlayerData#getSecondProfession()
+     */
+    @Nullable
+    public UUID getSecondProfession() {
+        return secondProfession;
+    }
+
+    /**
+     * @return the owner's influence
+     * @since 0.1.0
+     * @see PlayerData#getInfluence()
+     */
+    public int getInfluence() {
+        return influence;
+    }
+
+    /**
+     * @return the owner's experience
+     * @since 0.1.0
+     * @see PlayerData#getExperience()
+     */
+    public float getExperience() {
+        return experience;
+    }
+
+    /**
+     * @return the owner's karma
+     * @since 0.1.0
+     * @see PlayerData#getKarma()
+     */
+    public float getKarma() {
+        return karma;
+    }
+
+    /**
+     * @return the owner's mana
+     * @since 0.1.0
+     * @see PlayerData#getMana()
+     */
+    public float getMana() {
+        return mana;
+    }
+
+    /**
+     * Get the owner's {@link PlayerSettings} in the form of
+     * {@link PlayerSettings#toString()}.
+     *
+     * @return the serialised settings, or {@code null} if they didn't change
+     * @since 0.1.0
+     */
+    @Nullable
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Combine this snapshot with an older, not yet written one of the same
+     * player. The result writes the fields of both, using the values of this
+     * snapshot since they are the most recent.
+     *
+     * @param older the older snapshot
+     * @return the combined snapshot
+     * @since 0.1.0
+     */
+    @Nonnull
+    public PlayerDataSnapshot mergeWith(
+            @Nonnull final PlayerDataSnapshot older) {
+        if ((older.fields & ~fields) == 0) {
+            return this;
+        }
+        // settings are only unchanged since the older snapshot if absent here
+        return new PlayerDataSnapshot(playerId, name, fields | older.fields,
+                guild, profession, secondProfession, influence, experience,
+                karma, mana, settings == null ? older.settings : settings);
+    }
+
+    /**
+     * Write this snapshot to the given {@link DataOutput}, so it can be read
+     * back with {@link #read(DataInput)}, e.g. to keep it on disk while the
+     * database is unreachable.
+     *
+     * @param out the {@link DataOutput} to write to
+     * @throws IOException if writing fails
+     * @since 0.1.0
+     */
+    public void write(@Nonnull final DataOutput out) throws IOException {
+        writeId(out, playerId);
+        writeString(out, name);
+        out.writeInt(fields);
+        writeId(out, guild);
+        writeId(out, profession);
+        writeId(out, secondProfession);
+        out.writeInt(influence);
+        out.writeFloat(experience);
+        out.writeFloat(karma);
+        out.writeFloat(mana);
+        writeString(out, settings);
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(DataOutput)}.
+     *
+     * @param in the {@link DataInput} to read from
+     * @return the read snapshot
+     * @throws IOException if reading fails
+     * @since 0.1.0
+     */
+    @Nonnull
+    public static PlayerDataSnapshot read(@Nonnull final DataInput in)
+            throws IOException {
+        return new PlayerDataSnapshot(readId(in), readString(in),
+                in.readInt(), readId(in), readId(in), readId(in),
+                in.readInt(), in.readFloat(), in.readFloat(), in.readFloat(),
+                readString(in));
+    }
+
+    private static void writeId(final DataOutput out, final UUID id)
+            throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readId(final DataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong())
+                : null;
+    }
+
+    private static void writeString(final DataOutput out, final String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of the changes made to {@link PlayerData} between
+ * flushes, so they can be recovered if the server stops without saving.
+ * Entries are written to memory-mapped segment files, which are sealed when a
+ * flush starts and deleted once it has been committed. Because the segments
+ * are mapped, written entries survive a crash of the server process as soon
+ * as they are appended, the {@link FsyncPolicy} only matters for crashes of
+ * the operating system.
+ *
+ * @since 0.1.0
+ */
+final class PlayerJournal {
+    /**
+     * Identifies a journal segment.
+     */
+    private static final int MAGIC = 0x52434a4c;
+    /**
+     * The version of the segment format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The size of the segment header.
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * The size of the largest entry: the field, the player and a
+     * {@link UUID}.
+     */
+    private static final int MAX_ENTRY_SIZE = 1 + 16 + 16;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final PlayerData.Field[] FIELDS = PlayerData.Field
+            .values();
+
+    /**
+     * The directory the segments are stored in.
+     */
+    private final File directory;
+    /**
+     * Stores the sequence number of the last segment which was committed.
+     */
+    private final File checkpointFile;
+    /**
+     * The size of a single segment, in bytes.
+     */
+    private final int segmentSize;
+    /**
+     * When appended entries are forced to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+    private final Logger logger;
+    /**
+     * The amount of appended entries.
+     */
+    private final AtomicLong appended;
+    /**
+     * The sequence number of the current segment.
+     */
+    private long sequence;
+    /**
+     * The sequence number of the last committed segment.
+     */
+    private long checkpoint;
+    /**
+     * The mapped current segment, {@code null} when closed or when the
+     * journal couldn't be written.
+     */
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Constructor. Nothing is written until {@link #open()} is called.
+     *
+     * @param directory the directory to store the segments in
+     * @param segmentSize the size of a single segment, in bytes
+     * @param fsyncPolicy when appended entries are forced to disk
+     * @param logger the {@link Logger} to report problems to
+     * @since 0.1.0
+     */
+    PlayerJournal(final File directory, final int segmentSize,
+            final FsyncPolicy fsyncPolicy, final Logger logger) {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, HEADER_SIZE
+                + MAX_ENTRY_SIZE);
+        this.fsyncPolicy = fsyncPolicy;
+        this.logger = logger;
+        checkpointFile = new File(directory, "checkpoint");
+        appended = new AtomicLong();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.severe("Couldn't create " + directory);
+        }
+        checkpoint = readCheckpoint();
+        sequence = checkpoint;
+        for (final long segment : listSegments()) {
+            sequence = Math.max(sequence, segment);
+        }
+    }
+
+    /**
+     * Read the changes in all segments which weren't committed, merged so
+     * only the latest value of every field is kept.
+     *
+     * @return the uncommitted changes by player
+     * @since 0.1.0
+     */
+    synchronized Map<UUID, Mutations> recover() {
+        final Map<UUID, Mutations> result = new LinkedHashMap<UUID, Mutations>();
+        for (final long segment : listSegments()) {
+            if (segment > checkpoint) {
+                readSegment(segmentFile(segment), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Start a new segment to append to. Should be called after
+     * {@link #recover()}.
+     *
+     * @since 0.1.0
+     */
+    synchronized void open() {
+        roll();
+    }
+
+    /**
+     * Append the current value of the given field of the given
+     * {@link PlayerData}.
+     *
+     * @param data the changed {@link PlayerData}
+     * @param field the changed field
+     * @since 0.1.0
+     */
+    synchronized void append(final PlayerData data,
+            final PlayerData.Field field) {
+        final MappedByteBuffer out = reserve();
+        if (out == null) {
+            return;
+        }
+
+        final int start = out.position();
+        out.position(start + 1);
+        out.putLong(data.getPlayerId().getMostSignificantBits());
+        out.putLong(data.getPlayerId().getLeastSignificantBits());
+        switch (field) {
+            case GUILD:
+                putId(out, data.getGuild());
+                break;
+            case PROFESSION:
+                putId(out, data.getProfession());
+                break;
+            case SECOND_PROFESSION:
+                putId(out, data.getSecondProfession());
+                break;
+            case INFLUENCE:
+                out.putInt(data.getInfluence());
+                break;
+            case EXPERIENCE:
+                out.putFloat(data.getExperience());
+                break;
+            case KARMA:
+                out.putFloat(data.getKarma());
+                break;
+            case MANA:
+                out.putFloat(data.getMana());
+                break;
+            default:
+                // names and settings aren't journaled
+                out.position(start);
+                return;
+        }
+        // the field is written last, so a partially written entry is ignored
+        out.put(start, (byte) (field.ordinal() + 1));
+        appended.incrementAndGet();
+
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            out.force();
+        }
+    }
+
+    /**
+     * Force the current segment to disk. Used by {@link FsyncPolicy#INTERVAL}
+     * and doesn't block appending.
+     *
+     * @since 0.1.0
+     */
+    void sync() {
+        final MappedByteBuffer current = buffer;
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    /**
+     * Seal the current segment so changes appended from now on go to a new
+     * one. Should be called right before a flush takes the changed fields of
+     * the {@link PlayerData} it writes.
+     *
+     * @return the sequence number of the last sealed segment, to pass to
+     *         {@link #discard(long)} once the flush has been committed
+     * @since 0.1.0
+     */
+    synchronized long rotate() {
+        if (buffer != null && buffer.position() > HEADER_SIZE) {
+            roll();
+        }
+        return sequence - 1;
+    }
+
+    /**
+     * Delete all segments up to and including the given one, because their
+     * changes have been committed.
+     *
+     * @param sealed the sequence number returned by {@link #rotate()}
+     * @since 0.1.0
+     */
+    synchronized void discard(final long sealed) {
+        if (sealed <= checkpoint) {
+            return;
+        }
+        checkpoint = sealed;
+        writeCheckpoint();
+        for (final long segment : listSegments()) {
+            if (segment <= checkpoint && !segmentFile(segment).delete()) {
+                // skipped by recovery because of the checkpoint
+                logger.fine("Couldn't delete journal segment " + segment);
+            }
+        }
+    }
+
+    /**
+     * Move all segments up to and including the given one out of the way, so
+     * changes which couldn't be recovered aren't lost but also aren't applied
+     * over newer data on the next start.
+     *
+     * @param sealed the sequence number returned by {@link #rotate()}
+     * @since 0.1.0
+     */
+    synchronized void quarantine(final long sealed) {
+        final File target = new File(directory, "failed-"
+                + System.currentTimeMillis());
+        if (!target.mkdirs()) {
+            logger.severe("Couldn't create " + target);
+            return;
+        }
+        for (final long segment : listSegments()) {
+            if (segment <= sealed) {
+                final File file = segmentFile(segment);
+                if (!file.renameTo(new File(target, file.getName()))) {
+                    logger.severe("Couldn't move " + file + " to " + target);
+                }
+            }
+        }
+        logger.severe("Unrecovered journal segments were moved to " + target);
+    }
+
+    /**
+     * Stop appending to the journal. Segments which weren't discarded are
+     * kept for recovery.
+     *
+     * @since 0.1.0
+     */
+    synchronized void close() {
+        final MappedByteBuffer current = buffer;
+        buffer = null;
+        if (current != null && fsyncPolicy != FsyncPolicy.NEVER) {
+            current.force();
+        }
+    }
+
+    /**
+     * Get the amount of entries appended since this journal was created.
+     *
+     * @return the amount of appended entries
+     * @since 0.1.0
+     */
+    long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * Get the {@link FsyncPolicy} of this journal.
+     *
+     * @return the used {@link FsyncPolicy}
+     * @since 0.1.0
+     */
+    FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    private MappedByteBuffer reserve() {
+        if (buffer != null && buffer.remaining() < MAX_ENTRY_SIZE) {
+            roll();
+        }
+        return buffer;
+    }
+
+    /**
+     * Map a new segment and make it the current one.
+     */
+    private void roll() {
+        final MappedByteBuffer previous = buffer;
+        if (previous != null && fsyncPolicy != FsyncPolicy.NEVER) {
+            previous.force();
+        }
+
+        sequence++;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(segmentFile(sequence), "rw");
+            final MappedByteBuffer mapped = file.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            mapped.putInt(MAGIC);
+            mapped.putInt(VERSION);
+            buffer = mapped;
+        } catch (final IOException ex) {
+            buffer = null;
+            logger.log(Level.SEVERE, "Couldn't open journal segment "
+                    + sequence + ", changes won't be journaled", ex);
+        } finally {
+            if (file != null) {
+                try {
+                    // the mapping stays valid after the file is closed
+                    file.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private void readSegment(final File file,
+            final Map<UUID, Mutations> result) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warning("Skipping invalid journal segment " + file);
+                return;
+            }
+            while (true) {
+                final int type = in.read();
+                if (type <= 0 || type > FIELDS.length) {
+                    // the rest of the segment was never written
+                    return;
+                }
+                final UUID player = new UUID(in.readLong(), in.readLong());
+                final PlayerData.Field field = FIELDS[type - 1];
+                final Object value;
+                switch (field) {
+                    case GUILD:
+                    case PROFESSION:
+                    case SECOND_PROFESSION:
+                        final long most = in.readLong();
+                        final long least = in.readLong();
+                        value = most == 0 && least == 0 ? null : new UUID(
+                                most, least);
+                        break;
+                    case INFLUENCE:
+                        value = in.readInt();
+                        break;
+                    default:
+                        value = in.readFloat();
+                        break;
+                }
+
+                Mutations mutations = result.get(player);
+                if (mutations == null) {
+                    mutations = new Mutations();
+                    result.put(player, mutations);
+                }
+                mutations.set(field, value);
+            }
+        } catch (final EOFException ignore) {
+            // the segment was full
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't read journal segment " + file,
+                    ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private List<Long> listSegments() {
+        final List<Long> result = new ArrayList<Long>();
+        final String[] names = directory.list();
+        if (names == null) {
+            return result;
+        }
+        for (final String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX)
+                    && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    result.add(Long.parseLong(name.substring(
+                            SEGMENT_PREFIX.length(), name.length()
+                                    - SEGMENT_SUFFIX.length())));
+                } catch (final NumberFormatException ignore) {
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private File segmentFile(final long segment) {
+        return new File(directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private long readCheckpoint() {
+        if (!checkpointFile.exists()) {
+            return 0;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(checkpointFile));
+            final byte[] bytes = new byte[(int) checkpointFile.length()];
+            in.readFully(bytes);
+            return Long.parseLong(new String(bytes, "UTF-8").trim());
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't read the journal checkpoint",
+                    ex);
+        } catch (final NumberFormatException ex) {
+            logger.log(Level.SEVERE, "Invalid journal checkpoint", ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+        return 0;
+    }
+
+    private void writeCheckpoint() {
+        final File temp = new File(directory, "checkpoint.tmp");
+        FileWriter out = null;
+        try {
+            out = new FileWriter(temp);
+            out.write(String.valueOf(checkpoint));
+            out.close();
+            out = null;
+            if (checkpointFile.exists() && !checkpointFile.delete()) {
+                throw new IOException("Couldn't replace " + checkpointFile);
+            }
+            if (!temp.renameTo(checkpointFile)) {
+                throw new IOException("Couldn't rename " + temp);
+            }
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't write the journal checkpoint",
+                    ex);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static void putId(final MappedByteBuffer out, final UUID id) {
+        out.putLong(id == null ? 0 : id.getMostSignificantBits());
+        out.putLong(id == null ? 0 : id.getLeastSignificantBits());
+    }
+
+    /**
+     * When appended entries are forced to disk.
+     *
+     * @since 0.1.0
+     */
+    enum FsyncPolicy {
+        /**
+         * After every entry.
+         *
+         * @since 0.1.0
+         */
+        ALWAYS,
+        /**
+         * Periodically, through {@link PlayerJournal#sync()}.
+         *
+         * @since 0.1.0
+         */
+        INTERVAL,
+        /**
+         * Only when a segment is full, leaving the rest to the operating
+         * system.
+         *
+         * @since 0.1.0
+         */
+        NEVER
+    }
+
+    /**
+     * The latest journaled values of a single player.
+     *
+     * @since 0.1.0
+     */
+    static final class Mutations {
+        /**
+         * The journaled fields.
+         */
+        private int fields;
+        /**
+         * The journaled values, by field.
+         */
+        private final Object[] values = new Object[FIELDS.length];
+
+        private void set(final PlayerData.Field field, final Object value) {
+            fields |= field.getMask();
+            values[field.ordinal()] = value;
+        }
+
+        /**
+         * Apply the journaled values to the given {@link PlayerData}.
+         *
+         * @param data the {@link PlayerData} to apply the values to
+         * @since 0.1.0
+         */
+        void applyTo(final PlayerData data) {
+            for (final PlayerData.Field field : FIELDS) {
+                if ((fields & field.getMask()) != 0) {
+                    data.restore(field, values[field.ordinal()]);
+                }
+            }
+        }
+
+        /**
+         * Get the amount of journaled fields.
+         *
+         * @return the amount of journaled fields
+         * @since 0.1.0
+         */
+        int size() {
+            return Integer.bitCount(fields);
+        }
+    }
+}
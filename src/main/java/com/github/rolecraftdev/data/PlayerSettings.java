@@ -26,6 +26,8 @@
  */
 package com.github.rolecraftdev.data;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Holds persistent and non-persistent settings of a player.
  *
@@ -61,6 +63,12 @@ public final class PlayerSettings {
      */
     private boolean spellChatMessage;
 
+    /**
+     * Whether a persistent setting has changed since the settings were last
+     * written to the database.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
     /**
      * Constructor.
      *
@@ -94,6 +102,7 @@ public final class PlayerSettings {
      */
     public void setShowMana(final boolean showMana) {
         this.showMana = showMana;
+        dirty.set(true);
     }
 
     /**
@@ -104,6 +113,7 @@ public final class PlayerSettings {
      */
     public void setSpellChatMessage(final boolean spellChatMessage) {
         this.spellChatMessage = spellChatMessage;
+        dirty.set(true);
     }
 
     /**
@@ -157,6 +167,7 @@ public final class PlayerSettings {
      */
     public void setGuildSpy(final boolean guildSpy) {
         this.guildSpy = guildSpy;
+        dirty.set(true);
     }
 
     /**
@@ -170,6 +181,28 @@ public final class PlayerSettings {
         this.guildChat = guildChat;
     }
 
+    /**
+     * Check whether a persistent setting has changed since these settings were
+     * last written to the database.
+     *
+     * @return {@code true} if a persistent setting has changed
+     * @since 0.1.0
+     */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Atomically check and reset whether a persistent setting has changed.
+     * Calling this from anywhere save DAO classes is ill-advised.
+     *
+     * @return {@code true} if a persistent setting had changed
+     * @since 0.1.0
+     */
+    public boolean takeDirty() {
+        return dirty.getAndSet(false);
+    }
+
     /**
      * @since 0.0.5
      */
@@ -0,0 +1,292 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the {@link PlayerDataSnapshot}s which couldn't be written before the
+ * shutdown deadline, so they are written to the database on the next start.
+ * The file is replaced as a whole and only exists while there is something to
+ * recover.
+ *
+ * @since 0.1.0
+ */
+final class RecoveryFile {
+    /**
+     * Identifies a recovery file.
+     */
+    private static final int MAGIC = 0x52435246;
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 1;
+    private static final PlayerData.Field[] FIELDS = PlayerData.Field
+            .values();
+
+    /**
+     * The recovery file.
+     */
+    private final File file;
+    private final Logger logger;
+
+    /**
+     * Constructor.
+     *
+     * @param file the recovery file
+     * @param logger the {@link Logger} to report problems to
+     * @since 0.1.0
+     */
+    RecoveryFile(final File file, final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Check whether there are snapshots to recover.
+     *
+     * @return {@code true} if the file exists
+     * @since 0.1.0
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Write the given snapshots, replacing the file.
+     *
+     * @param snapshots the {@link PlayerDataSnapshot}s to write
+     * @return {@code true} if the snapshots were written
+     * @since 0.1.0
+     */
+    boolean write(final Collection<PlayerDataSnapshot> snapshots) {
+        final File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshots.size());
+            for (final PlayerDataSnapshot snapshot : snapshots) {
+                write(out, snapshot);
+            }
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Couldn't replace " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temp);
+            }
+            return true;
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't write " + file, ex);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Read the recovered values, by player and {@link PlayerData.Field}, in
+     * the form accepted by {@link PlayerData#restore(PlayerData.Field,
+     * Object)}.
+     *
+     * @return the recovered values, empty if the file doesn't exist or is
+     *         damaged
+     * @since 0.1.0
+     */
+    Map<UUID, Map<PlayerData.Field, Object>> read() {
+        final Map<UUID, Map<PlayerData.Field, Object>> result = new LinkedHashMap<UUID, Map<PlayerData.Field, Object>>();
+        if (!file.exists()) {
+            return result;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                final UUID id = new UUID(in.readLong(), in.readLong());
+                result.put(id, read(in));
+            }
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't read " + file, ex);
+            result.clear();
+            quarantine();
+        } finally {
+            closeQuietly(in);
+        }
+        return result;
+    }
+
+    /**
+     * Delete the file once its values have been written.
+     *
+     * @since 0.1.0
+     */
+    void delete() {
+        if (file.exists() && !file.delete()) {
+            logger.severe("Couldn't delete " + file);
+        }
+    }
+
+    /**
+     * Move the file aside, so it isn't recovered again but can be inspected.
+     *
+     * @since 0.1.0
+     */
+    void quarantine() {
+        final File target = new File(file.getParentFile(), "failed-"
+                + System.currentTimeMillis() + "-" + file.getName());
+        if (file.renameTo(target)) {
+            logger.severe("Unrecovered player data was moved to " + target);
+        } else {
+            logger.severe("Couldn't move " + file + " to " + target);
+        }
+    }
+
+    private static void write(final DataOutputStream out,
+            final PlayerDataSnapshot snapshot) throws IOException {
+        out.writeLong(snapshot.getPlayerId().getMostSignificantBits());
+        out.writeLong(snapshot.getPlayerId().getLeastSignificantBits());
+        // the name is known again once the player is loaded
+        final int fields = snapshot.getFields()
+                & ~PlayerData.Field.NAME.getMask();
+        out.writeInt(fields);
+        for (final PlayerData.Field field : FIELDS) {
+            if ((fields & field.getMask()) == 0) {
+                continue;
+            }
+            switch (field) {
+                case GUILD:
+                    writeId(out, snapshot.getGuild());
+                    break;
+                case PROFESSION:
+                    writeId(out, snapshot.getProfession());
+                    break;
+                case SECOND_PROFESSION:
+                    writeId(out, snapshot.getSecondProfession());
+                    break;
+                case INFLUENCE:
+                    out.writeInt(snapshot.getInfluence());
+                    break;
+                case EXPERIENCE:
+                    out.writeFloat(snapshot.getExperience());
+                    break;
+                case KARMA:
+                    out.writeFloat(snapshot.getKarma());
+                    break;
+                case MANA:
+                    out.writeFloat(snapshot.getMana());
+                    break;
+                case SETTINGS:
+                    out.writeUTF(snapshot.getSettings());
+                    break;
+                default:
+                    throw new IllegalArgumentException(field.name());
+            }
+        }
+    }
+
+    private static Map<PlayerData.Field, Object> read(
+            final DataInputStream in) throws IOException {
+        final Map<PlayerData.Field, Object> values = new EnumMap<PlayerData.Field, Object>(
+                PlayerData.Field.class);
+        final int fields = in.readInt();
+        for (final PlayerData.Field field : FIELDS) {
+            if ((fields & field.getMask()) == 0) {
+                continue;
+            }
+            switch (field) {
+                case GUILD:
+                case PROFESSION:
+                case SECOND_PROFESSION:
+                    values.put(field, readId(in));
+                    break;
+                case INFLUENCE:
+                    values.put(field, in.readInt());
+                    break;
+                case EXPERIENCE:
+                case KARMA:
+                case MANA:
+                    values.put(field, in.readFloat());
+                    break;
+                case SETTINGS:
+                    values.put(field, in.readUTF());
+                    break;
+                default:
+                    throw new IOException("Unexpected field " + field);
+            }
+        }
+        return values;
+    }
+
+    private static void writeId(final DataOutputStream out, final UUID id)
+            throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readId(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong())
+                : null;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // swallow exception
+            }
+        }
+    }
+}
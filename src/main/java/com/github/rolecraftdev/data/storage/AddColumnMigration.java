@@ -0,0 +1,97 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Adds a column to an existing table. Tables which were only just created by
+ * a store already have it, in which case nothing is done. Rows written by
+ * older versions get the default of the column, if any. Reading a table
+ * without the column fails, so this blocks.
+ *
+ * @since 0.1.0
+ */
+final class AddColumnMigration extends Migration {
+    /**
+     * The name of the table the column is added to.
+     */
+    private final String table;
+    /**
+     * The name of the added column.
+     */
+    private final String column;
+    /**
+     * The type and constraints of the added column, as used in SQL.
+     */
+    private final String definition;
+
+    /**
+     * Constructor.
+     *
+     * @param fromVersion the schema version this migration starts at
+     * @param toVersion the schema version after this migration
+     * @param table the name of the table to add the column to
+     * @param column the name of the column
+     * @param definition the type and constraints of the column
+     */
+    AddColumnMigration(final String fromVersion, final String toVersion,
+            final String table, final String column,
+            final String definition) {
+        super(fromVersion, toVersion, false);
+        this.table = table;
+        this.column = column;
+        this.definition = definition;
+    }
+
+    @Override
+    public String migrateBatch(final Connection connection,
+            final String checkpoint, final int limit) throws SQLException {
+        final ResultSet columns = connection.getMetaData().getColumns(null,
+                null, table, column);
+        try {
+            if (columns.next()) {
+                return null;
+            }
+        } finally {
+            DataStore.closeQuietly(null, columns);
+        }
+
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement("ALTER TABLE " + table
+                    + " ADD COLUMN " + column + " " + definition);
+            ps.executeUpdate();
+        } finally {
+            DataStore.closeQuietly(ps, null);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+/**
+ * Tracks whether the database of a {@link DataStore} is reachable. After a
+ * number of consecutive connection failures the breaker opens: writes are
+ * kept in the {@link OutageBuffer} instead of being attempted, and the
+ * database is only tried again after a delay which doubles with every
+ * failed attempt, up to a maximum. The first successful attempt closes the
+ * breaker again.
+ *
+ * All methods are thread-safe, so the state can be shown from any thread.
+ *
+ * @since 0.1.0
+ */
+public final class CircuitBreaker {
+    /**
+     * The state of a {@link CircuitBreaker}.
+     *
+     * @since 0.1.0
+     */
+    public enum State {
+        /**
+         * The database is reachable and used normally.
+         *
+         * @since 0.1.0
+         */
+        CLOSED,
+        /**
+         * The database is unreachable and only tried again after the backoff.
+         *
+         * @since 0.1.0
+         */
+        OPEN
+    }
+
+    /**
+     * The amount of consecutive failures after which the breaker opens.
+     */
+    private final int failureThreshold;
+    /**
+     * The delay, in milliseconds, before the first attempt after opening.
+     */
+    private final long initialBackoff;
+    /**
+     * The maximum delay, in milliseconds, between attempts.
+     */
+    private final long maxBackoff;
+
+    /**
+     * The current state.
+     */
+    private State state = State.CLOSED;
+    /**
+     * The amount of consecutive failures.
+     */
+    private int failures;
+    /**
+     * The delay, in milliseconds, before the next attempt.
+     */
+    private long backoff;
+    /**
+     * The {@link System#currentTimeMillis()} from which the database may be
+     * tried again.
+     */
+    private long retryAt;
+    /**
+     * The {@link System#currentTimeMillis()} at which the breaker last
+     * opened.
+     */
+    private long openedAt;
+    /**
+     * The amount of times the breaker opened.
+     */
+    private long trips;
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold the amount of consecutive failures after which
+     *        the breaker opens
+     * @param initialBackoff the delay before the first attempt after opening,
+     *        in milliseconds
+     * @param maxBackoff the maximum delay between attempts, in milliseconds
+     * @since 0.1.0
+     */
+    public CircuitBreaker(final int failureThreshold,
+            final long initialBackoff, final long maxBackoff) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+    }
+
+    /**
+     * Check whether the database may be used right now: always when the
+     * breaker is closed, and once the backoff has passed when it is open.
+     *
+     * @return {@code true} if the database may be tried
+     * @since 0.1.0
+     */
+    public synchronized boolean canAttempt() {
+        return state == State.CLOSED
+                || System.currentTimeMillis() >= retryAt;
+    }
+
+    /**
+     * Record a successful use of the database, which closes the breaker.
+     *
+     * @since 0.1.0
+     */
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        backoff = 0;
+    }
+
+    /**
+     * Record a failure to reach the database. Opens the breaker once the
+     * threshold is reached, and doubles the backoff for every failed attempt
+     * while it is open.
+     *
+     * @return {@code true} if the breaker is open after this failure
+     * @since 0.1.0
+     */
+    public synchronized boolean recordFailure() {
+        failures++;
+        if (state == State.CLOSED) {
+            if (failures < failureThreshold) {
+                return false;
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            backoff = initialBackoff;
+            trips++;
+        } else {
+            backoff = Math.min(maxBackoff, backoff * 2);
+        }
+        retryAt = System.currentTimeMillis() + backoff;
+        return true;
+    }
+
+    /**
+     * Get the current {@link State}.
+     *
+     * @return the current {@link State}
+     * @since 0.1.0
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Check whether the breaker is open.
+     *
+     * @return {@code true} if the database is considered unreachable
+     * @since 0.1.0
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    /**
+     * Get the time until the database may be tried again.
+     *
+     * @return the delay in milliseconds, {@code 0} if it may be tried now
+     * @since 0.1.0
+     */
+    public synchronized long getRetryDelay() {
+        return state == State.CLOSED ? 0 : Math.max(0, retryAt
+                - System.currentTimeMillis());
+    }
+
+    /**
+     * Get how long the breaker has been open.
+     *
+     * @return the time in milliseconds, {@code 0} if it is closed
+     * @since 0.1.0
+     */
+    public synchronized long getOpenMillis() {
+        return state == State.CLOSED ? 0 : System.currentTimeMillis()
+                - openedAt;
+    }
+
+    /**
+     * Get the amount of consecutive failures.
+     *
+     * @return the amount of failures since the last success
+     * @since 0.1.0
+     */
+    public synchronized int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Get the amount of times the breaker opened.
+     *
+     * @return the amount of outages
+     * @since 0.1.0
+     */
+    public synchronized long getTripCount() {
+        return trips;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public synchronized String toString() {
+        if (state == State.CLOSED) {
+            return "closed failures=" + failures + " trips=" + trips;
+        }
+        return "open for " + getOpenMillis() / 1000 + "s, retry in "
+                + getRetryDelay() + "ms, failures=" + failures + " trips="
+                + trips;
+    }
+}
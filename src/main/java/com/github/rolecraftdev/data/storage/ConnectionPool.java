@@ -0,0 +1,534 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.util.LatencyHistogram;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of JDBC {@link Connection}s. Borrowers wait in a fair queue
+ * for at most the configured timeout, idle connections are validated before
+ * they are handed out and connections which are held for too long are
+ * reported as leaked.
+ *
+ * @since 0.1.0
+ */
+public final class ConnectionPool {
+    /**
+     * Connections which have been idle for a shorter time than this (in
+     * milliseconds) are not validated when borrowed.
+     */
+    private static final long VALIDATION_INTERVAL = 1000L;
+    /**
+     * The amount of seconds to wait for a validation query to complete.
+     */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    /**
+     * Creates new physical connections for this pool.
+     *
+     * @since 0.1.0
+     */
+    public interface ConnectionFactory {
+        /**
+         * Open a new {@link Connection} to the backing database.
+         *
+         * @return a new {@link Connection}
+         * @throws SQLException if the connection cannot be made
+         * @since 0.1.0
+         */
+        @Nonnull
+        Connection create() throws SQLException;
+    }
+
+    /**
+     * The {@link ConnectionFactory} used to open new connections.
+     */
+    private final ConnectionFactory factory;
+    /**
+     * The {@link Logger} used to report leaks and failures.
+     */
+    private final Logger logger;
+    /**
+     * The amount of connections that are kept open, even when idle.
+     */
+    private final int minSize;
+    /**
+     * The maximum amount of connections that may be open at once.
+     */
+    private final int maxSize;
+    /**
+     * The time, in milliseconds, a borrower waits for a connection.
+     */
+    private final long borrowTimeout;
+    /**
+     * The time, in milliseconds, after which idle connections are closed.
+     */
+    private final long idleTimeout;
+    /**
+     * The time, in milliseconds, after which a borrowed connection is
+     * reported as leaked.
+     */
+    private final long leakThreshold;
+    /**
+     * The maximum amount of prepared statements kept open per connection.
+     */
+    private final int statementCacheSize;
+
+    /**
+     * One permit for every connection that may be borrowed. Fair, so waiting
+     * borrowers are served in order of arrival.
+     */
+    private final Semaphore permits;
+    /**
+     * Connections which are open but not borrowed, most recently used first.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle;
+    /**
+     * Connections which are currently borrowed.
+     */
+    private final Map<Connection, PooledConnection> active;
+    /**
+     * The amount of threads currently waiting for a connection.
+     */
+    private final AtomicInteger waiting;
+    /**
+     * The amount of borrows which timed out.
+     */
+    private final AtomicLong timeouts;
+    /**
+     * The amount of connections that were reported as leaked.
+     */
+    private final AtomicLong leaks;
+    /**
+     * The time it took to borrow a connection, including waiting time.
+     */
+    private final LatencyHistogram borrowLatency;
+
+    /**
+     * Whether this pool has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param factory the {@link ConnectionFactory} used to open connections
+     * @param logger the {@link Logger} used to report problems
+     * @param minSize the amount of connections to keep open when idle
+     * @param maxSize the maximum amount of open connections
+     * @param borrowTimeout the time in milliseconds to wait for a connection
+     * @param idleTimeout the time in milliseconds after which idle
+     *        connections beyond the minimum size are closed
+     * @param leakThreshold the time in milliseconds after which a borrowed
+     *        connection is reported as leaked, or {@code 0} to disable
+     * @param statementCacheSize the maximum amount of prepared statements
+     *        kept open per connection, or {@code 0} to disable caching
+     * @since 0.1.0
+     */
+    public ConnectionPool(@Nonnull final ConnectionFactory factory,
+            @Nonnull final Logger logger, final int minSize,
+            final int maxSize, final long borrowTimeout,
+            final long idleTimeout, final long leakThreshold,
+            final int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+
+        this.factory = factory;
+        this.logger = logger;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+        this.leakThreshold = leakThreshold;
+        this.statementCacheSize = statementCacheSize;
+
+        permits = new Semaphore(maxSize, true);
+        idle = new LinkedBlockingDeque<PooledConnection>();
+        active = new ConcurrentHashMap<Connection, PooledConnection>();
+        waiting = new AtomicInteger();
+        timeouts = new AtomicLong();
+        leaks = new AtomicLong();
+        borrowLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Borrow a {@link Connection} from this pool, waiting for one to become
+     * available if all are in use. Every borrowed {@link Connection} must be
+     * handed back through {@link #release(Connection)}.
+     *
+     * @return a valid {@link Connection}
+     * @throws SQLException if no connection became available in time or a new
+     *         one couldn't be opened
+     * @since 0.1.0
+     */
+    @Nonnull
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been closed");
+        }
+
+        final long start = System.nanoTime();
+        waiting.incrementAndGet();
+        final boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(
+                    "Interrupted while waiting for a connection");
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Timed out after " + borrowTimeout
+                    + "ms waiting for a connection (" + active.size()
+                    + " in use)");
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+
+            pooled.borrowed(leakThreshold > 0);
+            active.put(pooled.connection, pooled);
+            borrowLatency.recordSince(start);
+            return pooled.connection;
+        } catch (final SQLException ex) {
+            permits.release();
+            throw ex;
+        } catch (final RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Hand the given {@link Connection} back to this pool. Connections which
+     * weren't borrowed from this pool are ignored.
+     *
+     * @param connection the {@link Connection} to return
+     * @since 0.1.0
+     */
+    public void release(@Nullable final Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        final PooledConnection pooled = active.remove(connection);
+        if (pooled == null) {
+            return;
+        }
+
+        try {
+            if (closed || !reset(pooled)) {
+                destroy(pooled);
+            } else {
+                pooled.released();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close idle connections that have outlived the idle timeout, open new
+     * ones until the minimum size is reached and report leaked connections.
+     * Designed to be called periodically.
+     *
+     * @since 0.1.0
+     */
+    public void maintain() {
+        if (closed) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && getTotalCount() > minSize) {
+            final PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeout && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        while (getTotalCount() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open());
+            } catch (final SQLException ex) {
+                logger.log(Level.WARNING,
+                        "Couldn't open a pooled database connection", ex);
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+
+        if (leakThreshold > 0) {
+            for (final PooledConnection pooled : active.values()) {
+                if (!pooled.reportedLeak
+                        && now - pooled.borrowedAt > leakThreshold) {
+                    pooled.reportedLeak = true;
+                    leaks.incrementAndGet();
+                    logger.log(Level.WARNING, "A database connection has "
+                            + "been borrowed for " + (now - pooled.borrowedAt)
+                            + "ms without being returned", pooled.borrowTrace);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close this pool and all idle connections. Borrowed connections are
+     * closed as soon as they are released.
+     *
+     * @since 0.1.0
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Get the {@link StatementCache} of the given borrowed
+     * {@link Connection}. Its statements stay open while the connection is
+     * idle, so they can be reused by the next borrower.
+     *
+     * @param connection the borrowed {@link Connection}
+     * @return the {@link StatementCache} of the connection, or {@code null}
+     *         if it wasn't borrowed from this pool or caching is disabled
+     * @since 0.1.0
+     */
+    @Nullable
+    public StatementCache getStatementCache(
+            @Nullable final Connection connection) {
+        if (connection == null) {
+            return null;
+        }
+        final PooledConnection pooled = active.get(connection);
+        return pooled == null ? null : pooled.statements;
+    }
+
+    /**
+     * Get the amount of connections which are currently borrowed.
+     *
+     * @return the amount of active connections
+     * @since 0.1.0
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * Get the amount of connections which are open but not borrowed.
+     *
+     * @return the amount of idle connections
+     * @since 0.1.0
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Get the amount of open connections, both idle and active.
+     *
+     * @return the amount of open connections
+     * @since 0.1.0
+     */
+    public int getTotalCount() {
+        return idle.size() + active.size();
+    }
+
+    /**
+     * Get the amount of threads currently waiting for a connection.
+     *
+     * @return the amount of waiting borrowers
+     * @since 0.1.0
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * Get the maximum amount of connections this pool may open.
+     *
+     * @return the maximum pool size
+     * @since 0.1.0
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the amount of borrows that timed out since the pool was created.
+     *
+     * @return the amount of timed out borrows
+     * @since 0.1.0
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Get the amount of connections that were reported as leaked since the
+     * pool was created.
+     *
+     * @return the amount of leaked connections
+     * @since 0.1.0
+     */
+    public long getLeakCount() {
+        return leaks.get();
+    }
+
+    /**
+     * Get the {@link LatencyHistogram} of the time it takes to borrow a
+     * connection, including the time spent waiting.
+     *
+     * @return the borrow latency histogram
+     * @since 0.1.0
+     */
+    @Nonnull
+    public LatencyHistogram getBorrowLatency() {
+        return borrowLatency;
+    }
+
+    /**
+     * Check whether the given idle connection may be handed out, validating
+     * it with the database if it has been idle for a while.
+     */
+    private boolean isUsable(final PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                return false;
+            }
+            return System.currentTimeMillis() - pooled.lastUsed
+                    < VALIDATION_INTERVAL
+                    || pooled.connection.isValid(VALIDATION_TIMEOUT);
+        } catch (final SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Restore the default state of a released connection, so work left
+     * behind by the previous borrower doesn't leak into the next one.
+     *
+     * @return whether the connection can be reused
+     */
+    private boolean reset(final PooledConnection pooled) {
+        try {
+            final Connection connection = pooled.connection;
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (final SQLException ex) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        final Connection connection = factory.create();
+        return new PooledConnection(connection, statementCacheSize > 0
+                ? new StatementCache(connection, statementCacheSize) : null);
+    }
+
+    private void destroy(final PooledConnection pooled) {
+        if (pooled.statements != null) {
+            pooled.statements.close();
+        }
+        try {
+            pooled.connection.close();
+        } catch (final SQLException e) {
+            // swallow exception
+        }
+    }
+
+    /**
+     * Book-keeping for a single physical connection.
+     */
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private volatile long lastUsed;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean reportedLeak;
+
+        private PooledConnection(final Connection connection,
+                final StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        private void borrowed(final boolean trace) {
+            borrowedAt = System.currentTimeMillis();
+            borrowTrace = trace ? new Throwable("Connection borrowed here")
+                    : null;
+            reportedLeak = false;
+        }
+
+        private void released() {
+            lastUsed = System.currentTimeMillis();
+            borrowTrace = null;
+        }
+    }
+}
@@ -28,25 +28,45 @@ package com.github.rolecraftdev.data.storage;
 
 import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.data.PlayerDataSnapshot;
 import com.github.rolecraftdev.data.PlayerSettings;
 import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.guild.GuildAction;
 import com.github.rolecraftdev.guild.GuildManager;
 import com.github.rolecraftdev.guild.GuildRank;
+import com.github.rolecraftdev.leaderboard.LeaderboardManager;
 import com.github.rolecraftdev.util.Region2D;
 import com.github.rolecraftdev.util.serial.LocationSerializer;
 
-import org.bukkit.Bukkit;
-import org.bukkit.Location;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import javax.annotation.Nullable;
+import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
 
 /**
  * A DAO used for persistent storage of Rolecraft data, which can be used for
@@ -73,6 +93,33 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public static final String gt = "guildtable";
+    /**
+     * The name of the SQL database guild members table, which holds a row for
+     * every rank a member holds.
+     *
+     * @since 0.1.0
+     */
+    public static final String gmt = "guild_member";
+    /**
+     * The name of the SQL database guild ranks table.
+     *
+     * @since 0.1.0
+     */
+    public static final String grt = "guild_rank";
+    /**
+     * The name of the SQL database table holding the checkpoints of
+     * unfinished migrations.
+     *
+     * @since 0.1.0
+     */
+    public static final String mgt = "migrationtable";
+    /**
+     * The name of the SQL database table holding the checkpoints of an
+     * unfinished {@link DatabaseTransfer} into the database.
+     *
+     * @since 0.1.0
+     */
+    public static final String tft = "transfertable";
     /**
      * @since 0.0.5
      */
@@ -84,12 +131,186 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public static final String SQLVERSION1 = "1.0";
+    /**
+     * The database schema version in which guild members and ranks moved from
+     * the guild table into {@link #gmt} and {@link #grt}.
+     *
+     * @since 0.1.0
+     */
+    public static final String SQLVERSION2 = "2.0";
+    /**
+     * The database schema version in which the {@code 'NULL'} strings written
+     * by older versions were replaced with real {@code NULL} values.
+     *
+     * @since 0.1.0
+     */
+    public static final String SQLVERSION3 = "3.0";
+    /**
+     * The database schema version in which guild ranks gained the name of
+     * the rank they inherit from.
+     *
+     * @since 0.1.0
+     */
+    public static final String SQLVERSION4 = "4.0";
+    /**
+     * The database schema version in which guilds gained the time they were
+     * created at.
+     *
+     * @since 0.1.0
+     */
+    public static final String SQLVERSION5 = "5.0";
     // Future versions here
 
+    /**
+     * The players table column of each {@link PlayerData.Field}, indexed by
+     * ordinal.
+     */
+    private static final String[] PLAYER_COLUMNS = { "lastname", "guild",
+            "profession", "secondprofession", "influence", "exp", "karma",
+            "mana", "settings" };
+    static final SqlStatement SELECT_PLAYER = new SqlStatement(
+            "select-player", "SELECT * FROM " + pt + " WHERE uuid = ?");
+    static final SqlStatement SELECT_PLAYER_SCORES = new SqlStatement(
+            "select-player-scores", "SELECT uuid, exp, karma, influence FROM "
+                    + pt);
+    static final SqlStatement INSERT_PLAYER = new SqlStatement(
+            "insert-player", "INSERT INTO " + pt
+                    + " (uuid, lastname) VALUES (?,?)");
+    static final SqlStatement DELETE_PLAYER = new SqlStatement(
+            "delete-player", "DELETE FROM " + pt + " WHERE uuid = ?");
+    private static final SqlStatement UPDATE_PLAYER_GUILD = new SqlStatement(
+            "update-player-guild", "UPDATE " + pt
+                    + " SET guild = ? WHERE uuid = ?");
+    private static final SqlStatement CLEAR_PLAYER_GUILDS = new SqlStatement(
+            "clear-player-guilds", "UPDATE " + pt
+                    + " SET guild = NULL WHERE guild = ?");
+    private static final SqlStatement SELECT_GUILDS = new SqlStatement(
+            "select-guilds", "SELECT uuid, name, leader, home, influence, "
+                    + "open, created, (SELECT COUNT(DISTINCT player_uuid) FROM "
+                    + gmt + " WHERE " + gmt + ".guild_uuid = " + gt
+                    + ".uuid) AS members FROM " + gt);
+    private static final SqlStatement INSERT_GUILD = new SqlStatement(
+            "insert-guild", "INSERT INTO " + gt
+                    + " (uuid, name, leader, created) VALUES (?, ?, ?, ?)");
+    private static final SqlStatement DELETE_GUILD = new SqlStatement(
+            "delete-guild", "DELETE FROM " + gt + " WHERE uuid = ?");
+    private static final SqlStatement INSERT_GUILD_RANK = new SqlStatement(
+            "insert-guild-rank", "INSERT INTO " + grt
+                    + " (guild_uuid, name, permissions, parent)"
+                    + " VALUES (?, ?, ?, ?)");
+    private static final SqlStatement DELETE_GUILD_RANKS = new SqlStatement(
+            "delete-guild-ranks", "DELETE FROM " + grt
+                    + " WHERE guild_uuid = ?");
+    private static final SqlStatement SELECT_GUILD_MEMBERSHIPS =
+            new SqlStatement("select-guild-memberships", "SELECT DISTINCT "
+                    + "guild_uuid, player_uuid FROM " + gmt);
+    static final SqlStatement INSERT_GUILD_MEMBER = new SqlStatement(
+            "insert-guild-member", "INSERT INTO " + gmt
+                    + " (guild_uuid, player_uuid, rank_name) VALUES (?, ?, ?)");
+    private static final SqlStatement DELETE_GUILD_MEMBER = new SqlStatement(
+            "delete-guild-member", "DELETE FROM " + gmt
+                    + " WHERE guild_uuid = ? AND player_uuid = ?");
+    private static final SqlStatement DELETE_GUILD_MEMBERS = new SqlStatement(
+            "delete-guild-members", "DELETE FROM " + gmt
+                    + " WHERE guild_uuid = ?");
+    /**
+     * The player update statements by the mask of the updated fields, built
+     * when first used.
+     */
+    private static final AtomicReferenceArray<SqlStatement> PLAYER_UPDATES =
+            new AtomicReferenceArray<SqlStatement>(PlayerData.Field.ALL + 1);
+    /**
+     * The guild update statements by their updated columns, built when first
+     * used.
+     */
+    private static final ConcurrentMap<String, SqlStatement> GUILD_UPDATES =
+            new ConcurrentHashMap<String, SqlStatement>();
+    /**
+     * The maximum amount of players loaded by a single multi-get query.
+     */
+    private static final int MULTI_GET_SIZE = 100;
+    /**
+     * The multi-get statements by the amount of selected players, built when
+     * first used.
+     */
+    private static final AtomicReferenceArray<SqlStatement> PLAYER_SELECTS =
+            new AtomicReferenceArray<SqlStatement>(MULTI_GET_SIZE + 1);
+    /**
+     * The statements selecting the ranks of the given amount of guilds, built
+     * when first used.
+     */
+    private static final AtomicReferenceArray<SqlStatement> GUILD_RANK_SELECTS =
+            new AtomicReferenceArray<SqlStatement>(MULTI_GET_SIZE + 1);
+    /**
+     * The statements selecting the members of the given amount of guilds,
+     * built when first used.
+     */
+    private static final AtomicReferenceArray<SqlStatement> GUILD_MEMBER_SELECTS =
+            new AtomicReferenceArray<SqlStatement>(MULTI_GET_SIZE + 1);
+
     /**
      * The associated {@link RolecraftCore} instance.
      */
     private final RolecraftCore plugin;
+    /**
+     * The total amount of rows written by batches.
+     */
+    private final AtomicLong batchRows = new AtomicLong();
+    /**
+     * The total time spent executing batches, in nanoseconds.
+     */
+    private final AtomicLong batchNanos = new AtomicLong();
+    /**
+     * The total amount of statements prepared, including reused ones.
+     */
+    private final AtomicLong preparedStatements = new AtomicLong();
+    /**
+     * The total amount of statements which had to be parsed.
+     */
+    private final AtomicLong parsedStatements = new AtomicLong();
+    /**
+     * The {@link StorageExecutor} all database operations run on.
+     */
+    private final StorageExecutor executor;
+    /**
+     * The {@link MigrationRunner} which keeps the database schema up to date.
+     */
+    private final MigrationRunner migrations;
+    /**
+     * The execution times of statements and failures of operations.
+     */
+    private final StorageMetrics metrics;
+    /**
+     * Held while a snapshot of {@link PlayerData} is taken and queued, so
+     * snapshots are written in the order they were taken.
+     */
+    private final Object commitLock = new Object();
+    /**
+     * The latest queued commit per player which hasn't been written yet. A
+     * newer commit includes its fields, so it can replace it when coalesced.
+     */
+    private final ConcurrentMap<UUID, PlayerDataSnapshot> pendingCommits =
+            new ConcurrentHashMap<UUID, PlayerDataSnapshot>();
+    /**
+     * The {@link System#nanoTime()} by which {@link #shutdown()} stops waiting
+     * for pending operations, {@code 0} to wait for 30 seconds.
+     */
+    private volatile long shutdownDeadline;
+    /**
+     * Tracks whether the database is reachable.
+     */
+    private final CircuitBreaker breaker;
+    /**
+     * The writes made while the database was unreachable, replayed in order
+     * once it is reachable again. {@code null} until
+     * {@link #openOutageBuffer()} is called, so stores which are only used
+     * to copy data never touch the buffer of the active store.
+     */
+    private volatile OutageBuffer outageBuffer;
+    /**
+     * Whether a replay of the {@link #outageBuffer} has been scheduled.
+     */
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
 
     /**
      * Constructor.
@@ -99,6 +320,24 @@ public abstract class DataStore {
      */
     public DataStore(final RolecraftCore plugin) {
         this.plugin = plugin;
+        executor = new StorageExecutor("Rolecraft Storage", plugin.getConfig()
+                .getInt("storage.queue-capacity", 4096), plugin.getLogger());
+        migrations = new MigrationRunner(this, plugin.getConfig().getInt(
+                "storage.migration-batch-size", 1000));
+        migrations.register(new GuildMemberMigration());
+        migrations.register(new NullValueMigration());
+        migrations.register(new AddColumnMigration(SQLVERSION3, SQLVERSION4,
+                grt, "parent", "VARCHAR(50)"));
+        migrations.register(new AddColumnMigration(SQLVERSION4, SQLVERSION5,
+                gt, "created", "BIGINT DEFAULT 0"));
+        metrics = new StorageMetrics(plugin.getConfig().getBoolean(
+                "storage.metrics.enabled", true), plugin.getConfig().getLong(
+                "storage.metrics.slow-threshold", 50), plugin.getConfig()
+                .getInt("storage.metrics.slow-log-size", 20));
+        breaker = new CircuitBreaker(plugin.getConfig().getInt(
+                "storage.outage.failure-threshold", 3), plugin.getConfig()
+                .getLong("storage.outage.initial-backoff", 1000), plugin
+                .getConfig().getLong("storage.outage.max-backoff", 60000));
     }
 
     /**
@@ -112,12 +351,88 @@ public abstract class DataStore {
     }
 
     /**
-     * Initialise this {@link DataStore} implementation.
+     * Initialise this {@link DataStore} implementation. Only called on the
+     * {@link DataStore} the plugin uses; implementations which write through
+     * {@link #runBatch(WriteBatch, int)} should call
+     * {@link #openOutageBuffer()} first.
      *
      * @since 0.0.5
      */
     public abstract void initialise();
 
+    /**
+     * Open the outage buffer file and schedule a replay of the writes a
+     * previous run left in it. Until this is called, writes which can't reach
+     * the database are handed back to the {@link PlayerData} instead of being
+     * buffered.
+     *
+     * @since 0.1.0
+     */
+    protected void openOutageBuffer() {
+        if (outageBuffer != null) {
+            return;
+        }
+        outageBuffer = new OutageBuffer(new File(plugin.getDataFolder(),
+                "outage-buffer.dat"), plugin.getConfig().getLong(
+                "storage.outage.buffer-size", 64) * 1024 * 1024,
+                plugin.getLogger());
+        // writes left over from the last run go before anything else
+        scheduleReplay();
+    }
+
+    /**
+     * Release all resources held by this {@link DataStore}, such as open
+     * connections. Called when the plugin is disabled, after all data has been
+     * saved. Waits for all pending operations to complete, until the
+     * {@link #setShutdownDeadline(long)} if one was set; implementations
+     * overriding this should call it before closing their own resources.
+     *
+     * @return {@code true} if all pending operations completed in time
+     * @since 0.1.0
+     */
+    public boolean shutdown() {
+        final long deadline = shutdownDeadline;
+        final boolean drained;
+        if (deadline == 0) {
+            drained = executor.shutdown(30, TimeUnit.SECONDS);
+        } else {
+            // a zero timeout would wait forever
+            drained = executor.shutdown(Math.max(1, TimeUnit.NANOSECONDS
+                    .toMillis(deadline - System.nanoTime())),
+                    TimeUnit.MILLISECONDS);
+        }
+        if (drained && outageBuffer != null) {
+            // buffered writes stay on disk for the next start
+            outageBuffer.close();
+        }
+        return drained;
+    }
+
+    /**
+     * Set the moment after which {@link #shutdown()} stops waiting for pending
+     * operations.
+     *
+     * @param deadline the deadline, as a {@link System#nanoTime()} value
+     * @since 0.1.0
+     */
+    public void setShutdownDeadline(final long deadline) {
+        shutdownDeadline = deadline;
+    }
+
+    /**
+     * Run the given operation on the storage thread, after all operations
+     * submitted before it.
+     *
+     * @param operation the name of the operation, used for metrics
+     * @param task the operation to run
+     * @param keys the {@link UUID}s of the players or guilds it affects
+     * @since 0.1.0
+     */
+    protected void submit(final String operation, final Runnable task,
+            final Object... keys) {
+        executor.execute(operation, task, keys);
+    }
+
     /**
      * Obtain a {@link Connection} used for CRUD operations affecting the
      * backing database.
@@ -162,44 +477,236 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public void updateGuildRanks(final Guild guild) {
-        final StringBuilder sb = new StringBuilder();
-        for (final GuildRank rank : guild.getRanks()) {
-            sb.append(rank.serialize());
-            sb.append(",");
-        }
-        final String ranks = sb.substring(0, sb.length() - 1);
-
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                final ResultSet rs = null;
-                try {
-                    ps = connection.prepareStatement(
-                            "UPDATE " + gt + " SET ranks = ? WHERE uuid = ?");
-                    ps.setString(1, ranks);
-                    ps.setString(2, guild.getId().toString());
-                    ps.execute();
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
-                }
-            }
-        }.runTaskAsynchronously(getPlugin());
+        final WriteBatch batch = new WriteBatch();
+        batch.addGuildRanks(guild);
+        executor.executeCoalesced("update-guild-ranks", guild.getId(),
+                batchTask(batch));
     }
 
     /**
-     * Close the specified {@link PreparedStatement} and afterwards the given
-     * {@link ResultSet}.
+     * Close the given {@link ResultSet} and afterwards the specified
+     * {@link PreparedStatement}, unless it was kept for reuse by
+     * {@link #release(PreparedStatement)}.
      *
      * @param ps the {@link PreparedStatement} that should be closed
      * @param rs the {@link ResultSet} that should be closed
      * @since 0.0.5
      */
     protected void close(final PreparedStatement ps, final ResultSet rs) {
+        closeQuietly(null, rs);
+        if (ps == null) {
+            return;
+        }
+        metrics.end(ps);
+        if (!release(ps)) {
+            closeQuietly(ps, null);
+        }
+    }
+
+    /**
+     * Prepare the given {@link SqlStatement} on the given {@link Connection},
+     * reusing it from the {@link StatementCache} of the connection if it has
+     * one. The returned statement must be closed through
+     * {@link #close(PreparedStatement, ResultSet)}.
+     *
+     * @param connection the {@link Connection} to prepare the statement on
+     * @param statement the {@link SqlStatement} to prepare
+     * @return the {@link PreparedStatement} for the given statement
+     * @throws SQLException if the statement could not be prepared
+     * @since 0.1.0
+     */
+    protected PreparedStatement prepare(final Connection connection,
+            final SqlStatement statement) throws SQLException {
+        preparedStatements.incrementAndGet();
+        final StatementCache cache = getStatementCache(connection);
+        final PreparedStatement ps;
+        if (cache == null) {
+            parsedStatements.incrementAndGet();
+            ps = connection.prepareStatement(statement.getSql());
+        } else {
+            final long misses = cache.getMisses();
+            ps = cache.prepare(statement);
+            if (cache.getMisses() != misses) {
+                parsedStatements.incrementAndGet();
+            }
+        }
+        metrics.begin(ps, statement);
+        return ps;
+    }
+
+    /**
+     * Hand back a {@link PreparedStatement} obtained through
+     * {@link #prepare(Connection, SqlStatement)} for reuse.
+     *
+     * @param ps the {@link PreparedStatement} to hand back
+     * @return {@code true} if the statement was kept for reuse and must not
+     *         be closed
+     * @since 0.1.0
+     */
+    protected boolean release(final PreparedStatement ps) {
+        try {
+            final StatementCache cache = getStatementCache(ps.getConnection());
+            return cache != null && cache.release(ps);
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the {@link StatementCache} of the given {@link Connection}.
+     *
+     * @param connection the {@link Connection} to get the cache of
+     * @return the {@link StatementCache} of the connection, or {@code null}
+     *         if its statements aren't cached
+     * @since 0.1.0
+     */
+    protected StatementCache getStatementCache(final Connection connection) {
+        return null;
+    }
+
+    /**
+     * Create the tables used by this {@link DataStore} on the given
+     * {@link Connection}, unless they already exist.
+     *
+     * @param connection the {@link Connection} to create the tables with
+     * @throws SQLException if the tables couldn't be created, or this
+     *         {@link DataStore} doesn't use an SQL database
+     * @since 0.1.0
+     */
+    protected void createTables(final Connection connection)
+            throws SQLException {
+        throw new SQLException(getStoreTypeName()
+                + " doesn't use an SQL database");
+    }
+
+    /**
+     * Open a new {@link Connection} to the database for loading large amounts
+     * of rows, e.g. when transferring data from another {@link DataStore}.
+     * Rows are loaded table by table, so foreign key checks are disabled on it
+     * where the database supports that. The caller has to close it.
+     *
+     * @return a new {@link Connection} which isn't shared with this
+     *         {@link DataStore}
+     * @throws SQLException if no connection could be opened, or this
+     *         {@link DataStore} doesn't use an SQL database
+     * @since 0.1.0
+     */
+    protected Connection openBulkConnection() throws SQLException {
+        throw new SQLException(getStoreTypeName()
+                + " doesn't use an SQL database");
+    }
+
+    /**
+     * Get the {@link ConnectionPool} connections are borrowed from.
+     *
+     * @return the used {@link ConnectionPool}, or {@code null} if this
+     *         {@link DataStore} doesn't pool its connections
+     * @since 0.1.0
+     */
+    @Nullable
+    public ConnectionPool getConnectionPool() {
+        return null;
+    }
+
+    /**
+     * Get the {@link StorageMetrics} of this {@link DataStore}.
+     *
+     * @return the used {@link StorageMetrics}
+     * @since 0.1.0
+     */
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the {@link CircuitBreaker} which tracks whether the database is
+     * reachable.
+     *
+     * @return the used {@link CircuitBreaker}
+     * @since 0.1.0
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Get how far the database lags behind because of writes which were kept
+     * during an outage and haven't been replayed yet.
+     *
+     * @return the age of the oldest buffered write in milliseconds, {@code 0}
+     *         if nothing is buffered
+     * @since 0.1.0
+     */
+    public long getOutageLag() {
+        final OutageBuffer buffer = outageBuffer;
+        return buffer == null ? 0 : buffer.getLag();
+    }
+
+    /**
+     * Get the buffer of writes made while the database was unreachable.
+     *
+     * @return the outage buffer, {@code null} if it hasn't been opened
+     */
+    @Nullable
+    OutageBuffer getOutageBuffer() {
+        return outageBuffer;
+    }
+
+    /**
+     * Log a failed storage operation and count it in the
+     * {@link StorageMetrics}.
+     *
+     * @param action a description of what couldn't be done, e.g.
+     *        {@code "load guilds"}
+     * @param ex the cause of the failure
+     * @since 0.1.0
+     */
+    protected void reportFailure(final String action, final Exception ex) {
+        metrics.recordError();
+        plugin.getLogger().log(Level.SEVERE, "[" + getStoreTypeName()
+                + "] Couldn't " + action, ex);
+    }
+
+    /**
+     * Get the amount of statements prepared through
+     * {@link #prepare(Connection, SqlStatement)}, including reused ones.
+     *
+     * @return the amount of prepared statements
+     * @since 0.1.0
+     */
+    public long getPreparedStatementCount() {
+        return preparedStatements.get();
+    }
+
+    /**
+     * Get the amount of statements the database had to parse, because they
+     * weren't cached.
+     *
+     * @return the amount of parsed statements
+     * @since 0.1.0
+     */
+    public long getParsedStatementCount() {
+        return parsedStatements.get();
+    }
+
+    /**
+     * Get the share of prepared statements which were reused from a
+     * {@link StatementCache}.
+     *
+     * @return the statement cache hit ratio, between {@code 0} and {@code 1}
+     * @since 0.1.0
+     */
+    public double getStatementHitRatio() {
+        final long prepared = preparedStatements.get();
+        return prepared == 0 ? 0 : 1.0 - (double) parsedStatements.get()
+                / prepared;
+    }
+
+    /**
+     * Close the given {@link PreparedStatement} and {@link ResultSet}, either
+     * of which may be {@code null}, ignoring any errors.
+     */
+    static void closeQuietly(final PreparedStatement ps, final ResultSet rs) {
         try {
             if (ps != null) {
                 ps.close();
@@ -219,87 +726,23 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public void updateGuildData(final Guild guild) {
-        final String home = LocationSerializer
-                .serialize(guild.getHomeLocation());
-        final String name = guild.getName();
-        final String leader = guild.getLeader().toString();
-        StringBuilder sb = new StringBuilder();
-        for (final UUID id : guild.getMembers()) {
-            sb.append(id.toString());
-            sb.append(",");
-        }
-        final String members = sb.substring(0, sb.length() - 1);
-        sb = new StringBuilder();
-        for (final GuildRank rank : guild.getRanks()) {
-            sb.append(rank.serialize());
-            sb.append(",");
-        }
-        final String ranks = sb.substring(0, sb.length() - 1);
-
-        final String id = guild.getId().toString();
-
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                final ResultSet rs = null;
-                try {
-                    ps = connection.prepareStatement("UPDATE " + gt + " SET "
-                            + "name = ?, "
-                            + "leader = ?,"
-                            + "members = ?,"
-                            + "ranks = ?,"
-                            + "home = ?," +
-                            "influence = ?," +
-                            "open = ?"
-                            + "WHERE uuid = ?");
-                    ps.setString(1, name);
-                    ps.setString(2, leader);
-                    ps.setString(3, members);
-                    ps.setString(4, ranks);
-                    ps.setString(5, home);
-                    ps.setString(6, id);
-                    ps.setInt(7, guild.getInfluence());
-                    ps.setBoolean(8, guild.isOpen());
-                    ps.execute();
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
-                }
-            }
-        }.runTaskAsynchronously(getPlugin());
+        final WriteBatch batch = new WriteBatch();
+        batch.addGuildData(guild);
+        executor.executeCoalesced("update-guild", guild.getId(),
+                batchTask(batch));
     }
 
     /**
-     * Utterly remove a {@link Guild} from the used database.
+     * Utterly remove a {@link Guild} from the used database. The guild of all
+     * its members is cleared in the same transaction.
      *
      * @param guild the {@link Guild} to remove
      * @since 0.0.5
      */
     public void deleteGuild(final Guild guild) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                final ResultSet rs = null;
-                try {
-                    ps = connection.prepareStatement(
-                            "DELETE FROM " + gt + " WHERE uuid = ?");
-                    ps.setString(1, guild.getId().toString());
-                    ps.execute();
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
-                }
-            }
-        }.runTaskAsynchronously(getPlugin());
-
+        final WriteBatch batch = new WriteBatch();
+        batch.deleteGuild(guild);
+        executor.execute("delete-guild", batchTask(batch), guild.getId());
     }
 
     /**
@@ -311,186 +754,398 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public void clearPlayerData(final UUID uuid) {
-        new BukkitRunnable() {
+        executor.execute("clear-player", new Runnable() {
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("delete player data",
+                            "clear-player", uuid, this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 final ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement(
-                            "DELETE FROM " + pt + " WHERE uuid = ?");
+                    ps = prepare(connection, DELETE_PLAYER);
                     ps.setString(1, uuid.toString());
                     ps.execute();
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("delete player data", ex);
                 } finally {
                     close(ps, rs);
                     freeConnection(connection);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        }, uuid);
+    }
+
+    /**
+     * Bring the database schema up to date from the given version, which was
+     * read from the metadata table. Must be called from
+     * {@link #initialise()} after all tables have been created. Migrations
+     * which can complete in the background are continued on the storage
+     * thread after initialisation.
+     *
+     * @param connection the {@link Connection} to update the schema with
+     * @param version the current schema version of the database
+     * @throws SQLException if the schema could not be updated
+     * @since 0.1.0
+     */
+    protected void updateSchema(final Connection connection,
+            final String version) throws SQLException {
+        migrations.resume(migrations.migrate(connection, version));
+    }
 
+    /**
+     * Get the {@link MigrationRunner} which keeps the database schema up to
+     * date.
+     *
+     * @return the used {@link MigrationRunner}
+     * @since 0.1.0
+     */
+    public MigrationRunner getMigrationRunner() {
+        return migrations;
     }
 
     /**
-     * Upload a {@link Guild} to the database.
+     * Upload a {@link Guild} to the database, along with its ranks and
+     * members.
      *
      * @param guild the {@link Guild} to save
      * @since 0.0.5
      */
     public void createGuild(final Guild guild) {
-        final String id = guild.getId().toString();
-        final String name = guild.getName();
-        final String leader = guild.getLeader().toString();
-
-        final StringBuilder sb = new StringBuilder();
-        for (final GuildRank rank : guild.getRanks()) {
-            sb.append(rank.serialize());
-            sb.append(",");
-        }
-
-        final String ranks = sb.substring(0, sb.length() - 1);
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                final ResultSet rs = null;
-                try {
-                    ps = connection.prepareStatement("INSERT INTO " + gt
-                            + " (uuid, name, leader, members, ranks) VALUES (?,?,?,?,?)");
-                    ps.setString(1, id);
-                    ps.setString(2, name);
-                    ps.setString(3, leader);
-                    ps.setString(4, leader);
-                    ps.setString(5, ranks);
-                    ps.execute();
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
-                }
-            }
-        }.runTaskAsynchronously(getPlugin());
+        final WriteBatch batch = new WriteBatch();
+        batch.createGuild(guild);
+        executor.execute("create-guild", batchTask(batch), guild.getId());
     }
 
     /**
      * Load the {@link Guild}s from the database and add them to the given
-     * {@link GuildManager}.
+     * {@link GuildManager}. Only the header of each guild and which guild
+     * each player is in are read, so land protection and lookups by name or
+     * player work as soon as possible; the members and ranks are hydrated
+     * when first needed, see {@link #hydrateGuilds(Collection)}.
      *
      * @param callback the {@link GuildManager} which will hold the loaded
      *        {@link Guild}s
      * @since 0.0.5
      */
     public void loadGuilds(final GuildManager callback) {
-        new BukkitRunnable() {
-            @SuppressWarnings("deprecation")
+        executor.execute("load-guilds", new Runnable() {
             @Override
+            @SuppressWarnings("deprecation")
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("load guilds", "load-guilds",
+                            callback, this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement("SELECT * FROM " + gt);
+                    ps = prepare(connection, SELECT_GUILDS);
                     rs = ps.executeQuery();
                     while (rs.next()) {
-                        final UUID id = UUID.fromString(rs.getString("uuid"));
-                        final String name = rs.getString("name");
-                        final UUID leader = (!(rs.getString("leader") == null)
-                                && !rs
-                                .getString("leader").equals("")) ? UUID
-                                .fromString(rs.getString("leader")) : null;
-                        final Set<UUID> members = new HashSet<UUID>();
-                        for (final String s : rs.getString("members")
-                                .split(",")) {
-                            if (s != null && !s.equals("")) {
-                                members.add(UUID.fromString(s));
-                            }
-                        }
-                        final Set<GuildRank> ranks = new HashSet<GuildRank>();
-                        final String ranksString = rs.getString("ranks");
-                        for (final String s : ranksString.split(",")) {
-                            ranks.add(GuildRank.deserialize(s));
-                        }
-                        final Location home = LocationSerializer
-                                .deserialize(rs.getString("home"));
-                        final int influence = rs.getInt("influence");
-                        final boolean open = rs.getBoolean("open");
-
-                        final Guild guild = new Guild(callback, id, name,
-                                leader, members, ranks, home, influence, open);
-                        callback.addGuild(guild, true);
+                        final String leaderString = rs.getString("leader");
+                        final UUID leader = leaderString != null
+                                && !leaderString.equals("") ? UUID
+                                .fromString(leaderString) : null;
+                        callback.addGuild(new Guild(callback,
+                                UUID.fromString(rs.getString("uuid")),
+                                rs.getString("name"), leader,
+                                LocationSerializer.deserialize(
+                                        rs.getString("home")),
+                                rs.getInt("influence"),
+                                rs.getBoolean("open"), rs.getInt("members"),
+                                rs.getLong("created")), true);
                     }
+                    close(ps, rs);
+                    ps = null;
+                    rs = null;
 
+                    ps = prepare(connection, SELECT_GUILD_MEMBERSHIPS);
+                    rs = ps.executeQuery();
+                    while (rs.next()) {
+                        callback.indexMember(UUID.fromString(rs
+                                .getString("guild_uuid")), UUID.fromString(rs
+                                .getString("player_uuid")));
+                    }
                     callback.completeLoad();
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("load guilds", ex);
                 } finally {
                     close(ps, rs);
                     freeConnection(connection);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        });
     }
 
     /**
-     * Add a player to a {@link Guild} in the database.
+     * Load the members and {@link GuildRank}s of the given {@link Guild}s in
+     * the background, with one query per {@value #MULTI_GET_SIZE} guilds for
+     * each. Other storage operations may run between the batches. Guilds which
+     * are already hydrated are skipped.
      *
-     * @param uuid the {@link UUID} of the player that will be added to the
-     *        {@link Guild}
-     * @param guild the {@link Guild} to which the player will be added
-     * @since 0.0.5
+     * @param guilds the {@link Guild}s to hydrate
+     * @since 0.1.0
      */
-    public void addPlayerToGuild(final UUID uuid, final Guild guild) {
-        new BukkitRunnable() {
+    public void hydrateGuilds(final Collection<Guild> guilds) {
+        final List<Guild> pending = new ArrayList<Guild>(guilds);
+        for (int i = 0; i < pending.size(); i += MULTI_GET_SIZE) {
+            final List<Guild> chunk = pending.subList(i,
+                    Math.min(i + MULTI_GET_SIZE, pending.size()));
+            executor.execute("hydrate-guilds", new Runnable() {
+                @Override
+                public void run() {
+                    hydrate(chunk);
+                }
+            });
+        }
+    }
+
+    /**
+     * Start loading the members and {@link GuildRank}s of the given
+     * {@link Guild} in the background. A request for a guild which is still
+     * waiting to be loaded replaces the pending one; {@link Guild} only
+     * requests it again once the previous attempt failed.
+     *
+     * @param guild the {@link Guild} to hydrate
+     * @since 0.1.0
+     */
+    public void hydrateGuild(final Guild guild) {
+        executor.executeCoalesced("hydrate-guild", guild.getId(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        hydrate(Collections.singletonList(guild));
+                    }
+                });
+    }
+
+    /**
+     * Load the members and {@link GuildRank}s of the given {@link Guild},
+     * waiting for the storage thread. Used when a guild which hasn't been
+     * hydrated yet is changed or inspected by code which can't wait for
+     * {@link #hydrateGuild(Guild)}.
+     *
+     * @param guild the {@link Guild} to hydrate
+     * @since 0.1.0
+     */
+    public void loadGuildMembers(final Guild guild) {
+        executor.call("hydrate-guild", new Callable<Void>() {
+            @Override
+            public Void call() {
+                hydrate(Collections.singletonList(guild));
+                return null;
+            }
+        }, guild.getId());
+    }
+
+    /**
+     * Load the members and {@link GuildRank}s of at most
+     * {@value #MULTI_GET_SIZE} guilds, on the storage thread.
+     *
+     * @param guilds the {@link Guild}s to hydrate
+     */
+    @SuppressWarnings("deprecation")
+    private void hydrate(final List<Guild> guilds) {
+        final Map<UUID, Guild> pending = new LinkedHashMap<UUID, Guild>();
+        for (final Guild guild : guilds) {
+            if (!guild.isHydrated()) {
+                pending.put(guild.getId(), guild);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (!breaker.canAttempt()) {
+            // the guilds are requested again when they are next accessed
+            hydrationFailed(pending.values());
+            return;
+        }
+
+        // reads have to see the writes kept during an outage
+        replayOutageBuffer();
+        final Connection connection = getConnection();
+        if (connection == null) {
+            connectionUnavailable("load guild members", "hydrate-guilds",
+                    pending.keySet(), null);
+            hydrationFailed(pending.values());
+            return;
+        }
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            final List<UUID> ids = new ArrayList<UUID>(pending.keySet());
+            final Map<UUID, Set<UUID>> members = new HashMap<UUID, Set<UUID>>();
+            final Map<UUID, Map<String, GuildRank>> ranks = new HashMap<UUID, Map<String, GuildRank>>();
+            for (final UUID id : ids) {
+                members.put(id, new HashSet<UUID>());
+                ranks.put(id, new HashMap<String, GuildRank>());
+            }
+
+            ps = prepare(connection, guildSelect(GUILD_RANK_SELECTS,
+                    "select-guild-ranks-", "name, permissions, parent FROM "
+                            + grt,
+                    ids.size()));
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i).toString());
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                final String name = rs.getString("name");
+                ranks.get(UUID.fromString(rs.getString("guild_uuid"))).put(
+                        name, new GuildRank(name, rs.getString("parent"),
+                                GuildAction.fromBits(rs.getInt("permissions")),
+                                new HashSet<UUID>()));
+            }
+            close(ps, rs);
+            ps = null;
+            rs = null;
+
+            ps = prepare(connection, guildSelect(GUILD_MEMBER_SELECTS,
+                    "select-guild-members-", "player_uuid, rank_name FROM "
+                            + gmt, ids.size()));
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i).toString());
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                final UUID id = UUID.fromString(rs.getString("guild_uuid"));
+                final UUID player = UUID.fromString(rs
+                        .getString("player_uuid"));
+                members.get(id).add(player);
+                final GuildRank rank = ranks.get(id).get(
+                        rs.getString("rank_name"));
+                if (rank != null) {
+                    rank.addMember(player);
+                }
+            }
+
+            for (final Guild guild : pending.values()) {
+                guild.completeHydration(members.get(guild.getId()),
+                        new HashSet<GuildRank>(ranks.get(guild.getId())
+                                .values()));
+            }
+        } catch (final SQLException ex) {
+            reportFailure("load guild members", ex);
+            hydrationFailed(pending.values());
+        } finally {
+            close(ps, rs);
+            freeConnection(connection);
+        }
+    }
+
+    /**
+     * Allow the given {@link Guild}s, which couldn't be hydrated, to be
+     * requested again.
+     */
+    @SuppressWarnings("deprecation")
+    private static void hydrationFailed(final Collection<Guild> guilds) {
+        for (final Guild guild : guilds) {
+            guild.hydrationFailed();
+        }
+    }
+
+    /**
+     * Get the statement selecting the given columns, prefixed by the guild
+     * {@link UUID}, for the given amount of guilds, from the given cache.
+     */
+    private static SqlStatement guildSelect(
+            final AtomicReferenceArray<SqlStatement> cache, final String id,
+            final String columns, final int guilds) {
+        final SqlStatement cached = cache.get(guilds);
+        if (cached != null) {
+            return cached;
+        }
+
+        final StringBuilder sql = new StringBuilder("SELECT guild_uuid, ")
+                .append(columns).append(" WHERE guild_uuid IN (");
+        for (int i = 0; i < guilds; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        cache.compareAndSet(guilds, null, new SqlStatement(id + guilds,
+                sql.toString()));
+        return cache.get(guilds);
+    }
+
+    /**
+     * Stream the experience, karma and influence of every stored player into
+     * the given {@link LeaderboardManager}, without holding all rows in memory
+     * at once.
+     *
+     * @param callback the {@link LeaderboardManager} to seed
+     * @since 0.1.0
+     */
+    public void loadPlayerScores(final LeaderboardManager callback) {
+        executor.execute("load-scores", new Runnable() {
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("load player scores",
+                            "load-scores", callback, this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement(
-                            "SELECT uuid,members FROM " + gt
-                                    + " WHERE uuid = ? ");
-                    ps.setString(1, guild.getId().toString());
+                    ps = prepare(connection, SELECT_PLAYER_SCORES);
+                    ps.setFetchSize(getStreamingFetchSize());
                     rs = ps.executeQuery();
-
-                    if (rs.next()) {
-                        final String members = rs.getString("members").concat(
-                                "," + uuid.toString());
-                        ps.close();
-                        rs.close();
-
-                        ps = connection.prepareStatement("UPDATE " + gt
-                                + " SET members = ? WHERE uuid = ?");
-                        ps.setString(1, members);
-                        ps.setString(2, guild.getId().toString());
-                        ps.execute();
-                        ps.close();
-
-                        ps = connection.prepareStatement("UPDATE " + pt
-                                + " SET guild = ? WHERE uuid = ?");
-                        ps.setString(1, guild.getId().toString());
-                        ps.setString(2, uuid.toString());
-                        ps.execute();
-                    } else {
-                        Bukkit.getLogger().warning(
-                                "SEVERE ERROR OCCURRED: could not load expected guild from SQL");
+                    while (rs.next()) {
+                        callback.seedPlayer(
+                                UUID.fromString(rs.getString("uuid")),
+                                rs.getFloat("exp"), rs.getFloat("karma"),
+                                rs.getInt("influence"));
                     }
+                    callback.completeSeed();
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("load player scores", ex);
                 } finally {
                     close(ps, rs);
                     freeConnection(connection);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        });
+    }
+
+    /**
+     * Get the fetch size used for queries which read a whole table, so the
+     * driver doesn't buffer every row.
+     *
+     * @return the fetch size to use for streaming queries
+     * @since 0.1.0
+     */
+    protected int getStreamingFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * Add a player to a {@link Guild} in the database. The membership and
+     * ranks of the {@link Guild} are written in the same transaction.
+     *
+     * @param uuid the {@link UUID} of the player that will be added to the
+     *        {@link Guild}
+     * @param guild the {@link Guild} to which the player will be added
+     * @since 0.0.5
+     */
+    public void addPlayerToGuild(final UUID uuid, final Guild guild) {
+        final WriteBatch batch = new WriteBatch();
+        batch.addGuildMember(guild, uuid);
+        batch.setPlayerGuild(uuid, guild.getId());
+        executor.execute("add-guild-member", batchTask(batch), guild.getId(),
+                uuid);
     }
 
     /**
-     * Remove a player from a {@link Guild} in the used database.
+     * Remove a player from a {@link Guild} in the used database. The
+     * membership and ranks of the {@link Guild} are written in the same
+     * transaction.
      *
      * @param uuid the {@link UUID} of the player to remove
      * @param guild the {@link Guild} from which the player is supposed to be
@@ -498,61 +1153,23 @@ public abstract class DataStore {
      * @since 0.0.5
      */
     public void removePlayerFromGuild(final UUID uuid, final Guild guild) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                ResultSet rs = null;
-                try {
-                    ps = connection.prepareStatement(
-                            "SELECT uuid,members,ranks,leader FROM " + gt
-                                    + " WHERE uuid = ? ");
-                    ps.setString(1, guild.getId().toString());
-                    rs = ps.executeQuery();
-
-                    if (rs.next()) {
-                        String members = rs.getString("members");
-                        String ranks = rs.getString("ranks");
-                        String leader = rs.getString("leader");
-                        members = members.replaceFirst(uuid.toString(), "");
-                        ranks = ranks.replaceFirst(uuid.toString(), "");
-                        leader = leader.replaceFirst(uuid.toString(), "");
-                        ps.close();
-                        rs.close();
-
-                        ps = connection.prepareStatement("UPDATE " + gt
-                                + " SET members = ?, ranks = ?, leader = ? WHERE uuid = ?");
-                        ps.setString(1, members);
-                        ps.setString(2, ranks);
-                        ps.setString(3, leader);
-                        ps.setString(4, guild.getId().toString());
-                        ps.execute();
-                        ps.close();
-
-                        ps = connection.prepareStatement("UPDATE " + pt
-                                + " SET guild = null WHERE uuid = ?");
-                        ps.setString(1, uuid.toString());
-                        ps.execute();
-                    } else {
-                        Bukkit.getLogger().warning(
-                                "SEVERE ERROR OCCURRED: could not load expected guild from SQL");
-                    }
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
-                }
-            }
-        }.runTaskAsynchronously(getPlugin());
+        final WriteBatch batch = new WriteBatch();
+        batch.removeGuildMember(guild, uuid);
+        batch.setPlayerGuild(uuid, null);
+        executor.execute("remove-guild-member", batchTask(batch),
+                guild.getId(), uuid);
     }
 
     /**
-     * Save the given {@link PlayerData} to the database, updating all its
-     * values to the ones in memory.
+     * Save the given {@link PlayerData} to the database, updating the values
+     * which have changed since it was last committed. The values are captured
+     * in a {@link PlayerDataSnapshot} on the calling thread, which should be
+     * the thread changing the data. Nothing is written if the data is clean,
+     * and a commit that is still pending for the same player absorbs this
+     * one.
      *
      * @param commit the {@link PlayerData} that should be saved
+     * @param unloading whether the data is being unloaded
      * @since 0.0.5
      */
     public void commitPlayerData(final PlayerData commit,
@@ -560,92 +1177,1067 @@ public abstract class DataStore {
         if (unloading) {
             commit.setUnloading(true);
         }
+        if (!commit.isDirty()) {
+            return;
+        }
+
+        synchronized (commitLock) {
+            final PlayerDataSnapshot snapshot = takeCommit(commit);
+            if (snapshot == null) {
+                return;
+            }
+            executor.executeCoalesced("commit-player", commit.getPlayerId(),
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            commitPlayerDataNow(commit, snapshot);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Save the given {@link PlayerData} through the executor thread. This is
+     * required for shutdowns, when scheduling new {@link BukkitTask}s is
+     * forbidden. Like {@link #commitPlayerData(PlayerData, boolean)}, only
+     * changed values are written.
+     *
+     * @param commit the {@link PlayerData} that should be saved
+     * @since 0.0.5
+     */
+    public void commitPlayerDataSync(final PlayerData commit) {
+        if (!commit.isDirty()) {
+            return;
+        }
+
+        final Future<Void> future;
+        synchronized (commitLock) {
+            final PlayerDataSnapshot snapshot = takeCommit(commit);
+            if (snapshot == null) {
+                return;
+            }
+            future = executor.enqueue("commit-player", new Callable<Void>() {
+                @Override
+                public Void call() {
+                    commitPlayerDataNow(commit, snapshot);
+                    return null;
+                }
+            }, commit.getPlayerId());
+        }
+        executor.await(future);
+    }
+
+    /**
+     * Take a snapshot of the given {@link PlayerData} to commit, including the
+     * fields of a pending commit it may replace. Must hold the commit lock.
+     */
+    private PlayerDataSnapshot takeCommit(final PlayerData commit) {
+        PlayerDataSnapshot snapshot = commit.takeSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        final PlayerDataSnapshot pending = pendingCommits.get(commit
+                .getPlayerId());
+        if (pending != null) {
+            snapshot = snapshot.mergeWith(pending);
+        }
+        pendingCommits.put(commit.getPlayerId(), snapshot);
+        return snapshot;
+    }
+
+    private void commitPlayerDataNow(final PlayerData commit,
+            final PlayerDataSnapshot snapshot) {
+        pendingCommits.remove(snapshot.getPlayerId(), snapshot);
+        // written as a batch of one, so it is buffered during an outage
+        final WriteBatch batch = new WriteBatch();
+        batch.addSnapshot(commit, snapshot);
+        runBatch(batch, 0);
+    }
+
+    /**
+     * Save all of the given {@link PlayerData} as a single {@link WriteBatch}
+     * on the storage thread, waiting for it to complete. Only dirty data is
+     * written, and only the values that changed; clean data is skipped
+     * entirely. The values are captured on the calling thread.
+     *
+     * @param datum the {@link PlayerData} that should be saved
+     * @return a {@link FlushReport} describing the work done
+     * @since 0.1.0
+     */
+    public FlushReport flushPlayerData(final Collection<PlayerData> datum) {
+        return executor.await(submitFlush(new WriteBatch(), datum));
+    }
+
+    /**
+     * Add all of the given {@link PlayerData} to the given, empty
+     * {@link WriteBatch} and queue it, without waiting for it to complete.
+     * The values are captured on the calling thread.
+     *
+     * @param batch the {@link WriteBatch} to fill, which shows the captured
+     *        {@link PlayerDataSnapshot}s afterwards
+     * @param datum the {@link PlayerData} that should be saved
+     * @return the {@link Future} of the {@link FlushReport}
+     * @since 0.1.0
+     * @see #flushPlayerData(Collection)
+     */
+    public Future<FlushReport> submitFlush(final WriteBatch batch,
+            final Collection<PlayerData> datum) {
+        synchronized (commitLock) {
+            final int skipped = batch.addPlayers(datum);
+            return executor.enqueue("flush-players",
+                    new Callable<FlushReport>() {
+                        @Override
+                        public FlushReport call() {
+                            return runBatch(batch, skipped);
+                        }
+                    }, batch.getPlayerIds());
+        }
+    }
+
+    /**
+     * Get the {@link PlayerDataSnapshot}s of single player commits which have
+     * been queued but not written yet.
+     *
+     * @return the pending commits
+     * @since 0.1.0
+     */
+    public Collection<PlayerDataSnapshot> getPendingCommits() {
+        return new ArrayList<PlayerDataSnapshot>(pendingCommits.values());
+    }
+
+    /**
+     * Execute the given {@link WriteBatch} in a single transaction on the
+     * storage thread, waiting for it to complete. If any write fails the
+     * whole batch is rolled back and the changed fields of its
+     * {@link PlayerData} are restored, so they are retried by the next
+     * commit.
+     *
+     * @param batch the {@link WriteBatch} to execute
+     * @return a {@link FlushReport} describing the work done
+     * @since 0.1.0
+     */
+    public FlushReport executeBatch(final WriteBatch batch) {
+        return executor.call("execute-batch", new Callable<FlushReport>() {
+            @Override
+            public FlushReport call() {
+                return runBatch(batch, 0);
+            }
+        }, batch.getPlayerIds());
+    }
+
+    /**
+     * Execute the given {@link WriteBatch} asynchronously, on the storage
+     * thread.
+     *
+     * @param batch the {@link WriteBatch} to execute
+     * @since 0.1.0
+     * @see #executeBatch(WriteBatch)
+     */
+    public void executeBatchAsync(final WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        executor.execute("execute-batch", batchTask(batch),
+                batch.getPlayerIds());
+    }
+
+    /**
+     * Get the {@link StorageExecutor} all operations of this {@link DataStore}
+     * run on, e.g. to inspect its queue.
+     *
+     * @return the used {@link StorageExecutor}
+     * @since 0.1.0
+     */
+    public StorageExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the average amount of rows per second written by batches since this
+     * {@link DataStore} was created.
+     *
+     * @return the average batch throughput in rows per second
+     * @since 0.1.0
+     */
+    public double getBatchRowsPerSecond() {
+        final long nanos = batchNanos.get();
+        return nanos == 0 ? 0 : batchRows.get() * 1e9 / nanos;
+    }
+
+    private Runnable batchTask(final WriteBatch batch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runBatch(batch, 0);
+            }
+        };
+    }
+
+    /**
+     * Write the given {@link WriteBatch} in a single transaction. Every write
+     * of {@link Guild}s and {@link PlayerData} ends up here, so
+     * implementations which don't use SQL override this. While the database
+     * is unreachable, or older writes are still waiting to be replayed, the
+     * batch is kept in the outage buffer instead and counts as written.
+     *
+     * @param batch the {@link WriteBatch} to write
+     * @param skipped the amount of clean {@link PlayerData} which was left
+     *        out of the batch, for the {@link FlushReport}
+     * @return a {@link FlushReport} describing the work done
+     * @since 0.1.0
+     */
+    protected FlushReport runBatch(final WriteBatch batch, final int skipped) {
+        final int rows = batch.size();
+        if (rows == 0) {
+            return new FlushReport(0, skipped, 0, 0, 0);
+        }
+
+        final long start = System.nanoTime();
+        if (!breaker.canAttempt() || !replayOutageBuffer()) {
+            return bufferBatch(batch, skipped, start);
+        }
+        final Connection connection = getConnection();
+        if (connection == null) {
+            connectionFailed();
+            return bufferBatch(batch, skipped, start);
+        }
+
+        long bytes = 0;
+        boolean success = false;
+        boolean outage = false;
+        try {
+            connection.setAutoCommit(false);
+            bytes = writeBatch(connection, batch);
+            connection.commit();
+            success = true;
+        } catch (final SQLException ex) {
+            reportFailure("write a batch", ex);
+            outage = isConnectionFailure(connection, ex);
+            try {
+                connection.rollback();
+            } catch (final SQLException e) {
+                // swallow exception
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (final SQLException e) {
+                // swallow exception
+            }
+            freeConnection(connection);
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        if (success) {
+            breaker.recordSuccess();
+            return recordBatch(rows, skipped, bytes, elapsed);
+        }
+        if (outage) {
+            connectionFailed();
+            return bufferBatch(batch, skipped, start);
+        }
+        batch.restore();
+        return new FlushReport(0, skipped, rows, 0, elapsed);
+    }
+
+    /**
+     * Write all mutations of the given {@link WriteBatch} using the given
+     * {@link Connection}, which is in a transaction.
+     */
+    private long writeBatch(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        long bytes = 0;
+        bytes += writeCreatedGuilds(connection, batch);
+        bytes += writeGuildColumns(connection, batch);
+        bytes += writeMemberships(connection, batch);
+        bytes += writeRemovedMembers(connection, batch);
+        bytes += writeAddedMembers(connection, batch);
+        bytes += writePlayerGuilds(connection, batch);
+        bytes += writePlayerRows(connection, batch);
+        bytes += writeDeletedGuilds(connection, batch);
+        return bytes;
+    }
+
+    /**
+     * Check whether the given failure means the database is unreachable, as
+     * opposed to a problem with the written data, which would fail again when
+     * retried.
+     *
+     * @param connection the {@link Connection} the failure occurred on
+     * @param ex the failure
+     * @return {@code true} if the connection to the database was lost
+     * @since 0.1.0
+     */
+    protected boolean isConnectionFailure(final Connection connection,
+            final SQLException ex) {
+        // SQLSTATE class 08 is "connection exception"
+        final String state = ex.getSQLState();
+        if (state != null && state.startsWith("08")) {
+            return true;
+        }
+        try {
+            return !connection.isValid(2);
+        } catch (final SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Keep the given {@link WriteBatch} in the outage buffer, or hand its
+     * fields back to the {@link PlayerData} if the buffer can't take it.
+     */
+    private FlushReport bufferBatch(final WriteBatch batch, final int skipped,
+            final long start) {
+        final int rows = batch.size();
+        final OutageBuffer buffer = outageBuffer;
+        if (buffer != null && buffer.append(batch)) {
+            scheduleReplay();
+            return new FlushReport(rows, skipped, 0, 0, System.nanoTime()
+                    - start);
+        }
+        batch.restore();
+        return new FlushReport(0, skipped, rows, 0, System.nanoTime() - start);
+    }
+
+    /**
+     * Record that the database couldn't be reached, reporting it when this
+     * opens the {@link CircuitBreaker}.
+     */
+    private void connectionFailed() {
+        final boolean open = breaker.isOpen();
+        if (breaker.recordFailure() && !open) {
+            plugin.getLogger().warning("[" + getStoreTypeName() + "] The "
+                    + "database is unreachable, writes are kept in "
+                    + "outage-buffer.dat until it is back");
+        }
+    }
+
+    /**
+     * Report that no {@link Connection} could be obtained for the given
+     * action, counting it towards the {@link CircuitBreaker} like
+     * {@link #runBatch(WriteBatch, int)} does, and run the given task again
+     * on the storage thread once the breaker allows the next attempt.
+     *
+     * @param action a description of what couldn't be done, e.g.
+     *        {@code "load guilds"}
+     * @param operation the name of the retried operation, used for metrics
+     * @param key the key a pending retry is replaced by
+     * @param retry the task to run again, {@code null} if the caller asks
+     *        again by itself
+     * @since 0.1.0
+     */
+    protected void connectionUnavailable(final String action,
+            final String operation, final Object key,
+            @Nullable final Runnable retry) {
+        if (breaker.canAttempt()) {
+            // the breaker didn't refuse the connection, so it failed
+            connectionFailed();
+        }
+        metrics.recordError();
+        plugin.getLogger().warning("[" + getStoreTypeName() + "] Couldn't "
+                + action + ", the database is unreachable");
+        if (retry == null || executor.isShutdown() || !plugin.isEnabled()) {
+            return;
+        }
 
         new BukkitRunnable() {
             @Override
             public void run() {
-                final Connection connection = getConnection();
-                PreparedStatement ps = null;
-                final ResultSet rs = null;
+                executor.executeCoalesced(operation, key, retry);
+            }
+        }.runTaskLaterAsynchronously(plugin, Math.max(1,
+                breaker.getRetryDelay() / 50));
+    }
+
+    /**
+     * Write the batches kept in the outage buffer to the database, in the
+     * order they were made, unless the {@link CircuitBreaker} is still
+     * waiting to retry. A batch which fails for another reason than the
+     * connection is skipped, since it would block all later ones. Must be
+     * called on the storage thread.
+     *
+     * @return {@code true} if the buffer is empty afterwards, so new writes
+     *         may go to the database directly
+     */
+    private boolean replayOutageBuffer() {
+        final OutageBuffer buffer = outageBuffer;
+        if (buffer == null || buffer.isEmpty()) {
+            return true;
+        }
+        if (!breaker.canAttempt()) {
+            return false;
+        }
+        final Connection connection = getConnection();
+        if (connection == null) {
+            connectionFailed();
+            return false;
+        }
+
+        final long lag = buffer.getLag();
+        int replayed = 0;
+        try {
+            connection.setAutoCommit(false);
+            WriteBatch batch;
+            while ((batch = buffer.peek()) != null) {
                 try {
-                    ps = connection.prepareStatement("UPDATE " + pt
-                            + " SET lastname = ?, guild = ?, exp = ?, profession = ?, secondprofession = ?, influence = ?, karma = ?, settings = ? WHERE uuid = ?");
-                    ps.setString(1, commit.getPlayerName());
-                    if (commit.getGuild() != null) {
-                        ps.setString(2, commit.getGuild().toString());
-                    } else {
-                        ps.setString(2, "NULL"); // TODO: is this right?
-                    }
-                    ps.setFloat(3, commit.getExperience());
-                    if (commit.getProfession() != null) {
-                        ps.setString(4, commit.getProfession().toString());
-                    } else {
-                        ps.setString(4, "NULL"); // TODO: is this right?
+                    writeBatch(connection, batch);
+                    connection.commit();
+                    replayed++;
+                } catch (final SQLException ex) {
+                    try {
+                        connection.rollback();
+                    } catch (final SQLException e) {
+                        // swallow exception
                     }
-                    if (commit.getSecondProfession() != null) {
-                        ps.setString(5,
-                                commit.getSecondProfession().toString());
-                    } else {
-                        ps.setString(5, "NULL"); // TODO: is this right?
+                    if (isConnectionFailure(connection, ex)) {
+                        throw ex;
                     }
-                    ps.setInt(6, commit.getInfluence());
-                    ps.setFloat(7, commit.getKarma());
-                    ps.setString(8, commit.getSettings().toString());
-                    ps.setString(9, commit.getPlayerId().toString());
-                    ps.executeUpdate();
-                } catch (final SQLException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    close(ps, rs);
-                    freeConnection(connection);
+                    reportFailure("replay a buffered write, skipping it", ex);
                 }
+                buffer.pop();
+            }
+        } catch (final SQLException ex) {
+            reportFailure("replay buffered writes", ex);
+            connectionFailed();
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (final SQLException e) {
+                // swallow exception
             }
-        }.runTaskAsynchronously(getPlugin());
+            freeConnection(connection);
+        }
+
+        breaker.recordSuccess();
+        plugin.getLogger().info("[" + getStoreTypeName() + "] Replayed "
+                + replayed + " writes kept during a database outage of "
+                + lag / 1000 + "s");
+        return true;
     }
 
     /**
-     * Save the given {@link PlayerData} through the executor thread. This is
-     * required for shutdowns, when scheduling new {@link BukkitTask}s is
-     * forbidden.
+     * Schedule a replay of the outage buffer for when the
+     * {@link CircuitBreaker} allows the next attempt, unless one is already
+     * scheduled. Replays keep being scheduled until the buffer is empty.
+     */
+    private void scheduleReplay() {
+        final OutageBuffer buffer = outageBuffer;
+        if (buffer == null || buffer.isEmpty()
+                || executor.isShutdown()
+                || !plugin.isEnabled()
+                || !replayScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Runnable replay = new Runnable() {
+            @Override
+            public void run() {
+                replayScheduled.set(false);
+                replayOutageBuffer();
+                scheduleReplay();
+            }
+        };
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                executor.executeCoalesced("replay-outage-buffer",
+                        buffer, replay);
+            }
+        }.runTaskLaterAsynchronously(plugin, Math.max(1,
+                breaker.getRetryDelay() / 50));
+    }
+
+    /**
+     * Count a successfully written batch towards
+     * {@link #getBatchRowsPerSecond()}.
      *
-     * @param commit the {@link PlayerData} that should be saved
-     * @since 0.0.5
+     * @param rows the amount of written rows
+     * @param skipped the amount of clean {@link PlayerData} which was skipped
+     * @param bytes the approximate amount of written bytes
+     * @param elapsed the time the batch took, in nanoseconds
+     * @return the {@link FlushReport} of the batch
+     * @since 0.1.0
      */
-    public void commitPlayerDataSync(final PlayerData commit) {
-        final Connection connection = getConnection();
+    protected FlushReport recordBatch(final int rows, final int skipped,
+            final long bytes, final long elapsed) {
+        batchRows.addAndGet(rows);
+        batchNanos.addAndGet(elapsed);
+        return new FlushReport(rows, skipped, 0, bytes, elapsed);
+    }
+
+    /**
+     * Write all {@link PlayerData} of the given {@link WriteBatch} to the
+     * players table. By default every distinct set of changed fields gets one
+     * UPDATE statement, executed through {@link PreparedStatement#addBatch()}.
+     * Implementations may override this to use a more efficient statement for
+     * their backend.
+     *
+     * @param connection the {@link Connection} to write with, which is in a
+     *        transaction
+     * @param batch the {@link WriteBatch} to write the players of
+     * @return the approximate amount of bytes written
+     * @throws SQLException if the values could not be written
+     * @since 0.1.0
+     */
+    protected long writePlayerRows(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        final Map<Integer, PreparedStatement> statements = new LinkedHashMap<Integer, PreparedStatement>();
+        long bytes = 0;
+        try {
+            for (final PlayerDataSnapshot snapshot : batch.getSnapshots()
+                    .values()) {
+                final int fields = snapshot.getFields();
+                PreparedStatement ps = statements.get(fields);
+                if (ps == null) {
+                    ps = prepare(connection, playerUpdate(fields));
+                    statements.put(fields, ps);
+                }
+                bytes += bindPlayerUpdate(ps, snapshot, fields);
+                ps.addBatch();
+            }
+            for (final PreparedStatement ps : statements.values()) {
+                ps.executeBatch();
+            }
+        } finally {
+            for (final PreparedStatement ps : statements.values()) {
+                close(ps, null);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Bind the given {@link PlayerData.Field}s of the given
+     * {@link PlayerDataSnapshot} to the given {@link PreparedStatement}, in
+     * the order of {@link PlayerData.Field#values()} and starting at the given
+     * parameter index.
+     *
+     * @param ps the {@link PreparedStatement} to bind to
+     * @param index the index of the first parameter to bind
+     * @param data the {@link PlayerDataSnapshot} to bind the values of
+     * @param fields the bitmask of {@link PlayerData.Field}s to bind
+     * @return the approximate size of the bound values in bytes
+     * @throws SQLException if a value could not be bound
+     * @since 0.1.0
+     */
+    protected long bindPlayerFields(final PreparedStatement ps, int index,
+            final PlayerDataSnapshot data, final int fields)
+            throws SQLException {
+        long bytes = 0;
+        for (final PlayerData.Field field : PlayerData.Field.values()) {
+            if ((fields & field.getMask()) != 0) {
+                bytes += bindPlayerField(ps, index++, data, field);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the name of the players table column the given
+     * {@link PlayerData.Field} is stored in.
+     *
+     * @param field the {@link PlayerData.Field}
+     * @return the name of the matching column
+     * @since 0.1.0
+     */
+    protected static String getPlayerColumn(final PlayerData.Field field) {
+        return PLAYER_COLUMNS[field.ordinal()];
+    }
+
+    /**
+     * Get the statement updating the given {@link PlayerData.Field}s of a
+     * single player.
+     */
+    private static SqlStatement playerUpdate(final int fields) {
+        final SqlStatement cached = PLAYER_UPDATES.get(fields);
+        if (cached != null) {
+            return cached;
+        }
+
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(pt)
+                .append(" SET ");
+        boolean first = true;
+        for (final PlayerData.Field field : PlayerData.Field.values()) {
+            if ((fields & field.getMask()) != 0) {
+                if (!first) {
+                    sql.append(", ");
+                }
+                sql.append(getPlayerColumn(field)).append(" = ?");
+                first = false;
+            }
+        }
+        sql.append(" WHERE uuid = ?");
+        PLAYER_UPDATES.compareAndSet(fields, null, new SqlStatement(
+                "update-player-" + fields, sql.toString()));
+        return PLAYER_UPDATES.get(fields);
+    }
+
+    /**
+     * Get the statement updating the given columns of a single guild.
+     */
+    private static SqlStatement guildUpdate(final Collection<String> columns) {
+        final String key = columns.toString();
+        final SqlStatement cached = GUILD_UPDATES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(gt)
+                .append(" SET ");
+        for (final String column : columns) {
+            sql.append(column).append(" = ?, ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(" WHERE uuid = ?");
+        final SqlStatement created = new SqlStatement("update-guild-" + key,
+                sql.toString());
+        final SqlStatement existing = GUILD_UPDATES.putIfAbsent(key, created);
+        return existing == null ? created : existing;
+    }
+
+    private long bindPlayerUpdate(final PreparedStatement ps,
+            final PlayerDataSnapshot data, final int fields)
+            throws SQLException {
+        final long bytes = bindPlayerFields(ps, 1, data, fields);
+        final String uuid = data.getPlayerId().toString();
+        ps.setString(Integer.bitCount(fields) + 1, uuid);
+        return bytes + uuid.length();
+    }
+
+    private long writePlayerGuilds(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getPlayerGuilds().isEmpty()) {
+            return 0;
+        }
+
         PreparedStatement ps = null;
-        final ResultSet rs = null;
+        long bytes = 0;
         try {
-            ps = connection.prepareStatement("UPDATE " + pt
-                    + " SET lastname = ?, guild = ?, exp = ?, profession = ?, secondprofession = ?, influence = ?, karma = ?, settings = ? WHERE uuid = ?");
-            ps.setString(1, commit.getPlayerName());
-            if (commit.getGuild() != null) {
-                ps.setString(2, commit.getGuild().toString());
-            } else {
-                ps.setString(2, "NULL"); // TODO: is this right?
+            ps = prepare(connection, UPDATE_PLAYER_GUILD);
+            for (final Map.Entry<UUID, UUID> entry : batch.getPlayerGuilds()
+                    .entrySet()) {
+                bytes += bindId(ps, 1, entry.getValue());
+                bytes += bindId(ps, 2, entry.getKey());
+                ps.addBatch();
             }
-            ps.setFloat(3, commit.getExperience());
-            if (commit.getProfession() != null) {
-                ps.setString(4, commit.getProfession().toString());
-            } else {
-                ps.setString(4, "NULL"); // TODO: is this right?
+            ps.executeBatch();
+        } finally {
+            close(ps, null);
+        }
+        return bytes;
+    }
+
+    private long writeCreatedGuilds(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getCreatedGuilds().isEmpty()) {
+            return 0;
+        }
+
+        PreparedStatement ps = null;
+        long bytes = 0;
+        try {
+            ps = prepare(connection, INSERT_GUILD);
+            for (final Map<String, Object> columns : batch.getCreatedGuilds()
+                    .values()) {
+                bytes += bindValue(ps, 1, columns.get("uuid"));
+                bytes += bindValue(ps, 2, columns.get("name"));
+                bytes += bindValue(ps, 3, columns.get("leader"));
+                bytes += bindValue(ps, 4, columns.get("created"));
+                ps.addBatch();
             }
-            if (commit.getSecondProfession() != null) {
-                ps.setString(5, commit.getSecondProfession().toString());
-            } else {
-                ps.setString(5, "NULL"); // TODO: is this right?
+            ps.executeBatch();
+        } finally {
+            close(ps, null);
+        }
+        return bytes;
+    }
+
+    /**
+     * Replace the rank and member rows of every {@link Guild} with a
+     * {@link WriteBatch.Membership} in the given {@link WriteBatch}.
+     */
+    private long writeMemberships(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getMemberships().isEmpty()) {
+            return 0;
+        }
+
+        PreparedStatement deleteRanks = null;
+        PreparedStatement deleteMembers = null;
+        PreparedStatement insertRanks = null;
+        PreparedStatement insertMembers = null;
+        long bytes = 0;
+        try {
+            deleteRanks = prepare(connection, DELETE_GUILD_RANKS);
+            deleteMembers = prepare(connection, DELETE_GUILD_MEMBERS);
+            insertRanks = prepare(connection, INSERT_GUILD_RANK);
+            insertMembers = prepare(connection, INSERT_GUILD_MEMBER);
+            for (final Map.Entry<UUID, WriteBatch.Membership> entry : batch
+                    .getMemberships().entrySet()) {
+                final UUID id = entry.getKey();
+                bindId(deleteRanks, 1, id);
+                deleteRanks.addBatch();
+                bindId(deleteMembers, 1, id);
+                deleteMembers.addBatch();
+
+                for (final WriteBatch.RankRow rank : entry.getValue().ranks) {
+                    bytes += bindId(insertRanks, 1, id);
+                    bytes += bindValue(insertRanks, 2, rank.name);
+                    bytes += bindValue(insertRanks, 3, rank.permissions);
+                    bytes += bindValue(insertRanks, 4, rank.parent);
+                    insertRanks.addBatch();
+                }
+                for (final WriteBatch.MemberRow row : entry.getValue().members) {
+                    bytes += bindMemberRow(insertMembers, row);
+                    insertMembers.addBatch();
+                }
+            }
+            deleteRanks.executeBatch();
+            deleteMembers.executeBatch();
+            insertRanks.executeBatch();
+            insertMembers.executeBatch();
+        } finally {
+            close(deleteRanks, null);
+            close(deleteMembers, null);
+            close(insertRanks, null);
+            close(insertMembers, null);
+        }
+        return bytes;
+    }
+
+    private long writeRemovedMembers(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getRemovedMembers().isEmpty()) {
+            return 0;
+        }
+
+        PreparedStatement ps = null;
+        long bytes = 0;
+        try {
+            ps = prepare(connection, DELETE_GUILD_MEMBER);
+            for (final UUID[] member : batch.getRemovedMembers()) {
+                bytes += bindId(ps, 1, member[0]);
+                bytes += bindId(ps, 2, member[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            close(ps, null);
+        }
+        return bytes;
+    }
+
+    /**
+     * Insert the member rows of players who joined a {@link Guild}, replacing
+     * any rows they may still have in it.
+     */
+    private long writeAddedMembers(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getAddedMembers().isEmpty()) {
+            return 0;
+        }
+
+        PreparedStatement delete = null;
+        PreparedStatement insert = null;
+        long bytes = 0;
+        try {
+            delete = prepare(connection, DELETE_GUILD_MEMBER);
+            insert = prepare(connection, INSERT_GUILD_MEMBER);
+            for (final WriteBatch.MemberRow row : batch.getAddedMembers()) {
+                bindId(delete, 1, row.guild);
+                bindId(delete, 2, row.player);
+                delete.addBatch();
+                bytes += bindMemberRow(insert, row);
+                insert.addBatch();
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+        } finally {
+            close(delete, null);
+            close(insert, null);
+        }
+        return bytes;
+    }
+
+    private long bindMemberRow(final PreparedStatement ps,
+            final WriteBatch.MemberRow row) throws SQLException {
+        return bindId(ps, 1, row.guild) + bindId(ps, 2, row.player)
+                + bindValue(ps, 3, row.rank);
+    }
+
+    private long writeGuildColumns(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        final Map<SqlStatement, PreparedStatement> statements = new LinkedHashMap<SqlStatement, PreparedStatement>();
+        long bytes = 0;
+        try {
+            for (final Map.Entry<UUID, Map<String, Object>> entry : batch
+                    .getGuildColumns().entrySet()) {
+                final Map<String, Object> columns = entry.getValue();
+                final SqlStatement statement = guildUpdate(columns.keySet());
+                PreparedStatement ps = statements.get(statement);
+                if (ps == null) {
+                    ps = prepare(connection, statement);
+                    statements.put(statement, ps);
+                }
+                int index = 1;
+                for (final Object value : columns.values()) {
+                    bytes += bindValue(ps, index++, value);
+                }
+                bytes += bindId(ps, index, entry.getKey());
+                ps.addBatch();
+            }
+            for (final PreparedStatement ps : statements.values()) {
+                ps.executeBatch();
+            }
+        } finally {
+            for (final PreparedStatement ps : statements.values()) {
+                close(ps, null);
+            }
+        }
+        return bytes;
+    }
+
+    private long writeDeletedGuilds(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        if (batch.getDeletedGuilds().isEmpty()) {
+            return 0;
+        }
+
+        PreparedStatement members = null;
+        PreparedStatement memberRows = null;
+        PreparedStatement rankRows = null;
+        PreparedStatement guilds = null;
+        long bytes = 0;
+        try {
+            members = prepare(connection, CLEAR_PLAYER_GUILDS);
+            memberRows = prepare(connection, DELETE_GUILD_MEMBERS);
+            rankRows = prepare(connection, DELETE_GUILD_RANKS);
+            guilds = prepare(connection, DELETE_GUILD);
+            for (final UUID id : batch.getDeletedGuilds()) {
+                bytes += bindId(members, 1, id);
+                members.addBatch();
+                bindId(memberRows, 1, id);
+                memberRows.addBatch();
+                bindId(rankRows, 1, id);
+                rankRows.addBatch();
+                bindId(guilds, 1, id);
+                guilds.addBatch();
+            }
+            members.executeBatch();
+            memberRows.executeBatch();
+            rankRows.executeBatch();
+            guilds.executeBatch();
+        } finally {
+            close(members, null);
+            close(memberRows, null);
+            close(rankRows, null);
+            close(guilds, null);
+        }
+        return bytes;
+    }
+
+    /**
+     * Bind the value of the given {@link PlayerData.Field} to the given
+     * parameter of the given {@link PreparedStatement}.
+     *
+     * @return the approximate size of the bound value in bytes
+     */
+    private long bindPlayerField(final PreparedStatement ps, final int index,
+            final PlayerDataSnapshot data, final PlayerData.Field field)
+            throws SQLException {
+        switch (field) {
+            case NAME:
+                return bindValue(ps, index, data.getPlayerName());
+            case GUILD:
+                return bindId(ps, index, data.getGuild());
+            case PROFESSION:
+                return bindId(ps, index, data.getProfession());
+            case SECOND_PROFESSION:
+                return bindId(ps, index, data.getSecondProfession());
+            case INFLUENCE:
+                return bindValue(ps, index, data.getInfluence());
+            case EXPERIENCE:
+                return bindValue(ps, index, data.getExperience());
+            case KARMA:
+                return bindValue(ps, index, data.getKarma());
+            case MANA:
+                return bindValue(ps, index, data.getMana());
+            case SETTINGS:
+                return bindValue(ps, index, data.getSettings());
+            default:
+                throw new IllegalArgumentException(field.name());
+        }
+    }
+
+    private long bindId(final PreparedStatement ps, final int index,
+            final UUID id) throws SQLException {
+        return bindValue(ps, index, serializeId(id));
+    }
+
+    /**
+     * Bind the given value to the given parameter of the given
+     * {@link PreparedStatement}, using the setter matching its type.
+     *
+     * @return the approximate size of the bound value in bytes
+     */
+    private long bindValue(final PreparedStatement ps, final int index,
+            final Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+            return 0;
+        } else if (value instanceof Integer) {
+            ps.setInt(index, (Integer) value);
+            return 4;
+        } else if (value instanceof Long) {
+            ps.setLong(index, (Long) value);
+            return 8;
+        } else if (value instanceof Float) {
+            ps.setFloat(index, (Float) value);
+            return 4;
+        } else if (value instanceof Boolean) {
+            ps.setBoolean(index, (Boolean) value);
+            return 1;
+        }
+        final String string = value.toString();
+        ps.setString(index, string);
+        return string.length();
+    }
+
+    /**
+     * Serialise the given {@link UUID} for storage.
+     *
+     * @param id the {@link UUID} to serialise, may be {@code null}
+     * @return the serialised {@link UUID}, or {@code null}
+     */
+    static String serializeId(final UUID id) {
+        return id == null ? null : id.toString();
+    }
+
+    /**
+     * Retrieve the data of many players from the database at once, using one
+     * query per {@value #MULTI_GET_SIZE} players. Runs on the storage thread
+     * and waits for the result, so should not be called from the main thread.
+     * The returned {@link PlayerData} is not tracked by the
+     * {@link com.github.rolecraftdev.data.DataManager}.
+     *
+     * @param players the {@link UUID}s of the players to load
+     * @return the loaded {@link PlayerData} by {@link UUID}, players without
+     *         stored data are left out
+     * @since 0.1.0
+     */
+    public Map<UUID, PlayerData> requestPlayerDatum(
+            final Collection<UUID> players) {
+        final List<UUID> ids = new ArrayList<UUID>(players);
+        if (ids.isEmpty()) {
+            return new HashMap<UUID, PlayerData>();
+        }
+
+        final Map<UUID, PlayerData> result = executor.call("load-players",
+                new Callable<Map<UUID, PlayerData>>() {
+                    @Override
+                    public Map<UUID, PlayerData> call() {
+                        return loadPlayerDatum(ids);
+                    }
+                }, ids.toArray());
+        return result == null ? new HashMap<UUID, PlayerData>() : result;
+    }
+
+    /**
+     * Load the data of the given players, on the storage thread.
+     *
+     * @param ids the {@link UUID}s of the players to load
+     * @return the loaded {@link PlayerData} by {@link UUID}
+     * @since 0.1.0
+     */
+    protected Map<UUID, PlayerData> loadPlayerDatum(final List<UUID> ids) {
+        final Map<UUID, PlayerData> result = new HashMap<UUID, PlayerData>();
+        // reads have to see the writes kept during an outage
+        replayOutageBuffer();
+        final Connection connection = getConnection();
+        if (connection == null) {
+            // the callers load the data again when they need it
+            connectionUnavailable("load player data", "load-players", ids,
+                    null);
+            return result;
+        }
+
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            for (int i = 0; i < ids.size(); i += MULTI_GET_SIZE) {
+                final List<UUID> chunk = ids.subList(i,
+                        Math.min(i + MULTI_GET_SIZE, ids.size()));
+                ps = prepare(connection, playerSelect(chunk.size()));
+                for (int j = 0; j < chunk.size(); j++) {
+                    ps.setString(j + 1, chunk.get(j).toString());
+                }
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    final UUID id = UUID.fromString(rs.getString("uuid"));
+                    final PlayerData data = new PlayerData(plugin, id,
+                            rs.getString("lastname"));
+                    initialisePlayerData(data, rs);
+                    result.put(id, data);
+                }
+                close(ps, rs);
+                ps = null;
+                rs = null;
             }
-            ps.setInt(6, commit.getInfluence());
-            ps.setFloat(7, commit.getKarma());
-            ps.setString(8, commit.getSettings().toString());
-            ps.setString(9, commit.getPlayerId().toString());
-            ps.executeUpdate();
         } catch (final SQLException ex) {
-            ex.printStackTrace();
+            reportFailure("load player data", ex);
         } finally {
             close(ps, rs);
             freeConnection(connection);
         }
+        return result;
+    }
+
+    /**
+     * Get the statement selecting the given amount of players by their
+     * {@link UUID}.
+     */
+    private static SqlStatement playerSelect(final int players) {
+        final SqlStatement cached = PLAYER_SELECTS.get(players);
+        if (cached != null) {
+            return cached;
+        }
+
+        final StringBuilder sql = new StringBuilder("SELECT * FROM ")
+                .append(pt).append(" WHERE uuid IN (");
+        for (int i = 0; i < players; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        PLAYER_SELECTS.compareAndSet(players, null, new SqlStatement(
+                "select-players-" + players, sql.toString()));
+        return PLAYER_SELECTS.get(players);
+    }
+
+    /**
+     * Initialise the given {@link PlayerData} with the current row of the
+     * given {@link ResultSet}.
+     */
+    private void initialisePlayerData(final PlayerData data,
+            final ResultSet rs) throws SQLException {
+        data.initialise(parseId(rs.getString("guild")),
+                parseId(rs.getString("profession")),
+                parseId(rs.getString("secondprofession")),
+                rs.getInt("influence"), rs.getFloat("exp"),
+                rs.getFloat("karma"), rs.getFloat("mana")/*, questData*/,
+                PlayerSettings.fromString(rs.getString("settings")));
+    }
+
+    /**
+     * Parse a stored {@link UUID}, which older versions may have stored as
+     * the string {@code "NULL"}.
+     */
+    private static UUID parseId(final String id) {
+        if (id == null || id.equalsIgnoreCase("null")) {
+            return null;
+        }
+        return UUID.fromString(id);
     }
 
     /**
@@ -657,136 +2249,96 @@ public abstract class DataStore {
      *        {@code true}, allowing for recursive look-ups
      * @since 0.0.5
      */
-    @SuppressWarnings("deprecation")
     public void requestPlayerData(final PlayerData callback,
             final boolean recursive) {
-        final String uuid = callback.getPlayerId().toString();
-        final String name = callback.getPlayerName();
-        final float originalSin = plugin.getConfigValues().getOriginalSin();
         if (recursive) {
-            final Connection connection = getConnection();
-            PreparedStatement ps = null;
-            ResultSet rs = null;
-            try {
-                ps = connection.prepareStatement("SELECT * FROM " + pt
-                        + " WHERE uuid = ?");
-                ps.setString(1, uuid);
-                rs = ps.executeQuery();
-
-                if (rs.next()) {
-                       /* ResultSetMetaData rsmd = rs.getMetaData();
-                        Map<UUID, String> questData = new HashMap<UUID, String>();
-                        for (int i = 0; i < rsmd.getColumnCount(); i++) {
-                            if (rsmd.getColumnName(i).startsWith("quest")) {
-                                questData.put(UUID.fromString(
-                                                rsmd.getColumnName(i)
-                                                        .substring(6)),
-                                        rs.getString(i));
-                            }
-                        }*/
-                    callback.initialise(
-                            UUID.fromString(rs.getString("guild")),
-                            UUID.fromString(rs.getString("profession")),
-                            UUID.fromString(rs.getString("secondprofession")),
-                            rs.getInt("influence"), rs.getFloat("exp"),
-                            rs.getFloat("karma"), rs.getFloat("mana"),
-                            PlayerSettings
-                                    .fromString(rs.getString("settings")));
-                } else {
-                    ps.close();
-                    ps = connection.prepareStatement("INSERT INTO " + pt
-                            + " (uuid, lastname) VALUES (?,?)");
-                    ps.setString(1, uuid);
-                    ps.setString(2, name);
-                    ps.execute();
-                    callback.initialise(null, null, null, 0, 0f, -originalSin,
-                            plugin.getConfigValues().getMaximumMana(),
-                            PlayerSettings.defaults());
+            executor.call("load-player", new Callable<Void>() {
+                @Override
+                public Void call() {
+                    loadPlayerData(callback);
+                    return null;
                 }
-
-            } catch (final SQLException ex) {
-                ex.printStackTrace();
-            } finally {
-                close(ps, rs);
-                freeConnection(connection);
-            }
+            }, callback.getPlayerId());
         } else {
-            new BukkitRunnable() {
+            executor.execute("load-player", new Runnable() {
                 @Override
                 public void run() {
-                    final Connection connection = getConnection();
-                    PreparedStatement ps = null;
-                    ResultSet rs = null;
-                    try {
-                        ps = connection
-                                .prepareStatement("SELECT * FROM " + pt
-                                        + " WHERE uuid = ?");
-                        ps.setString(1, uuid);
-                        rs = ps.executeQuery();
-
-                        if (rs.next()) {
-                            /*final ResultSetMetaData rsmd = rs.getMetaData();
-                            final Map<UUID, String> questData = new HashMap<UUID, String>();
-                            for (int i = 0;
-                                 i < rsmd.getColumnCount(); i++) {
-                                if (rsmd.getColumnName(i)
-                                        .startsWith("quest")) {
-                                    questData.put(UUID.fromString(
-                                                    rsmd.getColumnName(i)
-                                                            .substring(6)),
-                                            rs.getString(i));
-                                }
-                            }*/
-                            final String guildIdStr = rs.getString("guild");
-                            UUID guildId = null;
-                            if (guildIdStr != null && !guildIdStr
-                                    .equalsIgnoreCase("null")) {
-                                guildId = UUID.fromString(guildIdStr);
-                            }
+                    loadPlayerData(callback);
+                }
+            }, callback.getPlayerId());
+        }
+    }
 
-                            final String profIdStr = rs.getString("profession");
-                            UUID profId = null;
-                            if (profIdStr != null && !profIdStr
-                                    .equalsIgnoreCase("null")) {
-                                profId = UUID.fromString(profIdStr);
-                            }
+    /**
+     * Load the data of the given player into it, on the storage thread,
+     * storing default data if the player has none yet. While the database
+     * can't be reached the data is left unloaded, and loaded once it is back.
+     *
+     * @param callback the {@link PlayerData} to load
+     * @since 0.1.0
+     */
+    @SuppressWarnings("deprecation")
+    protected void loadPlayerData(final PlayerData callback) {
+        final String uuid = callback.getPlayerId().toString();
+        final String name = callback.getPlayerName();
+        final float originalSin = plugin.getConfigValues().getOriginalSin();
 
-                            final String prof2IdStr = rs
-                                    .getString("secondprofession");
-                            UUID prof2Id = null;
-                            if (prof2IdStr != null && !prof2IdStr
-                                    .equalsIgnoreCase("null")) {
-                                prof2Id = UUID.fromString(prof2IdStr);
+        // reads have to see the writes kept during an outage
+        replayOutageBuffer();
+        final Connection connection = getConnection();
+        if (connection == null) {
+            // left unloaded rather than initialised with the defaults
+            connectionUnavailable("load player data", "load-player",
+                    callback.getPlayerId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!callback.isLoaded()
+                                    && !callback.isUnloading()) {
+                                loadPlayerData(callback);
                             }
-
-                            callback.initialise(guildId, profId, prof2Id,
-                                    rs.getInt("influence"),
-                                    rs.getFloat("exp"),
-                                    rs.getFloat("karma"),
-                                    rs.getFloat("mana")/*, questData*/,
-                                    PlayerSettings.fromString(
-                                            rs.getString("settings")));
-                        } else {
-                            ps.close();
-                            ps = connection
-                                    .prepareStatement("INSERT INTO " + pt
-                                            + " (uuid, lastname) VALUES (?,?)");
-                            ps.setString(1, uuid);
-                            ps.setString(2, name);
-                            ps.execute();
-                            callback.initialise(null, null, null, 0, 0f,
-                                    -originalSin,
-                                    plugin.getConfigValues().getMaximumMana(),
-                                    PlayerSettings.defaults());
                         }
-                    } catch (final SQLException ex) {
-                        ex.printStackTrace();
-                    } finally {
-                        close(ps, rs);
-                        freeConnection(connection);
+                    });
+            return;
+        }
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = prepare(connection, SELECT_PLAYER);
+            ps.setString(1, uuid);
+            rs = ps.executeQuery();
+
+            if (rs.next()) {
+                /*final ResultSetMetaData rsmd = rs.getMetaData();
+                final Map<UUID, String> questData = new HashMap<UUID, String>();
+                for (int i = 0; i < rsmd.getColumnCount(); i++) {
+                    if (rsmd.getColumnName(i).startsWith("quest")) {
+                        questData.put(UUID.fromString(
+                                        rsmd.getColumnName(i).substring(6)),
+                                rs.getString(i));
                     }
+                }*/
+                initialisePlayerData(callback, rs);
+                if (!name.equals(rs.getString("lastname"))) {
+                    callback.markDirty(PlayerData.Field.NAME);
                 }
-            }.runTaskAsynchronously(getPlugin());
+            } else {
+                close(ps, rs);
+                rs = null;
+                ps = prepare(connection, INSERT_PLAYER);
+                ps.setString(1, uuid);
+                ps.setString(2, name);
+                ps.execute();
+                callback.initialise(null, null, null, 0, 0f, -originalSin,
+                        plugin.getConfigValues().getMaximumMana(),
+                        PlayerSettings.defaults());
+                // only the key columns were inserted, write the defaults
+                callback.markDirty(PlayerData.Field.ALL);
+            }
+        } catch (final SQLException ex) {
+            reportFailure("load player data", ex);
+        } finally {
+            close(ps, rs);
+            freeConnection(connection);
         }
     }
 }
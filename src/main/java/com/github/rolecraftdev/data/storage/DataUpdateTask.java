@@ -36,7 +36,8 @@ import javax.annotation.Nonnull;
 
 /**
  * A task that updates {@link PlayerData} entries in the database. Designed to
- * be run asynchronously and periodically.
+ * be run periodically on the main thread: the changed data is captured there
+ * and only written on the storage thread.
  *
  * Scheduled in {@link DataManager}.
  *
@@ -58,6 +59,8 @@ public final class DataUpdateTask extends BukkitRunnable {
     @Override
     public void run() {
         final DataManager dataManager = this.plugin.getDataManager();
-        dataManager.saveAllPlayerData(true);
+        dataManager.submitFlush();
+        dataManager.evictExpiredPrefetches();
+        dataManager.evictExpiredOfflineData();
     }
 }
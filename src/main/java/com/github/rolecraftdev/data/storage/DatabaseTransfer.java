@@ -0,0 +1,651 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Copies all data from the SQL database of one {@link DataStore} into the
+ * empty SQL database of another, e.g. from SQLite to MySQL.
+ *
+ * Every table is read through a single forward-only cursor in primary key
+ * order, using the streaming fetch size of the source, and written with
+ * batched inserts. Each batch is committed together with a checkpoint of the
+ * last copied key, so memory use is bounded by the batch size and an
+ * interrupted transfer continues after that key when it is run again.
+ * Afterwards the row counts and checksums of both databases are compared;
+ * only when they match is the schema version copied, which marks the target
+ * database as usable.
+ *
+ * @since 0.1.0
+ */
+public final class DatabaseTransfer {
+    /**
+     * The query used for creating the checkpoint table in the target
+     * database. Valid for both SQLite and MySQL.
+     */
+    private static final String CREATE_CHECKPOINT_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + DataStore.tft + " ("
+                    + "source_table VARCHAR(20) PRIMARY KEY,"
+                    + "last_key VARCHAR(255),"
+                    + "copied BIGINT" + ")";
+    /**
+     * The copied tables, in an order which satisfies their references.
+     */
+    private static final Table[] TABLES = {
+            new Table(DataStore.gt, 1, new Column("uuid", Type.TEXT),
+                    new Column("name", Type.TEXT),
+                    new Column("leader", Type.TEXT),
+                    new Column("home", Type.TEXT),
+                    new Column("influence", Type.INTEGER),
+                    new Column("open", Type.BOOLEAN),
+                    new Column("created", Type.INTEGER)),
+            new Table(DataStore.grt, 2, new Column("guild_uuid", Type.TEXT),
+                    new Column("name", Type.TEXT),
+                    new Column("permissions", Type.INTEGER),
+                    new Column("parent", Type.TEXT)),
+            new Table(DataStore.gmt, 3, new Column("guild_uuid", Type.TEXT),
+                    new Column("player_uuid", Type.TEXT),
+                    new Column("rank_name", Type.TEXT)),
+            new Table(DataStore.pt, 1, new Column("uuid", Type.TEXT),
+                    new Column("lastname", Type.TEXT),
+                    new Column("guild", Type.TEXT),
+                    new Column("exp", Type.REAL),
+                    new Column("profession", Type.TEXT),
+                    new Column("secondprofession", Type.TEXT),
+                    new Column("influence", Type.INTEGER),
+                    new Column("karma", Type.REAL),
+                    new Column("mana", Type.REAL),
+                    new Column("settings", Type.TEXT)) };
+    /**
+     * The minimum time between two progress messages, in nanoseconds.
+     */
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(
+            10);
+
+    /**
+     * The {@link DataStore} the data is copied from.
+     */
+    private final DataStore source;
+    /**
+     * The {@link DataStore} the data is copied to.
+     */
+    private final DataStore target;
+    /**
+     * The maximum amount of rows inserted per transaction.
+     */
+    private final int batchSize;
+    /**
+     * The {@link Logger} progress is reported to.
+     */
+    private final Logger logger;
+    /**
+     * The prefix of all progress messages.
+     */
+    private final String prefix;
+
+    /**
+     * Constructor.
+     *
+     * @param source the {@link DataStore} to copy the data from
+     * @param target the {@link DataStore} to copy the data to, which isn't
+     *        in use
+     * @param batchSize the maximum amount of rows inserted per transaction
+     * @since 0.1.0
+     */
+    public DatabaseTransfer(final DataStore source, final DataStore target,
+            final int batchSize) {
+        this.source = source;
+        this.target = target;
+        this.batchSize = Math.max(1, batchSize);
+        logger = source.getPlugin().getLogger();
+        prefix = "[" + source.getStoreTypeName() + " -> "
+                + target.getStoreTypeName() + "] ";
+    }
+
+    /**
+     * Copy all data and verify it. Must be called on the storage thread of
+     * the source {@link DataStore}, so none of its data changes meanwhile.
+     *
+     * @return {@code true} if the copied data matches the source data, in
+     *         which case the target database is ready to be used
+     * @throws SQLException if the transfer failed, all batches committed
+     *         before the failure are kept and resumed from when it is run
+     *         again
+     * @since 0.1.0
+     */
+    public boolean run() throws SQLException {
+        final Connection from = source.getConnection();
+        if (from == null) {
+            throw new SQLException("Couldn't connect to the "
+                    + source.getStoreTypeName() + " database");
+        }
+        Connection to = null;
+        try {
+            final String version = readVersion(from);
+            if (!source.getMigrationRunner().getLatestVersion().equals(
+                    version)) {
+                throw new SQLException("The database is at schema version "
+                        + version + ", its migrations have to complete"
+                        + " first");
+            }
+
+            to = target.openBulkConnection();
+            target.createTables(to);
+            execute(to, CREATE_CHECKPOINT_TABLE);
+            for (final Table table : TABLES) {
+                copy(from, to, table);
+            }
+
+            boolean verified = true;
+            for (final Table table : TABLES) {
+                verified &= verify(from, to, table);
+            }
+            if (verified) {
+                finish(to, version);
+                logger.info(prefix + "Transfer completed and verified");
+            }
+            return verified;
+        } finally {
+            source.freeConnection(from);
+            if (to != null) {
+                try {
+                    to.close();
+                } catch (final SQLException e) {
+                    // swallow exception
+                }
+            }
+        }
+    }
+
+    private void copy(final Connection from, final Connection to,
+            final Table table) throws SQLException {
+        String[] lastKey = null;
+        long copied = 0;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = to.prepareStatement("SELECT last_key, copied FROM "
+                    + DataStore.tft + " WHERE source_table = ?");
+            ps.setString(1, table.name);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                lastKey = decodeKey(rs.getString("last_key"));
+                copied = rs.getLong("copied");
+            }
+        } finally {
+            DataStore.closeQuietly(ps, rs);
+        }
+        if (lastKey == null && count(to, table) > 0) {
+            throw new SQLException("The " + table.name + " table of the "
+                    + target.getStoreTypeName() + " database isn't empty");
+        }
+        if (lastKey != null) {
+            logger.info(prefix + "Resuming " + table.name + " after "
+                    + copied + " rows");
+        }
+
+        PreparedStatement select = null;
+        PreparedStatement insert = null;
+        ResultSet cursor = null;
+        to.setAutoCommit(false);
+        try {
+            select = from.prepareStatement(table.select(lastKey != null),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            select.setFetchSize(source.getStreamingFetchSize());
+            if (lastKey != null) {
+                table.bindAfter(select, lastKey);
+            }
+            insert = to.prepareStatement(table.insert());
+            cursor = select.executeQuery();
+
+            final long start = System.nanoTime();
+            long reported = start;
+            long rows = 0;
+            int pending = 0;
+            while (cursor.next()) {
+                table.copy(cursor, insert);
+                insert.addBatch();
+                lastKey = table.readKey(cursor);
+                if (++pending < batchSize) {
+                    continue;
+                }
+
+                commit(to, insert, table, lastKey, copied += pending);
+                rows += pending;
+                pending = 0;
+                final long now = System.nanoTime();
+                if (now - reported >= PROGRESS_INTERVAL) {
+                    reported = now;
+                    logger.info(prefix + table.name + ": " + copied
+                            + " rows copied, " + rate(rows, now - start)
+                            + " rows/s");
+                }
+            }
+            if (pending > 0) {
+                commit(to, insert, table, lastKey, copied += pending);
+                rows += pending;
+            }
+            logger.info(prefix + table.name + ": copied " + rows + " rows in "
+                    + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()
+                            - start) + "s, " + rate(rows, System.nanoTime()
+                            - start) + " rows/s");
+        } catch (final SQLException ex) {
+            to.rollback();
+            throw ex;
+        } finally {
+            DataStore.closeQuietly(select, cursor);
+            DataStore.closeQuietly(insert, null);
+            to.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Insert the pending rows and store the checkpoint in one transaction.
+     */
+    private void commit(final Connection to, final PreparedStatement insert,
+            final Table table, final String[] lastKey, final long copied)
+            throws SQLException {
+        insert.executeBatch();
+        PreparedStatement ps = null;
+        try {
+            ps = to.prepareStatement("DELETE FROM " + DataStore.tft
+                    + " WHERE source_table = ?");
+            ps.setString(1, table.name);
+            ps.executeUpdate();
+            DataStore.closeQuietly(ps, null);
+
+            ps = to.prepareStatement("INSERT INTO " + DataStore.tft
+                    + " (source_table, last_key, copied) VALUES (?, ?, ?)");
+            ps.setString(1, table.name);
+            ps.setString(2, encodeKey(lastKey));
+            ps.setLong(3, copied);
+            ps.executeUpdate();
+        } finally {
+            DataStore.closeQuietly(ps, null);
+        }
+        to.commit();
+    }
+
+    private boolean verify(final Connection from, final Connection to,
+            final Table table) throws SQLException {
+        final long[] expected = digest(from, source, table);
+        final long[] actual = digest(to, target, table);
+        if (expected[0] == actual[0] && expected[1] == actual[1]) {
+            logger.info(prefix + table.name + ": verified " + actual[0]
+                    + " rows, checksum " + Long.toHexString(actual[1]));
+            return true;
+        }
+        logger.severe(prefix + table.name + ": " + expected[0]
+                + " rows with checksum " + Long.toHexString(expected[1])
+                + " were copied to " + actual[0] + " rows with checksum "
+                + Long.toHexString(actual[1]));
+        return false;
+    }
+
+    /**
+     * Get the amount of rows in the given table and the sum of their hashes,
+     * which doesn't depend on the order the database returns them in.
+     */
+    private long[] digest(final Connection connection, final DataStore store,
+            final Table table) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(table.select(false),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(store.getStreamingFetchSize());
+            rs = ps.executeQuery();
+            long rows = 0;
+            long sum = 0;
+            while (rs.next()) {
+                rows++;
+                sum += table.hash(rs);
+            }
+            return new long[] { rows, sum };
+        } finally {
+            DataStore.closeQuietly(ps, rs);
+        }
+    }
+
+    /**
+     * Copy the schema version and remove the checkpoints, which makes the
+     * target database usable.
+     */
+    private void finish(final Connection to, final String version)
+            throws SQLException {
+        PreparedStatement ps = null;
+        to.setAutoCommit(false);
+        try {
+            ps = to.prepareStatement("DELETE FROM " + DataStore.mdt
+                    + " WHERE entry = ?");
+            ps.setString(1, DataStore.mde);
+            ps.executeUpdate();
+            DataStore.closeQuietly(ps, null);
+
+            ps = to.prepareStatement("INSERT INTO " + DataStore.mdt
+                    + " (version, entry) VALUES (?, ?)");
+            ps.setString(1, version);
+            ps.setString(2, DataStore.mde);
+            ps.executeUpdate();
+            DataStore.closeQuietly(ps, null);
+
+            ps = to.prepareStatement("DELETE FROM " + DataStore.tft);
+            ps.executeUpdate();
+            to.commit();
+        } catch (final SQLException ex) {
+            to.rollback();
+            throw ex;
+        } finally {
+            DataStore.closeQuietly(ps, null);
+            to.setAutoCommit(true);
+        }
+    }
+
+    private static String readVersion(final Connection connection)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement("SELECT version FROM "
+                    + DataStore.mdt + " WHERE entry = ?");
+            ps.setString(1, DataStore.mde);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getString("version") : null;
+        } finally {
+            DataStore.closeQuietly(ps, rs);
+        }
+    }
+
+    private static long count(final Connection connection,
+            final Table table) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement("SELECT COUNT(*) FROM "
+                    + table.name);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            DataStore.closeQuietly(ps, rs);
+        }
+    }
+
+    private static void execute(final Connection connection,
+            final String sql) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            ps.execute();
+        } finally {
+            DataStore.closeQuietly(ps, null);
+        }
+    }
+
+    private static long rate(final long rows, final long nanos) {
+        return nanos <= 0 ? rows : rows * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Encode the given key values, each prefixed with its length, so values
+     * containing any character can be decoded again.
+     */
+    private static String encodeKey(final String[] key) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String value : key) {
+            final String text = value == null ? "" : value;
+            builder.append(text.length()).append(':').append(text);
+        }
+        return builder.toString();
+    }
+
+    private static String[] decodeKey(final String encoded)
+            throws SQLException {
+        if (encoded == null) {
+            return null;
+        }
+        final List<String> values = new ArrayList<String>();
+        int i = 0;
+        try {
+            while (i < encoded.length()) {
+                final int colon = encoded.indexOf(':', i);
+                final int length = Integer.parseInt(encoded.substring(i,
+                        colon));
+                values.add(encoded.substring(colon + 1, colon + 1 + length));
+                i = colon + 1 + length;
+            }
+        } catch (final RuntimeException ex) {
+            throw new SQLException("Invalid transfer checkpoint: " + encoded);
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * The way a column is read, written and hashed.
+     */
+    private enum Type {
+        TEXT,
+        INTEGER,
+        REAL,
+        BOOLEAN
+    }
+
+    /**
+     * A copied column.
+     */
+    private static final class Column {
+        /**
+         * The name of the column.
+         */
+        private final String name;
+        /**
+         * The {@link Type} of the column.
+         */
+        private final Type type;
+
+        private Column(final String name, final Type type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A copied table, whose primary key consists of its first columns.
+     */
+    private static final class Table {
+        /**
+         * The prime of the 64-bit FNV-1a hash.
+         */
+        private static final long FNV_PRIME = 0x100000001b3L;
+        /**
+         * The offset basis of the 64-bit FNV-1a hash.
+         */
+        private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+        /**
+         * The name of the table.
+         */
+        private final String name;
+        /**
+         * The amount of leading columns which form the primary key.
+         */
+        private final int keyColumns;
+        /**
+         * The copied columns.
+         */
+        private final Column[] columns;
+
+        private Table(final String name, final int keyColumns,
+                final Column... columns) {
+            this.name = name;
+            this.keyColumns = keyColumns;
+            this.columns = columns;
+        }
+
+        /**
+         * Get the query selecting all columns in key order, optionally only
+         * the rows after a key bound through
+         * {@link #bindAfter(PreparedStatement, String[])}.
+         */
+        private String select(final boolean after) {
+            final StringBuilder sql = new StringBuilder("SELECT ");
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i].name);
+            }
+            sql.append(" FROM ").append(name);
+            if (after) {
+                // (a > ?) OR (a = ? AND b > ?) OR ...
+                sql.append(" WHERE ");
+                for (int i = 0; i < keyColumns; i++) {
+                    sql.append(i == 0 ? "(" : " OR (");
+                    for (int j = 0; j < i; j++) {
+                        sql.append(columns[j].name).append(" = ? AND ");
+                    }
+                    sql.append(columns[i].name).append(" > ?)");
+                }
+            }
+            sql.append(" ORDER BY ");
+            for (int i = 0; i < keyColumns; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i].name);
+            }
+            return sql.toString();
+        }
+
+        private void bindAfter(final PreparedStatement ps,
+                final String[] key) throws SQLException {
+            int index = 1;
+            for (int i = 0; i < keyColumns; i++) {
+                for (int j = 0; j <= i; j++) {
+                    ps.setString(index++, key[j]);
+                }
+            }
+        }
+
+        private String insert() {
+            final StringBuilder sql = new StringBuilder("INSERT INTO ")
+                    .append(name).append(" (");
+            final StringBuilder values = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i].name);
+                values.append(i == 0 ? "?" : ", ?");
+            }
+            return sql.append(") VALUES (").append(values).append(')')
+                    .toString();
+        }
+
+        private String[] readKey(final ResultSet rs) throws SQLException {
+            final String[] key = new String[keyColumns];
+            for (int i = 0; i < keyColumns; i++) {
+                key[i] = rs.getString(i + 1);
+            }
+            return key;
+        }
+
+        /**
+         * Bind the values of the current row of the cursor to the insert.
+         */
+        private void copy(final ResultSet rs, final PreparedStatement ps)
+                throws SQLException {
+            for (int i = 1; i <= columns.length; i++) {
+                switch (columns[i - 1].type) {
+                    case TEXT:
+                        final String text = rs.getString(i);
+                        if (text == null) {
+                            ps.setNull(i, Types.VARCHAR);
+                        } else {
+                            ps.setString(i, text);
+                        }
+                        break;
+                    case INTEGER:
+                        final long integer = rs.getLong(i);
+                        if (rs.wasNull()) {
+                            ps.setNull(i, Types.INTEGER);
+                        } else {
+                            ps.setLong(i, integer);
+                        }
+                        break;
+                    case REAL:
+                        final double real = rs.getDouble(i);
+                        if (rs.wasNull()) {
+                            ps.setNull(i, Types.DOUBLE);
+                        } else {
+                            ps.setDouble(i, real);
+                        }
+                        break;
+                    default:
+                        final boolean bool = rs.getBoolean(i);
+                        if (rs.wasNull()) {
+                            ps.setNull(i, Types.BOOLEAN);
+                        } else {
+                            ps.setBoolean(i, bool);
+                        }
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Hash the values of the current row the way they are copied, so the
+         * hash is the same for both databases.
+         */
+        private long hash(final ResultSet rs) throws SQLException {
+            long hash = FNV_OFFSET;
+            for (int i = 1; i <= columns.length; i++) {
+                final String value;
+                switch (columns[i - 1].type) {
+                    case TEXT:
+                        value = rs.getString(i);
+                        break;
+                    case INTEGER:
+                        value = Long.toString(rs.getLong(i));
+                        break;
+                    case REAL:
+                        value = Double.toString(rs.getDouble(i));
+                        break;
+                    default:
+                        value = Boolean.toString(rs.getBoolean(i));
+                        break;
+                }
+                // NULL hashes differently from every string
+                final String text = rs.wasNull() ? "\u0000" : value;
+                for (int c = 0; c < text.length(); c++) {
+                    hash = (hash ^ text.charAt(c)) * FNV_PRIME;
+                }
+                hash = (hash ^ 0xffff) * FNV_PRIME;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.util.LatencyHistogram;
+
+/**
+ * Describes the work done by a single flush of {@link PlayerData} to a
+ * {@link DataStore}.
+ *
+ * @since 0.1.0
+ * @see DataStore#flushPlayerData(java.util.Collection)
+ */
+public final class FlushReport {
+    /**
+     * The amount of dirty rows that were written.
+     */
+    private final int rows;
+    /**
+     * The amount of clean {@link PlayerData} that was skipped.
+     */
+    private final int skipped;
+    /**
+     * The amount of dirty rows that could not be written.
+     */
+    private final int failed;
+    /**
+     * The approximate amount of bytes written.
+     */
+    private final long bytes;
+    /**
+     * The time the flush took, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param rows the amount of dirty rows that were written
+     * @param skipped the amount of clean {@link PlayerData} that was skipped
+     * @param failed the amount of dirty rows that could not be written
+     * @param bytes the approximate amount of bytes written
+     * @param elapsedNanos the time the flush took, in nanoseconds
+     * @since 0.1.0
+     */
+    public FlushReport(final int rows, final int skipped, final int failed,
+            final long bytes, final long elapsedNanos) {
+        this.rows = rows;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the amount of dirty rows that were written.
+     *
+     * @return the amount of written rows
+     * @since 0.1.0
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the amount of {@link PlayerData} that was skipped because nothing
+     * had changed.
+     *
+     * @return the amount of skipped {@link PlayerData}
+     * @since 0.1.0
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Get the amount of dirty rows that could not be written. Their changes
+     * are retried on the next flush.
+     *
+     * @return the amount of failed rows
+     * @since 0.1.0
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the approximate amount of bytes of column data written.
+     *
+     * @return the amount of bytes written
+     * @since 0.1.0
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the time the flush took, in nanoseconds.
+     *
+     * @return the elapsed time in nanoseconds
+     * @since 0.1.0
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the throughput of the flush in rows per second.
+     *
+     * @return the amount of rows written per second
+     * @since 0.1.0
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public String toString() {
+        return "Flushed " + rows + " dirty rows (" + skipped + " clean, "
+                + failed + " failed), ~" + bytes + " bytes in "
+                + LatencyHistogram.toMillis(elapsedNanos) + "ms ("
+                + (long) getRowsPerSecond() + " rows/s)";
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.guild.GuildAction;
+import com.github.rolecraftdev.guild.GuildRank;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Copies the comma separated members and ranks columns of the guild table
+ * into {@link DataStore#gmt} and {@link DataStore#grt}, in batches of guilds
+ * ordered by their {@link UUID}. The old columns are left in place but no
+ * longer read.
+ *
+ * @since 0.1.0
+ */
+final class GuildMemberMigration extends Migration {
+    /**
+     * Constructor.
+     */
+    GuildMemberMigration() {
+        super(DataStore.SQLVERSION1, DataStore.SQLVERSION2, false);
+    }
+
+    @Override
+    public String migrateBatch(final Connection connection,
+            final String checkpoint, final int limit) throws SQLException {
+        PreparedStatement select = null;
+        PreparedStatement insertRanks = null;
+        PreparedStatement insertMembers = null;
+        ResultSet rs = null;
+        int guilds = 0;
+        String last = checkpoint;
+        try {
+            select = connection.prepareStatement("SELECT uuid, members, ranks"
+                    + " FROM " + DataStore.gt + " WHERE uuid > ?"
+                    + " ORDER BY uuid LIMIT " + limit);
+            select.setString(1, checkpoint);
+            insertRanks = connection.prepareStatement("INSERT INTO "
+                    + DataStore.grt + " (guild_uuid, name, permissions) "
+                    + "VALUES (?, ?, ?)");
+            insertMembers = connection.prepareStatement(
+                    DataStore.INSERT_GUILD_MEMBER.getSql());
+            rs = select.executeQuery();
+            while (rs.next()) {
+                final String id = rs.getString("uuid");
+                final Set<String> ranked = new HashSet<String>();
+                final String ranksString = rs.getString("ranks");
+                if (ranksString != null) {
+                    for (final String serialized : ranksString.split(",")) {
+                        if (serialized.equals("")) {
+                            continue;
+                        }
+                        final GuildRank rank = GuildRank.deserialize(serialized);
+                        insertRanks.setString(1, id);
+                        insertRanks.setString(2, rank.getName());
+                        insertRanks.setInt(3, GuildAction.toBits(rank
+                                .getPermittedActions()));
+                        insertRanks.addBatch();
+                        for (final UUID member : rank.getMembers()) {
+                            addMember(insertMembers, id, member.toString(),
+                                    rank.getName());
+                            ranked.add(member.toString());
+                        }
+                    }
+                }
+
+                for (final String member : splitMembers(rs
+                        .getString("members"))) {
+                    if (!ranked.contains(member)) {
+                        addMember(insertMembers, id, member,
+                                WriteBatch.NO_RANK);
+                    }
+                }
+                last = id;
+                guilds++;
+            }
+            insertRanks.executeBatch();
+            insertMembers.executeBatch();
+        } finally {
+            DataStore.closeQuietly(select, rs);
+            DataStore.closeQuietly(insertRanks, null);
+            DataStore.closeQuietly(insertMembers, null);
+        }
+        return guilds < limit ? null : last;
+    }
+
+    private static Set<String> splitMembers(final String members) {
+        final Set<String> result = new LinkedHashSet<String>();
+        if (members != null) {
+            for (final String member : members.split(",")) {
+                if (!member.equals("")) {
+                    result.add(member);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addMember(final PreparedStatement ps,
+            final String guild, final String player, final String rank)
+            throws SQLException {
+        ps.setString(1, guild);
+        ps.setString(2, player);
+        ps.setString(3, rank);
+        ps.addBatch();
+    }
+}
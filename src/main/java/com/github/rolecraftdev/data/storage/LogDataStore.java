@@ -0,0 +1,892 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.data.PlayerDataSnapshot;
+import com.github.rolecraftdev.data.PlayerSettings;
+import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.guild.GuildAction;
+import com.github.rolecraftdev.guild.GuildManager;
+import com.github.rolecraftdev.guild.GuildRank;
+import com.github.rolecraftdev.leaderboard.LeaderboardManager;
+import com.github.rolecraftdev.util.serial.LocationSerializer;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * A {@link DataStore} which keeps players and guilds in a local
+ * {@link LogStore}, without any SQL dependency. Loading a player is a single
+ * positioned read and a flush is a single sequential append, optionally
+ * followed by one fsync. All guilds are kept in memory as well.
+ *
+ * @since 0.1.0
+ */
+public final class LogDataStore extends DataStore {
+    /**
+     * Marks a stored player.
+     */
+    private static final byte PLAYER_RECORD = 1;
+    /**
+     * Marks a stored guild.
+     */
+    private static final byte GUILD_RECORD = 2;
+    /**
+     * The version of the record format.
+     */
+    private static final byte RECORD_VERSION = 1;
+
+    /**
+     * The directory the segments are stored in.
+     */
+    private final File directory;
+    /**
+     * The size after which a new segment is started, in bytes.
+     */
+    private final long segmentSize;
+    /**
+     * Whether every write is forced to disk before it is reported complete.
+     */
+    private final boolean fsync;
+    /**
+     * The highest fraction of live bytes a segment may contain to be
+     * compacted.
+     */
+    private final double compactionThreshold;
+    /**
+     * The amount of bytes reclaimed by compaction.
+     */
+    private final AtomicLong reclaimed;
+    /**
+     * All stored guilds, only accessed on the storage thread.
+     */
+    private final Map<UUID, GuildRecord> guildRecords;
+    /**
+     * The store holding all records, {@code null} if it couldn't be opened.
+     */
+    private LogStore store;
+    /**
+     * Periodically compacts the store.
+     */
+    private BukkitTask compactionTask;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public LogDataStore(final RolecraftCore plugin) {
+        this(plugin, new File(plugin.getDataFolder(), "data"));
+    }
+
+    /**
+     * Create a {@link LogDataStore} which keeps its segments in the given
+     * directory, used for scratch stores such as the ones of the
+     * {@link StorageBenchmark}.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @param directory the directory to store the segments in
+     */
+    LogDataStore(final RolecraftCore plugin, final File directory) {
+        super(plugin);
+        this.directory = directory;
+        segmentSize = plugin.getConfig().getLong("storage.file.segment-size",
+                16384) * 1024;
+        fsync = plugin.getConfig().getBoolean("storage.file.fsync", true);
+        compactionThreshold = plugin.getConfig().getDouble(
+                "storage.file.compaction-threshold", 0.5);
+        reclaimed = new AtomicLong();
+        guildRecords = new LinkedHashMap<UUID, GuildRecord>();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void initialise() {
+        getExecutor().call("initialise", new Callable<Void>() {
+            @Override
+            public Void call() {
+                open();
+                return null;
+            }
+        });
+
+        compactionTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }.runTaskTimerAsynchronously(getPlugin(), 6000L, 6000L);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public boolean shutdown() {
+        if (compactionTask != null) {
+            compactionTask.cancel();
+        }
+        if (!super.shutdown()) {
+            // the storage thread still owns the store
+            return false;
+        }
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+        return true;
+    }
+
+    /**
+     * There are no connections, so this always returns {@code null}.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected Connection getConnection() {
+        return null;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void freeConnection(final Connection connection) {
+        // Method left intentionally blank
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public String getStoreTypeName() {
+        return "File";
+    }
+
+    /**
+     * Get the amount of bytes reclaimed by compaction since the plugin was
+     * enabled.
+     *
+     * @return the amount of reclaimed bytes
+     * @since 0.1.0
+     */
+    public long getReclaimedBytes() {
+        return reclaimed.get();
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void clearPlayerData(final PlayerData data) {
+        data.setUnloading(true);
+        submit("clear-player", new Runnable() {
+            @Override
+            public void run() {
+                final PlayerRecord record = new PlayerRecord();
+                record.name = data.getPlayerName();
+                if (write(data.getPlayerId(), record)) {
+                    data.clear();
+                }
+            }
+        }, data.getPlayerId());
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public void clearPlayerData(final UUID uuid) {
+        submit("clear-player", new Runnable() {
+            @Override
+            public void run() {
+                if (store == null) {
+                    return;
+                }
+                store.delete(uuid);
+                commit();
+            }
+        }, uuid);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void loadGuilds(final GuildManager callback) {
+        submit("load-guilds", new Runnable() {
+            @Override
+            public void run() {
+                for (final Map.Entry<UUID, GuildRecord> entry : guildRecords
+                        .entrySet()) {
+                    callback.addGuild(entry.getValue().toGuild(callback,
+                            entry.getKey()), true);
+                }
+                callback.completeLoad();
+            }
+        });
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void loadPlayerScores(final LeaderboardManager callback) {
+        submit("load-scores", new Runnable() {
+            @Override
+            public void run() {
+                if (store == null) {
+                    return;
+                }
+                for (final UUID id : store.keys()) {
+                    if (guildRecords.containsKey(id)) {
+                        continue;
+                    }
+                    final PlayerRecord record = readPlayer(id);
+                    if (record != null) {
+                        callback.seedPlayer(id, record.experience,
+                                record.karma, record.influence);
+                    }
+                }
+                callback.completeSeed();
+            }
+        });
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    protected void loadPlayerData(final PlayerData callback) {
+        if (store == null) {
+            return;
+        }
+
+        final UUID id = callback.getPlayerId();
+        final PlayerRecord stored = readPlayer(id);
+        if (stored != null) {
+            stored.initialise(callback);
+            if (!callback.getPlayerName().equals(stored.name)) {
+                callback.markDirty(PlayerData.Field.NAME);
+            }
+            return;
+        }
+
+        final PlayerRecord record = new PlayerRecord();
+        record.name = callback.getPlayerName();
+        record.karma = -getPlugin().getConfigValues().getOriginalSin();
+        record.mana = getPlugin().getConfigValues().getMaximumMana();
+        record.initialise(callback);
+        if (!write(id, record)) {
+            // retried by the next commit
+            callback.markDirty(PlayerData.Field.ALL);
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    protected Map<UUID, PlayerData> loadPlayerDatum(final List<UUID> ids) {
+        final Map<UUID, PlayerData> result = new HashMap<UUID, PlayerData>();
+        if (store == null) {
+            return result;
+        }
+
+        for (final UUID id : ids) {
+            final PlayerRecord record = readPlayer(id);
+            if (record != null) {
+                final PlayerData data = new PlayerData(getPlugin(), id,
+                        record.name);
+                record.initialise(data);
+                result.put(id, data);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply the whole {@link WriteBatch} to the store and commit it as a
+     * single batch of records.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected FlushReport runBatch(final WriteBatch batch, final int skipped) {
+        final int rows = batch.size();
+        if (rows == 0) {
+            return new FlushReport(0, skipped, 0, 0, 0);
+        }
+
+        final long start = System.nanoTime();
+        if (store == null) {
+            batch.restore();
+            return new FlushReport(0, skipped, rows, 0,
+                    System.nanoTime() - start);
+        }
+
+        // changed copies of the guilds, null once deleted
+        final Map<UUID, GuildRecord> changed = new LinkedHashMap<UUID, GuildRecord>();
+        long bytes;
+        try {
+            for (final Map.Entry<UUID, Map<String, Object>> entry : batch
+                    .getCreatedGuilds().entrySet()) {
+                final GuildRecord record = new GuildRecord();
+                record.setColumns(entry.getValue());
+                changed.put(entry.getKey(), record);
+            }
+            for (final Map.Entry<UUID, Map<String, Object>> entry : batch
+                    .getGuildColumns().entrySet()) {
+                final GuildRecord record = edit(changed, entry.getKey());
+                if (record != null) {
+                    record.setColumns(entry.getValue());
+                }
+            }
+            for (final Map.Entry<UUID, WriteBatch.Membership> entry : batch
+                    .getMemberships().entrySet()) {
+                final GuildRecord record = edit(changed, entry.getKey());
+                if (record != null) {
+                    record.ranks = new ArrayList<WriteBatch.RankRow>(
+                            entry.getValue().ranks);
+                    record.members = new ArrayList<WriteBatch.MemberRow>(
+                            entry.getValue().members);
+                }
+            }
+            for (final UUID[] removed : batch.getRemovedMembers()) {
+                final GuildRecord record = edit(changed, removed[0]);
+                if (record != null) {
+                    record.removeMember(removed[1]);
+                }
+            }
+            for (final WriteBatch.MemberRow row : batch.getAddedMembers()) {
+                final GuildRecord record = edit(changed, row.guild);
+                if (record != null) {
+                    record.removeMember(row.player);
+                }
+            }
+            for (final WriteBatch.MemberRow row : batch.getAddedMembers()) {
+                final GuildRecord record = edit(changed, row.guild);
+                if (record != null) {
+                    record.members.add(row);
+                }
+            }
+            for (final Map.Entry<UUID, UUID> entry : batch.getPlayerGuilds()
+                    .entrySet()) {
+                final PlayerRecord record = readPlayer(entry.getKey());
+                if (record != null) {
+                    record.guild = entry.getValue();
+                    store.put(entry.getKey(), record.encode());
+                }
+            }
+            for (final PlayerDataSnapshot snapshot : batch.getSnapshots()
+                    .values()) {
+                final UUID id = snapshot.getPlayerId();
+                final PlayerRecord record = readStagedPlayer(id);
+                record.update(snapshot);
+                store.put(id, record.encode());
+            }
+            for (final UUID id : batch.getDeletedGuilds()) {
+                final GuildRecord record = edit(changed, id);
+                if (record != null) {
+                    clearMemberGuilds(record, id);
+                }
+                changed.put(id, null);
+            }
+
+            for (final Map.Entry<UUID, GuildRecord> entry : changed
+                    .entrySet()) {
+                if (entry.getValue() == null) {
+                    store.delete(entry.getKey());
+                } else {
+                    store.put(entry.getKey(), entry.getValue().encode());
+                }
+            }
+            bytes = store.commit();
+        } catch (final IOException ex) {
+            store.rollback();
+            batch.restore();
+            getPlugin().getLogger().log(Level.SEVERE,
+                    "Couldn't write a batch of " + rows + " rows", ex);
+            return new FlushReport(0, skipped, rows, 0,
+                    System.nanoTime() - start);
+        }
+
+        for (final Map.Entry<UUID, GuildRecord> entry : changed.entrySet()) {
+            if (entry.getValue() == null) {
+                guildRecords.remove(entry.getKey());
+            } else {
+                guildRecords.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return recordBatch(rows, skipped, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Open the store and read all guilds into memory. Runs on the storage
+     * thread.
+     */
+    private void open() {
+        final LogStore opened = new LogStore(directory, segmentSize, fsync,
+                getPlugin().getLogger());
+        try {
+            opened.open();
+            for (final UUID id : opened.keys()) {
+                final byte[] value = opened.get(id);
+                if (value.length > 0 && value[0] == GUILD_RECORD) {
+                    guildRecords.put(id, GuildRecord.decode(id, value));
+                }
+            }
+            store = opened;
+        } catch (final IOException ex) {
+            opened.close();
+            getPlugin().getLogger().log(Level.SEVERE,
+                    "Couldn't open the data store in " + directory, ex);
+        }
+    }
+
+    /**
+     * Compact at most one segment, on the storage thread so loads and
+     * flushes wait for at most a single segment copy.
+     */
+    private void compact() {
+        submit("compact", new Runnable() {
+            @Override
+            public void run() {
+                if (store == null) {
+                    return;
+                }
+                try {
+                    reclaimed.addAndGet(store.compact(compactionThreshold));
+                } catch (final IOException ex) {
+                    getPlugin().getLogger().log(Level.WARNING,
+                            "Couldn't compact the data store", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write a single player and commit it.
+     *
+     * @return whether the player was written
+     */
+    private boolean write(final UUID id, final PlayerRecord record) {
+        if (store == null) {
+            return false;
+        }
+        store.put(id, record.encode());
+        return commit();
+    }
+
+    private boolean commit() {
+        try {
+            store.commit();
+            return true;
+        } catch (final IOException ex) {
+            getPlugin().getLogger().log(Level.SEVERE,
+                    "Couldn't write to the data store", ex);
+            return false;
+        }
+    }
+
+    private PlayerRecord readPlayer(final UUID id) {
+        try {
+            final byte[] value = store.get(id);
+            if (value == null || value.length == 0
+                    || value[0] != PLAYER_RECORD) {
+                return null;
+            }
+            return PlayerRecord.decode(value);
+        } catch (final IOException ex) {
+            getPlugin().getLogger().log(Level.SEVERE,
+                    "Couldn't read player " + id, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Read a player for an update, which may be the first write of a player
+     * whose record was never stored.
+     */
+    private PlayerRecord readStagedPlayer(final UUID id) throws IOException {
+        final byte[] value = store.get(id);
+        if (value == null || value.length == 0 || value[0] != PLAYER_RECORD) {
+            return new PlayerRecord();
+        }
+        return PlayerRecord.decode(value);
+    }
+
+    private GuildRecord edit(final Map<UUID, GuildRecord> changed,
+            final UUID id) {
+        if (changed.containsKey(id)) {
+            return changed.get(id);
+        }
+        final GuildRecord stored = guildRecords.get(id);
+        if (stored == null) {
+            return null;
+        }
+        final GuildRecord copy = stored.copy();
+        changed.put(id, copy);
+        return copy;
+    }
+
+    /**
+     * Clear the guild of every member of the given, deleted guild.
+     */
+    private void clearMemberGuilds(final GuildRecord record, final UUID id)
+            throws IOException {
+        final Set<UUID> players = new HashSet<UUID>();
+        for (final WriteBatch.MemberRow row : record.members) {
+            players.add(row.player);
+        }
+        for (final UUID player : players) {
+            final byte[] value = store.get(player);
+            if (value == null || value.length == 0
+                    || value[0] != PLAYER_RECORD) {
+                continue;
+            }
+            final PlayerRecord member = PlayerRecord.decode(value);
+            if (id.equals(member.guild)) {
+                member.guild = null;
+                store.put(player, member.encode());
+            }
+        }
+    }
+
+    private static void writeId(final DataOutputStream out, final UUID id)
+            throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readId(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong())
+                : null;
+    }
+
+    private static void writeString(final DataOutputStream out,
+            final String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(final DataInputStream in)
+            throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static DataInputStream reader(final byte[] value,
+            final byte type) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(value));
+        if (in.readByte() != type || in.readByte() != RECORD_VERSION) {
+            throw new IOException("Unknown record format");
+        }
+        return in;
+    }
+
+    /**
+     * The stored values of a player.
+     */
+    private static final class PlayerRecord {
+        private String name = "";
+        private UUID guild;
+        private UUID profession;
+        private UUID secondProfession;
+        private int influence;
+        private float experience;
+        private float karma;
+        private float mana;
+        private String settings = PlayerSettings.defaults().toString();
+
+        /**
+         * Copy the changed fields of the given {@link PlayerDataSnapshot}.
+         */
+        private void update(final PlayerDataSnapshot data) {
+            for (final PlayerData.Field field : PlayerData.Field.values()) {
+                if (!data.hasField(field)) {
+                    continue;
+                }
+                switch (field) {
+                    case NAME:
+                        name = data.getPlayerName();
+                        break;
+                    case GUILD:
+                        guild = data.getGuild();
+                        break;
+                    case PROFESSION:
+                        profession = data.getProfession();
+                        break;
+                    case SECOND_PROFESSION:
+                        secondProfession = data.getSecondProfession();
+                        break;
+                    case INFLUENCE:
+                        influence = data.getInfluence();
+                        break;
+                    case EXPERIENCE:
+                        experience = data.getExperience();
+                        break;
+                    case KARMA:
+                        karma = data.getKarma();
+                        break;
+                    case MANA:
+                        mana = data.getMana();
+                        break;
+                    case SETTINGS:
+                        settings = data.getSettings();
+                        break;
+                }
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        private void initialise(final PlayerData data) {
+            data.initialise(guild, profession, secondProfession, influence,
+                    experience, karma, mana,
+                    PlayerSettings.fromString(settings));
+        }
+
+        private byte[] encode() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(PLAYER_RECORD);
+                out.writeByte(RECORD_VERSION);
+                out.writeUTF(name);
+                writeId(out, guild);
+                writeId(out, profession);
+                writeId(out, secondProfession);
+                out.writeInt(influence);
+                out.writeFloat(experience);
+                out.writeFloat(karma);
+                out.writeFloat(mana);
+                writeString(out, settings);
+            } catch (final IOException ex) {
+                // not thrown by a ByteArrayOutputStream
+                throw new IllegalStateException(ex);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static PlayerRecord decode(final byte[] value)
+                throws IOException {
+            final DataInputStream in = reader(value, PLAYER_RECORD);
+            final PlayerRecord record = new PlayerRecord();
+            record.name = in.readUTF();
+            record.guild = readId(in);
+            record.profession = readId(in);
+            record.secondProfession = readId(in);
+            record.influence = in.readInt();
+            record.experience = in.readFloat();
+            record.karma = in.readFloat();
+            record.mana = in.readFloat();
+            record.settings = readString(in);
+            return record;
+        }
+    }
+
+    /**
+     * The stored values of a guild, including its ranks and members.
+     */
+    private static final class GuildRecord {
+        private String name;
+        private UUID leader;
+        private String home;
+        private int influence;
+        private boolean open;
+        private long created;
+        private List<WriteBatch.RankRow> ranks = new ArrayList<WriteBatch.RankRow>();
+        private List<WriteBatch.MemberRow> members = new ArrayList<WriteBatch.MemberRow>();
+
+        /**
+         * Apply the guild table columns collected by a {@link WriteBatch}.
+         */
+        private void setColumns(final Map<String, Object> columns) {
+            if (columns.containsKey("name")) {
+                name = (String) columns.get("name");
+            }
+            if (columns.containsKey("leader")) {
+                final String id = (String) columns.get("leader");
+                leader = id == null || id.equals("") ? null : UUID
+                        .fromString(id);
+            }
+            if (columns.containsKey("home")) {
+                home = (String) columns.get("home");
+            }
+            if (columns.containsKey("influence")) {
+                influence = (Integer) columns.get("influence");
+            }
+            if (columns.containsKey("open")) {
+                open = (Boolean) columns.get("open");
+            }
+            if (columns.containsKey("created")) {
+                created = (Long) columns.get("created");
+            }
+        }
+
+        private void removeMember(final UUID player) {
+            final Iterator<WriteBatch.MemberRow> it = members.iterator();
+            while (it.hasNext()) {
+                if (it.next().player.equals(player)) {
+                    it.remove();
+                }
+            }
+        }
+
+        private GuildRecord copy() {
+            final GuildRecord copy = new GuildRecord();
+            copy.name = name;
+            copy.leader = leader;
+            copy.home = home;
+            copy.influence = influence;
+            copy.open = open;
+            copy.created = created;
+            copy.ranks = new ArrayList<WriteBatch.RankRow>(ranks);
+            copy.members = new ArrayList<WriteBatch.MemberRow>(members);
+            return copy;
+        }
+
+        private Guild toGuild(final GuildManager manager, final UUID id) {
+            final Set<UUID> guildMembers = new HashSet<UUID>();
+            final Set<GuildRank> guildRanks = new HashSet<GuildRank>();
+            final Map<String, GuildRank> byName = new HashMap<String, GuildRank>();
+            for (final WriteBatch.RankRow row : ranks) {
+                final GuildRank rank = new GuildRank(row.name, row.parent,
+                        GuildAction.fromBits(row.permissions),
+                        new HashSet<UUID>());
+                guildRanks.add(rank);
+                byName.put(row.name, rank);
+            }
+            for (final WriteBatch.MemberRow row : members) {
+                guildMembers.add(row.player);
+                final GuildRank rank = byName.get(row.rank);
+                if (rank != null) {
+                    rank.addMember(row.player);
+                }
+            }
+            return new Guild(manager, id, name, leader, guildMembers,
+                    guildRanks, LocationSerializer.deserialize(home),
+                    influence, open, created);
+        }
+
+        private byte[] encode() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(GUILD_RECORD);
+                out.writeByte(RECORD_VERSION);
+                writeString(out, name);
+                writeId(out, leader);
+                writeString(out, home);
+                out.writeInt(influence);
+                out.writeBoolean(open);
+                out.writeInt(ranks.size());
+                for (final WriteBatch.RankRow rank : ranks) {
+                    out.writeUTF(rank.name);
+                    out.writeInt(rank.permissions);
+                }
+                out.writeInt(members.size());
+                for (final WriteBatch.MemberRow member : members) {
+                    writeId(out, member.player);
+                    out.writeUTF(member.rank);
+                }
+                // appended after the members so older records still decode
+                for (final WriteBatch.RankRow rank : ranks) {
+                    writeString(out, rank.parent);
+                }
+                out.writeLong(created);
+            } catch (final IOException ex) {
+                // not thrown by a ByteArrayOutputStream
+                throw new IllegalStateException(ex);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static GuildRecord decode(final UUID id, final byte[] value)
+                throws IOException {
+            final DataInputStream in = reader(value, GUILD_RECORD);
+            final GuildRecord record = new GuildRecord();
+            record.name = readString(in);
+            record.leader = readId(in);
+            record.home = readString(in);
+            record.influence = in.readInt();
+            record.open = in.readBoolean();
+            final List<String> names = new ArrayList<String>();
+            final List<Integer> permissions = new ArrayList<Integer>();
+            for (int i = in.readInt(); i > 0; i--) {
+                names.add(in.readUTF());
+                permissions.add(in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                record.members.add(new WriteBatch.MemberRow(id, readId(in),
+                        in.readUTF()));
+            }
+            final boolean parents = in.available() > 0;
+            for (int i = 0; i < names.size(); i++) {
+                record.ranks.add(new WriteBatch.RankRow(names.get(i),
+                        permissions.get(i), parents ? readString(in) : null));
+            }
+            if (in.available() > 0) {
+                record.created = in.readLong();
+            }
+            return record;
+        }
+    }
+}
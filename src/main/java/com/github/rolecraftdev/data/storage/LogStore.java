@@ -0,0 +1,599 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A key/value store of byte arrays by {@link UUID}, kept in append-only
+ * segment files with an in-memory index from every key to the location of
+ * its latest value.
+ *
+ * Every record carries a CRC32 of its contents. Writes are staged and
+ * committed as a whole, followed by a commit record, so a batch that was cut
+ * off by a crash is ignored when the segments are read back. Segments which
+ * mostly contain overwritten values are compacted by copying their live
+ * records to the active segment.
+ *
+ * Not thread safe, all access must happen on the storage thread.
+ *
+ * @since 0.1.0
+ */
+final class LogStore {
+    /**
+     * The size of a record header: CRC, value length, type and key.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 16;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final UUID NO_KEY = new UUID(0, 0);
+
+    /**
+     * The directory the segments are stored in.
+     */
+    private final File directory;
+    /**
+     * The size after which a new segment is started, in bytes.
+     */
+    private final long maxSegmentSize;
+    /**
+     * Whether committed batches are forced to disk.
+     */
+    private final boolean fsync;
+    private final Logger logger;
+    /**
+     * The location of the latest value of every key.
+     */
+    private final Map<UUID, Location> index;
+    /**
+     * All open segments, by id.
+     */
+    private final TreeMap<Long, Segment> segments;
+    /**
+     * The writes which haven't been committed yet, {@code null} values are
+     * deletions.
+     */
+    private final Map<UUID, byte[]> staged;
+    private final CRC32 crc;
+    /**
+     * The segment new records are appended to.
+     */
+    private Segment active;
+
+    /**
+     * Constructor. The segments are read by {@link #open()}.
+     *
+     * @param directory the directory to store the segments in
+     * @param maxSegmentSize the size after which a new segment is started
+     * @param fsync whether committed batches are forced to disk
+     * @param logger the {@link Logger} to report problems to
+     * @since 0.1.0
+     */
+    LogStore(final File directory, final long maxSegmentSize,
+            final boolean fsync, final Logger logger) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.fsync = fsync;
+        this.logger = logger;
+        index = new HashMap<UUID, Location>();
+        segments = new TreeMap<Long, Segment>();
+        staged = new LinkedHashMap<UUID, byte[]>();
+        crc = new CRC32();
+    }
+
+    /**
+     * Open all segments and rebuild the index from them. A damaged or
+     * incomplete tail of the last segment is cut off.
+     *
+     * @throws IOException if the segments could not be read
+     * @since 0.1.0
+     */
+    void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+
+        final List<Long> ids = new ArrayList<Long>();
+        final String[] names = directory.list();
+        if (names != null) {
+            for (final String name : names) {
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        ids.add(Long.parseLong(name.substring(0,
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (final NumberFormatException ignore) {
+                    }
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            final Segment segment = openSegment(ids.get(i));
+            segments.put(segment.id, segment);
+            final long valid = recover(segment);
+            if (valid < segment.size) {
+                logger.warning("Discarding " + (segment.size - valid)
+                        + " damaged or uncommitted bytes at the end of "
+                        + segment.file.getName());
+                if (i == ids.size() - 1) {
+                    segment.channel.truncate(valid);
+                }
+                segment.size = valid;
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = openSegment(1);
+            segments.put(active.id, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Get the value of the given key, including staged writes.
+     *
+     * @param key the key to look up
+     * @return the value, or {@code null} if there is none
+     * @throws IOException if the value could not be read or is damaged
+     * @since 0.1.0
+     */
+    byte[] get(final UUID key) throws IOException {
+        if (staged.containsKey(key)) {
+            return staged.get(key);
+        }
+        final Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        final Segment segment = segments.get(location.segment);
+        final ByteBuffer record = ByteBuffer.allocate(location.length);
+        readFully(segment.channel, record, location.offset);
+        final int stored = record.getInt(0);
+        crc.reset();
+        crc.update(record.array(), 4, location.length - 4);
+        if ((int) crc.getValue() != stored) {
+            throw new IOException("Damaged record for " + key + " in "
+                    + segment.file.getName());
+        }
+
+        final byte[] value = new byte[location.length - HEADER_SIZE];
+        System.arraycopy(record.array(), HEADER_SIZE, value, 0, value.length);
+        return value;
+    }
+
+    /**
+     * Get all keys which have a committed value.
+     *
+     * @return all committed keys, backed by the index
+     * @since 0.1.0
+     */
+    Set<UUID> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Stage a new value for the given key.
+     *
+     * @param key the key to set
+     * @param value the new value
+     * @since 0.1.0
+     */
+    void put(final UUID key, final byte[] value) {
+        staged.put(key, value);
+    }
+
+    /**
+     * Stage the deletion of the given key.
+     *
+     * @param key the key to delete
+     * @since 0.1.0
+     */
+    void delete(final UUID key) {
+        staged.put(key, null);
+    }
+
+    /**
+     * Write all staged changes as a single batch.
+     *
+     * @return the amount of bytes written
+     * @throws IOException if the batch could not be written, in which case
+     *         none of it is applied and the staged changes are discarded
+     * @since 0.1.0
+     */
+    long commit() throws IOException {
+        if (staged.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final Map<UUID, Integer> lengths = new HashMap<UUID, Integer>();
+            for (final Map.Entry<UUID, byte[]> entry : staged.entrySet()) {
+                final byte[] value = entry.getValue();
+                if (value == null && !index.containsKey(entry.getKey())) {
+                    continue;
+                }
+                lengths.put(entry.getKey(), writeRecord(out, value == null
+                        ? DELETE : PUT, entry.getKey(), value));
+            }
+            if (lengths.isEmpty()) {
+                return 0;
+            }
+            writeRecord(out, COMMIT, NO_KEY, null);
+
+            if (active.size >= maxSegmentSize) {
+                roll();
+            }
+            final long start = active.size;
+            append(out.toByteArray());
+
+            long offset = start;
+            for (final Map.Entry<UUID, byte[]> entry : staged.entrySet()) {
+                final Integer length = lengths.get(entry.getKey());
+                if (length == null) {
+                    continue;
+                }
+                if (entry.getValue() == null) {
+                    unlink(index.remove(entry.getKey()));
+                } else {
+                    link(entry.getKey(), new Location(active.id, offset,
+                            length));
+                }
+                offset += length;
+            }
+            return out.size();
+        } finally {
+            staged.clear();
+        }
+    }
+
+    /**
+     * Discard all staged changes.
+     *
+     * @since 0.1.0
+     */
+    void rollback() {
+        staged.clear();
+    }
+
+    /**
+     * Compact the oldest sealed segment in which at most the given fraction
+     * of bytes is still live, by copying its live records to the active
+     * segment and deleting it.
+     *
+     * @param maxLiveRatio the highest fraction of live bytes a segment may
+     *        contain to be compacted
+     * @return the amount of bytes reclaimed, {@code 0} if nothing was
+     *         compacted
+     * @throws IOException if the segment could not be compacted
+     * @since 0.1.0
+     */
+    long compact(final double maxLiveRatio) throws IOException {
+        Segment candidate = null;
+        for (final Segment segment : segments.values()) {
+            if (segment != active
+                    && segment.live <= segment.size * maxLiveRatio) {
+                candidate = segment;
+                break;
+            }
+        }
+        if (candidate == null) {
+            return 0;
+        }
+
+        // tombstones still hide values in older segments
+        final boolean keepDeletes = segments.firstKey() < candidate.id;
+        final ByteBuffer data = ByteBuffer.allocate((int) candidate.size);
+        readFully(candidate.channel, data, 0);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Map<UUID, Integer> moved = new LinkedHashMap<UUID, Integer>();
+        int position = 0;
+        while (position + HEADER_SIZE <= candidate.size) {
+            final int length = HEADER_SIZE + data.getInt(position + 4);
+            final byte type = data.get(position + 8);
+            final UUID key = new UUID(data.getLong(position + 9),
+                    data.getLong(position + 17));
+            final Location location = index.get(key);
+            if (type == PUT && location != null
+                    && location.segment == candidate.id
+                    && location.offset == position) {
+                out.write(data.array(), position, length);
+                moved.put(key, length);
+            } else if (type == DELETE && keepDeletes && location == null) {
+                out.write(data.array(), position, length);
+            }
+            position += length;
+        }
+
+        final long before = totalSize();
+        if (out.size() > 0) {
+            writeRecord(out, COMMIT, NO_KEY, null);
+            if (active.size >= maxSegmentSize) {
+                roll();
+            }
+            long offset = active.size;
+            append(out.toByteArray());
+            for (final Map.Entry<UUID, Integer> entry : moved.entrySet()) {
+                link(entry.getKey(), new Location(active.id, offset,
+                        entry.getValue()));
+                offset += entry.getValue();
+            }
+        }
+
+        segments.remove(candidate.id);
+        candidate.close();
+        if (!candidate.file.delete()) {
+            logger.warning("Couldn't delete compacted segment "
+                    + candidate.file.getName());
+        }
+        return before - totalSize();
+    }
+
+    /**
+     * Get the total size of all segments.
+     *
+     * @return the size of all segments in bytes
+     * @since 0.1.0
+     */
+    long totalSize() {
+        long size = 0;
+        for (final Segment segment : segments.values()) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Get the size of all live records.
+     *
+     * @return the size of all live records in bytes
+     * @since 0.1.0
+     */
+    long liveSize() {
+        long live = 0;
+        for (final Segment segment : segments.values()) {
+            live += segment.live;
+        }
+        return live;
+    }
+
+    /**
+     * Close all segments.
+     *
+     * @since 0.1.0
+     */
+    void close() {
+        staged.clear();
+        for (final Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+        active = null;
+    }
+
+    /**
+     * Read the records of the given segment into the index, applying only
+     * committed batches.
+     *
+     * @return the offset up to which the segment is valid
+     */
+    private long recover(final Segment segment) throws IOException {
+        final ByteBuffer data = ByteBuffer.allocate((int) segment.size);
+        readFully(segment.channel, data, 0);
+
+        final Map<UUID, Location> batch = new LinkedHashMap<UUID, Location>();
+        long valid = 0;
+        int position = 0;
+        while (position + HEADER_SIZE <= segment.size) {
+            final int valueLength = data.getInt(position + 4);
+            if (valueLength < 0
+                    || position + HEADER_SIZE + valueLength > segment.size) {
+                break;
+            }
+            final int length = HEADER_SIZE + valueLength;
+            crc.reset();
+            crc.update(data.array(), position + 4, length - 4);
+            if ((int) crc.getValue() != data.getInt(position)) {
+                break;
+            }
+
+            final byte type = data.get(position + 8);
+            final UUID key = new UUID(data.getLong(position + 9),
+                    data.getLong(position + 17));
+            if (type == COMMIT) {
+                for (final Map.Entry<UUID, Location> entry : batch
+                        .entrySet()) {
+                    if (entry.getValue() == null) {
+                        unlink(index.remove(entry.getKey()));
+                    } else {
+                        link(entry.getKey(), entry.getValue());
+                    }
+                }
+                batch.clear();
+                valid = position + length;
+            } else {
+                batch.put(key, type == PUT ? new Location(segment.id,
+                        position, length) : null);
+            }
+            position += length;
+        }
+        return valid;
+    }
+
+    private void link(final UUID key, final Location location) {
+        unlink(index.put(key, location));
+        segments.get(location.segment).live += location.length;
+    }
+
+    private void unlink(final Location location) {
+        if (location != null) {
+            final Segment segment = segments.get(location.segment);
+            if (segment != null) {
+                segment.live -= location.length;
+            }
+        }
+    }
+
+    private int writeRecord(final ByteArrayOutputStream out, final byte type,
+            final UUID key, final byte[] value) {
+        final int valueLength = value == null ? 0 : value.length;
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE
+                + valueLength);
+        record.putInt(0);
+        record.putInt(valueLength);
+        record.put(type);
+        record.putLong(key.getMostSignificantBits());
+        record.putLong(key.getLeastSignificantBits());
+        if (value != null) {
+            record.put(value);
+        }
+        crc.reset();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+        out.write(record.array(), 0, record.capacity());
+        return record.capacity();
+    }
+
+    private void append(final byte[] bytes) throws IOException {
+        final long start = active.size;
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = start;
+            while (buffer.hasRemaining()) {
+                position += active.channel.write(buffer, position);
+            }
+            if (fsync) {
+                active.channel.force(false);
+            }
+            active.size = position;
+        } catch (final IOException ex) {
+            // don't leave half a batch in front of the next one
+            active.channel.truncate(start);
+            throw ex;
+        }
+    }
+
+    private void roll() throws IOException {
+        if (fsync) {
+            active.channel.force(false);
+        }
+        active = openSegment(active.id + 1);
+        segments.put(active.id, active);
+    }
+
+    private Segment openSegment(final long id) throws IOException {
+        final File file = new File(directory, String.format("%08d", id)
+                + SEGMENT_SUFFIX);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        return new Segment(id, file, raf);
+    }
+
+    private static void readFully(final FileChannel channel,
+            final ByteBuffer buffer, final long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * The location of a record.
+     */
+    private static final class Location {
+        private final long segment;
+        private final long offset;
+        private final int length;
+
+        private Location(final long segment, final long offset,
+                final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * An open segment file.
+     */
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        /**
+         * The size of the valid part of the segment.
+         */
+        private long size;
+        /**
+         * The size of the records in this segment which are still live.
+         */
+        private long live;
+
+        private Segment(final long id, final File file,
+                final RandomAccessFile raf) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.raf = raf;
+            channel = raf.getChannel();
+            size = channel.size();
+        }
+
+        private void close() {
+            try {
+                raf.close();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single step in the database schema, moving it from one version to the
+ * next. The data is migrated in batches: every batch is committed together
+ * with a checkpoint, so an interrupted migration resumes where it stopped
+ * instead of starting over.
+ *
+ * @since 0.1.0
+ * @see MigrationRunner
+ */
+public abstract class Migration {
+    /**
+     * The schema version this migration applies to.
+     */
+    private final String fromVersion;
+    /**
+     * The schema version after this migration has completed.
+     */
+    private final String toVersion;
+    /**
+     * Whether this migration may complete after the plugin has started.
+     */
+    private final boolean background;
+
+    /**
+     * Constructor.
+     *
+     * @param fromVersion the schema version this migration applies to
+     * @param toVersion the schema version after this migration has completed
+     * @param background {@code true} if the current code can already read the
+     *        data while this migration is in progress, so it may run on the
+     *        storage thread after startup instead of blocking it
+     * @since 0.1.0
+     */
+    protected Migration(final String fromVersion, final String toVersion,
+            final boolean background) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.background = background;
+    }
+
+    /**
+     * Get the schema version this migration applies to.
+     *
+     * @return the schema version this migration applies to
+     * @since 0.1.0
+     */
+    public String getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Get the schema version after this migration has completed.
+     *
+     * @return the schema version after this migration
+     * @since 0.1.0
+     */
+    public String getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * Check whether this migration may complete after the plugin has started.
+     *
+     * @return {@code true} if this migration runs in the background
+     * @since 0.1.0
+     */
+    public boolean isBackground() {
+        return background;
+    }
+
+    /**
+     * Get the name under which the checkpoint of this migration is stored.
+     *
+     * @return the name of this migration
+     * @since 0.1.0
+     */
+    public String getName() {
+        return fromVersion + "-" + toVersion;
+    }
+
+    /**
+     * Migrate the next batch of rows. Called within a transaction that is
+     * committed together with the returned checkpoint, so this must not
+     * commit or change the auto-commit mode of the given {@link Connection}.
+     *
+     * @param connection the {@link Connection} to migrate with
+     * @param checkpoint the checkpoint returned by the previous batch, or an
+     *        empty string for the first batch
+     * @param limit the maximum amount of rows to migrate
+     * @return the checkpoint to continue from, or {@code null} if all rows
+     *         have been migrated
+     * @throws SQLException if the batch could not be migrated
+     * @since 0.1.0
+     */
+    public abstract String migrateBatch(Connection connection,
+            String checkpoint, int limit) throws SQLException;
+}
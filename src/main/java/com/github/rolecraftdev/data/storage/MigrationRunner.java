@@ -0,0 +1,311 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Brings the database schema up to date by applying the registered
+ * {@link Migration}s in order, starting at the version stored in the metadata
+ * table.
+ *
+ * Every batch of a {@link Migration} commits on its own, together with its
+ * checkpoint, so large backfills never hold a single huge transaction and
+ * continue where they stopped after a restart. Migrations that must complete
+ * before the data can be read run during initialisation; trailing background
+ * migrations run batch by batch on the storage thread afterwards, interleaved
+ * with regular operations.
+ *
+ * @since 0.1.0
+ */
+public final class MigrationRunner {
+    /**
+     * The query used for creating the migration checkpoint table. Valid for
+     * both SQLite and MySQL.
+     */
+    private static final String CREATE_CHECKPOINT_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + DataStore.mgt + " ("
+                    + "migration VARCHAR(20) PRIMARY KEY,"
+                    + "checkpoint VARCHAR(64)" + ")";
+
+    /**
+     * The {@link DataStore} whose database is migrated.
+     */
+    private final DataStore store;
+    /**
+     * The maximum amount of rows migrated per batch.
+     */
+    private final int batchSize;
+    /**
+     * All registered {@link Migration}s, in order.
+     */
+    private final List<Migration> migrations;
+
+    /**
+     * Constructor.
+     *
+     * @param store the {@link DataStore} whose database is migrated
+     * @param batchSize the maximum amount of rows migrated per batch
+     * @since 0.1.0
+     */
+    public MigrationRunner(final DataStore store, final int batchSize) {
+        this.store = store;
+        this.batchSize = Math.max(1, batchSize);
+        migrations = new ArrayList<Migration>();
+    }
+
+    /**
+     * Register the given {@link Migration}. Migrations must be registered in
+     * order, each starting at the version the previous one ends at.
+     *
+     * @param migration the {@link Migration} to register
+     * @since 0.1.0
+     */
+    public void register(final Migration migration) {
+        if (!migrations.isEmpty() && !getLatestVersion().equals(
+                migration.getFromVersion())) {
+            throw new IllegalArgumentException("Migration "
+                    + migration.getName() + " does not start at "
+                    + getLatestVersion());
+        }
+        migrations.add(migration);
+    }
+
+    /**
+     * Get the schema version the database has after all registered
+     * {@link Migration}s have completed. Newly created databases start at
+     * this version.
+     *
+     * @return the latest schema version
+     * @since 0.1.0
+     */
+    public String getLatestVersion() {
+        if (migrations.isEmpty()) {
+            return DataStore.SQLVERSION1;
+        }
+        return migrations.get(migrations.size() - 1).getToVersion();
+    }
+
+    /**
+     * Run all {@link Migration}s which must complete before the data can be
+     * read, starting at the given version. Background migrations are only run
+     * here when a blocking migration follows them.
+     *
+     * @param connection the {@link Connection} to migrate with
+     * @param version the current schema version of the database
+     * @return the schema version after the migrations have completed
+     * @throws SQLException if a migration failed, all batches committed
+     *         before the failure are kept
+     * @since 0.1.0
+     */
+    public String migrate(final Connection connection, final String version)
+            throws SQLException {
+        final List<Migration> pending = getPending(version);
+        if (pending.isEmpty()) {
+            return version;
+        }
+        int blocking = -1;
+        for (int i = 0; i < pending.size(); i++) {
+            if (!pending.get(i).isBackground()) {
+                blocking = i;
+            }
+        }
+
+        createCheckpointTable(connection);
+        String current = version;
+        for (int i = 0; i <= blocking; i++) {
+            final Migration migration = pending.get(i);
+            log(migration, "started");
+            int batches = 1;
+            while (!step(connection, migration)) {
+                batches++;
+            }
+            log(migration, "completed in " + batches + " batches");
+            current = migration.getToVersion();
+        }
+        return current;
+    }
+
+    /**
+     * Run the remaining {@link Migration}s starting at the given version on
+     * the storage thread, one batch per operation. Stops when the
+     * {@link StorageExecutor} shuts down or a batch fails, in which case the
+     * migration resumes from its last checkpoint on the next start.
+     *
+     * @param version the current schema version of the database
+     * @since 0.1.0
+     */
+    public void resume(final String version) {
+        final List<Migration> pending = getPending(version);
+        if (pending.isEmpty()) {
+            return;
+        }
+        log(pending.get(0), "continues in the background");
+        submit(pending.get(0));
+    }
+
+    private void submit(final Migration migration) {
+        final StorageExecutor executor = store.getExecutor();
+        executor.execute("migrate", new Runnable() {
+            @Override
+            public void run() {
+                if (executor.isShutdown()) {
+                    return;
+                }
+                final Connection connection = store.getConnection();
+                if (connection == null) {
+                    store.connectionUnavailable("run migration "
+                            + migration.getName(), "migrate", migration,
+                            this);
+                    return;
+                }
+
+                final boolean done;
+                try {
+                    createCheckpointTable(connection);
+                    done = step(connection, migration);
+                } catch (final SQLException ex) {
+                    store.getPlugin().getLogger().log(Level.SEVERE,
+                            "Migration " + migration.getName() + " failed, "
+                                    + "it will resume on the next start", ex);
+                    return;
+                } finally {
+                    store.freeConnection(connection);
+                }
+
+                if (!done) {
+                    submit(migration);
+                    return;
+                }
+                log(migration, "completed");
+                final List<Migration> next = getPending(migration
+                        .getToVersion());
+                if (!next.isEmpty()) {
+                    submit(next.get(0));
+                }
+            }
+        });
+    }
+
+    /**
+     * Migrate a single batch and commit it together with its checkpoint. The
+     * schema version is updated in the same transaction as the last batch.
+     *
+     * @return {@code true} if the migration has completed
+     */
+    private boolean step(final Connection connection,
+            final Migration migration) throws SQLException {
+        final String checkpoint = readCheckpoint(connection, migration);
+        PreparedStatement ps = null;
+        connection.setAutoCommit(false);
+        try {
+            final String next = migration.migrateBatch(connection,
+                    checkpoint == null ? "" : checkpoint, batchSize);
+
+            ps = connection.prepareStatement("DELETE FROM " + DataStore.mgt
+                    + " WHERE migration = ?");
+            ps.setString(1, migration.getName());
+            ps.executeUpdate();
+            store.close(ps, null);
+
+            if (next == null) {
+                ps = connection.prepareStatement("UPDATE " + DataStore.mdt
+                        + " SET version = ? WHERE entry = ?");
+                ps.setString(1, migration.getToVersion());
+                ps.setString(2, DataStore.mde);
+            } else {
+                ps = connection.prepareStatement("INSERT INTO "
+                        + DataStore.mgt + " (migration, checkpoint) "
+                        + "VALUES (?, ?)");
+                ps.setString(1, migration.getName());
+                ps.setString(2, next);
+            }
+            ps.executeUpdate();
+            connection.commit();
+            return next == null;
+        } catch (final SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            store.close(ps, null);
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private String readCheckpoint(final Connection connection,
+            final Migration migration) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement("SELECT checkpoint FROM "
+                    + DataStore.mgt + " WHERE migration = ?");
+            ps.setString(1, migration.getName());
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getString("checkpoint") : null;
+        } finally {
+            store.close(ps, rs);
+        }
+    }
+
+    private void createCheckpointTable(final Connection connection)
+            throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(CREATE_CHECKPOINT_TABLE);
+            ps.execute();
+        } finally {
+            store.close(ps, null);
+        }
+    }
+
+    /**
+     * Get the {@link Migration}s that still have to run, in order, for a
+     * database at the given version.
+     */
+    private List<Migration> getPending(final String version) {
+        final List<Migration> pending = new ArrayList<Migration>();
+        String current = version;
+        for (final Migration migration : migrations) {
+            if (migration.getFromVersion().equals(current)) {
+                pending.add(migration);
+                current = migration.getToVersion();
+            }
+        }
+        return pending;
+    }
+
+    private void log(final Migration migration, final String message) {
+        store.getPlugin().getLogger().info("[" + store.getStoreTypeName()
+                + "] Migration " + migration.getName() + " " + message);
+    }
+}
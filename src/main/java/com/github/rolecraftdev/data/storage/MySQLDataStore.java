@@ -28,18 +28,24 @@ package com.github.rolecraftdev.data.storage;
 
 import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.data.PlayerDataSnapshot;
 
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.AbstractMap.SimpleEntry;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
 
 /**
  * The MySQL {@link DataStore} implementation.
@@ -57,15 +63,16 @@ public final class MySQLDataStore extends DataStore {
                     + " ("
                     + "uuid VARCHAR(40) PRIMARY KEY,"
                     + "lastname VARCHAR(16) NOT NULL,"
-                    + "FOREIGN KEY (guild) REFERENCES "
-                    + gt
-                    + "(uuid) ON DELETE SET NULL,"
+                    + "guild VARCHAR(37) DEFAULT NULL,"
                     + "exp REAL DEFAULT 0,"
-                    + "profession VARCHAR (37) DEFAULT NULL"
+                    + "profession VARCHAR (37) DEFAULT NULL,"
                     + "secondprofession VARCHAR(37) DEFAULT NULL,"
                     + "influence INTEGER DEFAULT 0,"
                     + "karma REAL DEFAULT 0,"
-                    + "mana REAL DEFAULT 0," + "settings VARCHAR(100)" + ")";
+                    + "mana REAL DEFAULT 0," + "settings VARCHAR(100),"
+                    + "FOREIGN KEY (guild) REFERENCES "
+                    + gt
+                    + "(uuid) ON DELETE SET NULL" + ")";
     /**
      * The query used for creating the guild table in the database.
      */
@@ -73,14 +80,37 @@ public final class MySQLDataStore extends DataStore {
             "CREATE TABLE IF NOT EXISTS "
                     + gt
                     + " ("
-                    + "uuid VARCHAR(37) PRIMARY KEY ON CONFLICT FAIL,"
+                    + "uuid VARCHAR(37) PRIMARY KEY,"
                     + "name VARCHAR (50),"
                     + "leader VARCHAR(37),"
-                    + "members MEDIUMTEXT,"
-                    + "ranks MEDIUMTEXT,"
                     + "home VARCHAR(150),"
                     + "influence INTEGER DEFAULT 0," +
-                    "open BOOLEAN DEFAULT FALSE" + ")";
+                    "open BOOLEAN DEFAULT FALSE," +
+                    "created BIGINT DEFAULT 0" + ")";
+    /**
+     * The query used for creating the guild rank table in the database.
+     */
+    private static final String CREATE_GUILD_RANK_TABLE =
+            "CREATE TABLE IF NOT EXISTS "
+                    + grt
+                    + " ("
+                    + "guild_uuid VARCHAR(37) NOT NULL,"
+                    + "name VARCHAR(50) NOT NULL,"
+                    + "permissions INTEGER DEFAULT 0,"
+                    + "parent VARCHAR(50),"
+                    + "PRIMARY KEY (guild_uuid, name)" + ")";
+    /**
+     * The query used for creating the guild member table in the database.
+     */
+    private static final String CREATE_GUILD_MEMBER_TABLE =
+            "CREATE TABLE IF NOT EXISTS "
+                    + gmt
+                    + " ("
+                    + "guild_uuid VARCHAR(37) NOT NULL,"
+                    + "player_uuid VARCHAR(37) NOT NULL,"
+                    + "rank_name VARCHAR(50) NOT NULL DEFAULT '',"
+                    + "PRIMARY KEY (guild_uuid, player_uuid, rank_name),"
+                    + "INDEX (player_uuid)" + ")";
     /**
      * The query used for creating the metadata table in the database.
      */
@@ -91,10 +121,29 @@ public final class MySQLDataStore extends DataStore {
                     + "version VARCHAR(6),"
                     + "entry VARCHAR(20),"
                     + "PRIMARY KEY(entry)" + ")";
-    //                                MINUTES
-    private static final int MINUTES = 60000;
-    private static final int KILL_TIME = 5 * MINUTES;
+    /**
+     * The maximum amount of rows written by a single multi-row upsert.
+     */
+    private static final int UPSERT_ROWS = 100;
+    /**
+     * The multi-row upsert statements by changed fields and row count, built
+     * when first used.
+     */
+    private static final ConcurrentMap<Long, SqlStatement> UPSERTS =
+            new ConcurrentHashMap<Long, SqlStatement>();
+    private static final int SECONDS = 1000;
+    private static final int MINUTES = 60 * SECONDS;
     private static final int MYSQL_DEFAULT_PORT = 3306;
+    private static final int DEFAULT_POOL_MIN = 1;
+    private static final int DEFAULT_POOL_MAX = 8;
+    private static final int DEFAULT_BORROW_TIMEOUT = 5 * SECONDS;
+    private static final int DEFAULT_IDLE_TIMEOUT = 5 * MINUTES;
+    private static final int DEFAULT_LEAK_THRESHOLD = MINUTES;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    /**
+     * The interval, in ticks, at which the connection pool is maintained.
+     */
+    private static final long MAINTENANCE_INTERVAL = 20 * 20;
 
     /**
      * The username used to access the database.
@@ -116,9 +165,15 @@ public final class MySQLDataStore extends DataStore {
      * The name of the Rolecraft database.
      */
     private final String databaseName;
-
-    //                              connection      in use? last use
-    private final ConcurrentHashMap<Connection, Entry<Boolean, Long>> connections;
+    /**
+     * The pool all connections to the database are borrowed from.
+     */
+    private final ConnectionPool pool;
+    /**
+     * The {@link BukkitTask} which periodically evicts idle connections and
+     * reports leaked ones.
+     */
+    private final BukkitTask maintenanceTask;
 
     /**
      * Constructor.
@@ -127,6 +182,20 @@ public final class MySQLDataStore extends DataStore {
      * @since 0.0.5
      */
     public MySQLDataStore(final RolecraftCore plugin) {
+        this(plugin, plugin.getConfig().getInt("storage.statement-cache-size",
+                DEFAULT_STATEMENT_CACHE_SIZE));
+    }
+
+    /**
+     * Create a {@link MySQLDataStore} with the given statement cache size,
+     * used by the {@link StorageBenchmark} to compare running with and
+     * without the {@link StatementCache}.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @param statementCacheSize the maximum amount of cached prepared
+     *        statements per connection, {@code 0} to disable the cache
+     */
+    MySQLDataStore(final RolecraftCore plugin, final int statementCacheSize) {
         super(plugin);
 
         user = plugin.getConfig().getString("mysql.username");
@@ -135,50 +204,31 @@ public final class MySQLDataStore extends DataStore {
         port = plugin.getConfig().getInt("mysql.port", MYSQL_DEFAULT_PORT);
         databaseName = plugin.getConfig().getString("mysql.databasename");
 
-        connections = new ConcurrentHashMap<Connection, Entry<Boolean, Long>>();
+        pool = new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection create() throws SQLException {
+                return connect();
+            }
+        }, plugin.getLogger(),
+                plugin.getConfig().getInt("mysql.pool.min-size",
+                        DEFAULT_POOL_MIN),
+                plugin.getConfig().getInt("mysql.pool.max-size",
+                        DEFAULT_POOL_MAX),
+                plugin.getConfig().getLong("mysql.pool.borrow-timeout",
+                        DEFAULT_BORROW_TIMEOUT),
+                plugin.getConfig().getLong("mysql.pool.idle-timeout",
+                        DEFAULT_IDLE_TIMEOUT),
+                plugin.getConfig().getLong("mysql.pool.leak-threshold",
+                        DEFAULT_LEAK_THRESHOLD),
+                statementCacheSize);
 
-        new BukkitRunnable() {
-            @SuppressWarnings("JDBCResourceOpenedButNotSafelyClosed")
+        maintenanceTask = new BukkitRunnable() {
             @Override
             public void run() {
-                final Iterator<Entry<Connection, Entry<Boolean, Long>>> iter = connections
-                        .entrySet().iterator();
-                while (iter.hasNext()) {
-                    final Entry<Connection, Entry<Boolean, Long>> conn = iter
-                            .next();
-                    try {
-                        if (conn.getKey() == null || conn.getKey().isClosed()) {
-                            // if in use, reset timer
-                            if (conn.getValue().getKey()) {
-                                conn.getValue()
-                                        .setValue(System.currentTimeMillis());
-                            }
-                            // else check for age and close and remove/keepalive
-                            else {
-                                if (conn.getValue().getValue() + KILL_TIME
-                                        < System.currentTimeMillis()) {
-                                    if (!connections.isEmpty()) {
-                                        conn.getKey().close();
-                                        iter.remove();
-                                    } else {
-                                        // keepalive
-                                        conn.getKey().prepareCall("SELECT 1")
-                                                .execute();
-                                    }
-                                } else {
-                                    // keepalive
-                                    conn.getKey().prepareCall("SELECT 1")
-                                            .execute();
-                                }
-                            }
-                        }
-                    } catch (final SQLException e) {
-
-                        e.printStackTrace();
-                    }
-                }
+                pool.maintain();
             }
-        }.runTaskTimerAsynchronously(getPlugin(), 20 * 20, 20 * 20);
+        }.runTaskTimerAsynchronously(getPlugin(), MAINTENANCE_INTERVAL,
+                MAINTENANCE_INTERVAL);
     }
 
     /**
@@ -187,49 +237,48 @@ public final class MySQLDataStore extends DataStore {
     @Override
     public void initialise() {
         final RolecraftCore parent = getPlugin();
-        new BukkitRunnable() {
+        openOutageBuffer();
+        submit("initialise", new Runnable() {
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("create the tables", "initialise",
+                            MySQLDataStore.this, this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement(CREATE_PLAYER_TABLE);
-                    ps.execute();
-                    ps.close();
-                    ps = connection.prepareStatement(CREATE_GUILD_TABLE);
-                    ps.execute();
-                    ps.close();
-                    ps = connection.prepareStatement(CREATE_META_TABLE);
-                    ps.execute();
-                    ps.close();
+                    createTables(connection);
 
                     ps = connection.prepareStatement(
                             "SELECT version FROM " + mdt + " WHERE entry = ?");
                     ps.setString(1, mde);
                     rs = ps.executeQuery();
                     if (rs.next()) {
-                        if (!rs.getString("version")
-                                .equals(DataStore.SQLVERSION1)) {
-                            // TODO: in the future versions, add logic to update database
-                        }
+                        final String version = rs.getString("version");
+                        close(ps, rs);
+                        updateSchema(connection, version);
                     } else {
                         close(ps, rs);
                         ps = connection.prepareStatement(
                                 "INSERT INTO " + mdt + " VALUES ('"
-                                        + DataStore.SQLVERSION1 + "','"
+                                        + getMigrationRunner()
+                                                .getLatestVersion() + "','"
                                         + DataStore.mde + "')");
                         ps.execute();
                     }
 
                     parent.setSqlLoaded(true);
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("load player data", ex);
                 } finally {
                     close(ps, rs);
+                    freeConnection(connection);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        });
     }
 
     /**
@@ -239,33 +288,36 @@ public final class MySQLDataStore extends DataStore {
     @Override
     public void clearPlayerData(final PlayerData data) {
         data.setUnloading(true);
-        new BukkitRunnable() {
+        submit("clear-player", new Runnable() {
             @SuppressWarnings("deprecation")
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("clear player data",
+                            "clear-player", data.getPlayerId(), this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 final ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement("DELETE FROM " + pt
-                            + " WHERE uuid = ?");
+                    ps = prepare(connection, DELETE_PLAYER);
                     ps.setString(1, data.getPlayerId().toString());
                     ps.execute();
-                    ps.close();
-                    ps = connection.prepareStatement("INSERT INTO " + pt
-                            + " (uuid, name) VALUES (?,?)");
+                    close(ps, null);
+                    ps = prepare(connection, INSERT_PLAYER);
                     ps.setString(1, data.getPlayerId().toString());
                     ps.setString(2, data.getPlayerName());
                     ps.execute();
                     data.clear();
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("clear player data", ex);
                 } finally {
                     close(ps, rs);
                     freeConnection(connection);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        }, data.getPlayerId());
     }
 
     /**
@@ -273,29 +325,15 @@ public final class MySQLDataStore extends DataStore {
      */
     @Override
     protected Connection getConnection() {
+        if (!getCircuitBreaker().canAttempt()) {
+            // don't wait for another timeout while the server is down
+            return null;
+        }
         try {
-            Class.forName("com.mysql.jdbc.Driver");
-            final Iterator<Entry<Connection, Entry<Boolean, Long>>> iter = connections
-                    .entrySet().iterator();
-            while (iter.hasNext()) {
-                final Entry<Connection, Entry<Boolean, Long>> conn = iter
-                        .next();
-                if (!conn.getValue().getKey()) {
-                    conn.setValue(new SimpleEntry<Boolean, Long>(true,
-                            System.currentTimeMillis()));
-                    return conn.getKey();
-                }
-            }
-            final Connection conn = DriverManager.getConnection(
-                    "jdbc:mysql://" + uri + ":" + port + "/" + databaseName
-                            + "?user=" + user + "&password=" + password);
-            connections.put(conn, new SimpleEntry<Boolean, Long>(true,
-                    System.currentTimeMillis()));
-            return conn;
+            return pool.borrow();
         } catch (final SQLException ex) {
-            ex.printStackTrace();
-        } catch (final ClassNotFoundException e) {
-            e.printStackTrace();
+            getPlugin().getLogger().log(Level.SEVERE,
+                    "Couldn't obtain a MySQL connection", ex);
         }
         return null;
     }
@@ -313,8 +351,207 @@ public final class MySQLDataStore extends DataStore {
      */
     @Override
     public void freeConnection(final Connection connection) {
-        connections.put(connection, new SimpleEntry<Boolean, Long>(false,
-                System.currentTimeMillis()));
+        pool.release(connection);
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public boolean shutdown() {
+        final boolean drained = super.shutdown();
+        maintenanceTask.cancel();
+        pool.close();
+        return drained;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    protected void createTables(final Connection connection)
+            throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            // the player table references the guild table
+            statement.execute(CREATE_GUILD_TABLE);
+            statement.execute(CREATE_PLAYER_TABLE);
+            statement.execute(CREATE_GUILD_RANK_TABLE);
+            statement.execute(CREATE_GUILD_MEMBER_TABLE);
+            statement.execute(CREATE_META_TABLE);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Foreign key checks are disabled on the returned {@link Connection}, as
+     * SQLite databases may contain players referencing deleted guilds.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected Connection openBulkConnection() throws SQLException {
+        final Connection connection = connect();
+        final Statement statement = connection.createStatement();
+        try {
+            statement.execute("SET foreign_key_checks = 0");
+        } catch (final SQLException ex) {
+            connection.close();
+            throw ex;
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    private Connection connect() throws SQLException {
+        try {
+            Class.forName("com.mysql.jdbc.Driver");
+        } catch (final ClassNotFoundException e) {
+            throw new SQLException("MySQL driver not found");
+        }
+        return DriverManager.getConnection("jdbc:mysql://" + uri + ":" + port
+                + "/" + databaseName + "?user=" + user + "&password="
+                + password);
+    }
+
+    /**
+     * Connector/J only streams results row by row with this fetch size.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    protected StatementCache getStatementCache(final Connection connection) {
+        return pool.getStatementCache(connection);
+    }
+
+    /**
+     * Get the {@link ConnectionPool} connections to the MySQL database are
+     * borrowed from, e.g. to inspect its usage.
+     *
+     * @return the used {@link ConnectionPool}
+     * @since 0.1.0
+     */
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Writes the players of the given {@link WriteBatch} with multi-row
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE} statements, one per distinct
+     * set of changed fields and at most {@link #UPSERT_ROWS} rows each.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected long writePlayerRows(final Connection connection,
+            final WriteBatch batch) throws SQLException {
+        final Map<Integer, List<PlayerDataSnapshot>> groups = new LinkedHashMap<Integer, List<PlayerDataSnapshot>>();
+        for (final PlayerDataSnapshot snapshot : batch.getSnapshots()
+                .values()) {
+            List<PlayerDataSnapshot> group = groups.get(snapshot.getFields());
+            if (group == null) {
+                group = new ArrayList<PlayerDataSnapshot>();
+                groups.put(snapshot.getFields(), group);
+            }
+            group.add(snapshot);
+        }
+
+        long bytes = 0;
+        for (final Map.Entry<Integer, List<PlayerDataSnapshot>> group : groups
+                .entrySet()) {
+            final List<PlayerDataSnapshot> rows = group.getValue();
+            for (int i = 0; i < rows.size(); i += UPSERT_ROWS) {
+                bytes += upsertPlayers(connection, group.getKey(), rows
+                        .subList(i, Math.min(i + UPSERT_ROWS, rows.size())));
+            }
+        }
+        return bytes;
+    }
+
+    private long upsertPlayers(final Connection connection, final int fields,
+            final List<PlayerDataSnapshot> rows) throws SQLException {
+        // lastname has no default, so it is always part of the inserted row
+        final int values = fields & ~PlayerData.Field.NAME.getMask();
+        PreparedStatement ps = null;
+        long bytes = 0;
+        try {
+            ps = prepare(connection, upsert(fields, rows.size()));
+            int index = 1;
+            for (final PlayerDataSnapshot data : rows) {
+                final String uuid = data.getPlayerId().toString();
+                ps.setString(index++, uuid);
+                ps.setString(index++, data.getPlayerName());
+                bytes += uuid.length() + data.getPlayerName().length();
+                bytes += bindPlayerFields(ps, index, data, values);
+                index += Integer.bitCount(values);
+            }
+            ps.executeUpdate();
+        } finally {
+            close(ps, null);
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the statement upserting the given amount of rows with the given
+     * changed {@link PlayerData.Field}s.
+     */
+    private static SqlStatement upsert(final int fields, final int rows) {
+        final Long key = ((long) fields << 32) | rows;
+        final SqlStatement cached = UPSERTS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final int values = fields & ~PlayerData.Field.NAME.getMask();
+        final StringBuilder columns = new StringBuilder("uuid, lastname");
+        final StringBuilder updates = new StringBuilder();
+        for (final PlayerData.Field field : PlayerData.Field.values()) {
+            if ((fields & field.getMask()) == 0) {
+                continue;
+            }
+            final String column = getPlayerColumn(field);
+            if ((values & field.getMask()) != 0) {
+                columns.append(", ").append(column);
+            }
+            if (updates.length() > 0) {
+                updates.append(", ");
+            }
+            updates.append(column).append(" = VALUES(").append(column)
+                    .append(')');
+        }
+
+        final StringBuilder row = new StringBuilder("(?, ?");
+        for (int i = 0; i < Integer.bitCount(values); i++) {
+            row.append(", ?");
+        }
+        row.append(')');
+
+        final StringBuilder sql = new StringBuilder("INSERT INTO ").append(pt)
+                .append(" (").append(columns).append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        sql.append(" ON DUPLICATE KEY UPDATE ").append(updates);
+
+        final SqlStatement created = new SqlStatement("upsert-players-"
+                + fields + "x" + rows, sql.toString());
+        final SqlStatement existing = UPSERTS.putIfAbsent(key, created);
+        return existing == null ? created : existing;
     }
 
     //    @Override
@@ -0,0 +1,104 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Replaces the {@code 'NULL'} strings older versions wrote to the guild and
+ * profession columns of the player table with real {@code NULL} values, in
+ * batches of players ordered by their {@link java.util.UUID}. Both values are
+ * read as absent, so this runs in the background.
+ *
+ * @since 0.1.0
+ */
+final class NullValueMigration extends Migration {
+    /**
+     * The columns which may contain {@code 'NULL'} strings.
+     */
+    private static final String[] COLUMNS = { "guild", "profession",
+            "secondprofession" };
+
+    /**
+     * Constructor.
+     */
+    NullValueMigration() {
+        super(DataStore.SQLVERSION2, DataStore.SQLVERSION3, true);
+    }
+
+    @Override
+    public String migrateBatch(final Connection connection,
+            final String checkpoint, final int limit) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        int players = 0;
+        String last = checkpoint;
+        try {
+            ps = connection.prepareStatement("SELECT uuid FROM " + DataStore.pt
+                    + " WHERE uuid > ? ORDER BY uuid LIMIT " + limit);
+            ps.setString(1, checkpoint);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                last = rs.getString("uuid");
+                players++;
+            }
+            DataStore.closeQuietly(ps, rs);
+            rs = null;
+            if (players == 0) {
+                return null;
+            }
+
+            final StringBuilder sql = new StringBuilder("UPDATE ")
+                    .append(DataStore.pt).append(" SET ");
+            final StringBuilder where = new StringBuilder();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                final String column = COLUMNS[i];
+                if (i > 0) {
+                    sql.append(", ");
+                    where.append(" OR ");
+                }
+                sql.append(column).append(" = CASE WHEN UPPER(")
+                        .append(column).append(") = 'NULL' THEN NULL ELSE ")
+                        .append(column).append(" END");
+                where.append("UPPER(").append(column).append(") = 'NULL'");
+            }
+            sql.append(" WHERE uuid > ? AND uuid <= ? AND (").append(where)
+                    .append(')');
+
+            ps = connection.prepareStatement(sql.toString());
+            ps.setString(1, checkpoint);
+            ps.setString(2, last);
+            ps.executeUpdate();
+        } finally {
+            DataStore.closeQuietly(ps, rs);
+        }
+        return players < limit ? null : last;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A durable queue of {@link WriteBatch}es which couldn't be written because
+ * the database was unreachable. Batches are appended to a file and forced to
+ * disk, and replayed in the same order once the database is reachable again.
+ * The position of the oldest batch which hasn't been replayed is kept in the
+ * file header, so a restart continues where the replay stopped; a batch may
+ * be written twice if the server stops right after writing it. The file only
+ * exists while there is something to replay.
+ *
+ * Only used from the storage thread, except for the getters.
+ *
+ * @since 0.1.0
+ */
+final class OutageBuffer {
+    /**
+     * Identifies an outage buffer.
+     */
+    private static final int MAGIC = 0x52434f42;
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The size of the header: magic, version and the position of the oldest
+     * batch.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * The size of a record header: length, checksum and time.
+     */
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * The buffer file.
+     */
+    private final File file;
+    /**
+     * The maximum size of the file, in bytes.
+     */
+    private final long limit;
+    private final Logger logger;
+
+    /**
+     * The open buffer file, {@code null} while it is empty.
+     */
+    private RandomAccessFile raf;
+    /**
+     * The position of the oldest batch which hasn't been replayed.
+     */
+    private long head;
+    /**
+     * The position after the batch returned by {@link #peek()}.
+     */
+    private long next;
+    /**
+     * The amount of batches which haven't been replayed.
+     */
+    private volatile int count;
+    /**
+     * The size of the file, in bytes.
+     */
+    private volatile long size;
+    /**
+     * The {@link System#currentTimeMillis()} at which the oldest batch which
+     * hasn't been replayed was buffered, {@code 0} when empty.
+     */
+    private volatile long oldest;
+    /**
+     * The amount of batches which were rejected because the buffer was full
+     * or couldn't be written.
+     */
+    private volatile long rejected;
+    /**
+     * The amount of replayed batches.
+     */
+    private volatile long replayed;
+
+    /**
+     * Constructor. Opens the buffer file if a previous run left batches
+     * behind.
+     *
+     * @param file the buffer file
+     * @param limit the maximum size of the file, in bytes
+     * @param logger the {@link Logger} to report problems to
+     * @since 0.1.0
+     */
+    OutageBuffer(final File file, final long limit, final Logger logger) {
+        this.file = file;
+        this.limit = limit;
+        this.logger = logger;
+        if (file.exists()) {
+            try {
+                load();
+            } catch (final IOException ex) {
+                logger.log(Level.SEVERE, "Couldn't read " + file, ex);
+                quarantine();
+            }
+        }
+    }
+
+    /**
+     * Check whether there are batches to replay.
+     *
+     * @return {@code true} if the buffer is empty
+     * @since 0.1.0
+     */
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Append the given {@link WriteBatch} and force it to disk.
+     *
+     * @param batch the {@link WriteBatch} to buffer
+     * @return {@code true} if the batch was buffered, {@code false} if the
+     *         buffer is full or couldn't be written
+     * @since 0.1.0
+     */
+    boolean append(final WriteBatch batch) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            batch.write(out);
+            out.flush();
+            final byte[] data = bytes.toByteArray();
+
+            final long length = RECORD_HEADER_SIZE + data.length;
+            if (Math.max(size, HEADER_SIZE) + length > limit) {
+                if (rejected++ == 0) {
+                    logger.severe("The outage buffer " + file + " is full, "
+                            + "further writes are dropped");
+                }
+                return false;
+            }
+
+            open();
+            final long now = System.currentTimeMillis();
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            raf.seek(size);
+            raf.writeInt(data.length);
+            raf.writeInt((int) crc.getValue());
+            raf.writeLong(now);
+            raf.write(data);
+            raf.getFD().sync();
+
+            size += length;
+            if (count++ == 0) {
+                oldest = now;
+            }
+            return true;
+        } catch (final IOException ex) {
+            rejected++;
+            logger.log(Level.SEVERE, "Couldn't write to " + file, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Read the oldest {@link WriteBatch} which hasn't been replayed, without
+     * removing it. A damaged batch ends the buffer, since everything after it
+     * can't be trusted either.
+     *
+     * @return the oldest batch, or {@code null} if the buffer is empty
+     * @since 0.1.0
+     */
+    WriteBatch peek() {
+        if (count == 0) {
+            return null;
+        }
+        try {
+            open();
+            raf.seek(head);
+            final byte[] data = new byte[raf.readInt()];
+            final int checksum = raf.readInt();
+            raf.readLong();
+            raf.readFully(data);
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Damaged batch at " + head);
+            }
+            next = head + RECORD_HEADER_SIZE + data.length;
+            return WriteBatch.read(new DataInputStream(
+                    new ByteArrayInputStream(data)));
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't read " + file + ", dropping "
+                    + count + " buffered writes", ex);
+            close();
+            quarantine();
+            reset();
+            return null;
+        }
+    }
+
+    /**
+     * Remove the batch returned by {@link #peek()} once it has been written,
+     * deleting the file when nothing is left.
+     *
+     * @since 0.1.0
+     */
+    void pop() {
+        replayed++;
+        if (--count == 0) {
+            close();
+            if (!file.delete()) {
+                logger.severe("Couldn't delete " + file);
+            }
+            reset();
+            return;
+        }
+
+        head = next;
+        try {
+            raf.seek(8);
+            raf.writeLong(head);
+            raf.seek(head + 8);
+            oldest = raf.readLong();
+        } catch (final IOException ex) {
+            logger.log(Level.SEVERE, "Couldn't update " + file, ex);
+        }
+    }
+
+    /**
+     * Close the file, keeping the batches which haven't been replayed for the
+     * next start.
+     *
+     * @since 0.1.0
+     */
+    void close() {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (final IOException e) {
+                // swallow exception
+            }
+            raf = null;
+        }
+    }
+
+    /**
+     * Get the amount of batches which haven't been replayed.
+     *
+     * @return the amount of buffered batches
+     * @since 0.1.0
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the size of the buffer file.
+     *
+     * @return the size in bytes, {@code 0} when empty
+     * @since 0.1.0
+     */
+    long getSize() {
+        return count == 0 ? 0 : size;
+    }
+
+    /**
+     * Get how long the oldest batch which hasn't been replayed has been
+     * waiting, which is how far the database lags behind.
+     *
+     * @return the lag in milliseconds, {@code 0} when empty
+     * @since 0.1.0
+     */
+    long getLag() {
+        final long time = oldest;
+        return count == 0 || time == 0 ? 0 : System.currentTimeMillis()
+                - time;
+    }
+
+    /**
+     * Get the amount of batches which couldn't be buffered.
+     *
+     * @return the amount of rejected batches
+     * @since 0.1.0
+     */
+    long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Get the amount of batches which were replayed.
+     *
+     * @return the amount of replayed batches
+     * @since 0.1.0
+     */
+    long getReplayedCount() {
+        return replayed;
+    }
+
+    /**
+     * Open the file, creating it if the buffer is empty.
+     */
+    private void open() throws IOException {
+        if (raf != null) {
+            return;
+        }
+        if (count > 0) {
+            // closed on shutdown while batches were left
+            raf = new RandomAccessFile(file, "rw");
+            return;
+        }
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create " + parent);
+        }
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeLong(HEADER_SIZE);
+        head = HEADER_SIZE;
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * Open the file left behind by a previous run and count its batches,
+     * cutting off a batch which was only partly written.
+     */
+    private void load() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC
+                || raf.readInt() != VERSION) {
+            close();
+            throw new IOException("Unknown format");
+        }
+        head = raf.readLong();
+        final long length = raf.length();
+        long position = head;
+        int batches = 0;
+        while (position + RECORD_HEADER_SIZE <= length) {
+            raf.seek(position);
+            final int data = raf.readInt();
+            raf.readInt();
+            final long time = raf.readLong();
+            final long end = position + RECORD_HEADER_SIZE + data;
+            if (data < 0 || end > length) {
+                break;
+            }
+            if (batches++ == 0) {
+                oldest = time;
+            }
+            position = end;
+        }
+        if (position < length) {
+            logger.warning("Discarding a partly written batch at the end of "
+                    + file);
+            raf.setLength(position);
+        }
+
+        if (batches == 0) {
+            close();
+            if (!file.delete()) {
+                logger.severe("Couldn't delete " + file);
+            }
+            reset();
+            return;
+        }
+        size = position;
+        count = batches;
+        logger.info(batches + " writes from a database outage are waiting "
+                + "to be replayed");
+    }
+
+    private void reset() {
+        head = 0;
+        next = 0;
+        size = 0;
+        count = 0;
+        oldest = 0;
+    }
+
+    /**
+     * Move the file aside, so it isn't replayed again but can be inspected.
+     */
+    private void quarantine() {
+        final File target = new File(file.getParentFile(), "failed-"
+                + System.currentTimeMillis() + "-" + file.getName());
+        if (file.renameTo(target)) {
+            logger.severe("Unreplayed writes were moved to " + target);
+        } else {
+            logger.severe("Couldn't move " + file + " to " + target);
+        }
+    }
+}
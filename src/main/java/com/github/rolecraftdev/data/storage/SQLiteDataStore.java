@@ -30,7 +30,6 @@ import com.github.rolecraftdev.RolecraftCore;
 import com.github.rolecraftdev.data.PlayerData;
 
 import org.bukkit.Bukkit;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,10 +38,14 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.logging.Level;
 
 /**
- * The SQLite {@link DataStore} implementation.
+ * The SQLite {@link DataStore} implementation. A single {@link Connection} is
+ * used, which is owned by the storage thread: all operations are submitted to
+ * the {@link StorageExecutor}, so statements never run concurrently. The
+ * database is opened in WAL mode and prepared statements are cached.
  *
  * @since 0.0.5
  */
@@ -81,11 +84,41 @@ public final class SQLiteDataStore extends DataStore {
             + "uuid VARCHAR PRIMARY KEY ON CONFLICT FAIL,"
             + "name VARCHAR,"
             + "leader VARCHAR,"
-            + "members TEXT,"
-            + "ranks TEXT,"
             + "home VARCHAR,"
             + "influence INTEGER DEFAULT 0," +
-            "open BOOLEAN DEFAULT FALSE" + ")";
+            "open BOOLEAN DEFAULT FALSE," +
+            "created BIGINT DEFAULT 0" + ")";
+    /**
+     * The query used for creating the guild rank table in the database.
+     */
+    private static final String createGuildRankTable =
+            "CREATE TABLE IF NOT EXISTS "
+                    + grt
+                    + " ("
+                    + "guild_uuid VARCHAR NOT NULL,"
+                    + "name VARCHAR NOT NULL,"
+                    + "permissions INTEGER DEFAULT 0,"
+                    + "parent VARCHAR,"
+                    + "PRIMARY KEY (guild_uuid, name)"
+                    + ")";
+    /**
+     * The query used for creating the guild member table in the database.
+     */
+    private static final String createGuildMemberTable =
+            "CREATE TABLE IF NOT EXISTS "
+                    + gmt
+                    + " ("
+                    + "guild_uuid VARCHAR NOT NULL,"
+                    + "player_uuid VARCHAR NOT NULL,"
+                    + "rank_name VARCHAR NOT NULL DEFAULT '',"
+                    + "PRIMARY KEY (guild_uuid, player_uuid, rank_name)"
+                    + ")";
+    /**
+     * The query used for indexing the guild member table by player.
+     */
+    private static final String createGuildMemberIndex =
+            "CREATE INDEX IF NOT EXISTS " + gmt + "_player ON " + gmt
+                    + " (player_uuid)";
     /**
      * The query used for creating the metadata table in the database.
      */
@@ -95,7 +128,37 @@ public final class SQLiteDataStore extends DataStore {
             + "entry VARCHAR PRIMARY KEY"
             + ")";
 
+    /**
+     * The default size of the SQLite page cache, in KiB.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 8192;
+    /**
+     * The default maximum amount of cached prepared statements.
+     */
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    /**
+     * The time SQLite waits for a lock before failing, in milliseconds.
+     */
+    private static final int BUSY_TIMEOUT = 5000;
+
+    /**
+     * The database file.
+     */
+    private final File file;
+    /**
+     * The maximum amount of cached prepared statements, where {@code 0}
+     * disables the {@link StatementCache}.
+     */
+    private final int statementCacheSize;
+    /**
+     * The {@link Connection} to the database, only used on the storage
+     * thread.
+     */
     private Connection connection;
+    /**
+     * The {@link StatementCache} of {@link #connection}.
+     */
+    private StatementCache statements;
 
     /**
      * Constructor.
@@ -104,7 +167,36 @@ public final class SQLiteDataStore extends DataStore {
      * @since 0.0.5
      */
     public SQLiteDataStore(final RolecraftCore plugin) {
+        this(plugin, new File(plugin.getDataFolder(), dbname + ".db"));
+    }
+
+    /**
+     * Create a {@link SQLiteDataStore} using the given database file, used
+     * for scratch stores such as the ones of the {@link StorageBenchmark}.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @param file the database file
+     */
+    SQLiteDataStore(final RolecraftCore plugin, final File file) {
+        this(plugin, file, plugin.getConfig().getInt(
+                "storage.statement-cache-size", DEFAULT_STATEMENT_CACHE_SIZE));
+    }
+
+    /**
+     * Create a {@link SQLiteDataStore} using the given database file and
+     * statement cache size, used by the {@link StorageBenchmark} to compare
+     * running with and without the {@link StatementCache}.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @param file the database file
+     * @param statementCacheSize the maximum amount of cached prepared
+     *        statements, {@code 0} to disable the cache
+     */
+    SQLiteDataStore(final RolecraftCore plugin, final File file,
+            final int statementCacheSize) {
         super(plugin);
+        this.file = file;
+        this.statementCacheSize = statementCacheSize;
     }
 
     /**
@@ -113,54 +205,53 @@ public final class SQLiteDataStore extends DataStore {
     @Override
     public void initialise() {
         final RolecraftCore parent = getPlugin();
-        new BukkitRunnable() {
+        openOutageBuffer();
+        submit("initialise", new Runnable() {
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("create the tables", "initialise",
+                            SQLiteDataStore.this, this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement(createPlayerTable);
-                    ps.execute();
-                    ps.close();
-                    ps = connection.prepareStatement(createGuildTable);
-                    ps.execute();
-                    ps.close();
-                    ps = connection.prepareStatement(createMetaTable);
-                    ps.execute();
-                    ps.close();
+                    createTables(connection);
 
                     ps = connection.prepareStatement("SELECT version FROM "
                             + mdt + " WHERE entry = ?");
                     ps.setString(1, mde);
                     rs = ps.executeQuery();
                     if (rs.next()) {
-                        if (!rs.getString("version").equals(
-                                DataStore.SQLVERSION1)) {
-                            // TODO: in the future versions, add logic to update database
-                        }
+                        final String version = rs.getString("version");
+                        close(ps, rs);
+                        updateSchema(connection, version);
                     } else {
                         close(ps, rs);
+                        final String version = getMigrationRunner()
+                                .getLatestVersion();
                         Bukkit.getLogger().info("INSERT INTO " + mdt
                                 + " (version,entry) "
-                                + "VALUES (" + DataStore.SQLVERSION1 + ","
+                                + "VALUES (" + version + ","
                                 + DataStore.mde + ")");
                         ps = connection.prepareStatement(
                                 "INSERT INTO " + mdt
                                         + " (version,entry) "
-                                        + "VALUES ('" + DataStore.SQLVERSION1
+                                        + "VALUES ('" + version
                                         + "','" + DataStore.mde + "')");
                         ps.execute();
                     }
 
                     parent.setSqlLoaded(true);
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("load player data", ex);
                 } finally {
                     close(ps, rs);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        });
     }
 
     /**
@@ -168,34 +259,147 @@ public final class SQLiteDataStore extends DataStore {
      */
     @Override
     protected Connection getConnection() {
-        final File dataFile = new File(getPlugin().getDataFolder(), dbname
-                + ".db");
-        if (!dataFile.exists()) {
-            try {
-                //noinspection ResultOfMethodCallIgnored
-                dataFile.createNewFile();
-            } catch (final IOException e) {
-                getPlugin().getLogger().log(Level.SEVERE,
-                        "File write error: " + dbname + ".db");
-            }
+        if (!getExecutor().isStorageThread() && !getExecutor().isShutdown()) {
+            throw new IllegalStateException(
+                    "The SQLite connection is owned by the storage thread");
         }
         try {
             if (connection != null && !connection.isClosed()) {
                 return connection;
             }
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + dataFile);
+        } catch (final SQLException ex) {
+            connection = null;
+        }
+
+        try {
+            connection = connect();
+            statements = statementCacheSize > 0 ? new StatementCache(
+                    connection, statementCacheSize) : null;
             return connection;
         } catch (final SQLException ex) {
             getPlugin().getLogger().log(Level.SEVERE,
                     "SQLite exception on initialize", ex);
-        } catch (final ClassNotFoundException ex) {
-            getPlugin().getLogger()
-                    .log(Level.SEVERE, "CraftBukkit build error");
         }
         return null;
     }
 
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    protected void createTables(final Connection connection)
+            throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            statement.execute(createPlayerTable);
+            statement.execute(createGuildTable);
+            statement.execute(createGuildRankTable);
+            statement.execute(createGuildMemberTable);
+            statement.execute(createGuildMemberIndex);
+            statement.execute(createMetaTable);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * SQLite doesn't enforce foreign keys unless asked to, so the returned
+     * {@link Connection} is configured like the regular one.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    protected Connection openBulkConnection() throws SQLException {
+        return connect();
+    }
+
+    /**
+     * Open a new, configured {@link Connection} to the database file,
+     * creating the file if it doesn't exist yet.
+     */
+    private Connection connect() throws SQLException {
+        if (!file.exists()) {
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                file.createNewFile();
+            } catch (final IOException e) {
+                getPlugin().getLogger().log(Level.SEVERE,
+                        "File write error: " + file.getName());
+            }
+        }
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (final ClassNotFoundException ex) {
+            throw new SQLException("CraftBukkit build error: SQLite driver"
+                    + " not found");
+        }
+        final Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:" + file);
+        try {
+            configure(connection);
+        } catch (final SQLException ex) {
+            connection.close();
+            throw ex;
+        }
+        return connection;
+    }
+
+    /**
+     * Switch the given {@link Connection} to WAL journaling, which lets reads
+     * proceed during writes and turns most commits into sequential appends.
+     * With WAL, {@code synchronous=NORMAL} only syncs on checkpoints and
+     * cannot corrupt the database, only lose the last commits on power loss.
+     */
+    private void configure(final Connection connection) throws SQLException {
+        final int cacheSize = getPlugin().getConfig().getInt(
+                "storage.sqlite.cache-size", DEFAULT_CACHE_SIZE);
+        final Statement statement = connection.createStatement();
+        try {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            // negative values are in KiB rather than pages
+            statement.execute("PRAGMA cache_size = -" + cacheSize);
+            statement.execute("PRAGMA temp_store = MEMORY");
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    protected StatementCache getStatementCache(final Connection connection) {
+        final StatementCache cache = statements;
+        return cache != null && cache.getConnection() == connection ? cache
+                : null;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public boolean shutdown() {
+        if (!super.shutdown()) {
+            // the storage thread still owns the connection
+            return false;
+        }
+        if (statements != null) {
+            statements.close();
+            statements = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                // swallow exception
+            }
+            connection = null;
+        }
+        return true;
+    }
+
     /**
      * @since 0.0.5
      */
@@ -211,25 +415,31 @@ public final class SQLiteDataStore extends DataStore {
     @Override
     public void clearPlayerData(final PlayerData data) {
         data.setUnloading(true);
-        new BukkitRunnable() {
+        submit("clear-player", new Runnable() {
             @Override
             public void run() {
                 final Connection connection = getConnection();
+                if (connection == null) {
+                    connectionUnavailable("clear player data",
+                            "clear-player", data.getPlayerId(), this);
+                    return;
+                }
                 PreparedStatement ps = null;
                 final ResultSet rs = null;
                 try {
-                    ps = connection.prepareStatement("INSERT INTO " + pt
-                            + " (uuid, name) VALUES (?,?)");
+                    // the uuid conflict clause replaces the existing row
+                    ps = prepare(connection, INSERT_PLAYER);
                     ps.setString(1, data.getPlayerId().toString());
                     ps.setString(2, data.getPlayerName());
                     ps.execute();
+                    data.clear();
                 } catch (final SQLException ex) {
-                    ex.printStackTrace();
+                    reportFailure("clear player data", ex);
                 } finally {
                     close(ps, rs);
                 }
             }
-        }.runTaskAsynchronously(getPlugin());
+        }, data.getPlayerId());
     }
 
     /**
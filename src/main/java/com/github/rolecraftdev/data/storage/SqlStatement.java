@@ -0,0 +1,85 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+/**
+ * Identifies a single SQL statement used by a {@link DataStore}. The SQL is
+ * built once, when the statement is created, and the statement itself is the
+ * key under which a {@link StatementCache} keeps it prepared.
+ *
+ * @since 0.1.0
+ */
+public final class SqlStatement {
+    /**
+     * The name of this statement, used for diagnostics.
+     */
+    private final String id;
+    /**
+     * The SQL of this statement.
+     */
+    private final String sql;
+
+    /**
+     * Constructor.
+     *
+     * @param id the name of the statement
+     * @param sql the SQL of the statement
+     * @since 0.1.0
+     */
+    public SqlStatement(final String id, final String sql) {
+        this.id = id;
+        this.sql = sql;
+    }
+
+    /**
+     * Get the name of this statement.
+     *
+     * @return the name of this statement
+     * @since 0.1.0
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the SQL of this statement.
+     *
+     * @return the SQL of this statement
+     * @since 0.1.0
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public String toString() {
+        return id;
+    }
+}
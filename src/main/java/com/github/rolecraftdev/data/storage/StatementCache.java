@@ -0,0 +1,242 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the {@link PreparedStatement}s of a single {@link Connection} open so
+ * every {@link SqlStatement} is only parsed once. Statements are handed out by
+ * {@link #prepare(SqlStatement)} and must be handed back through
+ * {@link #release(PreparedStatement)} instead of being closed. The least
+ * recently used statements are closed once the cache is full.
+ *
+ * A cache is not thread safe and must only be used by the thread which owns
+ * its {@link Connection}.
+ *
+ * @since 0.1.0
+ */
+public final class StatementCache {
+    /**
+     * The {@link Connection} the statements are prepared on.
+     */
+    private final Connection connection;
+    /**
+     * The cached statements by their {@link SqlStatement}, in access order.
+     */
+    private final Map<SqlStatement, PreparedStatement> statements;
+    /**
+     * All statements currently in {@link #statements}.
+     */
+    private final Set<PreparedStatement> owned;
+    /**
+     * The cached statements which are currently handed out.
+     */
+    private final Set<PreparedStatement> inUse;
+    /**
+     * Statements evicted while handed out, which are closed when released.
+     */
+    private final Set<PreparedStatement> evicted;
+    /**
+     * The amount of times a cached statement was reused.
+     */
+    private final AtomicLong hits;
+    /**
+     * The amount of times a statement had to be prepared.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Constructor.
+     *
+     * @param connection the {@link Connection} to prepare statements on
+     * @param capacity the maximum amount of cached statements
+     * @since 0.1.0
+     */
+    public StatementCache(final Connection connection, final int capacity) {
+        this.connection = connection;
+        final int max = Math.max(1, capacity);
+        owned = Collections.newSetFromMap(
+                new IdentityHashMap<PreparedStatement, Boolean>());
+        inUse = Collections.newSetFromMap(
+                new IdentityHashMap<PreparedStatement, Boolean>());
+        evicted = Collections.newSetFromMap(
+                new IdentityHashMap<PreparedStatement, Boolean>());
+        statements = new LinkedHashMap<SqlStatement, PreparedStatement>(16,
+                0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<SqlStatement, PreparedStatement> eldest) {
+                if (size() <= max) {
+                    return false;
+                }
+                discard(eldest.getValue());
+                return true;
+            }
+        };
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Get a {@link PreparedStatement} for the given {@link SqlStatement}. If
+     * the cached statement is already handed out, an uncached statement is
+     * returned, which {@link #release(PreparedStatement)} does not accept.
+     *
+     * @param statement the {@link SqlStatement} to prepare
+     * @return a {@link PreparedStatement} for the given {@link SqlStatement}
+     * @throws SQLException if the statement could not be prepared
+     * @since 0.1.0
+     */
+    public PreparedStatement prepare(final SqlStatement statement)
+            throws SQLException {
+        PreparedStatement ps = statements.get(statement);
+        if (ps != null && !inUse.contains(ps)) {
+            hits.incrementAndGet();
+            inUse.add(ps);
+            return ps;
+        }
+
+        misses.incrementAndGet();
+        if (ps != null) {
+            return connection.prepareStatement(statement.getSql());
+        }
+        ps = connection.prepareStatement(statement.getSql());
+        inUse.add(ps);
+        owned.add(ps);
+        statements.put(statement, ps);
+        return ps;
+    }
+
+    /**
+     * Hand the given {@link PreparedStatement} back to this cache, clearing
+     * its parameters and pending batch.
+     *
+     * @param ps the {@link PreparedStatement} to release
+     * @return {@code false} if the statement was not handed out by this cache
+     *         and should be closed by the caller
+     * @since 0.1.0
+     */
+    public boolean release(final PreparedStatement ps) {
+        if (!inUse.remove(ps)) {
+            // releasing a cached statement twice must not close it
+            return owned.contains(ps);
+        }
+        if (evicted.remove(ps)) {
+            closeQuietly(ps);
+            return true;
+        }
+        try {
+            ps.clearParameters();
+            ps.clearBatch();
+        } catch (final SQLException e) {
+            statements.values().remove(ps);
+            owned.remove(ps);
+            closeQuietly(ps);
+        }
+        return true;
+    }
+
+    /**
+     * Close all cached statements. Statements still handed out are closed
+     * when they are released.
+     *
+     * @since 0.1.0
+     */
+    public void close() {
+        for (final PreparedStatement ps : statements.values()) {
+            discard(ps);
+        }
+        statements.clear();
+        owned.clear();
+    }
+
+    /**
+     * Get the {@link Connection} this cache prepares statements on.
+     *
+     * @return the used {@link Connection}
+     * @since 0.1.0
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get the amount of times a cached statement was reused.
+     *
+     * @return the amount of cache hits
+     * @since 0.1.0
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the amount of times a statement had to be prepared.
+     *
+     * @return the amount of cache misses
+     * @since 0.1.0
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the amount of currently cached statements.
+     *
+     * @return the amount of cached statements
+     * @since 0.1.0
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    private void discard(final PreparedStatement ps) {
+        owned.remove(ps);
+        if (inUse.contains(ps)) {
+            evicted.add(ps);
+        } else {
+            closeQuietly(ps);
+        }
+    }
+
+    private static void closeQuietly(final PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (final SQLException e) {
+            // swallow exception
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.data.PlayerSettings;
+import com.github.rolecraftdev.event.experience.RCExperienceEvent;
+import com.github.rolecraftdev.util.LatencyHistogram;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the SQLite and file {@link DataStore}s on the operations players
+ * wait for: loading the data of a joining player and flushing the data of
+ * everyone online. Both run against scratch stores in the benchmark folder,
+ * which is deleted afterwards, so the data of the server is never touched.
+ * It also measures how many statements per second the SQL stores run with
+ * and without their {@link StatementCache}; for MySQL this only reads from the
+ * configured database, and only when it is the storage in use. Finally, it
+ * adds mana, experience and karma to a single {@link PlayerData} from many
+ * threads at once and checks that no addition was lost.
+ *
+ * @since 0.1.0
+ */
+public final class StorageBenchmark {
+    /**
+     * The amount of statements run to measure the statement throughput.
+     */
+    private static final int STATEMENTS = 10000;
+    /**
+     * The amount of threads adding to the same {@link PlayerData} at once.
+     */
+    private static final int STRESS_THREADS = 8;
+    /**
+     * The amount of additions of each value by every stress thread. The
+     * totals stay below 2^24, so every sum is exact in a float.
+     */
+    private static final int STRESS_ADDITIONS = 100000;
+
+    /**
+     * The associated {@link RolecraftCore} instance.
+     */
+    private final RolecraftCore plugin;
+    /**
+     * The folder the scratch stores are created in.
+     */
+    private final File directory;
+    /**
+     * The amount of players to load and flush.
+     */
+    private final int players;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @param players the amount of players to load and flush
+     * @since 0.1.0
+     */
+    public StorageBenchmark(final RolecraftCore plugin, final int players) {
+        this.plugin = plugin;
+        this.players = players;
+        directory = new File(plugin.getDataFolder(), "benchmark");
+    }
+
+    /**
+     * Run the benchmark against both stores. This blocks until it completes,
+     * so it should not be called from the main thread.
+     *
+     * @return the results, one line per measurement
+     * @since 0.1.0
+     */
+    public List<String> run() {
+        final List<String> results = new ArrayList<String>();
+        delete(directory);
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        try {
+            final File database = new File(directory, "benchmark.db");
+            final SQLiteDataStore sqlite = new SQLiteDataStore(plugin,
+                    database);
+            if (createTables(sqlite)) {
+                measure(sqlite, results);
+                // the tables and players are left by the measurement above
+                measureStatements(new SQLiteDataStore(plugin, database),
+                        new SQLiteDataStore(plugin, database, 0), results);
+            } else {
+                sqlite.shutdown();
+                results.add("SQLite: couldn't create the tables, see the"
+                        + " console");
+            }
+
+            final LogDataStore file = new LogDataStore(plugin, new File(
+                    directory, "data"));
+            file.initialise();
+            measure(file, results);
+
+            if ("mysql".equalsIgnoreCase(plugin.getConfig().getString(
+                    "sqlserver"))) {
+                measureStatements(new MySQLDataStore(plugin),
+                        new MySQLDataStore(plugin, 0), results);
+            } else {
+                results.add("MySQL statements: skipped, MySQL isn't the"
+                        + " configured storage");
+            }
+        } finally {
+            delete(directory);
+        }
+        results.add(stressAdders());
+        return results;
+    }
+
+    /**
+     * Join, flush and join again with {@link #players} new players, adding
+     * the timings to the given results. Shuts the given {@link DataStore}
+     * down afterwards.
+     */
+    private void measure(final DataStore store, final List<String> results) {
+        final String name = store.getStoreTypeName();
+        try {
+            // without a plugin the data doesn't reach the leaderboards
+            final List<PlayerData> datum = new ArrayList<PlayerData>(players);
+            for (int i = 0; i < players; i++) {
+                datum.add(new PlayerData(null, UUID.randomUUID(), "Benchmark"
+                        + i));
+            }
+            results.add(name + " first join: " + load(store, datum));
+
+            final WriteBatch batch = new WriteBatch();
+            for (final PlayerData data : datum) {
+                data.markDirty(PlayerData.Field.ALL);
+            }
+            batch.addPlayers(datum);
+            results.add(name + " flush: " + store.executeBatch(batch));
+
+            final List<PlayerData> returning = new ArrayList<PlayerData>(
+                    players);
+            for (final PlayerData data : datum) {
+                returning.add(new PlayerData(null, data.getPlayerId(),
+                        data.getPlayerName()));
+            }
+            results.add(name + " join: " + load(store, returning));
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    /**
+     * Run {@link #STATEMENTS} player look-ups on each of the given
+     * {@link DataStore}s, which only differ in whether they cache their
+     * statements, and add the throughput of both to the given results.
+     * Shuts both {@link DataStore}s down afterwards.
+     */
+    private static void measureStatements(final DataStore cached,
+            final DataStore uncached, final List<String> results) {
+        final String name = cached.getStoreTypeName();
+        try {
+            final Double on = statementsPerSecond(cached);
+            final Double off = statementsPerSecond(uncached);
+            if (on == null || off == null) {
+                results.add(name + " statements: couldn't connect, see the"
+                        + " console");
+                return;
+            }
+            results.add(name + " statements: cache on=" + Math.round(on)
+                    + "/s off=" + Math.round(off) + "/s");
+        } finally {
+            cached.shutdown();
+            uncached.shutdown();
+        }
+    }
+
+    /**
+     * Prepare, run and close the player look-up {@link #STATEMENTS} times on
+     * the storage thread of the given {@link DataStore}.
+     *
+     * @return the statements per second, or {@code null} if they couldn't be
+     *         run
+     */
+    private static Double statementsPerSecond(final DataStore store) {
+        // a player who doesn't exist, so only the statement is measured
+        final String player = UUID.randomUUID().toString();
+        return store.getExecutor().call("benchmark-statements",
+                new Callable<Double>() {
+                    @Override
+                    public Double call() {
+                        final Connection connection = store.getConnection();
+                        if (connection == null) {
+                            return null;
+                        }
+                        PreparedStatement ps = null;
+                        ResultSet rs = null;
+                        try {
+                            final long start = System.nanoTime();
+                            for (int i = 0; i < STATEMENTS; i++) {
+                                ps = store.prepare(connection,
+                                        DataStore.SELECT_PLAYER);
+                                ps.setString(1, player);
+                                rs = ps.executeQuery();
+                                store.close(ps, rs);
+                                ps = null;
+                                rs = null;
+                            }
+                            final long elapsed = Math.max(1,
+                                    System.nanoTime() - start);
+                            return STATEMENTS * 1e9 / elapsed;
+                        } catch (final SQLException ex) {
+                            store.reportFailure("benchmark the statements",
+                                    ex);
+                            return null;
+                        } finally {
+                            store.close(ps, rs);
+                            store.freeConnection(connection);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Add {@code 1} to the mana, experience and karma of a single
+     * {@link PlayerData} {@link #STRESS_ADDITIONS} times from each of
+     * {@link #STRESS_THREADS} threads, and check that every total equals the
+     * sum of the additions.
+     *
+     * @return the result line
+     */
+    @SuppressWarnings("deprecation")
+    private String stressAdders() {
+        final PlayerData data = new PlayerData(null, UUID.randomUUID(),
+                "Stress");
+        data.initialise(null, null, null, 0, 0, 0, 0,
+                PlayerSettings.defaults());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[STRESS_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < STRESS_ADDITIONS; j++) {
+                        data.addMana(1);
+                        data.addExperience(1,
+                                RCExperienceEvent.ChangeReason.CUSTOM);
+                        data.addKarma(1);
+                    }
+                }
+            }, "Rolecraft benchmark stress " + i);
+            threads[i].start();
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (final Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Adder stress: interrupted";
+            }
+        }
+        final String millis = LatencyHistogram.toMillis(System.nanoTime()
+                - begin);
+
+        final float expected = (float) STRESS_THREADS * STRESS_ADDITIONS;
+        final String totals = "mana=" + data.getMana() + " experience="
+                + data.getExperience() + " karma=" + data.getKarma();
+        if (data.getMana() != expected || data.getExperience() != expected
+                || data.getKarma() != expected) {
+            plugin.getLogger().severe("Concurrent additions to player data"
+                    + " were lost: " + totals + ", expected " + expected);
+            return "Adder stress: FAILED " + totals + " expected=" + expected;
+        }
+        return "Adder stress: " + STRESS_THREADS + " threads added "
+                + (long) expected + " times each in " + millis
+                + "ms, totals correct";
+    }
+
+    /**
+     * Load the given {@link PlayerData} one by one, the way joining players
+     * are loaded, and measure how long each one takes.
+     */
+    private static LatencyHistogram load(final DataStore store,
+            final List<PlayerData> datum) {
+        final LatencyHistogram latency = new LatencyHistogram();
+        for (final PlayerData data : datum) {
+            final long start = System.nanoTime();
+            store.requestPlayerData(data, true);
+            latency.recordSince(start);
+        }
+        return latency;
+    }
+
+    /**
+     * Create the tables of the given {@link SQLiteDataStore} on its storage
+     * thread.
+     */
+    private static boolean createTables(final SQLiteDataStore store) {
+        final Boolean created = store.getExecutor().call("create-tables",
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        final Connection connection = store.getConnection();
+                        if (connection == null) {
+                            return false;
+                        }
+                        try {
+                            store.createTables(connection);
+                            return true;
+                        } catch (final SQLException ex) {
+                            store.reportFailure("create the tables", ex);
+                            return false;
+                        }
+                    }
+                });
+        return created != null && created;
+    }
+
+    /**
+     * Delete the given file, or the given directory and everything in it.
+     */
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.util.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes all operations of a {@link DataStore} on a single, dedicated
+ * thread, in submission order.
+ *
+ * Writes may be submitted as coalescing, keyed on the {@link java.util.UUID}
+ * of the guild or player they affect. If the most recent pending operation
+ * for that key is the same, not yet started operation, it is replaced by the
+ * newer one instead of queueing another; the newer one carries the latest
+ * state, and because nothing else for that key was queued after it, ordering
+ * per key is preserved.
+ *
+ * The queue is bounded. Callers block while it is full, except for the
+ * storage thread itself, which may always enqueue. Once shut down, operations
+ * run directly on the calling thread.
+ *
+ * @since 0.1.0
+ */
+public final class StorageExecutor {
+    /**
+     * The {@link Logger} failures are reported to.
+     */
+    private final Logger logger;
+    /**
+     * The maximum amount of queued operations before callers have to wait.
+     */
+    private final int capacity;
+    /**
+     * Guards all queue state.
+     */
+    private final ReentrantLock lock;
+    /**
+     * Signalled when an operation has been queued or on shutdown.
+     */
+    private final Condition notEmpty;
+    /**
+     * Signalled when an operation has been taken from the queue.
+     */
+    private final Condition notFull;
+    /**
+     * The pending operations, in execution order.
+     */
+    private final ArrayDeque<Task> queue;
+    /**
+     * The most recently queued, pending operation per key.
+     */
+    private final Map<Object, Task> lastPending;
+    /**
+     * The thread operations are executed on.
+     */
+    private final Thread worker;
+    /**
+     * Whether this executor has been shut down.
+     */
+    private volatile boolean shutdown;
+    /**
+     * Whether the storage thread has drained the queue after shutdown and
+     * stopped.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * The amount of submitted operations, including coalesced ones.
+     */
+    private final AtomicLong submitted;
+    /**
+     * The amount of operations merged into a pending one.
+     */
+    private final AtomicLong coalesced;
+    /**
+     * The amount of submissions that had to wait for queue space.
+     */
+    private final AtomicLong stalls;
+    /**
+     * The amount of operations that threw an exception.
+     */
+    private final AtomicLong failures;
+    /**
+     * The time operations spent queued.
+     */
+    private final LatencyHistogram queueWait;
+    /**
+     * The time spent stalled on a full queue.
+     */
+    private final LatencyHistogram stallTime;
+    /**
+     * The execution time per operation name.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> latencies;
+
+    /**
+     * Constructor. Starts the storage thread.
+     *
+     * @param name the name of the storage thread
+     * @param capacity the maximum amount of queued operations
+     * @param logger the {@link Logger} failures are reported to
+     * @since 0.1.0
+     */
+    public StorageExecutor(final String name, final int capacity,
+            final Logger logger) {
+        this.logger = logger;
+        this.capacity = Math.max(1, capacity);
+
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+        queue = new ArrayDeque<Task>();
+        lastPending = new HashMap<Object, Task>();
+
+        submitted = new AtomicLong();
+        coalesced = new AtomicLong();
+        stalls = new AtomicLong();
+        failures = new AtomicLong();
+        queueWait = new LatencyHistogram();
+        stallTime = new LatencyHistogram();
+        latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queue the given operation. It runs after everything submitted before
+     * it.
+     *
+     * @param operation the name of the operation, used for metrics
+     * @param task the operation to run
+     * @param keys the keys of the entities the operation affects, used to
+     *        prevent coalescing of earlier operations past it
+     * @since 0.1.0
+     */
+    public void execute(final String operation, final Runnable task,
+            final Object... keys) {
+        submit(new Task(operation, task, false, keys));
+    }
+
+    /**
+     * Queue the given operation, replacing the pending operation for the same
+     * key if that is the latest pending operation for the key and has the same
+     * name. The given operation must therefore carry the complete state to
+     * write.
+     *
+     * @param operation the name of the operation
+     * @param key the key of the entity the operation affects
+     * @param task the operation to run
+     * @since 0.1.0
+     */
+    public void executeCoalesced(final String operation, final Object key,
+            final Runnable task) {
+        submit(new Task(operation, task, true, new Object[] { key }));
+    }
+
+    /**
+     * Run the given operation on the storage thread and wait for its result.
+     * When called from the storage thread, or after shutdown, it is run
+     * directly.
+     *
+     * @param operation the name of the operation
+     * @param task the operation to run
+     * @param keys the keys of the entities the operation affects
+     * @param <T> the type of the result
+     * @return the result of the operation, or {@code null} if the caller was
+     *         interrupted while waiting
+     * @since 0.1.0
+     */
+    public <T> T call(final String operation, final Callable<T> task,
+            final Object... keys) {
+        return await(enqueue(operation, task, keys));
+    }
+
+    /**
+     * Queue the given operation without waiting for it, so its place in the
+     * queue can be claimed while holding a lock and its result awaited after
+     * releasing it. Like {@link #call(String, Callable, Object...)}, it is run
+     * directly when called from the storage thread or after shutdown.
+     *
+     * @param operation the name of the operation
+     * @param task the operation to run
+     * @param keys the keys of the entities the operation affects
+     * @param <T> the type of the result
+     * @return the {@link Future} of the operation
+     * @since 0.1.0
+     * @see #await(Future)
+     */
+    public <T> Future<T> enqueue(final String operation,
+            final Callable<T> task, final Object... keys) {
+        final FutureTask<T> future = new FutureTask<T>(task);
+        if (Thread.currentThread() == worker || stopped) {
+            run(operation, future);
+        } else {
+            execute(operation, future, keys);
+        }
+        return future;
+    }
+
+    /**
+     * Wait for the result of an operation queued through
+     * {@link #enqueue(String, Callable, Object...)}.
+     *
+     * @param future the {@link Future} of the operation
+     * @param <T> the type of the result
+     * @return the result of the operation, or {@code null} if the caller was
+     *         interrupted while waiting
+     * @since 0.1.0
+     */
+    public <T> T await(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop accepting operations, run everything still queued and stop the
+     * storage thread. Operations submitted afterwards run on the calling
+     * thread.
+     *
+     * @param timeout the maximum time to wait for the queue to drain
+     * @param unit the unit of the timeout
+     * @return {@code true} if the queue was drained in time
+     * @since 0.1.0
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (Thread.currentThread() == worker) {
+            return false;
+        }
+        try {
+            worker.join(unit.toMillis(timeout));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            logger.warning("Storage thread did not finish in time, "
+                    + getQueueDepth() + " operations are left");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether {@link #shutdown(long, TimeUnit)} has been called.
+     * Long-running work that resubmits itself should stop doing so once this
+     * returns {@code true}.
+     *
+     * @return {@code true} if this executor is shutting down
+     * @since 0.1.0
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Check whether the current thread is the storage thread.
+     *
+     * @return {@code true} if called from the storage thread
+     * @since 0.1.0
+     */
+    public boolean isStorageThread() {
+        return Thread.currentThread() == worker;
+    }
+
+    /**
+     * Get the amount of operations waiting to be executed.
+     *
+     * @return the current queue depth
+     * @since 0.1.0
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum amount of queued operations before callers have to
+     * wait.
+     *
+     * @return the queue capacity
+     * @since 0.1.0
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the amount of submitted operations, including coalesced ones.
+     *
+     * @return the amount of submitted operations
+     * @since 0.1.0
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Get the amount of operations that were merged into a pending one.
+     *
+     * @return the amount of coalesced operations
+     * @since 0.1.0
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Get the share of submitted operations that were merged into a pending
+     * one.
+     *
+     * @return the coalescing ratio, between {@code 0} and {@code 1}
+     * @since 0.1.0
+     */
+    public double getCoalescingRatio() {
+        final long amount = submitted.get();
+        return amount == 0 ? 0 : (double) coalesced.get() / amount;
+    }
+
+    /**
+     * Get the amount of submissions that had to wait for queue space.
+     *
+     * @return the amount of stalled submissions
+     * @since 0.1.0
+     */
+    public long getStallCount() {
+        return stalls.get();
+    }
+
+    /**
+     * Get the amount of operations that threw an exception.
+     *
+     * @return the amount of failed operations
+     * @since 0.1.0
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Get the histogram of the time operations spent queued.
+     *
+     * @return the queue wait {@link LatencyHistogram}
+     * @since 0.1.0
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Get the histogram of the time submitters spent waiting on a full queue.
+     *
+     * @return the stall {@link LatencyHistogram}
+     * @since 0.1.0
+     */
+    public LatencyHistogram getStallTime() {
+        return stallTime;
+    }
+
+    /**
+     * Get the execution time histograms, per operation name.
+     *
+     * @return an unmodifiable view of the execution time per operation
+     * @since 0.1.0
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    private void submit(final Task task) {
+        submitted.incrementAndGet();
+        final boolean storageThread = Thread.currentThread() == worker;
+
+        lock.lock();
+        try {
+            if (task.coalescing) {
+                final Task last = lastPending.get(task.keys[0]);
+                if (last != null && last.coalescing
+                        && last.operation.equals(task.operation)) {
+                    last.task = task.task;
+                    coalesced.incrementAndGet();
+                    return;
+                }
+            }
+
+            if (queue.size() >= capacity && !storageThread && !shutdown) {
+                stalls.incrementAndGet();
+                final long start = System.nanoTime();
+                while (queue.size() >= capacity && !shutdown) {
+                    notFull.awaitUninterruptibly();
+                }
+                stallTime.recordSince(start);
+            }
+
+            if (!stopped) {
+                task.queued = System.nanoTime();
+                queue.add(task);
+                for (final Object key : task.keys) {
+                    lastPending.put(key, task);
+                }
+                notEmpty.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // shut down and the queue is drained, run on the calling thread
+        run(task.operation, task.task);
+    }
+
+    private void work() {
+        while (true) {
+            final Task task;
+            final Runnable runnable;
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    if (shutdown) {
+                        stopped = true;
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                task = queue.poll();
+                for (final Object key : task.keys) {
+                    if (lastPending.get(key) == task) {
+                        lastPending.remove(key);
+                    }
+                }
+                runnable = task.task;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            queueWait.recordSince(task.queued);
+            run(task.operation, runnable);
+        }
+    }
+
+    private void run(final String operation, final Runnable runnable) {
+        final long start = System.nanoTime();
+        try {
+            runnable.run();
+        } catch (final Throwable t) {
+            failures.incrementAndGet();
+            logger.log(Level.SEVERE, "Storage operation " + operation
+                    + " failed", t);
+        } finally {
+            getLatency(operation).recordSince(start);
+        }
+    }
+
+    private LatencyHistogram getLatency(final String operation) {
+        LatencyHistogram histogram = latencies.get(operation);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = latencies.putIfAbsent(operation, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * A queued operation.
+     */
+    private static final class Task {
+        /**
+         * The name of the operation.
+         */
+        private final String operation;
+        /**
+         * Whether this operation may be replaced by a newer one.
+         */
+        private final boolean coalescing;
+        /**
+         * The keys of the entities this operation affects.
+         */
+        private final Object[] keys;
+        /**
+         * The operation to run, replaced when coalescing. Guarded by the
+         * executor's lock.
+         */
+        private Runnable task;
+        /**
+         * The {@link System#nanoTime()} at which this operation was queued.
+         */
+        private long queued;
+
+        private Task(final String operation, final Runnable task,
+                final boolean coalescing, final Object[] keys) {
+            this.operation = operation;
+            this.task = task;
+            this.coalescing = coalescing;
+            this.keys = keys;
+        }
+    }
+}
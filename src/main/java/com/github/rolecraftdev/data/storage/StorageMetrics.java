@@ -0,0 +1,404 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.util.LatencyHistogram;
+
+import java.sql.PreparedStatement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the execution time of every {@link SqlStatement} run by a
+ * {@link DataStore}, keeps a rolling log of the slowest ones and summarises
+ * them together with the gauges of the store's {@link StorageExecutor} and
+ * {@link ConnectionPool}.
+ *
+ * A statement is timed from {@link #begin(PreparedStatement, SqlStatement)}
+ * until {@link #end(PreparedStatement)}, so binding parameters and reading
+ * the results are included. When disabled, both return immediately.
+ *
+ * @since 0.1.0
+ */
+public final class StorageMetrics {
+    /**
+     * Whether statements are timed.
+     */
+    private final boolean enabled;
+    /**
+     * The execution time from which a statement is logged as slow, in
+     * nanoseconds.
+     */
+    private final long slowThreshold;
+    /**
+     * The maximum amount of entries in the slow statement log.
+     */
+    private final int slowLogSize;
+    /**
+     * The execution time per {@link SqlStatement#getId()}.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> statements;
+    /**
+     * The statements which are currently running, with their start.
+     */
+    private final Map<PreparedStatement, Running> running;
+    /**
+     * The most recent slow statements, oldest first.
+     */
+    private final ArrayDeque<SlowStatement> slowLog;
+    /**
+     * The amount of statements which were slower than the threshold.
+     */
+    private final AtomicLong slowCount;
+    /**
+     * The amount of storage operations which failed with an exception.
+     */
+    private final AtomicLong errors;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled whether statements should be timed
+     * @param slowThreshold the execution time, in milliseconds, from which a
+     *        statement is logged as slow
+     * @param slowLogSize the maximum amount of slow statements to remember
+     * @since 0.1.0
+     */
+    public StorageMetrics(final boolean enabled, final long slowThreshold,
+            final int slowLogSize) {
+        this.enabled = enabled;
+        this.slowThreshold = TimeUnit.MILLISECONDS.toNanos(slowThreshold);
+        this.slowLogSize = Math.max(1, slowLogSize);
+        statements = new ConcurrentHashMap<String, LatencyHistogram>();
+        running = new IdentityHashMap<PreparedStatement, Running>();
+        slowLog = new ArrayDeque<SlowStatement>();
+        slowCount = new AtomicLong();
+        errors = new AtomicLong();
+    }
+
+    /**
+     * Check whether statements are timed.
+     *
+     * @return {@code true} if statements are timed
+     * @since 0.1.0
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing the given statement.
+     *
+     * @param ps the {@link PreparedStatement} which was handed out
+     * @param statement the {@link SqlStatement} it was prepared from
+     * @since 0.1.0
+     */
+    public void begin(final PreparedStatement ps,
+            final SqlStatement statement) {
+        if (!enabled) {
+            return;
+        }
+        final Running started = new Running(statement, System.nanoTime());
+        synchronized (running) {
+            running.put(ps, started);
+        }
+    }
+
+    /**
+     * Stop timing the given statement and record its execution time.
+     *
+     * @param ps the {@link PreparedStatement} which is handed back
+     * @since 0.1.0
+     */
+    public void end(final PreparedStatement ps) {
+        if (!enabled) {
+            return;
+        }
+        final Running started;
+        synchronized (running) {
+            started = running.remove(ps);
+        }
+        if (started == null) {
+            return;
+        }
+
+        final long elapsed = System.nanoTime() - started.start;
+        getHistogram(started.statement.getId()).record(elapsed);
+        if (elapsed >= slowThreshold) {
+            slowCount.incrementAndGet();
+            final SlowStatement slow = new SlowStatement(
+                    System.currentTimeMillis(), started.statement, elapsed);
+            synchronized (slowLog) {
+                if (slowLog.size() >= slowLogSize) {
+                    slowLog.poll();
+                }
+                slowLog.add(slow);
+            }
+        }
+    }
+
+    /**
+     * Count a failed storage operation.
+     *
+     * @since 0.1.0
+     */
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Get the amount of storage operations which failed with an exception.
+     *
+     * @return the amount of failed operations
+     * @since 0.1.0
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Get the amount of statements which were slower than the threshold.
+     *
+     * @return the amount of slow statements
+     * @since 0.1.0
+     */
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    /**
+     * Get the execution time histograms, per {@link SqlStatement#getId()}.
+     *
+     * @return an unmodifiable view of the execution time per statement
+     * @since 0.1.0
+     */
+    public Map<String, LatencyHistogram> getStatementLatencies() {
+        return Collections.unmodifiableMap(statements);
+    }
+
+    /**
+     * Get the most recent slow statements, oldest first.
+     *
+     * @return a copy of the slow statement log
+     * @since 0.1.0
+     */
+    public List<SlowStatement> getSlowStatements() {
+        synchronized (slowLog) {
+            return new ArrayList<SlowStatement>(slowLog);
+        }
+    }
+
+    /**
+     * Discard all recorded statement times, slow statements and errors.
+     *
+     * @since 0.1.0
+     */
+    public void reset() {
+        statements.clear();
+        synchronized (slowLog) {
+            slowLog.clear();
+        }
+        slowCount.set(0);
+        errors.set(0);
+    }
+
+    /**
+     * Summarise the metrics of the given {@link DataStore} in human-readable
+     * lines, with times in milliseconds.
+     *
+     * @param store the {@link DataStore} these metrics belong to
+     * @return the lines of the summary
+     * @since 0.1.0
+     */
+    public List<String> report(final DataStore store) {
+        final List<String> lines = new ArrayList<String>();
+        final StorageExecutor executor = store.getExecutor();
+        lines.add("Backend: " + store.getStoreTypeName());
+        lines.add("Queue: " + executor.getQueueDepth() + "/"
+                + executor.getCapacity() + " submitted="
+                + executor.getSubmittedCount() + " coalesced="
+                + percent(executor.getCoalescingRatio()) + " stalls="
+                + executor.getStallCount() + " failures="
+                + executor.getFailureCount() + " errors=" + errors.get());
+        lines.add("Queue wait: " + executor.getQueueWait());
+        lines.add("Stalled: " + executor.getStallTime());
+        lines.add("Statements: prepared="
+                + store.getPreparedStatementCount() + " cached="
+                + percent(store.getStatementHitRatio()) + " batch="
+                + (long) store.getBatchRowsPerSecond() + " rows/s");
+
+        final OutageBuffer buffer = store.getOutageBuffer();
+        lines.add("Circuit: " + store.getCircuitBreaker());
+        if (buffer != null) {
+            lines.add("Outage buffer: batches=" + buffer.getCount() + " size="
+                    + buffer.getSize() / 1024 + "KiB lag="
+                    + buffer.getLag() / 1000 + "s replayed="
+                    + buffer.getReplayedCount() + " rejected="
+                    + buffer.getRejectedCount());
+        }
+
+        final ConnectionPool pool = store.getConnectionPool();
+        if (pool != null) {
+            lines.add("Pool: active=" + pool.getActiveCount() + " idle="
+                    + pool.getIdleCount() + " max=" + pool.getMaxSize()
+                    + " waiting=" + pool.getWaitingCount() + " timeouts="
+                    + pool.getTimeoutCount() + " leaks="
+                    + pool.getLeakCount());
+            lines.add("Borrow: " + pool.getBorrowLatency());
+        }
+
+        lines.add("Operations:");
+        for (final Map.Entry<String, LatencyHistogram> entry
+                : new TreeMap<String, LatencyHistogram>(
+                        executor.getLatencies()).entrySet()) {
+            lines.add("  " + entry.getKey() + ": " + entry.getValue());
+        }
+
+        if (!enabled) {
+            return lines;
+        }
+        lines.add("SQL:");
+        for (final Map.Entry<String, LatencyHistogram> entry
+                : new TreeMap<String, LatencyHistogram>(statements)
+                        .entrySet()) {
+            lines.add("  " + entry.getKey() + ": " + entry.getValue());
+        }
+        lines.add("Slow statements (>= "
+                + LatencyHistogram.toMillis(slowThreshold) + "ms): "
+                + slowCount.get());
+        final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+        for (final SlowStatement slow : getSlowStatements()) {
+            lines.add("  " + format.format(new Date(slow.getTime())) + " "
+                    + LatencyHistogram.toMillis(slow.getNanos()) + "ms "
+                    + slow.getStatement().getSql());
+        }
+        return lines;
+    }
+
+    private LatencyHistogram getHistogram(final String id) {
+        LatencyHistogram histogram = statements.get(id);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = statements.putIfAbsent(id, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static String percent(final double ratio) {
+        return Math.round(ratio * 100) + "%";
+    }
+
+    /**
+     * A statement which is being timed.
+     */
+    private static final class Running {
+        /**
+         * The {@link SqlStatement} being executed.
+         */
+        private final SqlStatement statement;
+        /**
+         * The {@link System#nanoTime()} at which it was handed out.
+         */
+        private final long start;
+
+        private Running(final SqlStatement statement, final long start) {
+            this.statement = statement;
+            this.start = start;
+        }
+    }
+
+    /**
+     * An entry of the slow statement log.
+     *
+     * @since 0.1.0
+     */
+    public static final class SlowStatement {
+        /**
+         * The {@link System#currentTimeMillis()} at which it completed.
+         */
+        private final long time;
+        /**
+         * The {@link SqlStatement} which was slow.
+         */
+        private final SqlStatement statement;
+        /**
+         * The execution time, in nanoseconds.
+         */
+        private final long nanos;
+
+        private SlowStatement(final long time, final SqlStatement statement,
+                final long nanos) {
+            this.time = time;
+            this.statement = statement;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Get the time at which the statement completed.
+         *
+         * @return the completion time in milliseconds since the epoch
+         * @since 0.1.0
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Get the {@link SqlStatement} which was slow.
+         *
+         * @return the slow {@link SqlStatement}
+         * @since 0.1.0
+         */
+        public SqlStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Get the execution time of the statement.
+         *
+         * @return the execution time in nanoseconds
+         * @since 0.1.0
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,643 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.data.storage;
+
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.data.PlayerDataSnapshot;
+import com.github.rolecraftdev.guild.Guild;
+import com.github.rolecraftdev.guild.GuildAction;
+import com.github.rolecraftdev.guild.GuildRank;
+import com.github.rolecraftdev.util.serial.LocationSerializer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Collects player and guild mutations so a {@link DataStore} can write them
+ * in a single transaction, using batched statements.
+ *
+ * Mutations are captured when they are added: guild columns are serialised
+ * immediately and {@link PlayerData} is captured in a
+ * {@link PlayerDataSnapshot}, so a batch can safely be built on the main
+ * thread and executed on another.
+ * Adding the same entity twice merges the mutations. A batch should only be
+ * executed once.
+ *
+ * @since 0.1.0
+ * @see DataStore#executeBatch(WriteBatch)
+ */
+public final class WriteBatch {
+    /**
+     * The rank name stored for members who hold no {@link GuildRank}.
+     */
+    static final String NO_RANK = "";
+
+    /**
+     * The {@link PlayerData} the snapshots were taken of, by player
+     * {@link UUID}, only used to hand back their fields on failure.
+     */
+    private final Map<UUID, PlayerData> players;
+    /**
+     * The {@link PlayerDataSnapshot}s to write, by player {@link UUID}.
+     */
+    private final Map<UUID, PlayerDataSnapshot> snapshots;
+    /**
+     * The new guild of players whose {@link PlayerData} may not be loaded.
+     * Values may be {@code null}.
+     */
+    private final Map<UUID, UUID> playerGuilds;
+    /**
+     * The guild table columns of guilds to insert, per guild.
+     */
+    private final Map<UUID, Map<String, Object>> createdGuilds;
+    /**
+     * The serialised guild table columns to update, per guild.
+     */
+    private final Map<UUID, Map<String, Object>> guildColumns;
+    /**
+     * The complete ranks and rank memberships to write, per guild, replacing
+     * the stored ones.
+     */
+    private final Map<UUID, Membership> memberships;
+    /**
+     * The single member rows to insert.
+     */
+    private final List<MemberRow> addedMembers;
+    /**
+     * The members to delete, as guild and player {@link UUID} pairs.
+     */
+    private final List<UUID[]> removedMembers;
+    /**
+     * The guilds to delete.
+     */
+    private final Set<UUID> deletedGuilds;
+
+    /**
+     * Constructor.
+     *
+     * @since 0.1.0
+     */
+    public WriteBatch() {
+        players = new LinkedHashMap<UUID, PlayerData>();
+        snapshots = new LinkedHashMap<UUID, PlayerDataSnapshot>();
+        playerGuilds = new LinkedHashMap<UUID, UUID>();
+        createdGuilds = new LinkedHashMap<UUID, Map<String, Object>>();
+        guildColumns = new LinkedHashMap<UUID, Map<String, Object>>();
+        memberships = new LinkedHashMap<UUID, Membership>();
+        addedMembers = new ArrayList<MemberRow>();
+        removedMembers = new ArrayList<UUID[]>();
+        deletedGuilds = new LinkedHashSet<UUID>();
+    }
+
+    /**
+     * Add the changed values of the given {@link PlayerData} to this batch.
+     * They are captured in a {@link PlayerDataSnapshot} right away, so this
+     * should be called on the thread changing the data. The changed fields
+     * are handed back to the data if the batch fails.
+     *
+     * @param data the {@link PlayerData} to write
+     * @return {@code false} if the data was clean and thus not added
+     * @since 0.1.0
+     */
+    public boolean addPlayer(@Nonnull final PlayerData data) {
+        final PlayerDataSnapshot snapshot = data.takeSnapshot();
+        if (snapshot == null) {
+            return false;
+        }
+
+        final UUID id = data.getPlayerId();
+        final PlayerDataSnapshot current = snapshots.get(id);
+        players.put(id, data);
+        snapshots.put(id, current == null ? snapshot : snapshot
+                .mergeWith(current));
+        return true;
+    }
+
+    /**
+     * Add all dirty {@link PlayerData} of the given {@link Collection} to this
+     * batch.
+     *
+     * @param datum the {@link PlayerData} to write
+     * @return the amount of clean {@link PlayerData} that was skipped
+     * @since 0.1.0
+     */
+    public int addPlayers(@Nonnull final Collection<PlayerData> datum) {
+        int skipped = 0;
+        for (final PlayerData data : datum) {
+            if (!addPlayer(data)) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Set the guild column of the given player, regardless of whether their
+     * {@link PlayerData} is loaded.
+     *
+     * @param player the {@link UUID} of the player
+     * @param guild the {@link UUID} of the player's new {@link Guild}, or
+     *        {@code null} if the player left their {@link Guild}
+     * @since 0.1.0
+     */
+    public void setPlayerGuild(@Nonnull final UUID player,
+            @Nullable final UUID guild) {
+        playerGuilds.put(player, guild);
+    }
+
+    /**
+     * Insert the given, newly created {@link Guild} along with its ranks and
+     * members.
+     *
+     * @param guild the {@link Guild} to insert
+     * @since 0.1.0
+     */
+    public void createGuild(@Nonnull final Guild guild) {
+        final Map<String, Object> columns = new LinkedHashMap<String, Object>();
+        columns.put("uuid", DataStore.serializeId(guild.getId()));
+        columns.put("name", guild.getName());
+        columns.put("leader", DataStore.serializeId(guild.getLeader()));
+        columns.put("created", guild.getCreated());
+        createdGuilds.put(guild.getId(), columns);
+        memberships.put(guild.getId(), new Membership(guild));
+    }
+
+    /**
+     * Write all data of the given {@link Guild}, including its ranks and
+     * members if they have been loaded.
+     *
+     * @param guild the {@link Guild} to write
+     * @since 0.1.0
+     */
+    public void addGuildData(@Nonnull final Guild guild) {
+        final Map<String, Object> columns = guildColumns(guild);
+        columns.put("name", guild.getName());
+        columns.put("leader", DataStore.serializeId(guild.getLeader()));
+        columns.put("home",
+                LocationSerializer.serialize(guild.getHomeLocation()));
+        columns.put("influence", guild.getInfluence());
+        columns.put("open", guild.isOpen());
+        columns.put("created", guild.getCreated());
+        if (guild.isHydrated()) {
+            // the stored ranks of a header-only guild are still current
+            memberships.put(guild.getId(), new Membership(guild));
+        }
+    }
+
+    /**
+     * Write the {@link GuildRank}s of the given {@link Guild}, including which
+     * members hold them.
+     *
+     * @param guild the {@link Guild} whose ranks to write
+     * @since 0.1.0
+     */
+    public void addGuildRanks(@Nonnull final Guild guild) {
+        if (guild.isHydrated()) {
+            memberships.put(guild.getId(), new Membership(guild));
+        }
+    }
+
+    /**
+     * Add the given player to the given {@link Guild}, with the
+     * {@link GuildRank}s they currently hold in it.
+     *
+     * @param guild the {@link Guild} the player joined
+     * @param player the {@link UUID} of the player
+     * @since 0.1.0
+     */
+    public void addGuildMember(@Nonnull final Guild guild,
+            @Nonnull final UUID player) {
+        addMemberRows(addedMembers, guild, player);
+    }
+
+    /**
+     * Remove the given player from the given {@link Guild}, including all
+     * {@link GuildRank}s they held in it.
+     *
+     * @param guild the {@link Guild} the player left
+     * @param player the {@link UUID} of the player
+     * @since 0.1.0
+     */
+    public void removeGuildMember(@Nonnull final Guild guild,
+            @Nonnull final UUID player) {
+        removedMembers.add(new UUID[] { guild.getId(), player });
+    }
+
+    /**
+     * Delete the given {@link Guild}, along with its ranks and members, and
+     * clear the guild column of all its members.
+     *
+     * @param guild the {@link Guild} to delete
+     * @since 0.1.0
+     */
+    public void deleteGuild(@Nonnull final Guild guild) {
+        guildColumns.remove(guild.getId());
+        memberships.remove(guild.getId());
+        deletedGuilds.add(guild.getId());
+    }
+
+    /**
+     * Get the amount of rows this batch will write.
+     *
+     * @return the amount of rows in this batch
+     * @since 0.1.0
+     */
+    public int size() {
+        int size = snapshots.size() + playerGuilds.size() + createdGuilds.size()
+                + guildColumns.size() + addedMembers.size()
+                + removedMembers.size() + deletedGuilds.size();
+        for (final Membership membership : memberships.values()) {
+            size += membership.ranks.size() + membership.members.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the {@link PlayerDataSnapshot}s this batch writes.
+     *
+     * @return the captured {@link PlayerDataSnapshot}s
+     * @since 0.1.0
+     */
+    public Collection<PlayerDataSnapshot> getPlayerSnapshots() {
+        return Collections.unmodifiableCollection(snapshots.values());
+    }
+
+    /**
+     * Check whether this batch contains no mutations.
+     *
+     * @return {@code true} if there is nothing to write
+     * @since 0.1.0
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Hand the changed fields back to all {@link PlayerData} in this batch, so
+     * they are retried on the next commit. Used when the batch failed.
+     */
+    void restore() {
+        for (final PlayerDataSnapshot snapshot : snapshots.values()) {
+            // batches read back from the outage buffer have no data
+            final PlayerData data = players.get(snapshot.getPlayerId());
+            if (data != null) {
+                data.markDirty(snapshot.getFields());
+            }
+        }
+    }
+
+    /**
+     * Add a {@link PlayerDataSnapshot} which has already been taken, e.g. by
+     * a single player commit.
+     *
+     * @param data the {@link PlayerData} the snapshot was taken of
+     * @param snapshot the {@link PlayerDataSnapshot} to write
+     */
+    void addSnapshot(final PlayerData data,
+            final PlayerDataSnapshot snapshot) {
+        final PlayerDataSnapshot current = snapshots.get(data.getPlayerId());
+        players.put(data.getPlayerId(), data);
+        snapshots.put(data.getPlayerId(), current == null ? snapshot
+                : snapshot.mergeWith(current));
+    }
+
+    /**
+     * Write all mutations of this batch to the given {@link DataOutput}, so
+     * it can be executed later by a batch read with
+     * {@link #read(DataInput)}. The {@link PlayerData} the snapshots were
+     * taken of isn't written.
+     *
+     * @param out the {@link DataOutput} to write to
+     * @throws IOException if writing fails
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(snapshots.size());
+        for (final PlayerDataSnapshot snapshot : snapshots.values()) {
+            snapshot.write(out);
+        }
+        out.writeInt(playerGuilds.size());
+        for (final Map.Entry<UUID, UUID> entry : playerGuilds.entrySet()) {
+            writeId(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+        writeColumns(out, createdGuilds);
+        writeColumns(out, guildColumns);
+        out.writeInt(memberships.size());
+        for (final Map.Entry<UUID, Membership> entry : memberships
+                .entrySet()) {
+            writeId(out, entry.getKey());
+            out.writeInt(entry.getValue().ranks.size());
+            for (final RankRow rank : entry.getValue().ranks) {
+                out.writeUTF(rank.name);
+                out.writeInt(rank.permissions);
+                out.writeBoolean(rank.parent != null);
+                if (rank.parent != null) {
+                    out.writeUTF(rank.parent);
+                }
+            }
+            writeMemberRows(out, entry.getValue().members);
+        }
+        writeMemberRows(out, addedMembers);
+        out.writeInt(removedMembers.size());
+        for (final UUID[] member : removedMembers) {
+            writeId(out, member[0]);
+            writeId(out, member[1]);
+        }
+        out.writeInt(deletedGuilds.size());
+        for (final UUID guild : deletedGuilds) {
+            writeId(out, guild);
+        }
+    }
+
+    /**
+     * Read a batch written by {@link #write(DataOutput)}.
+     *
+     * @param in the {@link DataInput} to read from
+     * @return the read {@link WriteBatch}
+     * @throws IOException if reading fails
+     */
+    static WriteBatch read(final DataInput in) throws IOException {
+        final WriteBatch batch = new WriteBatch();
+        for (int i = in.readInt(); i > 0; i--) {
+            final PlayerDataSnapshot snapshot = PlayerDataSnapshot.read(in);
+            batch.snapshots.put(snapshot.getPlayerId(), snapshot);
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            batch.playerGuilds.put(readId(in), readId(in));
+        }
+        readColumns(in, batch.createdGuilds);
+        readColumns(in, batch.guildColumns);
+        for (int i = in.readInt(); i > 0; i--) {
+            final UUID guild = readId(in);
+            final Membership membership = new Membership();
+            for (int j = in.readInt(); j > 0; j--) {
+                membership.ranks.add(new RankRow(in.readUTF(), in.readInt(),
+                        in.readBoolean() ? in.readUTF() : null));
+            }
+            readMemberRows(in, membership.members);
+            batch.memberships.put(guild, membership);
+        }
+        readMemberRows(in, batch.addedMembers);
+        for (int i = in.readInt(); i > 0; i--) {
+            batch.removedMembers.add(new UUID[] { readId(in), readId(in) });
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            batch.deletedGuilds.add(readId(in));
+        }
+        return batch;
+    }
+
+    /**
+     * Get the {@link UUID}s of all players written by this batch, to key the
+     * batch on in the {@link StorageExecutor}.
+     */
+    Object[] getPlayerIds() {
+        final Set<UUID> ids = new LinkedHashSet<UUID>(snapshots.keySet());
+        ids.addAll(playerGuilds.keySet());
+        return ids.toArray();
+    }
+
+    Map<UUID, PlayerDataSnapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    Map<UUID, UUID> getPlayerGuilds() {
+        return playerGuilds;
+    }
+
+    Map<UUID, Map<String, Object>> getCreatedGuilds() {
+        return createdGuilds;
+    }
+
+    Map<UUID, Map<String, Object>> getGuildColumns() {
+        return guildColumns;
+    }
+
+    Map<UUID, Membership> getMemberships() {
+        return memberships;
+    }
+
+    List<MemberRow> getAddedMembers() {
+        return addedMembers;
+    }
+
+    List<UUID[]> getRemovedMembers() {
+        return removedMembers;
+    }
+
+    Set<UUID> getDeletedGuilds() {
+        return deletedGuilds;
+    }
+
+    private Map<String, Object> guildColumns(final Guild guild) {
+        Map<String, Object> columns = guildColumns.get(guild.getId());
+        if (columns == null) {
+            columns = new LinkedHashMap<String, Object>();
+            guildColumns.put(guild.getId(), columns);
+        }
+        return columns;
+    }
+
+    private static void writeColumns(final DataOutput out,
+            final Map<UUID, Map<String, Object>> guilds) throws IOException {
+        out.writeInt(guilds.size());
+        for (final Map.Entry<UUID, Map<String, Object>> entry : guilds
+                .entrySet()) {
+            writeId(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (final Map.Entry<String, Object> column : entry.getValue()
+                    .entrySet()) {
+                out.writeUTF(column.getKey());
+                final Object value = column.getValue();
+                if (value == null) {
+                    out.writeByte(0);
+                } else if (value instanceof String) {
+                    out.writeByte(1);
+                    out.writeUTF((String) value);
+                } else if (value instanceof Integer) {
+                    out.writeByte(2);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Boolean) {
+                    out.writeByte(3);
+                    out.writeBoolean((Boolean) value);
+                } else if (value instanceof Long) {
+                    out.writeByte(4);
+                    out.writeLong((Long) value);
+                } else {
+                    throw new IOException("Unsupported value for column "
+                            + column.getKey() + ": " + value.getClass());
+                }
+            }
+        }
+    }
+
+    private static void readColumns(final DataInput in,
+            final Map<UUID, Map<String, Object>> guilds) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            final UUID guild = readId(in);
+            final Map<String, Object> columns = new LinkedHashMap<String, Object>();
+            for (int j = in.readInt(); j > 0; j--) {
+                final String column = in.readUTF();
+                final byte type = in.readByte();
+                switch (type) {
+                    case 0:
+                        columns.put(column, null);
+                        break;
+                    case 1:
+                        columns.put(column, in.readUTF());
+                        break;
+                    case 2:
+                        columns.put(column, in.readInt());
+                        break;
+                    case 3:
+                        columns.put(column, in.readBoolean());
+                        break;
+                    case 4:
+                        columns.put(column, in.readLong());
+                        break;
+                    default:
+                        throw new IOException("Unknown value type " + type);
+                }
+            }
+            guilds.put(guild, columns);
+        }
+    }
+
+    private static void writeMemberRows(final DataOutput out,
+            final List<MemberRow> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (final MemberRow row : rows) {
+            writeId(out, row.guild);
+            writeId(out, row.player);
+            out.writeUTF(row.rank);
+        }
+    }
+
+    private static void readMemberRows(final DataInput in,
+            final List<MemberRow> rows) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            rows.add(new MemberRow(readId(in), readId(in), in.readUTF()));
+        }
+    }
+
+    private static void writeId(final DataOutput out, final UUID id)
+            throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readId(final DataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong())
+                : null;
+    }
+
+    /**
+     * Add a row for every {@link GuildRank} the given player holds in the
+     * given {@link Guild}, or a single row without a rank if they hold none.
+     */
+    private static void addMemberRows(final List<MemberRow> rows,
+            final Guild guild, final UUID player) {
+        boolean ranked = false;
+        for (final GuildRank rank : guild.getRanks()) {
+            if (rank.hasPlayer(player)) {
+                rows.add(new MemberRow(guild.getId(), player, rank.getName()));
+                ranked = true;
+            }
+        }
+        if (!ranked) {
+            rows.add(new MemberRow(guild.getId(), player, NO_RANK));
+        }
+    }
+
+    /**
+     * A row of the guild member table.
+     */
+    static final class MemberRow {
+        final UUID guild;
+        final UUID player;
+        final String rank;
+
+        MemberRow(final UUID guild, final UUID player, final String rank) {
+            this.guild = guild;
+            this.player = player;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * A row of the guild rank table.
+     */
+    static final class RankRow {
+        final String name;
+        final int permissions;
+        final String parent;
+
+        RankRow(final String name, final int permissions,
+                final String parent) {
+            this.name = name;
+            this.permissions = permissions;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * A snapshot of all ranks and member rows of a {@link Guild}.
+     */
+    static final class Membership {
+        final List<RankRow> ranks = new ArrayList<RankRow>();
+        final List<MemberRow> members = new ArrayList<MemberRow>();
+
+        Membership() {
+        }
+
+        Membership(final Guild guild) {
+            for (final GuildRank rank : guild.getRanks()) {
+                ranks.add(new RankRow(rank.getName(),
+                        GuildAction.toBits(rank.getPermittedActions()),
+                        rank.getParent()));
+            }
+            for (final UUID member : guild.getMembers()) {
+                addMemberRows(members, guild, member);
+            }
+        }
+    }
+}
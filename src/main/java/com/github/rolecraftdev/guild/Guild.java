@@ -38,13 +38,20 @@ import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents a player-creatable guild.
@@ -66,14 +73,49 @@ public final class Guild {
     private final UUID guildId;
     /**
      * A {@link Set} containing all of this {@link Guild}'s members'
-     * {@link UUID}s, including the one of its leader.
+     * {@link UUID}s, including the one of its leader. Only available once
+     * this {@link Guild} is hydrated.
      */
-    private final Set<UUID> members;
+    private Set<UUID> members;
     /**
      * A {@link Set} containing all of the {@link GuildRank}s available in this
-     * {@link Guild}, as configured by the leader.
+     * {@link Guild}, as configured by the leader. Only available once this
+     * {@link Guild} is hydrated.
      */
-    private final Set<GuildRank> ranks;
+    private Set<GuildRank> ranks;
+    /**
+     * Whether the members and ranks of this {@link Guild} have been loaded.
+     * Written after both sets, so reading {@code true} guarantees they are
+     * visible.
+     */
+    private volatile boolean hydrated;
+    /**
+     * Whether loading the members and ranks of this {@link Guild} has been
+     * requested and hasn't completed or failed yet, so events on its land
+     * don't submit it again.
+     */
+    private final AtomicBoolean hydrationRequested = new AtomicBoolean();
+    /**
+     * The compiled permission bitmask of every ranked player, holding the
+     * {@link GuildAction#getBit() bits} of all of their {@link GuildRank}s
+     * and the ranks those inherit from. Replaced as a whole when all
+     * permissions are compiled, and updated in place for single players.
+     */
+    private volatile Map<UUID, Long> permissions =
+            new ConcurrentHashMap<UUID, Long>();
+    /**
+     * The effective permission bitmask of each {@link GuildRank}, including
+     * inherited {@link GuildAction}s. Only accessed while synchronised on this
+     * {@link Guild}.
+     */
+    private final Map<GuildRank, Long> rankMasks =
+            new HashMap<GuildRank, Long>();
+    /**
+     * The members of this {@link Guild} who are currently online, so
+     * broadcasts don't have to look up every member.
+     */
+    private final Map<UUID, Player> online =
+            new ConcurrentHashMap<UUID, Player>();
 
     /**
      * The name of this {@link Guild}.
@@ -100,6 +142,16 @@ public final class Guild {
      * {@code false}, invitation is required to join the {@link Guild}.
      */
     private boolean open;
+    /**
+     * The time this {@link Guild} was created at, in milliseconds since the
+     * epoch, or {@code 0} if it was created before this was stored.
+     */
+    private final long created;
+    /**
+     * The amount of members this {@link Guild} had when its header was
+     * loaded, used until its members are hydrated.
+     */
+    private final int memberCount;
 
     /**
      * Create a new {@link Guild}, automatically generating a semi-random
@@ -118,19 +170,25 @@ public final class Guild {
             members = null;
             ranks = null;
             guildId = null;
+            created = 0;
+            memberCount = 0;
             return;
         }
 
         plugin = guildManager.getPlugin();
         this.guildManager = guildManager;
         guildId = UUID.randomUUID();
+        created = System.currentTimeMillis();
+        memberCount = 0;
         members = new HashSet<UUID>();
         ranks = new HashSet<GuildRank>();
+        hydrated = true;
 
         ranks.add(new GuildRank(plugin.getMessage(Messages.GUILD_LEADER_RANK),
                 EnumSet.allOf(GuildAction.class), new HashSet<UUID>()));
         ranks.add(new GuildRank(plugin.getMessage(Messages.GUILD_DEFAULT_RANK),
                 EnumSet.noneOf(GuildAction.class), new HashSet<UUID>()));
+        compilePermissions();
     }
 
     /**
@@ -152,6 +210,31 @@ public final class Guild {
             final String name, final UUID leader, final Set<UUID> members,
             final Set<GuildRank> ranks, final Location home,
             final int influence, final boolean open) {
+        this(guildManager, guildId, name, leader, members, ranks, home,
+                influence, open, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param guildManager the {@link GuildManager} this {@link Guild} will be
+     *        registered to
+     * @param guildId the {@link Guild}'s {@link UUID}
+     * @param name the {@link Guild}'s name
+     * @param leader the {@link Guild}'s leader
+     * @param members the {@link Guild}'s members
+     * @param ranks the {@link Guild}'s ranks
+     * @param home the {@link Guild}'s home {@link Location}
+     * @param influence the members' combined influence
+     * @param open whether this {@link Guild} is joinable
+     * @param created the time the {@link Guild} was created at, in
+     *        milliseconds since the epoch
+     * @since 0.1.0
+     */
+    public Guild(final GuildManager guildManager, final UUID guildId,
+            final String name, final UUID leader, final Set<UUID> members,
+            final Set<GuildRank> ranks, final Location home,
+            final int influence, final boolean open, final long created) {
         plugin = guildManager.getPlugin();
         this.guildManager = guildManager;
         this.guildId = guildId;
@@ -162,6 +245,45 @@ public final class Guild {
         this.home = home;
         this.influence = influence;
         this.open = open;
+        this.created = created;
+        memberCount = members.size();
+        compilePermissions();
+        hydrated = true;
+    }
+
+    /**
+     * Create a {@link Guild} of which only the header has been loaded. Its
+     * members and {@link GuildRank}s are loaded in the background when first
+     * needed, see {@link #requestHydration()}, or earlier through
+     * {@link GuildManager#prefetchGuild(UUID)}.
+     *
+     * @param guildManager the {@link GuildManager} this {@link Guild} will be
+     *        registered to
+     * @param guildId the {@link Guild}'s {@link UUID}
+     * @param name the {@link Guild}'s name
+     * @param leader the {@link Guild}'s leader
+     * @param home the {@link Guild}'s home {@link Location}
+     * @param influence the members' combined influence
+     * @param open whether this {@link Guild} is joinable
+     * @param memberCount the amount of members of the {@link Guild}
+     * @param created the time the {@link Guild} was created at, in
+     *        milliseconds since the epoch
+     * @since 0.1.0
+     */
+    public Guild(final GuildManager guildManager, final UUID guildId,
+            final String name, final UUID leader, final Location home,
+            final int influence, final boolean open, final int memberCount,
+            final long created) {
+        plugin = guildManager.getPlugin();
+        this.guildManager = guildManager;
+        this.guildId = guildId;
+        this.name = name;
+        this.leader = leader;
+        this.home = home;
+        this.influence = influence;
+        this.open = open;
+        this.memberCount = memberCount;
+        this.created = created;
     }
 
     /**
@@ -190,13 +312,13 @@ public final class Guild {
             @Nonnull final GuildAction action) {
         Validate.notNull(player);
         Validate.notNull(action);
-
-        for (final GuildRank rank : ranks) {
-            if (rank.hasPlayer(player) && rank.can(action)) {
-                return true;
-            }
+        if (!requestHydration()) {
+            // treat the guild as protected until its ranks are known
+            return false;
         }
-        return false;
+
+        final Long mask = permissions.get(player);
+        return mask != null && (mask & action.getBit()) != 0;
     }
 
     /**
@@ -210,6 +332,11 @@ public final class Guild {
      */
     public boolean isMember(@Nonnull final UUID player) {
         Validate.notNull(player);
+        if (!requestHydration()) {
+            // the player index is loaded along with the headers
+            return guildManager != null
+                    && guildManager.getPlayerGuild(player) == this;
+        }
         return members.contains(player);
     }
 
@@ -221,10 +348,13 @@ public final class Guild {
      * @param player the {@link UUID} of the player the {@link GuildRank}s
      *        should be returned of
      * @return all {@link GuildRank}s the given player has
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     @Nullable
     public Set<GuildRank> getPlayerRanks(@Nonnull final UUID player) {
+        hydrate();
         final Set<GuildRank> result = new HashSet<GuildRank>();
         for (final GuildRank rank : ranks) {
             if (rank.hasPlayer(player)) {
@@ -245,6 +375,28 @@ public final class Guild {
         return influence;
     }
 
+    /**
+     * Get the amount of members of this {@link Guild}, including its leader.
+     * Doesn't load the members if they haven't been loaded yet.
+     *
+     * @return the amount of members
+     * @since 0.1.0
+     */
+    public int getMemberCount() {
+        return hydrated ? members.size() : memberCount;
+    }
+
+    /**
+     * Get the time this {@link Guild} was created at.
+     *
+     * @return the creation time in milliseconds since the epoch, or {@code 0}
+     *         if it is unknown
+     * @since 0.1.0
+     */
+    public long getCreated() {
+        return created;
+    }
+
     /**
      * Teleport the given {@link Entity} to the home {@link Location} of this
      * {@link Guild}.
@@ -309,13 +461,14 @@ public final class Guild {
      * Retrieve a copy of this {@link Guild}'s members.
      *
      * @return the members
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
+     * @see #requestHydration()
      */
     @Nullable
     public Set<UUID> getMembers() {
-        if (members == null) {
-            return null;
-        }
+        hydrate();
         return new HashSet<UUID>(members);
     }
 
@@ -323,13 +476,14 @@ public final class Guild {
      * Retrieve a copy of this {@link Guild}'s {@link GuildRank}s.
      *
      * @return the {@link GuildRank}s
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
+     * @see #requestHydration()
      */
     @Nullable
     public Set<GuildRank> getRanks() {
-        if (ranks == null) {
-            return null;
-        }
+        hydrate();
         return new HashSet<GuildRank>(ranks);
     }
 
@@ -339,10 +493,13 @@ public final class Guild {
      *
      * @param name the name of the wanted {@link GuildRank}
      * @return the applicable {@link GuildRank}
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     @Nullable
     public GuildRank getRank(@Nonnull final String name) {
+        hydrate();
         for (final GuildRank rank : ranks) {
             if (rank.getName().equalsIgnoreCase(name)) {
                 return rank;
@@ -355,6 +512,8 @@ public final class Guild {
      * Get the leader {@link GuildRank} within this {@link Guild}.
      *
      * @return the leader {@link GuildRank}
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     @Nonnull
@@ -366,6 +525,8 @@ public final class Guild {
      * Get the default {@link GuildRank} within this {@link Guild}.
      *
      * @return the default {@link GuildRank}
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     @Nonnull
@@ -394,22 +555,15 @@ public final class Guild {
     public void broadcastMessage(@Nonnull final String message) {
         Validate.notNull(message);
 
-        final Set<UUID> members = getMembers();
-        if (members == null || members.isEmpty()) {
-            return;
-        }
-
-        for (final UUID uuid : members) {
-            final Player player = Bukkit.getPlayer(uuid);
-            if (player != null) {
-                player.sendMessage(message);
-            }
+        for (final Player player : online.values()) {
+            player.sendMessage(message);
         }
     }
 
     /**
      * Sends the given message to all online players who are part of the given
-     * {@link GuildRank}(s).
+     * {@link GuildRank}(s). Players holding several of the given
+     * {@link GuildRank}s receive the message once.
      *
      * @param message the message that should be sent to all members of the
      *        specified {@link GuildRank}(s)
@@ -421,22 +575,58 @@ public final class Guild {
         Validate.notNull(message);
         Validate.notNull(ranks);
 
+        final Set<Player> recipients = new HashSet<Player>();
         for (final GuildRank rank : ranks) {
-            rank.broadcastMessage(message);
+            recipients.addAll(rank.getOnlineMembers());
+        }
+        for (final Player player : recipients) {
+            player.sendMessage(message);
         }
     }
 
     /**
-     * Set the name of this {@link Guild}.
+     * Get the members of this {@link Guild} who are currently online.
+     *
+     * @return an unmodifiable view of the online members
+     * @since 0.1.0
+     */
+    @Nonnull
+    public Collection<Player> getOnlineMembers() {
+        return Collections.unmodifiableCollection(online.values());
+    }
+
+    /**
+     * Set the name of this {@link Guild}. The rename is refused if another
+     * {@link Guild} already has the given name, ignoring case.
      *
      * @param name the new name. Cannot be null
+     * @return {@code true} if this {@link Guild} was renamed, {@code false} if
+     *         the name is taken
      * @since 0.0.5
      */
-    public void setName(@Nonnull final String name) {
+    public boolean setName(@Nonnull final String name) {
         Validate.notNull(name);
 
-        this.name = name;
+        if (guildManager == null) {
+            applyName(name);
+            return true;
+        }
+        if (!guildManager.guildRenamed(this, name)) {
+            return false;
+        }
         plugin.getDataStore().updateGuildData(this);
+        return true;
+    }
+
+    /**
+     * Change the name of this {@link Guild} without touching the indexes of
+     * the {@link GuildManager}. Called while the new name is claimed, see
+     * {@link #setName(String)}.
+     *
+     * @param name the new name
+     */
+    void applyName(final String name) {
+        this.name = name;
     }
 
     /**
@@ -446,21 +636,25 @@ public final class Guild {
      * leader isn't a member of this {@link Guild}, he will automatically join.
      *
      * @param leader the {@link UUID} of the leader
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     public void setLeader(@Nonnull final UUID leader) {
         Validate.notNull(leader);
+        hydrate();
 
         if (this.leader != null) {
             getLeaderRank().removeMember(this.leader);
             getDefaultRank().addMember(this.leader);
         }
-        if (!members.contains(leader)) {
-            members.add(leader);
+        if (members.add(leader)) {
+            guildManager.memberAdded(this, leader);
         }
 
         this.leader = leader;
         getLeaderRank().addMember(leader);
+        memberOnline(Bukkit.getPlayer(leader));
         plugin.getDataStore().updateGuildData(this);
     }
 
@@ -478,6 +672,7 @@ public final class Guild {
     public void create(@Nonnull final String name, @Nonnull final UUID leader) {
         Validate.notNull(name);
         Validate.notNull(leader);
+        hydrate();
 
         this.name = name;
         this.leader = leader;
@@ -485,6 +680,7 @@ public final class Guild {
             members.add(leader);
         }
         getLeaderRank().addMember(leader);
+        memberOnline(Bukkit.getPlayer(leader));
 
         plugin.getDataStore().updateGuildData(this);
     }
@@ -495,23 +691,29 @@ public final class Guild {
      *
      * @param member the {@link UUID} of the player to add
      * @param rank the start {@link GuildRank} of the player
+     * @return the called {@link GuildPlayerJoinEvent}
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     public GuildPlayerJoinEvent addMember(@Nonnull final UUID member,
             @Nonnull final GuildRank rank) {
         Validate.notNull(member);
         Validate.notNull(rank);
+        hydrate();
 
+        final Player player = Bukkit.getPlayer(member);
         final GuildPlayerJoinEvent event = RolecraftEventFactory
-                .guildPlayerJoined(this, Bukkit.getPlayer(member), rank);
+                .guildPlayerJoined(this, player, rank);
         if (event.isCancelled()) {
             return event;
         }
 
         members.add(member);
+        guildManager.memberAdded(this, member);
         rank.addMember(member);
+        memberOnline(player);
         plugin.getDataStore().addPlayerToGuild(member, this);
-        plugin.getDataStore().updateGuildRanks(this);
         return event;
     }
 
@@ -533,11 +735,14 @@ public final class Guild {
      *
      * @param member the {@link UUID} of the player to remove
      * @param kicked whether the leave is due to a kick
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     public void removeMember(@Nonnull final UUID member, final boolean kicked) {
         Validate.notNull(member);
-        Validate.isTrue(getMembers().contains(member));
+        hydrate();
+        Validate.isTrue(members.contains(member));
 
         if (kicked) {
             RolecraftEventFactory.guildPlayerKicked(this,
@@ -552,24 +757,38 @@ public final class Guild {
             throw new IllegalArgumentException(
                     "The given member isn't part of this Guild!");
         }
-        for (final GuildRank rank : getPlayerRanks(member)) {
-            rank.removeMember(member);
+        guildManager.memberRemoved(this, member);
+        final Set<GuildRank> playerRanks = getPlayerRanks(member);
+        if (playerRanks != null) {
+            for (final GuildRank rank : playerRanks) {
+                rank.removeMember(member);
+            }
         }
+        memberOffline(member);
         plugin.getDataStore().removePlayerFromGuild(member, this);
-        plugin.getDataStore().updateGuildRanks(this);
     }
 
     /**
      * Add the given {@link GuildRank} to this {@link Guild}.
      *
      * @param rank the {@link GuildRank} that should be added
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     public boolean addRank(final GuildRank rank) {
         Validate.notNull(rank);
+        hydrate();
         Validate.isTrue(getRank(rank.getName()) == null);
 
         final boolean retVal = ranks.add(rank);
+        if (retVal) {
+            rank.setOwner(this);
+            for (final Player player : online.values()) {
+                rank.memberOnline(player);
+            }
+            rankPermissionsChanged();
+        }
         plugin.getDataStore().updateGuildRanks(this);
         return retVal;
     }
@@ -581,14 +800,21 @@ public final class Guild {
      * @param rank the {@link GuildRank} to remove
      * @return {@code true} only if the given {@link GuildRank} has been removed
      *         from this {@link Guild}
+     * @throws IllegalStateException if the members of this {@link Guild}
+     *         haven't been loaded and the database can't be reached
      * @since 0.0.5
      */
     public boolean removeRank(final GuildRank rank) {
         Validate.notNull(rank);
+        hydrate();
 
         final String name = rank.getName().toLowerCase();
         final boolean retVal = !(name.equals("leader") || name
                 .equals("default")) && ranks.remove(rank);
+        if (retVal) {
+            rank.setOwner(null);
+            rankPermissionsChanged();
+        }
         plugin.getDataStore().updateGuildRanks(this);
         return retVal;
     }
@@ -615,6 +841,278 @@ public final class Guild {
         this.open = open;
     }
 
+    /**
+     * Check whether the members and {@link GuildRank}s of this {@link Guild}
+     * have been loaded. Methods which need them wait for the database when
+     * this returns {@code false}, see {@link #requestHydration()}.
+     *
+     * @return {@code true} if the members and ranks are in memory
+     * @since 0.1.0
+     */
+    public boolean isHydrated() {
+        return hydrated;
+    }
+
+    /**
+     * Set the loaded members and {@link GuildRank}s of this {@link Guild}.
+     * This should only be called by DAOs, and has no effect when this
+     * {@link Guild} has already been hydrated.
+     *
+     * @param members the {@link UUID}s of all members, including the leader
+     * @param ranks the {@link GuildRank}s, holding their members
+     * @since 0.1.0
+     * @deprecated for internal use only
+     */
+    @Deprecated
+    public void completeHydration(@Nonnull final Set<UUID> members,
+            @Nonnull final Set<GuildRank> ranks) {
+        synchronized (this) {
+            if (hydrated) {
+                return;
+            }
+            this.members = members;
+            this.ranks = ranks;
+            compilePermissions();
+            hydrated = true;
+        }
+        hydrationRequested.set(false);
+        guildManager.guildHydrated(this, members);
+        refreshOnlineMembers();
+    }
+
+    /**
+     * Note that loading the members and {@link GuildRank}s of this
+     * {@link Guild} failed or was postponed, so the next call to
+     * {@link #requestHydration()} requests it again. This should only be
+     * called by DAOs.
+     *
+     * @since 0.1.0
+     * @deprecated for internal use only
+     */
+    @Deprecated
+    public void hydrationFailed() {
+        hydrationRequested.set(false);
+    }
+
+    /**
+     * Mark the given member of this {@link Guild} as online, in this
+     * {@link Guild} and in each of their {@link GuildRank}s.
+     *
+     * @param player the {@link Player} who came online, ignored if
+     *        {@code null} or not a member
+     */
+    void memberOnline(@Nullable final Player player) {
+        if (player == null || !hydrated
+                || !members.contains(player.getUniqueId())) {
+            return;
+        }
+        online.put(player.getUniqueId(), player);
+        for (final GuildRank rank : ranks) {
+            rank.memberOnline(player);
+        }
+    }
+
+    /**
+     * Mark the given member of this {@link Guild} as offline, in this
+     * {@link Guild} and in each of their {@link GuildRank}s.
+     *
+     * @param player the {@link UUID} of the player who went offline
+     */
+    void memberOffline(@Nonnull final UUID player) {
+        if (online.remove(player) == null) {
+            return;
+        }
+        for (final GuildRank rank : ranks) {
+            rank.memberOffline(player);
+        }
+    }
+
+    /**
+     * Get the online {@link Player} of the given member.
+     *
+     * @param player the {@link UUID} of the member
+     * @return the {@link Player}, or {@code null} if they aren't online
+     */
+    @Nullable
+    Player getOnlineMember(@Nonnull final UUID player) {
+        return online.get(player);
+    }
+
+    /**
+     * Look up which members of this {@link Guild} are online, once after its
+     * members have been loaded. Moves to the main thread if necessary.
+     */
+    void refreshOnlineMembers() {
+        if (!Bukkit.isPrimaryThread()) {
+            if (plugin.isEnabled()) {
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        refreshOnlineMembers();
+                    }
+                }.runTask(plugin);
+            }
+            return;
+        }
+        for (final UUID member : getMembers()) {
+            memberOnline(Bukkit.getPlayer(member));
+        }
+    }
+
+    /**
+     * Recompile the permission bitmask of the given player after they joined
+     * or left one of the {@link GuildRank}s of this {@link Guild}.
+     *
+     * @param player the {@link UUID} of the player whose ranks changed
+     */
+    synchronized void rankMembersChanged(@Nonnull final UUID player) {
+        compilePlayer(player);
+    }
+
+    /**
+     * Recompile the effective bitmask of every {@link GuildRank} after one
+     * was added or removed, or had its {@link GuildAction}s or inherited
+     * {@link GuildRank} changed, followed by the bitmasks of the members of
+     * each {@link GuildRank} whose effective bitmask changed.
+     */
+    synchronized void rankPermissionsChanged() {
+        final Map<GuildRank, Long> old = new HashMap<GuildRank, Long>(
+                rankMasks);
+        compileRanks();
+
+        final Set<UUID> changed = new HashSet<UUID>();
+        for (final Map.Entry<GuildRank, Long> entry : old.entrySet()) {
+            if (!entry.getValue().equals(rankMasks.get(entry.getKey()))) {
+                changed.addAll(entry.getKey().getMembers());
+            }
+        }
+        for (final GuildRank rank : rankMasks.keySet()) {
+            if (!old.containsKey(rank)) {
+                changed.addAll(rank.getMembers());
+            }
+        }
+        for (final UUID player : changed) {
+            compilePlayer(player);
+        }
+    }
+
+    /**
+     * Take ownership of all {@link GuildRank}s and compile the permission
+     * bitmask of every ranked player from scratch.
+     */
+    private synchronized void compilePermissions() {
+        for (final GuildRank rank : ranks) {
+            rank.setOwner(this);
+        }
+        compileRanks();
+
+        final Map<UUID, Long> compiled = new ConcurrentHashMap<UUID, Long>();
+        for (final GuildRank rank : ranks) {
+            final long mask = rankMasks.get(rank);
+            for (final UUID player : rank.getMembers()) {
+                final Long current = compiled.get(player);
+                compiled.put(player, current == null ? mask : current | mask);
+            }
+        }
+        permissions = compiled;
+    }
+
+    /**
+     * Resolve the effective bitmask of every {@link GuildRank}, following its
+     * chain of inherited ranks until it ends or revisits a rank.
+     */
+    private void compileRanks() {
+        rankMasks.clear();
+        for (final GuildRank rank : ranks) {
+            final Set<GuildRank> seen = new HashSet<GuildRank>();
+            long mask = 0;
+            GuildRank current = rank;
+            while (current != null && seen.add(current)) {
+                mask |= GuildAction.toBits(current.getPermittedActions());
+                current = current.getParent() == null ? null
+                        : findRank(current.getParent());
+            }
+            rankMasks.put(rank, mask);
+        }
+    }
+
+    /**
+     * Recompile the permission bitmask of the given player from the
+     * effective bitmasks of the {@link GuildRank}s they hold.
+     */
+    private void compilePlayer(final UUID player) {
+        long mask = 0;
+        boolean ranked = false;
+        for (final GuildRank rank : ranks) {
+            if (rank.hasPlayer(player)) {
+                final Long rankMask = rankMasks.get(rank);
+                mask |= rankMask == null ? 0 : rankMask;
+                ranked = true;
+            }
+        }
+        if (ranked) {
+            permissions.put(player, mask);
+        } else {
+            permissions.remove(player);
+        }
+    }
+
+    /**
+     * Find the {@link GuildRank} with the given name without loading the
+     * ranks, as {@link #getRank(String)} would.
+     */
+    private GuildRank findRank(final String name) {
+        for (final GuildRank rank : ranks) {
+            if (rank.getName().equalsIgnoreCase(name)) {
+                return rank;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load the members and {@link GuildRank}s of this {@link Guild} if that
+     * hasn't happened yet, waiting for the storage thread.
+     *
+     * @throws IllegalStateException if they couldn't be loaded
+     */
+    private void hydrate() {
+        if (hydrated || guildManager == null) {
+            return;
+        }
+        plugin.getDataStore().loadGuildMembers(this);
+        if (!hydrated) {
+            throw new IllegalStateException("Couldn't load the members of "
+                    + "guild " + name + ", the database is unreachable");
+        }
+    }
+
+    /**
+     * Check whether the members and {@link GuildRank}s of this {@link Guild}
+     * have been loaded, and start loading them in the background if they
+     * haven't. Never waits for the database, and only requests the load again
+     * once the previous request failed, so it is safe to call on the main
+     * thread as often as needed. Until it returns {@code true},
+     * {@link #can(UUID, GuildAction)} denies everything and
+     * {@link #isMember(UUID)} uses the player index of the
+     * {@link GuildManager}; the other methods which need the members or ranks
+     * wait for them to be loaded, so callers on the main thread should check
+     * this first.
+     *
+     * @return {@code true} if the members and ranks are in memory
+     * @since 0.1.0
+     */
+    public boolean requestHydration() {
+        if (hydrated) {
+            return true;
+        }
+        if (guildManager != null && hydrationRequested.compareAndSet(false,
+                true)) {
+            plugin.getDataStore().hydrateGuild(this);
+        }
+        return false;
+    }
+
     /**
      * @since 0.0.5
      */
@@ -29,6 +29,9 @@ package com.github.rolecraftdev.guild;
 import org.bukkit.Location;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -139,4 +142,51 @@ public enum GuildAction {
     public static GuildAction fromHumanReadable(final String humanReadable) {
         return GuildManager.fromHumanReadable(humanReadable);
     }
+
+    /**
+     * Get the bit that represents this {@link GuildAction} in a permission
+     * bitmask.
+     *
+     * @return the bit of this {@link GuildAction}
+     * @since 0.1.0
+     */
+    public int getBit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Convert the given {@link GuildAction}s to a permission bitmask, as
+     * stored in the database.
+     *
+     * @param actions the {@link GuildAction}s to convert
+     * @return the permission bitmask
+     * @since 0.1.0
+     */
+    public static int toBits(@Nonnull final Collection<GuildAction> actions) {
+        int bits = 0;
+        for (final GuildAction action : actions) {
+            bits |= action.getBit();
+        }
+        return bits;
+    }
+
+    /**
+     * Convert the given permission bitmask back to the {@link GuildAction}s it
+     * represents. Unknown bits are ignored.
+     *
+     * @param bits the permission bitmask
+     * @return a new, modifiable {@link Set} of the represented
+     *         {@link GuildAction}s
+     * @since 0.1.0
+     */
+    @Nonnull
+    public static Set<GuildAction> fromBits(final int bits) {
+        final Set<GuildAction> actions = EnumSet.noneOf(GuildAction.class);
+        for (final GuildAction action : values()) {
+            if ((bits & action.getBit()) != 0) {
+                actions.add(action);
+            }
+        }
+        return actions;
+    }
 }
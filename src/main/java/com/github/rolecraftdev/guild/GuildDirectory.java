@@ -0,0 +1,163 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.guild;
+
+import com.github.rolecraftdev.leaderboard.Ranking;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the {@link Guild}s registered to a {@link GuildManager} page by page,
+ * in any {@link GuildOrder}. Every numeric order is kept in a {@link Ranking}
+ * which is updated as guilds are added, removed or gain and lose members, so
+ * a page takes logarithmic time to find plus the time to collect its guilds.
+ * The {@link GuildOrder#NAME} order is read from the current
+ * {@link GuildSnapshot}, which is already sorted by name.
+ *
+ * @since 0.1.0
+ */
+public final class GuildDirectory {
+    /**
+     * The {@link GuildManager} whose {@link Guild}s are listed.
+     */
+    private final GuildManager guildManager;
+    /**
+     * The {@link Ranking} of every numeric {@link GuildOrder}.
+     */
+    private final Map<GuildOrder, Ranking> rankings;
+
+    /**
+     * Constructor.
+     *
+     * @param guildManager the {@link GuildManager} whose {@link Guild}s are
+     *        listed
+     */
+    GuildDirectory(final GuildManager guildManager) {
+        this.guildManager = guildManager;
+        rankings = new EnumMap<GuildOrder, Ranking>(GuildOrder.class);
+        for (final GuildOrder order : GuildOrder.values()) {
+            if (order != GuildOrder.NAME) {
+                rankings.put(order, new Ranking());
+            }
+        }
+    }
+
+    /**
+     * Get a page of {@link Guild}s in the given {@link GuildOrder}.
+     *
+     * @param order the {@link GuildOrder} to list the {@link Guild}s in
+     * @param offset the amount of {@link Guild}s to skip
+     * @param limit the maximum amount of returned {@link Guild}s
+     * @return the requested {@link Guild}s, empty when the
+     *         {@link GuildManager} isn't loaded yet
+     * @since 0.1.0
+     */
+    @Nonnull
+    public List<Guild> getPage(@Nonnull final GuildOrder order,
+            final int offset, final int limit) {
+        if (order == GuildOrder.NAME) {
+            final GuildSnapshot snapshot = guildManager.getSnapshot();
+            if (snapshot == null || limit <= 0) {
+                return Collections.emptyList();
+            }
+            final List<Guild> guilds = snapshot.asList();
+            final int from = Math.min(guilds.size(), Math.max(0, offset));
+            return guilds.subList(from, Math.min(guilds.size(),
+                    from + limit));
+        }
+
+        final List<Ranking.Entry> entries = rankings.get(order).getRange(
+                offset, limit);
+        final List<Guild> result = new ArrayList<Guild>(entries.size());
+        for (final Ranking.Entry entry : entries) {
+            final Guild guild = guildManager.getGuild(entry.getId());
+            if (guild != null) {
+                result.add(guild);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the position of the given {@link Guild} in the given numeric
+     * {@link GuildOrder}, where the first {@link Guild} has position
+     * {@code 1}.
+     *
+     * @param order the {@link GuildOrder}, not {@link GuildOrder#NAME}
+     * @param guild the {@link Guild} to get the position of
+     * @return the position, or {@code -1} if the {@link Guild} isn't listed
+     * @since 0.1.0
+     */
+    public int getPosition(@Nonnull final GuildOrder order,
+            @Nonnull final Guild guild) {
+        if (order == GuildOrder.NAME) {
+            throw new IllegalArgumentException("Positions by name aren't "
+                    + "indexed");
+        }
+        return rankings.get(order).getRank(guild.getId());
+    }
+
+    /**
+     * Get the amount of listed {@link Guild}s.
+     *
+     * @return the amount of {@link Guild}s
+     * @since 0.1.0
+     */
+    public int size() {
+        return rankings.get(GuildOrder.MEMBERS).size();
+    }
+
+    /**
+     * Add the given {@link Guild}, or update its position in every order.
+     *
+     * @param guild the added or changed {@link Guild}
+     */
+    void update(final Guild guild) {
+        rankings.get(GuildOrder.MEMBERS).put(guild.getId(),
+                guild.getMemberCount());
+        rankings.get(GuildOrder.INFLUENCE).put(guild.getId(),
+                guild.getInfluence());
+        rankings.get(GuildOrder.CREATED).put(guild.getId(),
+                guild.getCreated());
+    }
+
+    /**
+     * Remove the given {@link Guild} from every order.
+     *
+     * @param guild the removed {@link Guild}
+     */
+    void remove(final Guild guild) {
+        for (final Ranking ranking : rankings.values()) {
+            ranking.remove(guild.getId());
+        }
+    }
+}
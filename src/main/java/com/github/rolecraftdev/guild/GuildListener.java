@@ -26,6 +26,7 @@
  */
 package com.github.rolecraftdev.guild;
 
+import com.github.rolecraftdev.event.data.PlayerDataLoadedEvent;
 import com.github.rolecraftdev.util.ChunkLocation;
 
 import org.bukkit.Location;
@@ -58,9 +59,10 @@ import org.bukkit.event.hanging.HangingPlaceEvent;
 import org.bukkit.event.player.PlayerBucketEmptyEvent;
 import org.bukkit.event.player.PlayerBucketFillEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.world.StructureGrowEvent;
 
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -498,6 +500,34 @@ public final class GuildListener implements Listener {
         }
     }
 
+    /**
+     * Start loading the members of the {@link Guild} of a player whose data
+     * has just been loaded, so they are available by the time the player
+     * interacts with guild land.
+     *
+     * @since 0.1.0
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerDataLoaded(final PlayerDataLoadedEvent event) {
+        guildManager.prefetchGuild(event.getPlayerData().getGuild());
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(final PlayerJoinEvent event) {
+        guildManager.playerJoined(event.getPlayer());
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(final PlayerQuitEvent event) {
+        guildManager.playerQuit(event.getPlayer());
+    }
+
     /**
      * Check whether the given {@link GuildAction} at the specified
      * {@link Location}, executed by the given player, should be cancelled.
@@ -532,10 +562,8 @@ public final class GuildListener implements Listener {
      *         the {@link GuildManager} hasn't been fully loaded yet
      */
     private boolean inGuildLand(final Location loc) {
-        final Set<Guild> guilds = guildManager.getGuilds();
-
         // Not loaded yet, assume this is guild land just to be safe
-        if (guilds == null) {
+        if (!guildManager.isLoaded()) {
             return true;
         }
 
@@ -557,8 +585,7 @@ public final class GuildListener implements Listener {
      * @see {@link #nullGuild}
      */
     private Guild getGuildFromLocation(final Location loc) {
-        final Set<Guild> guilds = guildManager.getGuilds();
-        if (guilds == null) {
+        if (!guildManager.isLoaded()) {
             return nullGuild;
         }
 
@@ -29,6 +29,7 @@ package com.github.rolecraftdev.guild;
 import org.apache.commons.lang.Validate;
 
 import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.data.PlayerData;
 import com.github.rolecraftdev.data.storage.DataStore;
 import com.github.rolecraftdev.event.RolecraftEventFactory;
 import com.github.rolecraftdev.event.guild.GuildCreateEvent;
@@ -38,15 +39,20 @@ import com.github.rolecraftdev.util.serial.YamlFile;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A helper class for managing {@link Guild}s and global configurable options
@@ -86,9 +92,37 @@ public final class GuildManager {
      */
     private final YamlFile guildConfig;
     /**
-     * All available {@link Guild}s.
+     * All available {@link Guild}s, by their {@link UUID}.
      */
-    private final Set<Guild> guilds;
+    private final ConcurrentMap<UUID, Guild> guildsById;
+    /**
+     * All available {@link Guild}s, by their case-folded name.
+     */
+    private final ConcurrentMap<String, Guild> guildsByName;
+    /**
+     * The {@link Guild} of every member, by the {@link UUID} of the player.
+     * Loaded along with the headers, so it is complete before any
+     * {@link Guild} is hydrated.
+     */
+    private final ConcurrentMap<UUID, Guild> playerGuilds;
+    /**
+     * Held while a {@link Guild} is added, removed or renamed, so the
+     * indexes change together.
+     */
+    private final Object registryLock = new Object();
+    /**
+     * The latest published {@link GuildSnapshot}, {@code null} until loaded.
+     */
+    private volatile GuildSnapshot snapshot;
+    /**
+     * The version of the latest {@link GuildSnapshot}, guarded by
+     * {@link #registryLock}.
+     */
+    private long version;
+    /**
+     * Lists the registered {@link Guild}s in every {@link GuildOrder}.
+     */
+    private final GuildDirectory directory;
     /**
      * The guild territory manager object used for this GuildManager.
      */
@@ -146,7 +180,10 @@ public final class GuildManager {
     public GuildManager(final RolecraftCore plugin) {
         this.plugin = plugin;
 
-        guilds = new HashSet<Guild>();
+        guildsById = new ConcurrentHashMap<UUID, Guild>();
+        guildsByName = new ConcurrentHashMap<String, Guild>();
+        playerGuilds = new ConcurrentHashMap<UUID, Guild>();
+        directory = new GuildDirectory(this);
         this.territoryManager = new GuildTerritoryManager(this);
 
         // Get guild configuration options
@@ -234,18 +271,17 @@ public final class GuildManager {
         Validate.notNull(name);
 
         if (fromDatabase) {
-            guilds.add(guild);
+            register(guild);
+            plugin.getLeaderboardManager().updateGuild(guild);
             return true;
         }
 
-        for (final Guild cur : guilds) {
-            if (name.equalsIgnoreCase(cur.getName())) {
-                // TODO: plugin message
-                Bukkit.getPlayer(guild.getLeader()).sendMessage(
-                        ChatColor.DARK_RED +
-                                "A guild by that name already exists!");
-                return false;
-            }
+        if (guildsByName.containsKey(fold(name))) {
+            // TODO: plugin message
+            Bukkit.getPlayer(guild.getLeader()).sendMessage(
+                    ChatColor.DARK_RED +
+                            "A guild by that name already exists!");
+            return false;
         }
 
         final GuildCreateEvent event = RolecraftEventFactory
@@ -259,8 +295,15 @@ public final class GuildManager {
             RolecraftEventFactory.guildPlayerJoined(guild,
                     Bukkit.getPlayer(guild.getLeader()), guild.getLeaderRank());
 
-            guilds.add(guild);
+            if (!register(guild)) {
+                // another guild took the name while the event was handled
+                Bukkit.getPlayer(guild.getLeader()).sendMessage(
+                        ChatColor.DARK_RED +
+                                "A guild by that name already exists!");
+                return false;
+            }
             plugin.getDataStore().createGuild(guild);
+            plugin.getLeaderboardManager().updateGuild(guild);
             return true;
         }
     }
@@ -278,7 +321,8 @@ public final class GuildManager {
         if (loaded) {
             RolecraftEventFactory.guildDisbanded(guild);
             plugin.getDataStore().deleteGuild(guild);
-            return guilds.remove(guild);
+            plugin.getLeaderboardManager().removeGuild(guild);
+            return unregister(guild);
         } else {
             return false;
         }
@@ -295,14 +339,7 @@ public final class GuildManager {
     @Nullable
     public Guild getGuild(@Nonnull final String name) {
         Validate.notNull(name);
-        if (loaded) {
-            for (final Guild guild : guilds) {
-                if (name.equalsIgnoreCase(guild.getName())) {
-                    return guild;
-                }
-            }
-        }
-        return null;
+        return loaded ? guildsByName.get(fold(name)) : null;
     }
 
     /**
@@ -317,19 +354,13 @@ public final class GuildManager {
     @Nullable
     public Guild getGuild(final UUID uuid) {
         Validate.notNull(uuid);
-        if (loaded) {
-            for (final Guild guild : guilds) {
-                if (uuid.equals(guild.getId())) {
-                    return guild;
-                }
-            }
-        }
-        return null;
+        return loaded ? guildsById.get(uuid) : null;
     }
 
     /**
      * Retrieve the registered {@link Guild} in which the given player is. Note
      * that {@code null} will automatically be returned when this isn't loaded.
+     * The returned {@link Guild} may not be hydrated yet.
      *
      * @param player the {@link UUID} of the player of which the {@link Guild}
      *        is wanted
@@ -339,29 +370,68 @@ public final class GuildManager {
     @Nullable
     public Guild getPlayerGuild(@Nonnull final UUID player) {
         Validate.notNull(player);
-        if (loaded) {
-            for (final Guild guild : guilds) {
-                if (guild.isMember(player)) {
-                    return guild;
-                }
-            }
+        return loaded ? playerGuilds.get(player) : null;
+    }
+
+    /**
+     * Start loading the members and {@link GuildRank}s of the {@link Guild}
+     * with the given {@link UUID} in the background, if they haven't been
+     * loaded yet. Used to have the {@link Guild}s of online players ready
+     * before they are needed.
+     *
+     * @param uuid the {@link UUID} of the {@link Guild}, may be {@code null}
+     * @since 0.1.0
+     */
+    public void prefetchGuild(@Nullable final UUID uuid) {
+        if (uuid == null || !loaded) {
+            return;
+        }
+        final Guild guild = getGuild(uuid);
+        if (guild != null) {
+            guild.requestHydration();
         }
-        return null;
     }
 
     /**
      * Get all registered {@link Guild}s in this {@link GuildManager}. Note that
-     * {@code null} will automatically be returned when this isn't loaded.
+     * {@code null} will automatically be returned when this isn't loaded. The
+     * returned {@link Set} is the unmodifiable set of the current
+     * {@link GuildSnapshot}, so it isn't copied; use {@link #isLoaded()} to
+     * only check whether the {@link Guild}s have been loaded.
      *
      * @return all available {@link Guild}s
      * @since 0.0.5
      */
     @Nullable
     public Set<Guild> getGuilds() {
-        if (loaded) {
-            return new HashSet<Guild>(guilds);
-        }
-        return null;
+        final GuildSnapshot current = getSnapshot();
+        return current == null ? null : current.getGuilds();
+    }
+
+    /**
+     * Get the {@link GuildSnapshot} of all registered {@link Guild}s, which
+     * is replaced whenever a {@link Guild} is added, removed or renamed. Note
+     * that {@code null} will automatically be returned when this isn't
+     * loaded.
+     *
+     * @return the current {@link GuildSnapshot}
+     * @since 0.1.0
+     */
+    @Nullable
+    public GuildSnapshot getSnapshot() {
+        return loaded ? snapshot : null;
+    }
+
+    /**
+     * Get the {@link GuildDirectory}, which lists the registered
+     * {@link Guild}s page by page in any {@link GuildOrder}.
+     *
+     * @return the {@link GuildDirectory}
+     * @since 0.1.0
+     */
+    @Nonnull
+    public GuildDirectory getDirectory() {
+        return directory;
     }
 
     /**
@@ -486,6 +556,195 @@ public final class GuildManager {
         this.hallCost = hallCost;
     }
 
+    /**
+     * Add the given player to the player index, if the given {@link Guild} is
+     * registered. Called by {@link Guild} when a member joins.
+     *
+     * @param guild the {@link Guild} the player joined
+     * @param player the {@link UUID} of the player
+     */
+    void memberAdded(final Guild guild, final UUID player) {
+        if (guildsById.get(guild.getId()) == guild) {
+            playerGuilds.put(player, guild);
+            directory.update(guild);
+        }
+    }
+
+    /**
+     * Remove the given player from the player index. Called by {@link Guild}
+     * when a member leaves.
+     *
+     * @param guild the {@link Guild} the player left
+     * @param player the {@link UUID} of the player
+     */
+    void memberRemoved(final Guild guild, final UUID player) {
+        if (playerGuilds.remove(player, guild)) {
+            directory.update(guild);
+        }
+    }
+
+    /**
+     * Mark the given {@link Player} as online in their {@link Guild}, if it
+     * is in the player index. Guilds which are still being loaded pick the
+     * {@link Player} up once their members are known.
+     *
+     * @param player the {@link Player} who joined the server
+     */
+    void playerJoined(final Player player) {
+        final Guild guild = playerGuilds.get(player.getUniqueId());
+        if (guild != null) {
+            guild.memberOnline(player);
+        }
+    }
+
+    /**
+     * Mark the given {@link Player} as offline in their {@link Guild}.
+     *
+     * @param player the {@link Player} who left the server
+     */
+    void playerQuit(final Player player) {
+        final Guild guild = playerGuilds.get(player.getUniqueId());
+        if (guild != null) {
+            guild.memberOffline(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Rename the given {@link Guild}, moving it to its new name in the name
+     * index. Called by {@link Guild#setName(String)}; the name is claimed
+     * and changed under the registry lock, so two guilds can't end up with
+     * the same name.
+     *
+     * @param guild the {@link Guild} to rename
+     * @param name the new name of the {@link Guild}
+     * @return {@code false} if another {@link Guild} already has the name, in
+     *         which case nothing is changed
+     */
+    boolean guildRenamed(final Guild guild, final String name) {
+        synchronized (registryLock) {
+            if (guildsById.get(guild.getId()) != guild) {
+                // not registered, so there is no index to keep consistent
+                guild.applyName(name);
+                return true;
+            }
+            final Guild holder = guildsByName.putIfAbsent(fold(name), guild);
+            if (holder != null && holder != guild) {
+                return false;
+            }
+            final String oldName = guild.getName();
+            if (oldName != null && !fold(oldName).equals(fold(name))) {
+                guildsByName.remove(fold(oldName), guild);
+            }
+            guild.applyName(name);
+            publish();
+            return true;
+        }
+    }
+
+    /**
+     * Add the members of the given {@link Guild} to the player index once
+     * they have been loaded. Called by {@link Guild}.
+     *
+     * @param guild the hydrated {@link Guild}
+     * @param members the {@link UUID}s of its members
+     */
+    void guildHydrated(final Guild guild, final Set<UUID> members) {
+        synchronized (registryLock) {
+            if (guildsById.get(guild.getId()) != guild) {
+                return;
+            }
+            for (final UUID member : members) {
+                playerGuilds.put(member, guild);
+            }
+            directory.update(guild);
+        }
+    }
+
+    /**
+     * Add the given {@link Guild} to all indexes.
+     *
+     * @return {@code false} if another {@link Guild} has the same name
+     */
+    private boolean register(final Guild guild) {
+        synchronized (registryLock) {
+            if (guildsByName.putIfAbsent(fold(guild.getName()), guild)
+                    != null) {
+                return false;
+            }
+            guildsById.put(guild.getId(), guild);
+            if (guild.isHydrated()) {
+                for (final UUID member : guild.getMembers()) {
+                    playerGuilds.put(member, guild);
+                }
+                guild.refreshOnlineMembers();
+            }
+            directory.update(guild);
+            publish();
+            return true;
+        }
+    }
+
+    /**
+     * Remove the given {@link Guild} from all indexes.
+     *
+     * @return {@code true} if the {@link Guild} was registered
+     */
+    private boolean unregister(final Guild guild) {
+        synchronized (registryLock) {
+            if (!guildsById.remove(guild.getId(), guild)) {
+                return false;
+            }
+            guildsByName.remove(fold(guild.getName()), guild);
+            if (guild.isHydrated()) {
+                for (final UUID member : guild.getMembers()) {
+                    playerGuilds.remove(member, guild);
+                }
+            } else {
+                // only the header index knows the members
+                playerGuilds.values().removeAll(Collections.singleton(guild));
+            }
+            directory.remove(guild);
+            publish();
+            return true;
+        }
+    }
+
+    /**
+     * Publish a new {@link GuildSnapshot} of the registry, unless it is still
+     * being loaded. Must hold the {@link #registryLock}.
+     */
+    private void publish() {
+        if (loaded) {
+            snapshot = new GuildSnapshot(++version, guildsById.values());
+        }
+    }
+
+    /**
+     * Get the key of the given {@link Guild} name in the name index.
+     */
+    private static String fold(final String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Add the given player to the player index as a member of the
+     * {@link Guild} with the given {@link UUID}. This should only be called by
+     * DAOs while loading the {@link Guild} headers, before
+     * {@link #completeLoad()}.
+     *
+     * @param guild the {@link UUID} of the {@link Guild}
+     * @param player the {@link UUID} of the member
+     * @since 0.1.0
+     * @deprecated for internal use only
+     */
+    @Deprecated
+    public void indexMember(final UUID guild, final UUID player) {
+        final Guild indexed = guildsById.get(guild);
+        if (indexed != null) {
+            playerGuilds.put(player, indexed);
+        }
+    }
+
     /**
      * Complete the loading phase. This should only be called by DAOs after this
      * {@link GuildManager} has been populated with all stored {@link Guild}s.
@@ -495,7 +754,25 @@ public final class GuildManager {
      */
     @Deprecated
     public void completeLoad() {
-        loaded = true;
+        synchronized (registryLock) {
+            // not published while loading, which would copy every guild
+            snapshot = new GuildSnapshot(++version, guildsById.values());
+            loaded = true;
+        }
+
+        // Hydrate the guilds of players who joined during the load first
+        final Set<Guild> online = new HashSet<Guild>();
+        for (final PlayerData data : plugin.getDataManager()
+                .getPlayerDatum()) {
+            final UUID id = data.getGuild();
+            final Guild guild = id == null ? null : getGuild(id);
+            if (guild != null && !guild.isHydrated()) {
+                online.add(guild);
+            }
+        }
+        if (!online.isEmpty()) {
+            plugin.getDataStore().hydrateGuilds(online);
+        }
 
         RolecraftEventFactory.guildsLoaded();
     }
@@ -0,0 +1,105 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.guild;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The orders in which a {@link GuildDirectory} can list {@link Guild}s.
+ *
+ * @since 0.1.0
+ */
+public enum GuildOrder {
+    /**
+     * Alphabetically by name, ignoring case.
+     *
+     * @since 0.1.0
+     */
+    NAME("name"),
+    /**
+     * From the most to the fewest members.
+     *
+     * @since 0.1.0
+     */
+    MEMBERS("members"),
+    /**
+     * From the highest to the lowest influence.
+     *
+     * @since 0.1.0
+     */
+    INFLUENCE("influence"),
+    /**
+     * From the newest to the oldest.
+     *
+     * @since 0.1.0
+     */
+    CREATED("created");
+
+    /**
+     * All {@link GuildOrder}s by their human-readable name.
+     */
+    private static final Map<String, GuildOrder> BY_NAME =
+            new HashMap<String, GuildOrder>();
+
+    /**
+     * The human-readable name of this {@link GuildOrder}.
+     */
+    private final String name;
+
+    GuildOrder(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the human-readable name of this {@link GuildOrder}.
+     *
+     * @return the human-readable name
+     * @since 0.1.0
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the {@link GuildOrder} with the given human-readable name.
+     *
+     * @param name the human-readable name, ignoring case
+     * @return the matching {@link GuildOrder}, or {@code null} if there is
+     *         none
+     * @since 0.1.0
+     */
+    public static GuildOrder fromName(final String name) {
+        return BY_NAME.get(name.toLowerCase());
+    }
+
+    static {
+        for (final GuildOrder order : values()) {
+            BY_NAME.put(order.name, order);
+        }
+    }
+}
@@ -28,14 +28,18 @@ package com.github.rolecraftdev.guild;
 
 import org.apache.commons.lang.Validate;
 
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -65,6 +69,25 @@ public final class GuildRank {
      */
     @Nonnull
     private final Set<UUID> members;
+    /**
+     * The members of this {@link GuildRank} who are currently online, kept up
+     * to date by the owning {@link Guild}.
+     */
+    @Nonnull
+    private final Map<UUID, Player> online =
+            new ConcurrentHashMap<UUID, Player>();
+    /**
+     * The name of the {@link GuildRank} whose permitted {@link GuildAction}s
+     * this {@link GuildRank} inherits, or {@code null} if it inherits none.
+     */
+    @Nullable
+    private String parent;
+    /**
+     * The {@link Guild} this {@link GuildRank} belongs to, which is told about
+     * changes so it can recompile its permissions.
+     */
+    @Nullable
+    private Guild owner;
 
     /**
      * Constructor.
@@ -77,7 +100,24 @@ public final class GuildRank {
     public GuildRank(@Nonnull final String name,
             @Nonnull final Set<GuildAction> permitted,
             @Nonnull final Set<UUID> members) {
+        this(name, null, permitted, members);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the {@link GuildRank}
+     * @param parent the name of the inherited {@link GuildRank}, may be
+     *        {@code null}
+     * @param permitted the predefined permitted {@link GuildAction}s
+     * @param members the predefined members of this {@link GuildRank}
+     * @since 0.1.0
+     */
+    public GuildRank(@Nonnull final String name, @Nullable final String parent,
+            @Nonnull final Set<GuildAction> permitted,
+            @Nonnull final Set<UUID> members) {
         this.name = name;
+        this.parent = parent;
         this.permitted = permitted;
         this.members = members;
     }
@@ -93,9 +133,37 @@ public final class GuildRank {
         return name;
     }
 
+    /**
+     * Get the name of the {@link GuildRank} whose permitted
+     * {@link GuildAction}s are inherited by this {@link GuildRank}.
+     *
+     * @return the name of the inherited {@link GuildRank}, or {@code null}
+     * @since 0.1.0
+     */
+    @Nullable
+    public String getParent() {
+        return parent;
+    }
+
+    /**
+     * Set the {@link GuildRank} whose permitted {@link GuildAction}s are
+     * inherited by this {@link GuildRank}. Inheritance is transitive, and a
+     * cycle simply stops at the first {@link GuildRank} seen twice.
+     *
+     * @param parent the name of the inherited {@link GuildRank}, or
+     *        {@code null} to inherit none
+     * @since 0.1.0
+     */
+    public void setParent(@Nullable final String parent) {
+        this.parent = parent;
+        if (owner != null) {
+            owner.rankPermissionsChanged();
+        }
+    }
+
     /**
      * Obtain the {@link GuildAction}s members of this {@link GuildRank} may
-     * perform.
+     * perform, excluding inherited ones.
      *
      * @return the permitted {@link GuildAction}s
      * @since 0.0.5
@@ -116,6 +184,17 @@ public final class GuildRank {
         return new HashSet<UUID>(members);
     }
 
+    /**
+     * Get the members of this {@link GuildRank} who are currently online.
+     *
+     * @return an unmodifiable view of the online members
+     * @since 0.1.0
+     */
+    @Nonnull
+    public Collection<Player> getOnlineMembers() {
+        return Collections.unmodifiableCollection(online.values());
+    }
+
     /**
      * Check whether the given player is a member of this {@link GuildRank}.
      *
@@ -153,11 +232,8 @@ public final class GuildRank {
      */
     public void broadcastMessage(@Nonnull final String message) {
         Validate.notNull(message);
-        for (final UUID playerId : members) {
-            final Player player = Bukkit.getPlayer(playerId);
-            if (player != null) {
-                player.sendMessage(message);
-            }
+        for (final Player player : online.values()) {
+            player.sendMessage(message);
         }
     }
 
@@ -169,7 +245,13 @@ public final class GuildRank {
      */
     public void addMember(@Nonnull final UUID member) {
         Validate.notNull(member);
-        members.add(member);
+        if (members.add(member) && owner != null) {
+            owner.rankMembersChanged(member);
+            final Player player = owner.getOnlineMember(member);
+            if (player != null) {
+                online.put(member, player);
+            }
+        }
     }
 
     /**
@@ -180,7 +262,10 @@ public final class GuildRank {
      */
     public void removeMember(@Nonnull final UUID member) {
         Validate.notNull(member);
-        members.remove(member);
+        online.remove(member);
+        if (members.remove(member) && owner != null) {
+            owner.rankMembersChanged(member);
+        }
     }
 
     /**
@@ -192,7 +277,9 @@ public final class GuildRank {
      */
     public void allowAction(@Nonnull final GuildAction perm) {
         Validate.notNull(perm);
-        permitted.add(perm);
+        if (permitted.add(perm) && owner != null) {
+            owner.rankPermissionsChanged();
+        }
     }
 
     /**
@@ -205,7 +292,39 @@ public final class GuildRank {
      */
     public void disallowAction(@Nonnull final GuildAction perm) {
         Validate.notNull(perm);
-        permitted.remove(perm);
+        if (permitted.remove(perm) && owner != null) {
+            owner.rankPermissionsChanged();
+        }
+    }
+
+    /**
+     * Set the {@link Guild} this {@link GuildRank} belongs to.
+     *
+     * @param owner the owning {@link Guild}, or {@code null} once removed
+     */
+    void setOwner(@Nullable final Guild owner) {
+        this.owner = owner;
+        online.clear();
+    }
+
+    /**
+     * Mark the given member of this {@link GuildRank} as online.
+     *
+     * @param player the {@link Player} who came online
+     */
+    void memberOnline(@Nonnull final Player player) {
+        if (members.contains(player.getUniqueId())) {
+            online.put(player.getUniqueId(), player);
+        }
+    }
+
+    /**
+     * Mark the given member of this {@link GuildRank} as offline.
+     *
+     * @param player the {@link UUID} of the player who went offline
+     */
+    void memberOffline(@Nonnull final UUID player) {
+        online.remove(player);
     }
 
     /**
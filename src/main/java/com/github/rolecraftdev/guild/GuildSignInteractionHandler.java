@@ -121,6 +121,10 @@ public final class GuildSignInteractionHandler
             player.sendMessage(plugin.getMessage(Messages.ALREADY_IN_GUILD));
             return;
         }
+        if (!guild.requestHydration()) {
+            player.sendMessage(plugin.getMessage(Messages.GUILD_LOADING));
+            return;
+        }
 
         data.setGuild(guild.getId());
         final GuildPlayerJoinEvent event = guild
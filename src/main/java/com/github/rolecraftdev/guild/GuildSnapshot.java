@@ -0,0 +1,128 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.guild;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable view of all {@link Guild}s registered to a
+ * {@link GuildManager} at one moment. A new snapshot is published whenever a
+ * {@link Guild} is added, removed or renamed, so callers can hold on to it
+ * and iterate it without copying; the version tells whether anything changed
+ * since a snapshot was taken, e.g. to cache something derived from it.
+ *
+ * @since 0.1.0
+ */
+public final class GuildSnapshot {
+    /**
+     * Orders {@link Guild}s by name, ignoring case.
+     */
+    private static final Comparator<Guild> BY_NAME = new Comparator<Guild>() {
+        @Override
+        public int compare(final Guild o1, final Guild o2) {
+            return String.CASE_INSENSITIVE_ORDER.compare(o1.getName(),
+                    o2.getName());
+        }
+    };
+
+    /**
+     * The version of the registry this snapshot was taken of.
+     */
+    private final long version;
+    /**
+     * The {@link Guild}s, ordered by name.
+     */
+    private final List<Guild> list;
+    /**
+     * The {@link Guild}s, in the same order as {@link #list}.
+     */
+    private final Set<Guild> set;
+
+    /**
+     * Constructor.
+     *
+     * @param version the version of the registry
+     * @param guilds the registered {@link Guild}s, which are copied
+     */
+    GuildSnapshot(final long version, final Collection<Guild> guilds) {
+        this.version = version;
+        final List<Guild> sorted = new ArrayList<Guild>(guilds);
+        Collections.sort(sorted, BY_NAME);
+        list = Collections.unmodifiableList(sorted);
+        set = Collections.unmodifiableSet(new LinkedHashSet<Guild>(sorted));
+    }
+
+    /**
+     * Get the version of the registry this snapshot was taken of. It
+     * increases every time a {@link Guild} is added, removed or renamed.
+     *
+     * @return the version of this snapshot
+     * @since 0.1.0
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the {@link Guild}s in this snapshot.
+     *
+     * @return an unmodifiable {@link Set} of the {@link Guild}s
+     * @since 0.1.0
+     */
+    @Nonnull
+    public Set<Guild> getGuilds() {
+        return set;
+    }
+
+    /**
+     * Get the {@link Guild}s in this snapshot, ordered by name.
+     *
+     * @return an unmodifiable {@link List} of the {@link Guild}s
+     * @since 0.1.0
+     */
+    @Nonnull
+    public List<Guild> asList() {
+        return list;
+    }
+
+    /**
+     * Get the amount of {@link Guild}s in this snapshot.
+     *
+     * @return the amount of {@link Guild}s
+     * @since 0.1.0
+     */
+    public int size() {
+        return list.size();
+    }
+}
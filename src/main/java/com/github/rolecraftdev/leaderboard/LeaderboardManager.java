@@ -0,0 +1,293 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.leaderboard;
+
+import com.github.rolecraftdev.RolecraftCore;
+import com.github.rolecraftdev.data.PlayerData;
+import com.github.rolecraftdev.guild.Guild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Keeps a {@link Ranking} for every {@link LeaderboardType} up to date. Player
+ * rankings are seeded once from a snapshot written on shutdown, or from a
+ * single streaming query when there is no snapshot, after which they are
+ * updated whenever loaded {@link PlayerData} changes.
+ *
+ * @since 0.1.0
+ */
+public final class LeaderboardManager {
+    /**
+     * Identifies a leaderboard snapshot file.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x52434c42;
+    /**
+     * The version of the snapshot format.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * The associated {@link RolecraftCore} instance.
+     */
+    private final RolecraftCore plugin;
+    /**
+     * The {@link Ranking} of every {@link LeaderboardType}.
+     */
+    private final Map<LeaderboardType, Ranking> rankings;
+    /**
+     * The file the player rankings are written to on shutdown.
+     */
+    private final File snapshotFile;
+    /**
+     * Whether all stored players have been added to the player rankings.
+     */
+    private volatile boolean seeded;
+
+    /**
+     * Constructor. Loads the player rankings from the snapshot if one exists,
+     * or starts seeding them from the database otherwise.
+     *
+     * @param plugin the associated {@link RolecraftCore} instance
+     * @since 0.1.0
+     */
+    public LeaderboardManager(final RolecraftCore plugin) {
+        this.plugin = plugin;
+        rankings = new EnumMap<LeaderboardType, Ranking>(
+                LeaderboardType.class);
+        for (final LeaderboardType type : LeaderboardType.values()) {
+            rankings.put(type, new Ranking());
+        }
+        snapshotFile = new File(plugin.getDataFolder(), "leaderboards.dat");
+
+        if (loadSnapshot()) {
+            seeded = true;
+        } else {
+            plugin.getDataStore().loadPlayerScores(this);
+        }
+    }
+
+    /**
+     * Get the {@link Ranking} of the given {@link LeaderboardType}.
+     *
+     * @param type the {@link LeaderboardType}
+     * @return the {@link Ranking} of the given type
+     * @since 0.1.0
+     */
+    public Ranking getRanking(final LeaderboardType type) {
+        return rankings.get(type);
+    }
+
+    /**
+     * Check whether all stored players have been added to the player
+     * rankings. Until then, ranks may be missing players who aren't online.
+     *
+     * @return {@code true} if the player rankings are complete
+     * @since 0.1.0
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Update the player rankings with the current values of the given
+     * {@link PlayerData}.
+     *
+     * @param data the changed {@link PlayerData}
+     * @since 0.1.0
+     */
+    public void update(final PlayerData data) {
+        if (!data.isLoaded()) {
+            return;
+        }
+        rankings.get(LeaderboardType.EXPERIENCE).put(data.getPlayerId(),
+                data.getExperience());
+        rankings.get(LeaderboardType.KARMA).put(data.getPlayerId(),
+                data.getKarma());
+        rankings.get(LeaderboardType.INFLUENCE).put(data.getPlayerId(),
+                data.getInfluence());
+    }
+
+    /**
+     * Add the given {@link Guild} to the guild ranking, or update its entry.
+     *
+     * @param guild the added or changed {@link Guild}
+     * @since 0.1.0
+     */
+    public void updateGuild(final Guild guild) {
+        rankings.get(LeaderboardType.GUILD_INFLUENCE).put(guild.getId(),
+                guild.getInfluence());
+    }
+
+    /**
+     * Remove the given {@link Guild} from the guild ranking.
+     *
+     * @param guild the removed {@link Guild}
+     * @since 0.1.0
+     */
+    public void removeGuild(final Guild guild) {
+        rankings.get(LeaderboardType.GUILD_INFLUENCE).remove(guild.getId());
+    }
+
+    /**
+     * Add a stored player to the player rankings, unless they were already
+     * added with more recent values.
+     *
+     * @param player the {@link UUID} of the player
+     * @param experience the stored experience of the player
+     * @param karma the stored karma of the player
+     * @param influence the stored influence of the player
+     * @since 0.1.0
+     * @deprecated for internal use only
+     */
+    @Deprecated
+    public void seedPlayer(final UUID player, final float experience,
+            final float karma, final int influence) {
+        rankings.get(LeaderboardType.EXPERIENCE).putIfAbsent(player,
+                experience);
+        rankings.get(LeaderboardType.KARMA).putIfAbsent(player, karma);
+        rankings.get(LeaderboardType.INFLUENCE).putIfAbsent(player, influence);
+    }
+
+    /**
+     * Complete seeding the player rankings. This should only be called by
+     * DAOs after all stored players have been passed to
+     * {@link #seedPlayer(UUID, float, float, int)}.
+     *
+     * @since 0.1.0
+     * @deprecated for internal use only
+     */
+    @Deprecated
+    public void completeSeed() {
+        seeded = true;
+        plugin.getLogger().info("Seeded leaderboards with "
+                + rankings.get(LeaderboardType.EXPERIENCE).size()
+                + " players");
+    }
+
+    /**
+     * Write the player rankings to the snapshot file, so they don't have to be
+     * seeded from the database on the next start. Should only be called when
+     * the plugin is disabling, once player data can no longer change.
+     *
+     * @since 0.1.0
+     */
+    public void saveSnapshot() {
+        if (!seeded) {
+            return;
+        }
+
+        final File temp = new File(snapshotFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            for (final LeaderboardType type : LeaderboardType.values()) {
+                if (!type.isGuild()) {
+                    rankings.get(type).write(out);
+                }
+            }
+            out.close();
+            out = null;
+
+            if (snapshotFile.exists() && !snapshotFile.delete()) {
+                throw new IOException("Couldn't replace " + snapshotFile);
+            }
+            if (!temp.renameTo(snapshotFile)) {
+                throw new IOException("Couldn't rename " + temp);
+            }
+        } catch (final IOException ex) {
+            plugin.getLogger().log(Level.SEVERE,
+                    "Couldn't save the leaderboard snapshot", ex);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Load the player rankings from the snapshot file. The file is deleted
+     * afterwards, so if the server stops without writing a new one the next
+     * start seeds from the database instead of using outdated values.
+     *
+     * @return {@code true} if the snapshot was loaded
+     */
+    private boolean loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(snapshotFile)));
+            if (in.readInt() != SNAPSHOT_MAGIC
+                    || in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            for (final LeaderboardType type : LeaderboardType.values()) {
+                if (!type.isGuild()) {
+                    rankings.get(type).read(in);
+                }
+            }
+            return true;
+        } catch (final IOException ex) {
+            plugin.getLogger().log(Level.WARNING,
+                    "Couldn't load the leaderboard snapshot", ex);
+            for (final Ranking ranking : rankings.values()) {
+                ranking.clear();
+            }
+            return false;
+        } finally {
+            closeQuietly(in);
+            if (!snapshotFile.delete()) {
+                plugin.getLogger().warning("Couldn't delete " + snapshotFile);
+            }
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.leaderboard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The statistics which players and guilds are ranked by.
+ *
+ * @since 0.1.0
+ */
+public enum LeaderboardType {
+    /**
+     * Players ranked by their experience.
+     *
+     * @since 0.1.0
+     */
+    EXPERIENCE("experience", false),
+    /**
+     * Players ranked by their karma.
+     *
+     * @since 0.1.0
+     */
+    KARMA("karma", false),
+    /**
+     * Players ranked by their influence.
+     *
+     * @since 0.1.0
+     */
+    INFLUENCE("influence", false),
+    /**
+     * Guilds ranked by their influence.
+     *
+     * @since 0.1.0
+     */
+    GUILD_INFLUENCE("guilds", true);
+
+    /**
+     * All {@link LeaderboardType}s by their human-readable name.
+     */
+    private static final Map<String, LeaderboardType> BY_NAME =
+            new HashMap<String, LeaderboardType>();
+
+    /**
+     * The human-readable name of this {@link LeaderboardType}.
+     */
+    private final String name;
+    /**
+     * Whether guilds rather than players are ranked.
+     */
+    private final boolean guild;
+
+    LeaderboardType(final String name, final boolean guild) {
+        this.name = name;
+        this.guild = guild;
+    }
+
+    /**
+     * Get the human-readable name of this {@link LeaderboardType}.
+     *
+     * @return the human-readable name
+     * @since 0.1.0
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Check whether this {@link LeaderboardType} ranks guilds rather than
+     * players.
+     *
+     * @return {@code true} if guilds are ranked; {@code false} otherwise
+     * @since 0.1.0
+     */
+    public boolean isGuild() {
+        return guild;
+    }
+
+    /**
+     * Get the {@link LeaderboardType} with the given human-readable name.
+     *
+     * @param name the human-readable name, ignoring case
+     * @return the matching {@link LeaderboardType}, or {@code null} if there
+     *         is none
+     * @since 0.1.0
+     */
+    public static LeaderboardType fromName(final String name) {
+        return BY_NAME.get(name.toLowerCase());
+    }
+
+    static {
+        for (final LeaderboardType type : values()) {
+            BY_NAME.put(type.name, type);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.leaderboard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A set of scores by {@link UUID}, ordered from the highest to the lowest
+ * score. Backed by a treap where every node knows the size of its subtree, so
+ * updates, rank lookups and finding the start of a page all take logarithmic
+ * time. Equal scores are ordered by {@link UUID} to keep ranks stable.
+ *
+ * @since 0.1.0
+ */
+public final class Ranking {
+    /**
+     * The current score of every ranked {@link UUID}, used to find its node.
+     */
+    private final Map<UUID, Double> scores;
+    /**
+     * Used to pick the heap priorities which keep the tree balanced.
+     */
+    private final Random random;
+    /**
+     * The root of the tree, {@code null} when this is empty.
+     */
+    private Node root;
+
+    /**
+     * Constructor.
+     *
+     * @since 0.1.0
+     */
+    public Ranking() {
+        scores = new HashMap<UUID, Double>();
+        random = new Random();
+    }
+
+    /**
+     * Set the score of the given {@link UUID}, adding it if it isn't ranked
+     * yet.
+     *
+     * @param id the {@link UUID} to set the score of
+     * @param score the new score
+     * @since 0.1.0
+     */
+    public synchronized void put(final UUID id, final double score) {
+        final Double previous = scores.put(id, score);
+        if (previous != null) {
+            if (previous == score) {
+                return;
+            }
+            root = remove(root, id, previous);
+        }
+        root = insert(root, new Node(id, score, random.nextInt()));
+    }
+
+    /**
+     * Set the score of the given {@link UUID} only if it isn't ranked yet,
+     * used when seeding so newer scores aren't overwritten.
+     *
+     * @param id the {@link UUID} to add
+     * @param score the score of the {@link UUID}
+     * @since 0.1.0
+     */
+    public synchronized void putIfAbsent(final UUID id, final double score) {
+        if (!scores.containsKey(id)) {
+            put(id, score);
+        }
+    }
+
+    /**
+     * Remove the given {@link UUID} from this {@link Ranking}.
+     *
+     * @param id the {@link UUID} to remove
+     * @since 0.1.0
+     */
+    public synchronized void remove(final UUID id) {
+        final Double previous = scores.remove(id);
+        if (previous != null) {
+            root = remove(root, id, previous);
+        }
+    }
+
+    /**
+     * Get the rank of the given {@link UUID}, where the highest score has
+     * rank {@code 1}.
+     *
+     * @param id the {@link UUID} to get the rank of
+     * @return the rank of the {@link UUID}, or {@code -1} if it isn't ranked
+     * @since 0.1.0
+     */
+    public synchronized int getRank(final UUID id) {
+        final Double score = scores.get(id);
+        if (score == null) {
+            return -1;
+        }
+
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            final int comparison = compare(id, score, node);
+            if (comparison < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                if (comparison == 0) {
+                    return rank;
+                }
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the score of the given {@link UUID}.
+     *
+     * @param id the {@link UUID} to get the score of
+     * @return the score, or {@code null} if the {@link UUID} isn't ranked
+     * @since 0.1.0
+     */
+    public synchronized Double getScore(final UUID id) {
+        return scores.get(id);
+    }
+
+    /**
+     * Get a range of entries, ordered from the highest score to the lowest.
+     *
+     * @param offset the amount of entries to skip
+     * @param limit the maximum amount of returned entries
+     * @return the requested entries
+     * @since 0.1.0
+     */
+    public synchronized List<Entry> getRange(final int offset,
+            final int limit) {
+        final List<Entry> result = new ArrayList<Entry>(Math.max(0, limit));
+        if (limit > 0) {
+            collect(root, Math.max(0, offset), limit, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get the amount of ranked {@link UUID}s.
+     *
+     * @return the size of this {@link Ranking}
+     * @since 0.1.0
+     */
+    public synchronized int size() {
+        return size(root);
+    }
+
+    /**
+     * Remove all entries.
+     *
+     * @since 0.1.0
+     */
+    public synchronized void clear() {
+        scores.clear();
+        root = null;
+    }
+
+    /**
+     * Write all entries to the given {@link DataOutput}, in a format which
+     * can be read back by {@link #read(DataInput)}.
+     *
+     * @param out the {@link DataOutput} to write to
+     * @throws IOException if writing fails
+     * @since 0.1.0
+     */
+    public synchronized void write(final DataOutput out) throws IOException {
+        out.writeInt(scores.size());
+        for (final Map.Entry<UUID, Double> entry : scores.entrySet()) {
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            out.writeDouble(entry.getValue());
+        }
+    }
+
+    /**
+     * Add all entries written by {@link #write(DataOutput)} to this
+     * {@link Ranking}.
+     *
+     * @param in the {@link DataInput} to read from
+     * @throws IOException if reading fails
+     * @since 0.1.0
+     */
+    public synchronized void read(final DataInput in) throws IOException {
+        final int amount = in.readInt();
+        for (int i = 0; i < amount; i++) {
+            final UUID id = new UUID(in.readLong(), in.readLong());
+            put(id, in.readDouble());
+        }
+    }
+
+    private void collect(final Node node, final int skip, final int limit,
+            final List<Entry> result) {
+        if (node == null || result.size() >= limit) {
+            return;
+        }
+
+        final int leftSize = size(node.left);
+        if (skip < leftSize) {
+            collect(node.left, skip, limit, result);
+        }
+        if (result.size() >= limit) {
+            return;
+        }
+        if (skip <= leftSize) {
+            result.add(new Entry(node.id, node.score));
+        }
+        collect(node.right, Math.max(0, skip - leftSize - 1), limit, result);
+    }
+
+    private static Node insert(final Node node, final Node added) {
+        if (node == null) {
+            return added;
+        }
+
+        Node result = node;
+        if (compare(added.id, added.score, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                result = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                result = rotateLeft(node);
+            }
+        }
+        update(result);
+        return result;
+    }
+
+    private static Node remove(final Node node, final UUID id,
+            final double score) {
+        if (node == null) {
+            return null;
+        }
+
+        final int comparison = compare(id, score, node);
+        if (comparison < 0) {
+            node.left = remove(node.left, id, score);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, id, score);
+        } else {
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    private static Node merge(final Node left, final Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private static Node rotateRight(final Node node) {
+        final Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        return left;
+    }
+
+    private static Node rotateLeft(final Node node) {
+        final Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        return right;
+    }
+
+    private static void update(final Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(final Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Higher scores come first, equal scores are ordered by {@link UUID}.
+     */
+    private static int compare(final UUID id, final double score,
+            final Node node) {
+        final int comparison = Double.compare(node.score, score);
+        return comparison != 0 ? comparison : id.compareTo(node.id);
+    }
+
+    /**
+     * A single ranked {@link UUID} and its score.
+     *
+     * @since 0.1.0
+     */
+    public static final class Entry {
+        private final UUID id;
+        private final double score;
+
+        private Entry(final UUID id, final double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        /**
+         * Get the ranked {@link UUID}.
+         *
+         * @return the {@link UUID}
+         * @since 0.1.0
+         */
+        public UUID getId() {
+            return id;
+        }
+
+        /**
+         * Get the score of the {@link UUID}.
+         *
+         * @return the score
+         * @since 0.1.0
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * A node of the treap.
+     */
+    private static final class Node {
+        private final UUID id;
+        private final double score;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size;
+
+        private Node(final UUID id, final double score, final int priority) {
+            this.id = id;
+            this.score = score;
+            this.priority = priority;
+            size = 1;
+        }
+    }
+}
@@ -38,14 +38,12 @@ import org.bukkit.scheduler.BukkitRunnable;
  */
 public class ManaRegenTask extends BukkitRunnable {
     private final RolecraftCore plugin;
-    private final float maximumMana;
 
     /**
      * @since 0.0.5
      */
     public ManaRegenTask(final RolecraftCore plugin) {
         this.plugin = plugin;
-        this.maximumMana = plugin.getConfigValues().getMaximumMana();
     }
 
     /**
@@ -56,11 +54,8 @@ public class ManaRegenTask extends BukkitRunnable {
         for (final PlayerData data : plugin.getDataManager().getPlayerDatum()) {
             if (plugin.getSpellManager().canCast(
                     plugin.getServer().getPlayer(data.getPlayerId()))) {
+                // capped at the maximum player mana
                 data.addMana(data.getManaRegenRate());
-                // do not exceed maximum player mana
-                if (data.getMana() > maximumMana) {
-                    data.setMana(maximumMana);
-                }
             }
         }
     }
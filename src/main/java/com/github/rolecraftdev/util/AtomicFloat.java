@@ -0,0 +1,129 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code float} which may be updated atomically, stored as its raw bits in
+ * an {@link AtomicInteger}. Comparisons are made on the bits, so
+ * {@code -0.0f} and {@code 0.0f} are different values and {@code NaN} equals
+ * itself.
+ *
+ * @since 0.1.0
+ */
+public final class AtomicFloat {
+    /**
+     * The bits of the current value.
+     */
+    private final AtomicInteger bits;
+
+    /**
+     * Constructor.
+     *
+     * @param initial the initial value
+     * @since 0.1.0
+     */
+    public AtomicFloat(final float initial) {
+        bits = new AtomicInteger(Float.floatToIntBits(initial));
+    }
+
+    /**
+     * Get the current value.
+     *
+     * @return the current value
+     * @since 0.1.0
+     */
+    public float get() {
+        return Float.intBitsToFloat(bits.get());
+    }
+
+    /**
+     * Set the value.
+     *
+     * @param value the new value
+     * @since 0.1.0
+     */
+    public void set(final float value) {
+        bits.set(Float.floatToIntBits(value));
+    }
+
+    /**
+     * Set the value and return the previous one.
+     *
+     * @param value the new value
+     * @return the previous value
+     * @since 0.1.0
+     */
+    public float getAndSet(final float value) {
+        return Float.intBitsToFloat(bits.getAndSet(Float
+                .floatToIntBits(value)));
+    }
+
+    /**
+     * Set the value if the current value equals the expected one.
+     *
+     * @param expect the expected current value
+     * @param update the new value
+     * @return whether the value was set
+     * @since 0.1.0
+     */
+    public boolean compareAndSet(final float expect, final float update) {
+        return bits.compareAndSet(Float.floatToIntBits(expect),
+                Float.floatToIntBits(update));
+    }
+
+    /**
+     * Add the given amount to the value, keeping the result between the given
+     * bounds, and return the previous value.
+     *
+     * @param delta the amount to add, may be negative
+     * @param min the lowest allowed result
+     * @param max the highest allowed result
+     * @return the previous value
+     * @since 0.1.0
+     */
+    public float getAndAdd(final float delta, final float min,
+            final float max) {
+        while (true) {
+            final int current = bits.get();
+            final float value = Float.intBitsToFloat(current);
+            final float next = Math.max(min, Math.min(max, value + delta));
+            if (bits.compareAndSet(current, Float.floatToIntBits(next))) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @since 0.1.0
+     */
+    @Override
+    public String toString() {
+        return Float.toString(get());
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * This file is part of RolecraftCore.
+ *
+ * Copyright (c) 2014 RolecraftDev <http://rolecraftdev.github.com>
+ * RolecraftCore is licensed under the Creative Commons
+ * Attribution-NonCommercial-NoDerivs 3.0 Unported License. To view a copy of this
+ * license, visit http://creativecommons.org/licenses/by-nc-nd/3.0
+ *
+ * As long as you follow the following terms, you are free to copy and redistribute
+ * the material in any medium or format.
+ *
+ * You must give appropriate credit, provide a link to the license, and indicate
+ * whether any changes were made to the material. You may do so in any reasonable
+ * manner, but not in any way which suggests the licensor endorses you or your use.
+ *
+ * You may not use the material for commercial purposes.
+ *
+ * If you remix, transform, or build upon the material, you may not distribute the
+ * modified material.
+ *
+ * You may not apply legal terms or technological measures that legally restrict
+ * others from doing anything the license permits.
+ *
+ * DISCLAIMER: This is a human-readable summary of (and not a substitute for) the
+ * license.
+ */
+package com.github.rolecraftdev.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, recorded in nanoseconds. Values are
+ * stored in log-linear buckets: every power of two is split into
+ * {@link #SUB_BUCKETS} linear sub-buckets, so reported percentiles are within
+ * roughly 25% of the real value while recording stays a couple of atomic
+ * increments.
+ *
+ * @since 0.1.0
+ */
+public final class LatencyHistogram {
+    /**
+     * The amount of bits used to determine the linear sub-bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+    /**
+     * The amount of linear sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * The total amount of buckets, enough to cover every positive long.
+     */
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    /**
+     * The amount of recorded values per bucket.
+     */
+    private final AtomicLongArray counts;
+    /**
+     * The total amount of recorded values.
+     */
+    private final AtomicLong count;
+    /**
+     * The sum of all recorded values.
+     */
+    private final AtomicLong sum;
+    /**
+     * The highest recorded value.
+     */
+    private final AtomicLong max;
+
+    /**
+     * Constructor.
+     *
+     * @since 0.1.0
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record a single latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as
+     *        zero
+     * @since 0.1.0
+     */
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : nanos;
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Record the time elapsed since the given {@link System#nanoTime()} value.
+     *
+     * @param startNanos the {@link System#nanoTime()} at the start of the
+     *        measured operation
+     * @since 0.1.0
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the amount of recorded values.
+     *
+     * @return the amount of recorded values
+     * @since 0.1.0
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the highest recorded value, in nanoseconds.
+     *
+     * @return the highest recorded value
+     * @since 0.1.0
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of all recorded values, in nanoseconds.
+     *
+     * @return the mean recorded value, or {@code 0} if nothing was recorded
+     * @since 0.1.0
+     */
+    public long getMean() {
+        final long amount = count.get();
+        return amount == 0 ? 0 : sum.get() / amount;
+    }
+
+    /**
+     * Get an approximation of the given percentile, in nanoseconds. The
+     * returned value is the upper bound of the bucket the percentile falls in.
+     *
+     * @param percentile the wanted percentile, between {@code 0} and
+     *        {@code 100}
+     * @return the approximate value at the given percentile
+     * @since 0.1.0
+     */
+    public long getPercentile(final double percentile) {
+        final long amount = count.get();
+        if (amount == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1,
+                (long) Math.ceil(amount * (percentile / 100.0)));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Reset this histogram, discarding all recorded values.
+     *
+     * @since 0.1.0
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Get a short, human-readable summary of this histogram in milliseconds.
+     *
+     * @return a summary of this histogram
+     * @since 0.1.0
+     */
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+                + " mean=" + toMillis(getMean())
+                + " p50=" + toMillis(getPercentile(50))
+                + " p99=" + toMillis(getPercentile(99))
+                + " max=" + toMillis(getMax()) + "ms";
+    }
+
+    /**
+     * Format the given amount of nanoseconds as milliseconds with two
+     * decimals.
+     *
+     * @param nanos the amount of nanoseconds
+     * @return the formatted amount of milliseconds
+     * @since 0.1.0
+     */
+    public static String toMillis(final long nanos) {
+        final long hundredths = nanos / (TimeUnit.MILLISECONDS.toNanos(1)
+                / 100);
+        final long fraction = hundredths % 100;
+        return (hundredths / 100) + "." + (fraction < 10 ? "0" : "")
+                + fraction;
+    }
+
+    private static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        final long base = 1L << magnitude;
+        final long step = base >>> SUB_BUCKET_BITS;
+        final long bound = base + (sub + 1) * step - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+}
@@ -86,6 +86,12 @@ public class Messages {
      * @since 0.0.5
      */
     public static final String GUILD_NOT_EXISTS = "guild-not-exists";
+    /**
+     * Sent to players who change a guild whose members are still being loaded
+     *
+     * @since 0.1.0
+     */
+    public static final String GUILD_LOADING = "guild-loading";
     /**
      * Sent to players who try to join a guild if they're already in one
      *